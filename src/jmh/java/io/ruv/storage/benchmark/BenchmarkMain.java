@@ -0,0 +1,47 @@
+package io.ruv.storage.benchmark;
+
+import lombok.val;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs JMH benchmarks once per each thread count of comma separated {@code jmh.threads} system property.
+ * <p>
+ * Other options are taken from JMH command line. Unless a result file is given, results of each run
+ * are written as json to {@code target/jmh-result-t<threads>.json}.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        val options = new CommandLineOptions(args);
+
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+
+            Main.main(args);
+            return;
+        }
+
+        for (val threads : System.getProperty("jmh.threads", "1").split(",")) {
+
+            val builder = new OptionsBuilder()
+                    .parent(options)
+                    .threads(Integer.parseInt(threads.trim()));
+
+            if (!options.getResult().hasValue()) {
+
+                builder.resultFormat(ResultFormatType.JSON)
+                        .result(String.format("target/jmh-result-t%s.json", threads.trim()));
+            }
+
+            new Runner(builder.build()).run();
+        }
+    }
+}
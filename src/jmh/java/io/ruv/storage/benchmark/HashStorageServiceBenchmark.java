@@ -0,0 +1,95 @@
+package io.ruv.storage.benchmark;
+
+import io.ruv.storage.service.impl.HashStorageService;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Store, retrieve and delete on {@link HashStorageService} without persistence.
+ * <p>
+ * All benchmark threads share one service, so thread count set by {@code jmh.threads} controls contention.
+ * Stored values share one array, values are not copied on store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashStorageServiceBenchmark {
+
+    @Param({"128", "4096", "65536"})
+    private int valueSize;
+
+    @Param({"1000", "100000"})
+    private int keyCount;
+
+    private HashStorageService service;
+    private String[] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        service = new HashStorageService(new NoopPersistenceStrategy());
+        value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        keys = new String[keyCount];
+
+        for (int i = 0; i < keyCount; i++) {
+
+            keys[i] = "key-" + i;
+            service.store(keys[i], value);
+        }
+    }
+
+    /**
+     * Keys private to a benchmark thread, so concurrent stores never collide
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        private final String prefix = "thread-" + threads.incrementAndGet() + "-";
+        private int next;
+
+        String nextKey() {
+
+            return prefix + (next++ & 1023);
+        }
+    }
+
+    @Benchmark
+    public void retrieve(Blackhole blackhole) {
+
+        try (val stored = service.retrieveValue(keys[ThreadLocalRandom.current().nextInt(keyCount)])) {
+
+            blackhole.consume(stored.buffers());
+        }
+    }
+
+    @Benchmark
+    public void storeThenDelete(ThreadKeys threadKeys) {
+
+        val key = threadKeys.nextKey();
+        service.store(key, value);
+        service.delete(key);
+    }
+}
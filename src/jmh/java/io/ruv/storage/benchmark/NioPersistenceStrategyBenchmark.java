@@ -0,0 +1,130 @@
+package io.ruv.storage.benchmark;
+
+import io.ruv.storage.persistence.nio.impl.NioPersistenceStrategy;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.LoadMode;
+import io.ruv.storage.util.properties.NioPersistenceProperties;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Persist and load of a whole storage with {@link NioPersistenceStrategy} in a temporary directory.
+ * <p>
+ * Both are single operations on the whole storage, meant to be run with a single benchmark thread,
+ * concurrency is controlled by {@code parallelism} instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NioPersistenceStrategyBenchmark {
+
+    @Param({"1024", "65536"})
+    private int valueSize;
+
+    @Param({"100", "1000"})
+    private int keyCount;
+
+    @Param({"4096", "65536"})
+    private int bufferSize;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    /**
+     * Affects load only
+     */
+    @Param({"COPY", "MAP"})
+    private LoadMode loadMode;
+
+    private Path basePath;
+    private NioPersistenceStrategy strategy;
+    private List<Map.Entry<String, Supplier<InputStream>>> entries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        basePath = Files.createTempDirectory("nio-benchmark-");
+
+        val properties = new NioPersistenceProperties();
+        properties.setBasePath(basePath);
+        properties.setBufferSize(bufferSize);
+        properties.setParallelism(parallelism);
+        properties.setLoadMode(loadMode);
+        strategy = new NioPersistenceStrategy(properties);
+
+        val value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        entries = new ArrayList<>(keyCount);
+
+        for (int i = 0; i < keyCount; i++) {
+
+            entries.add(new AbstractMap.SimpleImmutableEntry<>("key-" + i, ByteBufferSupplier.of(value)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        try (val paths = Files.walk(basePath)) {
+
+            for (val path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Storage persisted once for all loads, load reads the snapshot without removing it
+     */
+    @State(Scope.Benchmark)
+    public static class Persisted {
+
+        @Setup(Level.Trial)
+        public void persist(NioPersistenceStrategyBenchmark benchmark) {
+
+            benchmark.persist();
+        }
+    }
+
+    @Benchmark
+    public void persist() {
+
+        strategy.persist(entries.stream());
+    }
+
+    @Benchmark
+    public void load(Persisted persisted, Blackhole blackhole) {
+
+        strategy.load((key, value) -> blackhole.consume(value));
+    }
+}
@@ -0,0 +1,23 @@
+package io.ruv.storage.benchmark;
+
+import io.ruv.storage.persistence.PersistenceStrategy;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Persistence doing nothing, isolates storage service costs
+ */
+class NoopPersistenceStrategy implements PersistenceStrategy {
+
+    @Override
+    public void persist(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> stream) {
+    }
+
+    @Override
+    public void load(BiConsumer<String, Supplier<InputStream>> loadAction) {
+    }
+}
@@ -0,0 +1,152 @@
+package io.ruv.storage.benchmark;
+
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.persistence.PersistenceStrategyFactory;
+import io.ruv.storage.service.impl.ShardedStorageService;
+import io.ruv.storage.util.properties.ShardedStorageProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Store, retrieve, delete and save on {@link ShardedStorageService} with persistence reading values
+ * without writing them anywhere.
+ * <p>
+ * Compare shard counts across thread counts set by {@code jmh.threads} to see how access scales with cores,
+ * and save parallelism to see how shards are saved at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedStorageServiceBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int shards;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    @Param({"4096"})
+    private int valueSize;
+
+    @Param({"100000"})
+    private int keyCount;
+
+    private Path basePath;
+    private ShardedStorageService service;
+    private String[] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        basePath = Files.createTempDirectory("sharded-benchmark-");
+
+        val properties = new ShardedStorageProperties();
+        properties.setShards(shards);
+        properties.setParallelism(parallelism);
+
+        service = new ShardedStorageService(new PersistenceStrategyFactory(basePath, path -> new ReadingPersistenceStrategy()),
+                new StorageProperties(), properties, new CustomizableThreadFactory("shard-benchmark-"));
+        value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        keys = new String[keyCount];
+
+        for (int i = 0; i < keyCount; i++) {
+
+            keys[i] = "key-" + i;
+            service.store(keys[i], value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        service.close();
+        FileSystemUtils.deleteRecursively(basePath);
+    }
+
+    @Benchmark
+    public void retrieve(Blackhole blackhole) {
+
+        try (val stored = service.retrieveValue(keys[ThreadLocalRandom.current().nextInt(keyCount)])) {
+
+            blackhole.consume(stored.buffers());
+        }
+    }
+
+    @Benchmark
+    public void storeThenDelete(HashStorageServiceBenchmark.ThreadKeys threadKeys) {
+
+        val key = threadKeys.nextKey();
+        service.store(key, value);
+        service.delete(key);
+    }
+
+    /**
+     * Run with {@code jmh.threads=1}, a save started while another one runs fails
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void save() {
+
+        service.save();
+    }
+
+    /**
+     * Reads every persisted value, so that saves take time proportional to the data
+     */
+    private static class ReadingPersistenceStrategy implements PersistenceStrategy {
+
+        @Override
+        public void persist(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> stream) {
+
+            stream.forEach(entry -> {
+
+                try (val value = entry.getValue().get()) {
+
+                    value.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        @Override
+        public void load(BiConsumer<String, Supplier<InputStream>> loadAction) {
+        }
+    }
+}
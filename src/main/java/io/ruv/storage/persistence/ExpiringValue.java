@@ -0,0 +1,62 @@
+package io.ruv.storage.persistence;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * Value persisted along with the deadline it expires at.
+ * <p>
+ * Storage hands values stored with time to live to {@link PersistenceStrategy#persist} wrapped in it,
+ * strategies record the deadline next to the value and hand loaded values back wrapped again.
+ * A strategy unaware of deadlines persists the value alone, which is then loaded without time to live.
+ */
+@RequiredArgsConstructor
+public class ExpiringValue implements Supplier<InputStream> {
+
+    /**
+     * Deadline of values kept until deleted
+     */
+    public static final long NO_DEADLINE = 0;
+
+    @Getter
+    private final Supplier<InputStream> value;
+
+    /**
+     * Deadline in epoch milliseconds
+     */
+    @Getter
+    private final long deadline;
+
+    @Override
+    public InputStream get() {
+
+        return value.get();
+    }
+
+    /**
+     * @return provided value wrapped with its deadline, provided value itself when it has none
+     */
+    public static Supplier<InputStream> of(Supplier<InputStream> value, long deadline) {
+
+        return deadline == NO_DEADLINE ? value : new ExpiringValue(value, deadline);
+    }
+
+    /**
+     * @return value wrapped by an expiring one, provided value otherwise
+     */
+    public static Supplier<InputStream> unwrap(Supplier<InputStream> value) {
+
+        return value instanceof ExpiringValue ? ((ExpiringValue) value).getValue() : value;
+    }
+
+    /**
+     * @return deadline of an expiring value, {@link #NO_DEADLINE} otherwise
+     */
+    public static long deadlineOf(Supplier<InputStream> value) {
+
+        return value instanceof ExpiringValue ? ((ExpiringValue) value).getDeadline() : NO_DEADLINE;
+    }
+}
@@ -1,18 +1,138 @@
 package io.ruv.storage.persistence;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.ruv.storage.persistence.nio.impl.NioPersistenceOptions;
 import io.ruv.storage.persistence.nio.impl.NioPersistenceStrategy;
+import io.ruv.storage.persistence.packed.impl.PackedPersistenceStrategy;
+import io.ruv.storage.persistence.wal.impl.WalPersistenceStrategy;
+import io.ruv.storage.util.concurrent.VirtualThreads;
+import io.ruv.storage.util.properties.CompressionProperties;
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import io.ruv.storage.util.properties.ExecutionProperties;
 import io.ruv.storage.util.properties.NioPersistenceProperties;
+import io.ruv.storage.util.properties.PackedPersistenceProperties;
+import io.ruv.storage.util.properties.WalPersistenceProperties;
+import lombok.val;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.BeanUtils;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Defines persistence strategy of the configured type along with a factory of such strategies.
+ * The strategy itself is created lazily, storage services persisting through strategies of their own
+ * leave the base path to them.
+ */
 @Configuration
-@EnableConfigurationProperties(NioPersistenceProperties.class)
 public class PersistenceConfig {
 
-    @Bean
-    public PersistenceStrategy persistenceStrategy(NioPersistenceProperties properties) {
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.persistence", name = "type", havingValue = "nio", matchIfMissing = true)
+    @EnableConfigurationProperties({NioPersistenceProperties.class, CompressionProperties.class, DeduplicationProperties.class})
+    public static class NioPersistenceConfig {
+
+        @Bean
+        @Lazy
+        public PersistenceStrategy persistenceStrategy(NioPersistenceProperties properties, ExecutionProperties executionProperties,
+                                                       CompressionProperties compressionProperties,
+                                                       DeduplicationProperties deduplicationProperties, MeterRegistry registry) {
+
+            return new NioPersistenceStrategy(properties,
+                    options(threadFactory(executionProperties), registry, compressionProperties, deduplicationProperties));
+        }
+
+        @Bean
+        public PersistenceStrategyFactory persistenceStrategyFactory(NioPersistenceProperties properties,
+                                                                     ExecutionProperties executionProperties,
+                                                                     CompressionProperties compressionProperties,
+                                                                     DeduplicationProperties deduplicationProperties,
+                                                                     MeterRegistry registry) {
+
+            val options = options(threadFactory(executionProperties), registry, compressionProperties, deduplicationProperties);
+
+            return new PersistenceStrategyFactory(properties.getBasePath(), basePath -> {
+
+                val strategyProperties = new NioPersistenceProperties();
+                BeanUtils.copyProperties(properties, strategyProperties);
+                strategyProperties.setBasePath(basePath);
+                return new NioPersistenceStrategy(strategyProperties, options);
+            });
+        }
+
+        private static NioPersistenceOptions options(ThreadFactory threadFactory, MeterRegistry registry,
+                                                     CompressionProperties compressionProperties,
+                                                     DeduplicationProperties deduplicationProperties) {
+
+            return NioPersistenceOptions.builder()
+                    .threadFactory(threadFactory)
+                    .registry(registry)
+                    .compression(compressionProperties)
+                    .deduplication(deduplicationProperties)
+                    .build();
+        }
+
+        private static ThreadFactory threadFactory(ExecutionProperties executionProperties) {
+
+            val threadNamePrefix = "nio-persistence-";
+
+            return executionProperties.getThreads() == ExecutionProperties.Threads.VIRTUAL
+                    ? VirtualThreads.factory(threadNamePrefix)
+                    : new CustomizableThreadFactory(threadNamePrefix);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.persistence", name = "type", havingValue = "wal")
+    @EnableConfigurationProperties(WalPersistenceProperties.class)
+    public static class WalPersistenceConfig {
+
+        @Bean
+        @Lazy
+        public PersistenceStrategy persistenceStrategy(WalPersistenceProperties properties) {
+
+            return new WalPersistenceStrategy(properties);
+        }
+
+        @Bean
+        public PersistenceStrategyFactory persistenceStrategyFactory(WalPersistenceProperties properties) {
+
+            return new PersistenceStrategyFactory(properties.getBasePath(), basePath -> {
+
+                val strategyProperties = new WalPersistenceProperties();
+                BeanUtils.copyProperties(properties, strategyProperties);
+                strategyProperties.setBasePath(basePath);
+                return new WalPersistenceStrategy(strategyProperties);
+            });
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.persistence", name = "type", havingValue = "packed")
+    @EnableConfigurationProperties(PackedPersistenceProperties.class)
+    public static class PackedPersistenceConfig {
+
+        @Bean
+        @Lazy
+        public PersistenceStrategy persistenceStrategy(PackedPersistenceProperties properties) {
+
+            return new PackedPersistenceStrategy(properties);
+        }
+
+        @Bean
+        public PersistenceStrategyFactory persistenceStrategyFactory(PackedPersistenceProperties properties) {
+
+            return new PersistenceStrategyFactory(properties.getBasePath(), basePath -> {
 
-        return new NioPersistenceStrategy(properties);
+                val strategyProperties = new PackedPersistenceProperties();
+                BeanUtils.copyProperties(properties, strategyProperties);
+                strategyProperties.setBasePath(basePath);
+                return new PackedPersistenceStrategy(strategyProperties);
+            });
+        }
     }
 }
@@ -40,6 +40,15 @@ public class PersistenceException extends InternalServerErrorException {
                 cause);
     }
 
+    public static PersistenceException writingStorage(Exception cause) {
+
+        return new PersistenceException(
+                "",
+                ErrorCode.PERSISTENCE_WRITE_STORAGE,
+                "Failed to write persistent storage.",
+                cause);
+    }
+
     public static PersistenceException cleaningStorage(Exception cause) {
 
         return new PersistenceException(
@@ -49,6 +58,15 @@ public class PersistenceException extends InternalServerErrorException {
                 cause);
     }
 
+    public static PersistenceException syncing(Exception cause) {
+
+        return new PersistenceException(
+                "",
+                ErrorCode.PERSISTENCE_SYNC,
+                "Failed to flush persistent storage.",
+                cause);
+    }
+
     private PersistenceException(String key, ErrorCode errorCode, String message, Exception cause) {
 
         super(message, cause);
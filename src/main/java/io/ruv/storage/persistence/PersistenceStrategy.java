@@ -1,6 +1,7 @@
 package io.ruv.storage.persistence;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
@@ -14,16 +15,107 @@ public interface PersistenceStrategy {
     /**
      * Saves key and associated value to persistent storage
      *
-     * @param stream a stream of key-value pairs to persist
+     * @param stream a stream of key-value pairs to persist, values with time to live are {@link ExpiringValue expiring}
      * @throws PersistenceException when underlying persistence mechanism fails
      */
-    void persist(Stream<Map.Entry<String, Supplier<InputStream>>> stream) throws PersistenceException;
+    void persist(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> stream) throws PersistenceException;
+
+    /**
+     * Whether {@link #persistDelta} can be applied on top of the storage state persisted last.
+     * Storage falls back to {@link #persist} when it can not.
+     */
+    default boolean canPersistDelta() {
+
+        return false;
+    }
+
+    /**
+     * Saves changes made since the previous persist on top of it
+     *
+     * @param changes a stream of changed keys with their current values, {@code null} value for deleted keys,
+     *                values with time to live are {@link ExpiringValue expiring}
+     * @throws PersistenceException          when underlying persistence mechanism fails
+     * @throws UnsupportedOperationException when {@link #canPersistDelta()} is {@code false}
+     */
+    default void persistDelta(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> changes) throws PersistenceException {
+
+        throw new UnsupportedOperationException("Incremental persistence is not supported.");
+    }
 
     /**
      * Loads keys and associated values from persistent storage
      *
-     * @param loadAction consumer callback to apply to each loaded key-value pair
+     * @param loadAction consumer callback to apply to each loaded key-value pair,
+     *                   implementations loading in parallel may call it concurrently,
+     *                   values persisted with a deadline are handed over {@link ExpiringValue expiring}
      * @throws PersistenceException when underlying persistence mechanism fails
      */
     void load(BiConsumer<String, Supplier<InputStream>> loadAction) throws PersistenceException;
+
+    /**
+     * Called right before storage fixes the point-in-time view passed to the following {@link #persist} call.
+     * Strategies recording operations use it to mark where operations not covered by the snapshot start.
+     *
+     * @throws PersistenceException when underlying persistence mechanism fails
+     */
+    default void beginSnapshot() throws PersistenceException {
+
+    }
+
+    /**
+     * Records a store operation between {@link #persist} calls.
+     * Storage calls it while holding the key, so records of a single key keep the order of operations.
+     *
+     * @param key   key of stored value
+     * @param value buffers holding remaining bytes of stored value, in order, must not be modified
+     * @return sequence number to pass to {@link #awaitDurable(long)}, 0 if operations are not recorded
+     * @throws PersistenceException when underlying persistence mechanism fails
+     */
+    default long logStore(String key, ByteBuffer... value) throws PersistenceException {
+
+        return 0;
+    }
+
+    /**
+     * @see #logStore(String, ByteBuffer...)
+     */
+    default long logStore(String key, byte[] value) throws PersistenceException {
+
+        return logStore(key, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * Records a store operation of a value with time to live, strategies not recording deadlines
+     * record the value alone
+     *
+     * @param deadline deadline of stored value in epoch milliseconds
+     * @see #logStore(String, ByteBuffer...)
+     */
+    default long logStore(String key, long deadline, ByteBuffer... value) throws PersistenceException {
+
+        return logStore(key, value);
+    }
+
+    /**
+     * Records a delete operation between {@link #persist} calls
+     *
+     * @param key key of deleted value
+     * @return sequence number to pass to {@link #awaitDurable(long)}, 0 if operations are not recorded
+     * @throws PersistenceException when underlying persistence mechanism fails
+     * @see #logStore(String, ByteBuffer...)
+     */
+    default long logDelete(String key) throws PersistenceException {
+
+        return 0;
+    }
+
+    /**
+     * Blocks until recorded operations up to provided sequence number survive a crash
+     *
+     * @param sequence sequence number returned by {@link #logStore} or {@link #logDelete}
+     * @throws PersistenceException when underlying persistence mechanism fails
+     */
+    default void awaitDurable(long sequence) throws PersistenceException {
+
+    }
 }
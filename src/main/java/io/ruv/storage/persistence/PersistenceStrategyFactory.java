@@ -0,0 +1,45 @@
+package io.ruv.storage.persistence;
+
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * Creates independent persistence strategies of the configured type, each one storing into its own
+ * subdirectory of the configured base path
+ */
+@RequiredArgsConstructor
+public class PersistenceStrategyFactory {
+
+    @Getter
+    private final Path basePath;
+
+    /**
+     * Creates strategy storing into provided directory
+     */
+    private final Function<Path, PersistenceStrategy> creator;
+
+    /**
+     * @param subdirectory name of the directory within base path, created if missing
+     */
+    public PersistenceStrategy create(String subdirectory) {
+
+        val path = basePath.resolve(subdirectory);
+
+        try {
+
+            Files.createDirectories(path);
+        } catch (IOException e) {
+
+            throw new InitializationException(String.format("Failed to create directory '%s': %s", path, e.getMessage()));
+        }
+
+        return creator.apply(path);
+    }
+}
@@ -0,0 +1,137 @@
+package io.ruv.storage.persistence.nio.impl;
+
+import io.ruv.storage.persistence.PersistenceException;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Applies an action to stream elements on a fixed number of threads.
+ * <p>
+ * Stream is consumed on the calling thread and at most twice as many elements as threads are in flight,
+ * so lazy streams are not drained ahead of writers. After the first failure no more elements are submitted
+ * and the failure of the earliest element is rethrown once all running actions complete, an {@link Error}
+ * is rethrown in preference to exceptions.
+ * <p>
+ * Threads are kept for the lifetime of the runner and stopped on {@link #close()}.
+ */
+class BoundedParallelRunner implements Closeable {
+
+    private final int parallelism;
+
+    /**
+     * Executor of actions, {@code null} when they run on the calling thread
+     */
+    private final ExecutorService executor;
+
+    BoundedParallelRunner(int parallelism, ThreadFactory threadFactory) {
+
+        this.parallelism = parallelism;
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, threadFactory) : null;
+    }
+
+    /**
+     * @param interrupted factory of exception to throw when calling thread is interrupted while waiting
+     */
+    <T> void forEach(Stream<T> stream, Consumer<? super T> action,
+                     Function<Exception, PersistenceException> interrupted) throws PersistenceException {
+
+        if (executor == null) {
+
+            stream.forEach(action);
+            return;
+        }
+
+        val inFlight = parallelism * 2;
+        val permits = new Semaphore(inFlight);
+        val failure = new AtomicReference<IndexedFailure>();
+        val error = new AtomicReference<Error>();
+
+        try {
+
+            val iterator = stream.iterator();
+            var index = 0L;
+
+            while (failure.get() == null && error.get() == null && iterator.hasNext()) {
+
+                permits.acquire();
+
+                val element = iterator.next();
+                val elementIndex = index++;
+
+                try {
+
+                    executor.execute(() -> {
+
+                        try {
+
+                            action.accept(element);
+                        } catch (RuntimeException e) {
+
+                            failure.accumulateAndGet(new IndexedFailure(elementIndex, e),
+                                    (current, next) -> current == null || next.index < current.index ? next : current);
+                        } catch (Error e) {
+
+                            error.compareAndSet(null, e);
+                        } finally {
+
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+
+                    permits.release();
+                    throw e;
+                }
+            }
+
+            // running actions are not abandoned, they may be writing files
+            permits.acquire(inFlight);
+        } catch (InterruptedException e) {
+
+            // actions in flight complete on the executor, no more are submitted
+            Thread.currentThread().interrupt();
+            throw interrupted.apply(e);
+        }
+
+        if (error.get() != null) {
+
+            throw error.get();
+        }
+
+        val first = failure.get();
+
+        if (first != null) {
+
+            throw first.exception;
+        }
+    }
+
+    /**
+     * Stops threads once running actions complete
+     */
+    @Override
+    public void close() {
+
+        if (executor != null) {
+
+            executor.shutdown();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class IndexedFailure {
+
+        private final long index;
+        private final RuntimeException exception;
+    }
+}
@@ -0,0 +1,43 @@
+package io.ruv.storage.persistence.nio.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.ruv.storage.util.properties.CompressionProperties;
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Collaborators and storage features affecting files of {@link NioPersistenceStrategy}
+ */
+@Value
+@Builder
+public class NioPersistenceOptions {
+
+    /**
+     * Factory of threads writing and reading files in parallel
+     */
+    @Builder.Default
+    ThreadFactory threadFactory = new CustomizableThreadFactory("nio-persistence-");
+
+    /**
+     * Registry of file i/o meters
+     */
+    @Builder.Default
+    MeterRegistry registry = new CompositeMeterRegistry();
+
+    /**
+     * Compression settings, files are written in compressed format when enabled
+     */
+    @Builder.Default
+    CompressionProperties compression = new CompressionProperties();
+
+    /**
+     * Deduplication settings, files of shared values are linked when enabled
+     */
+    @Builder.Default
+    DeduplicationProperties deduplication = new DeduplicationProperties();
+}
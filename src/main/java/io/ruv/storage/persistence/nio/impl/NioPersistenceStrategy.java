@@ -1,87 +1,524 @@
 package io.ruv.storage.persistence.nio.impl;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.ruv.storage.persistence.ExpiringValue;
 import io.ruv.storage.persistence.PersistenceException;
 import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.util.compression.CompressedValue;
+import io.ruv.storage.util.compression.CompressionCodec;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.io.Throttle;
+import io.ruv.storage.util.properties.LoadMode;
 import io.ruv.storage.util.properties.NioPersistenceProperties;
-import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.springframework.util.FileSystemUtils;
 
-import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 /**
- * Implementation of {@link PersistenceStrategy} using nio to persist storage to files
+ * Implementation of {@link PersistenceStrategy} using nio to persist storage to files.
+ * <p>
+ * Each persist writes a snapshot directory {@code snapshot-<n>} holding a file per key and a manifest
+ * of their checksums, laid out as described by {@link NioSnapshotFormat}. A snapshot is published only once
+ * complete and flushed, loads verify it, so a crash during a save or a load leaves the previous snapshot
+ * intact. The most recent snapshots are retained. Writes may be throttled by bytes and write operations per second, so that
+ * persisting does not saturate a disk shared with other services.
+ * <p>
+ * Deltas are snapshot directories of changed keys chained on top of a complete snapshot, a save costs
+ * as many files as there are changes. Snapshots a retained delta is based on are kept along with it.
+ * <p>
+ * Latency and bytes of each file written or read are recorded as {@code storage.persistence.file}
+ * and {@code storage.persistence.bytes} meters.
+ * <p>
+ * With compression enabled every file starts with a codec identifier, followed by the original length
+ * and compressed bytes for compressed values, or by value bytes otherwise. Values held compressed
+ * are written and loaded without recompression. The format is recorded in the manifest, a snapshot is
+ * read in the format it was written in, and a delta keeps the format of the snapshot it extends.
+ * <p>
+ * Deadlines of {@link ExpiringValue expiring} values are recorded in the manifest.
+ * <p>
+ * With deduplication enabled a value shared by several keys is written once, files of the other keys
+ * are hard links to it. File systems without hard links get a copy per key.
  */
 @Slf4j
-@RequiredArgsConstructor
-public class NioPersistenceStrategy implements PersistenceStrategy {
+public class NioPersistenceStrategy implements PersistenceStrategy, Closeable {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TEMP_SUFFIX = ".tmp";
 
     private final NioPersistenceProperties properties;
 
+    private final BoundedParallelRunner runner;
+
+    /**
+     * Whether files of new snapshots carry codec header
+     */
+    private final boolean compressedFormat;
+
+    /**
+     * Shared values at least this long are linked, negative when duplicates are not linked
+     */
+    private final long minLinkedSize;
+
+    private final Timer fileWrites;
+    private final Timer fileReads;
+    private final Counter bytesWritten;
+    private final Counter bytesRead;
+
+    /**
+     * Snapshot written last, {@code null} until a persist succeeds and after a load
+     */
+    private volatile Persisted persisted;
+
+    /**
+     * Files mapped by the running load
+     */
+    private final AtomicInteger mappedFiles = new AtomicInteger();
+
+    private final Throttle writeBytes;
+    private final Throttle writeOps;
+
     private final Set<OpenOption> writeOpenOptions = Set.of(
             StandardOpenOption.CREATE,
             StandardOpenOption.WRITE,
             StandardOpenOption.TRUNCATE_EXISTING);
 
+    public NioPersistenceStrategy(NioPersistenceProperties properties) {
+
+        this(properties, NioPersistenceOptions.builder().build());
+    }
+
+    public NioPersistenceStrategy(NioPersistenceProperties properties, NioPersistenceOptions options) {
+
+        this.properties = properties;
+        this.compressedFormat = options.getCompression().isEnabled();
+        this.minLinkedSize = options.getDeduplication().isEnabled() ? options.getDeduplication().getMinSize().toBytes() : -1;
+        this.runner = new BoundedParallelRunner(properties.getParallelism(), options.getThreadFactory());
+        this.writeBytes = new Throttle(properties.getMaxWriteRate().toBytes());
+        this.writeOps = new Throttle(properties.getMaxWriteOps());
+        this.fileWrites = fileTimer(options.getRegistry(), "write");
+        this.fileReads = fileTimer(options.getRegistry(), "read");
+        this.bytesWritten = bytesCounter(options.getRegistry(), "write");
+        this.bytesRead = bytesCounter(options.getRegistry(), "read");
+    }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Values are written to a new snapshot directory along with a manifest of their checksums,
+     * the directory is published by renaming it once all files are written and flushed.
+     * The {@link NioPersistenceProperties#getRetainedSnapshots() retained} most recent snapshots are kept.
+     * Files are written by {@link NioPersistenceProperties#getParallelism() parallelism} threads
+     * within the configured write rates.
      */
     @Override
-    public void persist(Stream<Map.Entry<String, Supplier<InputStream>>> stream) throws PersistenceException {
+    public void persist(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> stream) throws PersistenceException {
 
-        // clean up storage directory
-        try (val fileStream = Files.list(properties.getBasePath())) {
+        persisted = null;
 
-            fileStream.forEach(path -> {
+        val snapshot = createSnapshot();
+        val values = snapshot.resolve(NioSnapshotFormat.VALUES);
+        val manifest = new ConcurrentHashMap<String, NioSnapshotFormat.Entry>();
 
-                try {
+        try {
+
+            // save each pair to file
+            val written = new ConcurrentHashMap<Supplier<InputStream>, CompletableFuture<NioSnapshotFormat.Entry>>();
+            runner.forEach(stream, entry -> manifest.put(entry.getKey(),
+                            persistExpiring(values, entry.getKey(), entry.getValue(), compressedFormat, written)),
+                    PersistenceException::writingStorage);
+
+            writeManifest(snapshot, compressedFormat, NioSnapshotFormat.NO_BASE, manifest.values(), List.of());
+        } catch (RuntimeException e) {
 
-                    Files.delete(path);
-                } catch (IOException e) {
+            deleteQuietly(snapshot);
+            throw e;
+        }
+
+        persisted = new Persisted(publish(snapshot), compressedFormat, 0);
+    }
 
-                    throw PersistenceException.cleaningStorage(e);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Delta can be applied only on top of a snapshot written by this strategy, a loaded snapshot may be
+     * an older one than the latest.
+     */
+    @Override
+    public boolean canPersistDelta() {
+
+        return persisted != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Delta is written as a new snapshot directory holding files of changed keys only, its manifest records
+     * the previous snapshot and deleted keys. Once there are more than
+     * {@link NioPersistenceProperties#getMaxDeltas() max deltas} chained, they are compacted into a complete
+     * snapshot linking files of the chain.
+     */
+    @Override
+    public void persistDelta(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> changes) throws PersistenceException {
+
+        val previous = persisted;
+
+        if (previous == null) {
+
+            throw new UnsupportedOperationException("Delta requires a complete persisted storage.");
+        }
+
+        persisted = null;
+
+        val snapshot = createSnapshot();
+        val values = snapshot.resolve(NioSnapshotFormat.VALUES);
+        val manifest = new ConcurrentHashMap<String, NioSnapshotFormat.Entry>();
+        val deleted = ConcurrentHashMap.<String>newKeySet();
+
+        try {
+
+            val written = new ConcurrentHashMap<Supplier<InputStream>, CompletableFuture<NioSnapshotFormat.Entry>>();
+
+            runner.forEach(changes, entry -> {
+
+                if (entry.getValue() != null) {
+
+                    manifest.put(entry.getKey(),
+                            persistExpiring(values, entry.getKey(), entry.getValue(), previous.isCompressed(), written));
+                } else {
+
+                    deleted.add(entry.getKey());
                 }
-            });
+            }, PersistenceException::writingStorage);
+
+            writeManifest(snapshot, previous.isCompressed(), sequenceOf(previous.getSnapshot()), manifest.values(), deleted);
+        } catch (RuntimeException e) {
+
+            deleteQuietly(snapshot);
+            throw e;
+        }
+
+        val delta = new Persisted(publish(snapshot), previous.isCompressed(), previous.getDeltas() + 1);
+        persisted = delta;
+
+        if (delta.getDeltas() > properties.getMaxDeltas()) {
+
+            try {
+
+                compact(delta);
+            } catch (PersistenceException e) {
+
+                // delta is durable already, compaction is retried after the next one
+                log.warn("Failed to compact deltas of '{}'.", delta.getSnapshot(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes complete snapshot of a delta chain, files are linked from the snapshots of the chain
+     */
+    private void compact(Persisted delta) throws PersistenceException {
+
+        Map<String, Located> files;
+
+        try {
+
+            files = resolve(delta.getSnapshot()).getFiles();
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+
+        val snapshot = createSnapshot();
+        val values = snapshot.resolve(NioSnapshotFormat.VALUES);
+        val manifest = new ConcurrentHashMap<String, NioSnapshotFormat.Entry>();
+
+        try {
+
+            runner.forEach(files.entrySet().stream(), entry -> {
+
+                linkOne(entry.getValue().getValues().resolve(entry.getKey()), values.resolve(entry.getKey()));
+                manifest.put(entry.getKey(), entry.getValue().getEntry());
+            }, PersistenceException::writingStorage);
+
+            writeManifest(snapshot, delta.isCompressed(), NioSnapshotFormat.NO_BASE, manifest.values(), List.of());
+        } catch (RuntimeException e) {
+
+            deleteQuietly(snapshot);
+            throw e;
+        }
+
+        persisted = new Persisted(publish(snapshot), delta.isCompressed(), 0);
+        log.debug("Compacted deltas into a snapshot of {} keys.", manifest.size());
+    }
+
+    /**
+     * Creates temporary directory of the next snapshot, removing ones left by failed persists
+     */
+    private Path createSnapshot() throws PersistenceException {
+
+        try (val fileStream = Files.list(properties.getBasePath())) {
+
+            fileStream.filter(NioPersistenceStrategy::isTemporary).forEach(NioPersistenceStrategy::deleteQuietly);
+        } catch (IOException e) {
+
+            throw PersistenceException.cleaningStorage(e);
+        }
+
+        try {
+
+            val snapshots = snapshots();
+            val sequence = snapshots.isEmpty() ? 1 : sequenceOf(snapshots.get(0)) + 1;
+            val snapshot = Files.createDirectory(properties.getBasePath().resolve(SNAPSHOT_PREFIX + sequence + TEMP_SUFFIX));
+
+            Files.createDirectory(snapshot.resolve(NioSnapshotFormat.VALUES));
+            return snapshot;
+        } catch (IOException e) {
+
+            throw PersistenceException.writingStorage(e);
+        }
+    }
+
+    /**
+     * Writes manifest of complete snapshot, flushing directories of the snapshot so that
+     * file names are durable before it is published
+     */
+    private void writeManifest(Path snapshot, boolean compressed, long base, Collection<NioSnapshotFormat.Entry> entries,
+                               Collection<String> deleted) throws PersistenceException {
+
+        try (val channel = FileChannel.open(snapshot.resolve(NioSnapshotFormat.MANIFEST), writeOpenOptions)) {
+
+            val manifest = NioSnapshotFormat.encodeManifest(compressed, base, entries, deleted);
+
+            while (manifest.hasRemaining()) {
+
+                channel.write(manifest);
+            }
+
+            if (properties.isSync()) {
+
+                channel.force(false);
+            }
+        } catch (IOException e) {
+
+            throw PersistenceException.writingStorage(e);
+        }
+
+        if (properties.isSync()) {
+
+            forceDirectory(snapshot.resolve(NioSnapshotFormat.VALUES));
+            forceDirectory(snapshot);
+        }
+    }
+
+    /**
+     * Renames complete snapshot into place and removes snapshots no longer retained, bases of retained deltas
+     * are kept, along with values persisted before snapshots were kept in directories
+     *
+     * @return published snapshot directory
+     */
+    private Path publish(Path snapshot) throws PersistenceException {
+
+        val name = snapshot.getFileName().toString();
+        val published = snapshot.resolveSibling(name.substring(0, name.length() - TEMP_SUFFIX.length()));
+
+        try {
+
+            Files.move(snapshot, published, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+
+            deleteQuietly(snapshot);
+            throw PersistenceException.writingStorage(e);
+        }
+
+        if (properties.isSync()) {
+
+            forceDirectory(properties.getBasePath());
+        }
+
+        try (val fileStream = Files.list(properties.getBasePath())) {
+
+            fileStream.filter(Files::isRegularFile).forEach(NioPersistenceStrategy::deleteQuietly);
+
+            val snapshots = snapshots();
+            val retained = retained(snapshots);
+            snapshots.stream().filter(path -> !retained.contains(path)).forEach(NioPersistenceStrategy::deleteQuietly);
         } catch (IOException e) {
 
             throw PersistenceException.cleaningStorage(e);
         }
 
-        // save each pair to file
-        stream.forEach(entry -> persistOne(entry.getKey(), entry.getValue()));
+        log.debug("Snapshot '{}' published.", published);
+        return published;
     }
 
-    private void persistOne(String key, Supplier<InputStream> value) throws PersistenceException {
+    /**
+     * @param snapshots published snapshot directories, the most recent first
+     * @return the most recent snapshots along with snapshots their deltas are based on
+     */
+    private Set<Path> retained(List<Path> snapshots) throws IOException {
+
+        val retained = new HashSet<Path>();
 
-        val path = properties.getBasePath().resolve(key);
+        for (val snapshot : snapshots.subList(0, Math.min(properties.getRetainedSnapshots(), snapshots.size()))) {
 
-        try (val inputChannel = Channels.newChannel(value.get())) {
+            var current = snapshot;
 
-            try (val outputChannel = FileChannel.open(path, writeOpenOptions)) {
+            while (retained.add(current)) {
 
-                val bufferSize = properties.getBufferSize();
-                val buffer = ByteBuffer.allocate(bufferSize);
+                val base = NioSnapshotFormat.readBase(current);
 
-                while (inputChannel.read(buffer) > 0) {
+                if (base == NioSnapshotFormat.NO_BASE) {
 
-                    buffer.flip();
-                    outputChannel.write(buffer);
+                    break;
                 }
+
+                current = properties.getBasePath().resolve(SNAPSHOT_PREFIX + base);
+            }
+        }
+
+        return retained;
+    }
+
+    /**
+     * Writes value of the key, recording its deadline in manifest entry
+     *
+     * @return manifest entry of the key
+     */
+    private NioSnapshotFormat.Entry persistExpiring(Path values, String key, Supplier<InputStream> value, boolean compressed,
+                                                    ConcurrentHashMap<Supplier<InputStream>, CompletableFuture<NioSnapshotFormat.Entry>> written)
+            throws PersistenceException {
+
+        return persistLinked(values, key, ExpiringValue.unwrap(value), compressed, written)
+                .withDeadline(ExpiringValue.deadlineOf(value));
+    }
+
+    /**
+     * Writes value of the first key holding it, links files of the following keys to the written one.
+     * A key waits for the file it links to while that file is being written.
+     *
+     * @param compressed whether files carry codec header
+     * @param written    files of values written by the running persist
+     * @return manifest entry of the key
+     */
+    private NioSnapshotFormat.Entry persistLinked(Path values, String key, Supplier<InputStream> value, boolean compressed,
+                                                  ConcurrentHashMap<Supplier<InputStream>, CompletableFuture<NioSnapshotFormat.Entry>> written)
+            throws PersistenceException {
+
+        if (minLinkedSize < 0 || contentLength(value) < minLinkedSize) {
+
+            return persistOne(values, key, value, compressed);
+        }
+
+        val file = new CompletableFuture<NioSnapshotFormat.Entry>();
+        val first = written.putIfAbsent(value, file);
+
+        if (first == null) {
+
+            try {
+
+                val entry = persistOne(values, key, value, compressed);
+                file.complete(entry);
+                return entry;
+            } catch (RuntimeException e) {
+
+                file.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        NioSnapshotFormat.Entry target;
+
+        try {
+
+            target = first.join();
+        } catch (CompletionException e) {
+
+            // failure is reported by the key written first
+            return persistOne(values, key, value, compressed);
+        }
+
+        try {
+
+            writeOps.acquire(1);
+            Files.createLink(values.resolve(key), values.resolve(target.getKey()));
+            return target.withKey(key);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+
+            log.debug("Could not link file of key '{}', writing a copy.", key, e);
+            return persistOne(values, key, value, compressed);
+        } catch (IOException e) {
+
+            throw PersistenceException.writing(key, e);
+        }
+    }
+
+    /**
+     * Links file of previous snapshot, copying it when file system has no links
+     */
+    private void linkOne(Path source, Path target) throws PersistenceException {
+
+        val key = source.getFileName().toString();
+
+        try {
+
+            writeOps.acquire(1);
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+
+            try {
+
+                writeBytes.acquire(Files.size(source));
+                Files.copy(source, target);
+
+                if (properties.isSync()) {
+
+                    try (val channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException copyException) {
+
+                throw PersistenceException.writing(key, copyException);
             }
         } catch (IOException e) {
 
@@ -89,36 +526,486 @@ public class NioPersistenceStrategy implements PersistenceStrategy {
         }
     }
 
+    /**
+     * @return length of value content, zero when unknown without reading the value
+     */
+    private static long contentLength(Supplier<InputStream> value) {
+
+        if (value instanceof CompressedValue) {
+
+            return ((CompressedValue) value).getLength();
+        }
+
+        return value instanceof ByteBufferSupplier ? ((ByteBufferSupplier) value).length() : 0;
+    }
+
+    /**
+     * Writes file of the key, checksum is computed over the bytes as they are written
+     *
+     * @param compressed whether file carries codec header
+     * @return manifest entry of the key
+     */
+    private NioSnapshotFormat.Entry persistOne(Path values, String key, Supplier<InputStream> value, boolean compressed)
+            throws PersistenceException {
+
+        val path = values.resolve(key);
+        val start = System.nanoTime();
+        val crc = new CRC32C();
+        long written = 0;
+
+        try (val outputChannel = FileChannel.open(path, writeOpenOptions)) {
+
+            if (compressed && value instanceof CompressedValue) {
+
+                val compressedValue = (CompressedValue) value;
+                val header = ByteBuffer.allocate(Byte.BYTES + Long.BYTES)
+                        .put(compressedValue.getCodec().getId())
+                        .putLong(compressedValue.getLength())
+                        .flip();
+
+                written += writeFully(outputChannel, header, crc);
+                written += writeFully(outputChannel, compressedValue.compressed(), crc);
+            } else {
+
+                if (compressed) {
+
+                    written += writeFully(outputChannel, ByteBuffer.wrap(new byte[]{CompressionCodec.NONE}), crc);
+                }
+
+                try (val inputChannel = Channels.newChannel(value.get())) {
+
+                    val bufferSize = properties.getBufferSize();
+                    val buffer = ByteBuffer.allocate(bufferSize);
+
+                    while (inputChannel.read(buffer) > 0) {
+
+                        buffer.flip();
+                        written += writeFully(outputChannel, buffer, crc);
+                        buffer.clear();
+                    }
+                }
+            }
+
+            if (properties.isSync()) {
+
+                outputChannel.force(false);
+            }
+
+            return new NioSnapshotFormat.Entry(key, written, (int) crc.getValue(), ExpiringValue.NO_DEADLINE);
+        } catch (IOException e) {
+
+            throw PersistenceException.writing(key, e);
+        } finally {
+
+            fileWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            bytesWritten.increment(written);
+        }
+    }
+
+    /**
+     * Writes the whole buffer, each write call takes a write operation permit
+     */
+    private long writeFully(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+
+        writeBytes.acquire(buffer.remaining());
+        crc.update(buffer.duplicate());
+        long written = 0;
+
+        while (buffer.hasRemaining()) {
+
+            writeOps.acquire(1);
+            written += channel.write(buffer);
+        }
+
+        return written;
+    }
+
     /**
      * {@inheritDoc}
+     * <p>
+     * The most recent snapshot is loaded, falling back to older ones when it can not be read or
+     * a file does not match its checksum. Values of a snapshot are passed to load action only once
+     * the whole snapshot is read and verified, so a corrupt snapshot leaves nothing behind.
+     * Mapped files are checked by length only, so that pages are not read before values are accessed.
+     * Persisted files are kept.
+     * <p>
+     * Files are read by {@link NioPersistenceProperties#getParallelism() parallelism} threads,
+     * load action is called concurrently.
      */
     @Override
     public void load(BiConsumer<String, Supplier<InputStream>> loadAction) throws PersistenceException {
 
-        try (val fileStream = Files.list(properties.getBasePath())) {
+        persisted = null;
+        mappedFiles.set(0);
+
+        List<Path> snapshots;
 
-            fileStream.forEach(path -> loadOne(path, loadAction));
+        try {
+
+            snapshots = snapshots();
         } catch (IOException e) {
 
             throw PersistenceException.readingStorage(e);
         }
+
+        if (snapshots.isEmpty()) {
+
+            // values persisted before snapshots were kept in directories
+            loadStaged(stageFiles(properties.getBasePath()), loadAction);
+            return;
+        }
+
+        PersistenceException failure = null;
+
+        for (val snapshot : snapshots) {
+
+            try {
+
+                loadStaged(stageSnapshot(snapshot), loadAction);
+                return;
+            } catch (PersistenceException e) {
+
+                log.warn("Snapshot '{}' can not be loaded, falling back to an older one.", snapshot, e);
+
+                if (failure == null) {
+
+                    failure = e;
+                }
+            }
+        }
+
+        throw failure;
     }
 
-    private void loadOne(Path path, BiConsumer<String, Supplier<InputStream>> loadAction) {
+    /**
+     * Stops threads writing and reading files once running writes and reads complete
+     */
+    @Override
+    public void close() {
+
+        runner.close();
+    }
+
+    /**
+     * Reads files of the manifest, verifying each against its checksum, or its length when mapped
+     */
+    private Queue<Map.Entry<String, Supplier<InputStream>>> stageSnapshot(Path snapshot) throws PersistenceException {
+
+        val values = snapshot.resolve(NioSnapshotFormat.VALUES);
+
+        if (!Files.isDirectory(values)) {
+
+            // snapshot written before manifests
+            return stageFiles(snapshot);
+        }
+
+        Resolved resolved;
+
+        try {
+
+            resolved = resolve(snapshot);
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+
+        val staged = new ConcurrentLinkedQueue<Map.Entry<String, Supplier<InputStream>>>();
+
+        runner.forEach(resolved.getFiles().entrySet().stream(),
+                entry -> staged.add(loadOne(entry.getValue().getValues().resolve(entry.getKey()),
+                        entry.getValue().getEntry(), resolved.isCompressed())),
+                PersistenceException::readingStorage);
+
+        return staged;
+    }
+
+    /**
+     * Reads manifests of a snapshot and of the snapshots below it down to a complete one,
+     * applying each delta on top of its base
+     *
+     * @throws IOException when a manifest of the chain is missing or corrupted
+     */
+    private Resolved resolve(Path snapshot) throws IOException {
+
+        val chain = new ArrayDeque<Map.Entry<Path, NioSnapshotFormat.Manifest>>();
+        var current = snapshot;
+
+        while (true) {
+
+            val manifest = NioSnapshotFormat.readManifest(current, compressedFormat);
+            chain.push(new AbstractMap.SimpleImmutableEntry<>(current, manifest));
+
+            if (manifest.getBase() == NioSnapshotFormat.NO_BASE) {
+
+                break;
+            }
+
+            // bases precede their deltas, which also rules out cycles
+            if (manifest.getBase() >= sequenceOf(current)) {
+
+                throw NioSnapshotFormat.corrupted(current.getFileName().toString(), "base snapshot is invalid");
+            }
+
+            current = properties.getBasePath().resolve(SNAPSHOT_PREFIX + manifest.getBase());
+
+            if (!Files.isDirectory(current)) {
+
+                throw NioSnapshotFormat.corrupted(snapshot.getFileName().toString(),
+                        String.format("base snapshot '%s' is missing", current.getFileName()));
+            }
+        }
+
+        val compressed = chain.peek().getValue().isCompressed();
+        val files = new HashMap<String, Located>();
+
+        for (val link : chain) {
+
+            val values = link.getKey().resolve(NioSnapshotFormat.VALUES);
+            link.getValue().getEntries().forEach(entry -> files.put(entry.getKey(), new Located(values, entry)));
+            link.getValue().getDeleted().forEach(files::remove);
+        }
+
+        return new Resolved(compressed, files);
+    }
+
+    /**
+     * Reads every file of the directory without verification, in the format of current settings
+     */
+    private Queue<Map.Entry<String, Supplier<InputStream>>> stageFiles(Path directory) throws PersistenceException {
+
+        val staged = new ConcurrentLinkedQueue<Map.Entry<String, Supplier<InputStream>>>();
+
+        try (val fileStream = Files.list(directory)) {
+
+            runner.forEach(fileStream.filter(Files::isRegularFile), path -> staged.add(loadOne(path, null, compressedFormat)),
+                    PersistenceException::readingStorage);
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+
+        return staged;
+    }
+
+    private void loadStaged(Queue<Map.Entry<String, Supplier<InputStream>>> staged,
+                            BiConsumer<String, Supplier<InputStream>> loadAction) throws PersistenceException {
+
+        runner.forEach(staged.stream(), entry -> loadAction.accept(entry.getKey(), entry.getValue()),
+                PersistenceException::readingStorage);
+    }
+
+    /**
+     * @param expected   manifest entry the file is verified against, {@code null} to skip verification
+     * @param compressed whether file carries codec header
+     */
+    private Map.Entry<String, Supplier<InputStream>> loadOne(Path path, NioSnapshotFormat.Entry expected, boolean compressed)
+            throws PersistenceException {
 
         val key = path.getFileName().toString();
 
         try {
 
-            val bytes = Files.readAllBytes(path);
-            Supplier<InputStream> value = () -> new ByteArrayInputStream(bytes);
+            val start = System.nanoTime();
+            val content = properties.getLoadMode() == LoadMode.MAP ? mappedOrCopied(path) : copied(path);
+            fileReads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            bytesRead.increment(content.remaining());
+
+            if (expected != null && content instanceof MappedByteBuffer) {
+
+                // checksum of a mapped file would fault in all of its pages, load time would scale with data size
+                NioSnapshotFormat.verifyLength(expected, content);
+            } else if (expected != null) {
+
+                NioSnapshotFormat.verify(expected, content);
+            }
+
+            val value = compressed ? decode(key, content) : new ByteBufferSupplier(content);
+
+            return new AbstractMap.SimpleImmutableEntry<>(key,
+                    expected != null ? ExpiringValue.of(value, expected.getDeadline()) : value);
+        } catch (IOException e) {
+
+            throw PersistenceException.reading(key, e);
+        }
+    }
+
+    /**
+     * @return published snapshot directories, the most recent first
+     */
+    private List<Path> snapshots() throws IOException {
+
+        try (val fileStream = Files.list(properties.getBasePath())) {
+
+            return fileStream
+                    .filter(path -> sequenceOf(path) > 0 && Files.isDirectory(path))
+                    .sorted(Comparator.comparingLong(NioPersistenceStrategy::sequenceOf).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return sequence number of published snapshot directory, -1 for other paths
+     */
+    private static long sequenceOf(Path path) {
+
+        val name = path.getFileName().toString();
+
+        if (!name.startsWith(SNAPSHOT_PREFIX)) {
+
+            return -1;
+        }
+
+        try {
+
+            return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+
+            return -1;
+        }
+    }
+
+    private static boolean isTemporary(Path path) {
+
+        val name = path.getFileName().toString();
+        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(TEMP_SUFFIX);
+    }
+
+    private static void forceDirectory(Path directory) {
 
-            loadAction.accept(key, value);
+        try (val channel = FileChannel.open(directory, StandardOpenOption.READ)) {
 
-            Files.delete(path);
+            channel.force(true);
         } catch (IOException e) {
 
+            // not every platform allows opening directories, file contents are flushed anyway
+            log.trace("Failed to flush directory '{}'.", directory, e);
+        }
+    }
+
+    /**
+     * Deletes file or directory with its files, failures are only logged
+     */
+    private static void deleteQuietly(Path path) {
+
+        try {
+
+            FileSystemUtils.deleteRecursively(path);
+        } catch (IOException e) {
+
+            log.warn("Failed to delete '{}'.", path, e);
+        }
+    }
+
+    private static Timer fileTimer(MeterRegistry registry, String operation) {
+
+        return Timer.builder("storage.persistence.file")
+                .description("Latency of writing or reading a single value file")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Counter bytesCounter(MeterRegistry registry, String operation) {
+
+        return Counter.builder("storage.persistence.bytes")
+                .description("Bytes of value files written or read")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    /**
+     * Reads value of compressed format, values stay compressed in memory
+     */
+    private static Supplier<InputStream> decode(String key, ByteBuffer content) throws PersistenceException {
+
+        try {
+
+            val codecId = content.get();
+
+            if (codecId == CompressionCodec.NONE) {
+
+                return new ByteBufferSupplier(content.slice());
+            }
+
+            val codec = CompressionCodec.byId(codecId);
+            val length = content.getLong();
+
+            return new CompressedValue(codec, content.slice(), length);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+
             throw PersistenceException.reading(key, e);
         }
     }
+
+    private static ByteBuffer copied(Path path) throws IOException {
+
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    /**
+     * Maps the whole file, mapping stays valid after the file is closed and its snapshot is removed.
+     * Small files and files beyond {@link NioPersistenceProperties#getMaxMappedFiles() max mapped files}
+     * are copied instead, since every mapping counts towards the limit of mappings per process.
+     */
+    private ByteBuffer mappedOrCopied(Path path) throws IOException {
+
+        try (val channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            val size = channel.size();
+
+            if (size >= properties.getMinMappedSize().toBytes() && mappedFiles.incrementAndGet() <= properties.getMaxMappedFiles()) {
+
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            val content = ByteBuffer.allocate(Math.toIntExact(size));
+
+            while (content.hasRemaining()) {
+
+                if (channel.read(content) < 0) {
+
+                    break;
+                }
+            }
+
+            return content.flip();
+        }
+    }
+
+    @Value
+    private static class Persisted {
+
+        Path snapshot;
+
+        /**
+         * Whether files of the snapshot carry codec header
+         */
+        boolean compressed;
+
+        /**
+         * Number of deltas chained below the snapshot, including itself
+         */
+        int deltas;
+    }
+
+    /**
+     * Manifest entry along with directory holding its file
+     */
+    @Value
+    private static class Located {
+
+        Path values;
+        NioSnapshotFormat.Entry entry;
+    }
+
+    /**
+     * Files of a snapshot chain, by key
+     */
+    @Value
+    private static class Resolved {
+
+        boolean compressed;
+        Map<String, Located> files;
+    }
 }
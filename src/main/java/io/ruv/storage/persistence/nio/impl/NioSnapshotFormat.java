@@ -0,0 +1,313 @@
+package io.ruv.storage.persistence.nio.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import lombok.Value;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Layout of nio snapshot directories.
+ * <pre>
+ * snapshot-&lt;n&gt;/values/&lt;key&gt;   file per key
+ * snapshot-&lt;n&gt;/manifest        {@code [magic][flags:byte][base:long]?[entry count:int]([key length:int][key][file length:long][crc32c:int][deadline:long])*}
+ *                             {@code ([deleted count:int]([key length:int][key])*)?[manifest crc32c:int]}
+ * </pre>
+ * Flags record the format files were written in, so that a snapshot is read by what was written
+ * rather than by current settings. Manifests of the first version carry no flags, entries carry deadlines
+ * only with {@link #DEADLINES} flag. Deadlines are kept in the manifest rather than in files, since a file
+ * may be linked by keys of different deadlines.
+ * <p>
+ * A delta, flagged with {@link #DELTA}, holds files of changed keys only. Its manifest records sequence
+ * of the snapshot it applies on top of and keys deleted since, so that a delta is read through
+ * the chain of snapshots down to a complete one.
+ * File length and checksum cover the file as written, including codec header of compressed format.
+ * Manifest is written last, a snapshot directory is renamed into place only after it.
+ */
+final class NioSnapshotFormat {
+
+    static final byte[] MAGIC = "KVSNIOM2".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] MAGIC_V1 = "KVSNIOM1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Files start with codec header
+     */
+    static final byte COMPRESSED = 1;
+
+    /**
+     * Entries end with deadline of the key, {@link ExpiringValue#NO_DEADLINE} for keys without time to live
+     */
+    static final byte DEADLINES = 2;
+
+    /**
+     * Manifest records base snapshot and deleted keys, files of unchanged keys are in the base
+     */
+    static final byte DELTA = 4;
+
+    /**
+     * Base of complete snapshots
+     */
+    static final long NO_BASE = 0;
+
+    static final String VALUES = "values";
+    static final String MANIFEST = "manifest";
+
+    private NioSnapshotFormat() {
+    }
+
+    @Value
+    static class Manifest {
+
+        /**
+         * Whether files of the snapshot carry codec header
+         */
+        boolean compressed;
+
+        /**
+         * Sequence of the snapshot a delta applies on top of, {@link #NO_BASE} for complete snapshots
+         */
+        long base;
+        List<Entry> entries;
+
+        /**
+         * Keys a delta deletes from its base
+         */
+        List<String> deleted;
+    }
+
+    @Value
+    static class Entry {
+
+        String key;
+        long length;
+        int crc;
+
+        /**
+         * Deadline of the key in epoch milliseconds, {@link ExpiringValue#NO_DEADLINE} for none
+         */
+        long deadline;
+
+        Entry withKey(String key) {
+
+            return new Entry(key, length, crc, deadline);
+        }
+
+        Entry withDeadline(long deadline) {
+
+            return new Entry(key, length, crc, deadline);
+        }
+    }
+
+    /**
+     * @param base    sequence of the snapshot a delta applies on top of, {@link #NO_BASE} for complete snapshots
+     * @param deleted keys a delta deletes from its base, empty for complete snapshots
+     */
+    static ByteBuffer encodeManifest(boolean compressed, long base, Collection<Entry> entries, Collection<String> deleted) {
+
+        val delta = base != NO_BASE;
+        val keys = new ArrayList<byte[]>(entries.size());
+        val deletedKeys = new ArrayList<byte[]>(deleted.size());
+        var size = MAGIC.length + Byte.BYTES + Integer.BYTES + Integer.BYTES + (delta ? Long.BYTES + Integer.BYTES : 0);
+
+        for (val entry : entries) {
+
+            val key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            size += Integer.BYTES + key.length + Long.BYTES + Integer.BYTES + Long.BYTES;
+        }
+
+        for (val deletedKey : deleted) {
+
+            val key = deletedKey.getBytes(StandardCharsets.UTF_8);
+            deletedKeys.add(key);
+            size += Integer.BYTES + key.length;
+        }
+
+        val manifest = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .put((byte) (DEADLINES | (compressed ? COMPRESSED : 0) | (delta ? DELTA : 0)));
+
+        if (delta) {
+
+            manifest.putLong(base);
+        }
+
+        manifest.putInt(entries.size());
+        var i = 0;
+
+        for (val entry : entries) {
+
+            val key = keys.get(i++);
+            manifest.putInt(key.length).put(key).putLong(entry.getLength()).putInt(entry.getCrc()).putLong(entry.getDeadline());
+        }
+
+        if (delta) {
+
+            manifest.putInt(deletedKeys.size());
+
+            for (val key : deletedKeys) {
+
+                manifest.putInt(key.length).put(key);
+            }
+        }
+
+        val crc = new CRC32C();
+        crc.update(manifest.array(), 0, manifest.position());
+
+        return manifest.putInt((int) crc.getValue()).flip();
+    }
+
+    /**
+     * Reads and verifies manifest of a snapshot
+     *
+     * @param compressedV1 format assumed for manifests of the first version, which do not record it
+     * @throws IOException when manifest is missing, truncated or corrupted
+     */
+    static Manifest readManifest(Path snapshot, boolean compressedV1) throws IOException {
+
+        val name = snapshot.getFileName().toString();
+        val manifest = ByteBuffer.wrap(Files.readAllBytes(snapshot.resolve(MANIFEST)));
+        val size = manifest.remaining();
+
+        if (size < MAGIC.length + Integer.BYTES + Integer.BYTES) {
+
+            throw corrupted(name, "manifest is truncated");
+        }
+
+        val magic = new byte[MAGIC.length];
+        manifest.get(magic);
+
+        val v1 = Arrays.equals(magic, MAGIC_V1);
+
+        if (!v1 && !Arrays.equals(magic, MAGIC)) {
+
+            throw corrupted(name, "manifest magic is invalid");
+        }
+
+        val crc = new CRC32C();
+        crc.update(manifest.array(), 0, size - Integer.BYTES);
+
+        if ((int) crc.getValue() != manifest.getInt(size - Integer.BYTES)) {
+
+            throw corrupted(name, "manifest checksum mismatch");
+        }
+
+        try {
+
+            val flags = v1 ? (compressedV1 ? COMPRESSED : 0) : manifest.get();
+            val base = (flags & DELTA) != 0 ? manifest.getLong() : NO_BASE;
+            val entries = new ArrayList<Entry>();
+            val deleted = new ArrayList<String>();
+
+            for (var i = manifest.getInt(); i > 0; i--) {
+
+                entries.add(new Entry(readKey(manifest), manifest.getLong(), manifest.getInt(),
+                        (flags & DEADLINES) != 0 ? manifest.getLong() : ExpiringValue.NO_DEADLINE));
+            }
+
+            for (var i = (flags & DELTA) != 0 ? manifest.getInt() : 0; i > 0; i--) {
+
+                deleted.add(readKey(manifest));
+            }
+
+            return new Manifest((flags & COMPRESSED) != 0, base, entries, deleted);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+
+            throw corrupted(name, "manifest entries are invalid");
+        }
+    }
+
+    /**
+     * Reads base of a snapshot from its manifest header, without verifying the manifest
+     *
+     * @return sequence of the snapshot a delta applies on top of, {@link #NO_BASE} for complete snapshots
+     * and snapshots without a readable manifest
+     */
+    static long readBase(Path snapshot) throws IOException {
+
+        val path = snapshot.resolve(MANIFEST);
+
+        if (!Files.isRegularFile(path)) {
+
+            return NO_BASE;
+        }
+
+        try (val channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            val header = ByteBuffer.allocate(MAGIC.length + Byte.BYTES + Long.BYTES);
+
+            while (header.hasRemaining()) {
+
+                if (channel.read(header) < 0) {
+
+                    break;
+                }
+            }
+
+            val magic = Arrays.copyOf(header.array(), MAGIC.length);
+
+            if (header.hasRemaining() || !Arrays.equals(magic, MAGIC) || (header.get(MAGIC.length) & DELTA) == 0) {
+
+                return NO_BASE;
+            }
+
+            return header.getLong(MAGIC.length + Byte.BYTES);
+        }
+    }
+
+    private static String readKey(ByteBuffer manifest) {
+
+        val key = new byte[manifest.getInt()];
+        manifest.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks file content against its manifest entry
+     *
+     * @throws IOException when length or checksum differ
+     */
+    static void verify(Entry entry, ByteBuffer content) throws IOException {
+
+        verifyLength(entry, content);
+
+        val crc = new CRC32C();
+        crc.update(content.duplicate());
+
+        if ((int) crc.getValue() != entry.getCrc()) {
+
+            throw corrupted(entry.getKey(), "checksum mismatch");
+        }
+    }
+
+    /**
+     * Checks file length against its manifest entry, without reading the content
+     *
+     * @throws IOException when length differs
+     */
+    static void verifyLength(Entry entry, ByteBuffer content) throws IOException {
+
+        if (content.remaining() != entry.getLength()) {
+
+            throw corrupted(entry.getKey(), String.format("length %d differs from %d in manifest",
+                    content.remaining(), entry.getLength()));
+        }
+    }
+
+    static IOException corrupted(String name, String reason) {
+
+        return new IOException(String.format("Snapshot file '%s' is corrupted: %s.", name, reason));
+    }
+}
@@ -0,0 +1,251 @@
+package io.ruv.storage.persistence.packed.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import io.ruv.storage.persistence.PersistenceException;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Writer of a single packed snapshot file
+ *
+ * @see PackedFormat
+ */
+class PackedFileWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long blockSize;
+
+    private final List<PackedFormat.Block> blocks = new ArrayList<>();
+    private final List<PackedFormat.IndexEntry> index = new ArrayList<>();
+
+    /**
+     * File offset of the first byte in buffer
+     */
+    private long bufferStart;
+
+    private long blockStart;
+    private CRC32C blockCrc = new CRC32C();
+
+    PackedFileWriter(Path path, int bufferSize, long blockSize) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, PackedFormat.TRAILER_SIZE));
+        this.blockSize = blockSize;
+
+        buffer.put(PackedFormat.MAGIC);
+        blockStart = PackedFormat.MAGIC.length;
+    }
+
+    /**
+     * Appends a record, streaming its value
+     *
+     * @throws PersistenceException when value can not be read or written
+     */
+    void write(String key, Supplier<InputStream> value) throws PersistenceException {
+
+        try {
+
+            if (position() - blockStart >= blockSize) {
+
+                finishBlock();
+            }
+
+            val keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            val deadline = ExpiringValue.deadlineOf(value);
+
+            putInt(keyBytes.length);
+            put(keyBytes, 0, keyBytes.length);
+            putLong(deadline);
+            blockCrc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, keyBytes.length));
+            blockCrc.update(keyBytes);
+            blockCrc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, deadline));
+
+            // value length is known only after streaming it, reserve its place and fill it in afterwards
+            val lengthPosition = position();
+            putLong(0);
+
+            val valuePosition = position();
+            var length = 0L;
+
+            try (val stream = value.get()) {
+
+                val chunk = new byte[Math.min(buffer.capacity(), 8192)];
+                int read;
+
+                while ((read = stream.read(chunk)) > 0) {
+
+                    put(chunk, 0, read);
+                    blockCrc.update(chunk, 0, read);
+                    length += read;
+                }
+            }
+
+            patchLong(lengthPosition, length);
+            blockCrc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, length));
+
+            index.add(new PackedFormat.IndexEntry(key, valuePosition, length, deadline));
+        } catch (IOException e) {
+
+            throw PersistenceException.writing(key, e);
+        }
+    }
+
+    /**
+     * Appends a record of a deleted key
+     *
+     * @throws PersistenceException when record can not be written
+     */
+    void writeTombstone(String key) throws PersistenceException {
+
+        try {
+
+            if (position() - blockStart >= blockSize) {
+
+                finishBlock();
+            }
+
+            val keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+            putInt(keyBytes.length);
+            put(keyBytes, 0, keyBytes.length);
+            putLong(ExpiringValue.NO_DEADLINE);
+            putLong(PackedFormat.TOMBSTONE);
+
+            blockCrc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, keyBytes.length));
+            blockCrc.update(keyBytes);
+            blockCrc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, ExpiringValue.NO_DEADLINE));
+            blockCrc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, PackedFormat.TOMBSTONE));
+
+            index.add(new PackedFormat.IndexEntry(key, position(), PackedFormat.TOMBSTONE, ExpiringValue.NO_DEADLINE));
+        } catch (IOException e) {
+
+            throw PersistenceException.writing(key, e);
+        }
+    }
+
+    /**
+     * Finishes the last block, writes footer and flushes file to device
+     *
+     * @param generation generation of the snapshot file this file belongs to
+     */
+    void finish(long generation) throws IOException {
+
+        finishBlock();
+
+        val footerOffset = position();
+        val footer = PackedFormat.encodeFooter(generation, blocks, index);
+
+        val crc = new CRC32C();
+        crc.update(footer.duplicate());
+
+        flush();
+        writeFully(footer.duplicate(), footerOffset);
+
+        val trailer = ByteBuffer.allocate(PackedFormat.TRAILER_SIZE)
+                .putLong(footerOffset)
+                .putInt((int) crc.getValue())
+                .put(PackedFormat.MAGIC)
+                .flip();
+
+        writeFully(trailer, footerOffset + footer.limit());
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    private void finishBlock() {
+
+        val length = position() - blockStart;
+
+        if (length > 0) {
+
+            blocks.add(new PackedFormat.Block(blockStart, length, (int) blockCrc.getValue()));
+        }
+
+        blockStart = position();
+        blockCrc = new CRC32C();
+    }
+
+    private long position() {
+
+        return bufferStart + buffer.position();
+    }
+
+    private void putInt(int value) throws IOException {
+
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    private void putLong(long value) throws IOException {
+
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+
+        while (length > 0) {
+
+            ensure(1);
+
+            val count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void patchLong(long position, long value) throws IOException {
+
+        if (position >= bufferStart) {
+
+            buffer.putLong((int) (position - bufferStart), value);
+        } else {
+
+            writeFully(ByteBuffer.allocate(Long.BYTES).putLong(0, value), position);
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+
+        if (buffer.remaining() < bytes) {
+
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+
+        val length = buffer.position();
+        buffer.flip();
+        writeFully(buffer, bufferStart);
+        buffer.clear();
+        bufferStart += length;
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+
+        while (source.hasRemaining()) {
+
+            position += channel.write(source, position);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.ruv.storage.persistence.packed.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import lombok.Value;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Layout of packed snapshot files.
+ * <pre>
+ * [magic]
+ * [block]*      records {@code [key length:int][key][deadline:long][value length:long][value]}
+ * [footer]      {@code [generation:long][block count:int]([offset:long][length:long][crc32c:int])*}
+ *               {@code [entry count:int]([key length:int][key][value offset:long][value length:long][deadline:long])*}
+ * [trailer]     {@code [footer offset:long][footer crc32c:int][magic]}
+ * </pre>
+ * Value length is written after the value is streamed, so each record contributes key length, key, deadline,
+ * value and only then value length to the checksum of its block. Deadline is
+ * {@link ExpiringValue#NO_DEADLINE} for keys without time to live. Files of the first version,
+ * marked by {@link #MAGIC_V1}, have no deadlines in records and index.
+ * <p>
+ * Delta files share the layout, a deleted key is recorded with {@link #TOMBSTONE} value length and no value.
+ * Generation ties delta files to the snapshot file they were written on top of.
+ */
+final class PackedFormat {
+
+    static final byte[] MAGIC = "KVSPACK2".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] MAGIC_V1 = "KVSPACK1".getBytes(StandardCharsets.US_ASCII);
+
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + MAGIC.length;
+
+    static final long TOMBSTONE = -1;
+
+    private PackedFormat() {
+    }
+
+    @Value
+    static class Block {
+
+        long offset;
+        long length;
+        int crc;
+    }
+
+    @Value
+    static class IndexEntry {
+
+        String key;
+        long valueOffset;
+        long valueLength;
+
+        /**
+         * Deadline of the key in epoch milliseconds, {@link ExpiringValue#NO_DEADLINE} for none
+         */
+        long deadline;
+    }
+
+    @Value
+    static class Footer {
+
+        long generation;
+        List<Block> blocks;
+        List<IndexEntry> index;
+
+        /**
+         * Whether records carry deadlines, {@code false} for files of the first version
+         */
+        boolean deadlines;
+    }
+
+    static ByteBuffer encodeFooter(long generation, List<Block> blocks, List<IndexEntry> index) {
+
+        val keys = new ArrayList<byte[]>(index.size());
+        var size = Long.BYTES + Integer.BYTES + blocks.size() * (Long.BYTES + Long.BYTES + Integer.BYTES) + Integer.BYTES;
+
+        for (val entry : index) {
+
+            val key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            size += Integer.BYTES + key.length + Long.BYTES + Long.BYTES + Long.BYTES;
+        }
+
+        val footer = ByteBuffer.allocate(size).putLong(generation).putInt(blocks.size());
+
+        for (val block : blocks) {
+
+            footer.putLong(block.getOffset()).putLong(block.getLength()).putInt(block.getCrc());
+        }
+
+        footer.putInt(index.size());
+
+        for (var i = 0; i < index.size(); i++) {
+
+            val key = keys.get(i);
+            footer.putInt(key.length).put(key)
+                    .putLong(index.get(i).getValueOffset())
+                    .putLong(index.get(i).getValueLength())
+                    .putLong(index.get(i).getDeadline());
+        }
+
+        return footer.flip();
+    }
+
+    /**
+     * Reads and verifies footer of a packed file
+     *
+     * @throws IOException when file is truncated or corrupted
+     */
+    static Footer readFooter(FileChannel channel, String name) throws IOException {
+
+        val size = channel.size();
+
+        if (size < MAGIC.length + TRAILER_SIZE) {
+
+            throw corrupted(name, "file is truncated");
+        }
+
+        val trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        val footerOffset = trailer.getLong();
+        val footerCrc = trailer.getInt();
+        val magic = new byte[MAGIC.length];
+        trailer.get(magic);
+
+        val deadlines = Arrays.equals(magic, MAGIC);
+
+        if ((!deadlines && !Arrays.equals(magic, MAGIC_V1)) || footerOffset < MAGIC.length || footerOffset > size - TRAILER_SIZE) {
+
+            throw corrupted(name, "trailer is invalid");
+        }
+
+        val footer = readFully(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+        val crc = new CRC32C();
+        crc.update(footer.duplicate());
+
+        if ((int) crc.getValue() != footerCrc) {
+
+            throw corrupted(name, "footer checksum mismatch");
+        }
+
+        val generation = footer.getLong();
+        val blocks = new ArrayList<Block>();
+
+        for (var i = footer.getInt(); i > 0; i--) {
+
+            blocks.add(new Block(footer.getLong(), footer.getLong(), footer.getInt()));
+        }
+
+        val index = new ArrayList<IndexEntry>();
+
+        for (var i = footer.getInt(); i > 0; i--) {
+
+            val key = new byte[footer.getInt()];
+            footer.get(key);
+            index.add(new IndexEntry(new String(key, StandardCharsets.UTF_8), footer.getLong(), footer.getLong(),
+                    deadlines ? footer.getLong() : ExpiringValue.NO_DEADLINE));
+        }
+
+        return new Footer(generation, blocks, index, deadlines);
+    }
+
+    static IOException corrupted(String name, String reason) {
+
+        return new IOException(String.format("Packed file '%s' is corrupted: %s.", name, reason));
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+
+        val buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,444 @@
+package io.ruv.storage.persistence.packed.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.LoadMode;
+import io.ruv.storage.util.properties.PackedPersistenceProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Implementation of {@link PersistenceStrategy} packing the whole storage into a single snapshot file
+ * of length-prefixed records, with a footer index and per-block checksums.
+ * <p>
+ * Snapshot is written next to the previous one and atomically renamed over it once complete.
+ * Deltas are written as separate files of the same format on top of the snapshot and folded into
+ * a new snapshot once there are more than {@link PackedPersistenceProperties#getMaxDeltas() max deltas} of them.
+ * Deadlines of {@link ExpiringValue expiring} values are recorded with their records.
+ *
+ * @see PackedFormat
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PackedPersistenceStrategy implements PersistenceStrategy {
+
+    static final String SNAPSHOT = "snapshot.pack";
+    static final String DELTA_FORMAT = "delta-%020d.pack";
+
+    private static final Pattern DELTA_PATTERN = Pattern.compile("delta-\\d{20}\\.pack");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    private final PackedPersistenceProperties properties;
+
+    /**
+     * Generation of the current snapshot file, {@code null} until it is persisted or loaded
+     */
+    private Long generation;
+
+    /**
+     * Number of delta files written on top of the current snapshot file
+     */
+    private int deltas;
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Snapshot gets a new generation, so delta files of the previous one never apply to it.
+     */
+    @Override
+    public synchronized void persist(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> stream) throws PersistenceException {
+
+        var newGeneration = ThreadLocalRandom.current().nextLong();
+
+        while (generation != null && newGeneration == generation) {
+
+            newGeneration = ThreadLocalRandom.current().nextLong();
+        }
+
+        writeFile(SNAPSHOT, newGeneration, writer -> stream.forEach(entry -> writer.write(entry.getKey(), entry.getValue())));
+
+        generation = newGeneration;
+        deltas = 0;
+
+        try {
+
+            for (val delta : listDeltas()) {
+
+                Files.delete(delta);
+            }
+        } catch (IOException e) {
+
+            // stale delta files are of another generation and are skipped on load
+            log.warn("Failed to clean up delta files in '{}'.", properties.getBasePath(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean canPersistDelta() {
+
+        return generation != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Changes are written to a new delta file, delta files are compacted into a new snapshot
+     * once there are too many of them.
+     */
+    @Override
+    public synchronized void persistDelta(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> changes) throws PersistenceException {
+
+        if (generation == null) {
+
+            throw new UnsupportedOperationException("Delta requires a persisted or loaded snapshot.");
+        }
+
+        writeFile(String.format(DELTA_FORMAT, deltas + 1), generation, writer -> changes.forEach(entry -> {
+
+            if (entry.getValue() == null) {
+
+                writer.writeTombstone(entry.getKey());
+            } else {
+
+                writer.write(entry.getKey(), entry.getValue());
+            }
+        }));
+
+        deltas++;
+
+        if (deltas > properties.getMaxDeltas()) {
+
+            try {
+
+                compact();
+            } catch (PersistenceException e) {
+
+                // delta is durable already, compaction is retried after the next one
+                log.warn("Failed to compact delta files in '{}'.", properties.getBasePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Folds delta files into a new snapshot file, values are streamed from mapped regions of current files
+     */
+    private void compact() throws PersistenceException {
+
+        val merged = new LinkedHashMap<String, Supplier<InputStream>>();
+
+        try {
+
+            readAll(LoadMode.MAP, merged);
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+
+        persist(merged.entrySet().stream());
+        log.debug("Compacted delta files into a snapshot of {} keys.", merged.size());
+    }
+
+    private void writeFile(String name, long fileGeneration, PackedWriteAction action) throws PersistenceException {
+
+        val target = properties.getBasePath().resolve(name);
+        val temp = properties.getBasePath().resolve(name + TEMP_SUFFIX);
+
+        try {
+
+            try (val writer = new PackedFileWriter(temp, properties.getBufferSize(), properties.getBlockSize().toBytes())) {
+
+                action.write(writer);
+                writer.finish(fileGeneration);
+            }
+
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(properties.getBasePath());
+        } catch (IOException e) {
+
+            throw PersistenceException.writingStorage(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Records of a block are handed over only after the block checksum is verified.
+     * Records of delta files are applied on top of the snapshot before handing over.
+     */
+    @Override
+    public synchronized void load(BiConsumer<String, Supplier<InputStream>> loadAction) throws PersistenceException {
+
+        try {
+
+            if (!Files.isDirectory(properties.getBasePath())) {
+
+                throw new IOException(String.format("Directory '%s' does not exist.", properties.getBasePath()));
+            }
+
+            val merged = new LinkedHashMap<String, Supplier<InputStream>>();
+            readAll(properties.getLoadMode(), merged);
+            merged.forEach(loadAction);
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+    }
+
+    /**
+     * Reads snapshot file and delta files of its generation, remembers the generation for following deltas
+     */
+    private void readAll(LoadMode mode, Map<String, Supplier<InputStream>> merged) throws IOException {
+
+        val snapshot = properties.getBasePath().resolve(SNAPSHOT);
+
+        if (!Files.exists(snapshot)) {
+
+            generation = null;
+            deltas = 0;
+            return;
+        }
+
+        BiConsumer<String, Supplier<InputStream>> apply = (key, value) -> {
+
+            if (value == null) {
+
+                merged.remove(key);
+            } else {
+
+                merged.put(key, value);
+            }
+        };
+
+        val snapshotGeneration = readFile(snapshot, mode, null, apply);
+        var applied = 0;
+
+        for (val delta : listDeltas()) {
+
+            val deltaGeneration = readFile(delta, mode, snapshotGeneration, apply);
+
+            if (deltaGeneration != null) {
+
+                applied++;
+            } else {
+
+                log.debug("Skipped stale delta file '{}'.", delta);
+            }
+        }
+
+        generation = snapshotGeneration;
+        deltas = applied;
+    }
+
+    /**
+     * @param expectedGeneration generation file has to belong to, {@code null} to accept any
+     * @param action             callback for each record, deleted keys get {@code null} value
+     * @return generation of the file, {@code null} if file was skipped as belonging to another generation
+     */
+    private Long readFile(Path path, LoadMode mode, Long expectedGeneration,
+                          BiConsumer<String, Supplier<InputStream>> action) throws IOException {
+
+        try (val channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            val footer = PackedFormat.readFooter(channel, path.toString());
+
+            if (expectedGeneration != null && footer.getGeneration() != expectedGeneration) {
+
+                return null;
+            }
+
+            if (mode == LoadMode.MAP) {
+
+                readMapped(channel, footer, path.toString(), action);
+            } else {
+
+                readCopied(channel, footer, path.toString(), action);
+            }
+
+            return footer.getGeneration();
+        }
+    }
+
+    private void readCopied(FileChannel channel, PackedFormat.Footer footer, String name,
+                            BiConsumer<String, Supplier<InputStream>> action) throws IOException {
+
+        channel.position(PackedFormat.MAGIC.length);
+        val in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), properties.getBufferSize()));
+        var position = (long) PackedFormat.MAGIC.length;
+
+        for (val block : footer.getBlocks()) {
+
+            if (block.getOffset() != position) {
+
+                throw PackedFormat.corrupted(name, "blocks are not contiguous");
+            }
+
+            readBlock(in, block, name, footer.isDeadlines()).forEach(action);
+            position += block.getLength();
+        }
+    }
+
+    /**
+     * Hands over values as slices of read-only mappings, located by the footer index.
+     * File is mapped in windows since a single mapping is limited to {@link Integer#MAX_VALUE} bytes.
+     */
+    private static void readMapped(FileChannel channel, PackedFormat.Footer footer, String name,
+                                   BiConsumer<String, Supplier<InputStream>> action) throws IOException {
+
+        val blocks = footer.getBlocks();
+        val dataEnd = blocks.isEmpty() ? PackedFormat.MAGIC.length : blocks.get(blocks.size() - 1).getOffset() + blocks.get(blocks.size() - 1).getLength();
+
+        MappedByteBuffer window = null;
+        var windowStart = 0L;
+
+        for (val entry : footer.getIndex()) {
+
+            val offset = entry.getValueOffset();
+            val length = entry.getValueLength();
+
+            if (length == PackedFormat.TOMBSTONE) {
+
+                action.accept(entry.getKey(), null);
+                continue;
+            }
+
+            if (offset < PackedFormat.MAGIC.length || length < 0 || length > Integer.MAX_VALUE || offset + length > dataEnd) {
+
+                throw PackedFormat.corrupted(name, String.format("index entry of key '%s' is invalid", entry.getKey()));
+            }
+
+            if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(dataEnd - offset, Math.max(length, MAP_WINDOW_SIZE)));
+            }
+
+            val value = window.slice((int) (offset - windowStart), (int) length);
+            action.accept(entry.getKey(), ExpiringValue.of(new ByteBufferSupplier(value), entry.getDeadline()));
+        }
+    }
+
+    /**
+     * @param deadlines whether records carry deadlines
+     */
+    private static Map<String, Supplier<InputStream>> readBlock(DataInputStream in, PackedFormat.Block block, String name,
+                                                                boolean deadlines) throws IOException {
+
+        val records = new LinkedHashMap<String, Supplier<InputStream>>();
+        val crc = new CRC32C();
+        var consumed = 0L;
+
+        while (consumed < block.getLength()) {
+
+            val keyLength = in.readInt();
+
+            if (keyLength < 0 || keyLength > block.getLength() - consumed) {
+
+                throw PackedFormat.corrupted(name, "record key length is invalid");
+            }
+
+            val key = in.readNBytes(keyLength);
+            val deadline = deadlines ? in.readLong() : ExpiringValue.NO_DEADLINE;
+            val valueLength = in.readLong();
+            val tombstone = valueLength == PackedFormat.TOMBSTONE;
+
+            if (!tombstone && (valueLength < 0 || valueLength > Integer.MAX_VALUE || valueLength > block.getLength() - consumed)) {
+
+                throw PackedFormat.corrupted(name, "record value length is invalid");
+            }
+
+            val value = in.readNBytes(tombstone ? 0 : (int) valueLength);
+
+            if (key.length != keyLength || value.length != Math.max(valueLength, 0)) {
+
+                throw PackedFormat.corrupted(name, "record is truncated");
+            }
+
+            crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, keyLength));
+            crc.update(key);
+
+            if (deadlines) {
+
+                crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, deadline));
+            }
+
+            crc.update(value);
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, valueLength));
+
+            records.put(new String(key, StandardCharsets.UTF_8),
+                    tombstone ? null : ExpiringValue.of(ByteBufferSupplier.of(value), deadline));
+            consumed += Integer.BYTES + keyLength + (deadlines ? Long.BYTES : 0) + Long.BYTES + value.length;
+        }
+
+        if (consumed != block.getLength() || (int) crc.getValue() != block.getCrc()) {
+
+            throw PackedFormat.corrupted(name, String.format("block at offset %d checksum mismatch", block.getOffset()));
+        }
+
+        return records;
+    }
+
+    /**
+     * @return delta files in order they were written
+     */
+    private List<Path> listDeltas() throws IOException {
+
+        try (val files = Files.list(properties.getBasePath())) {
+
+            return files
+                    .filter(path -> DELTA_PATTERN.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    static void forceDirectory(Path directory) {
+
+        try (val channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+
+            channel.force(true);
+        } catch (IOException e) {
+
+            // not every platform allows opening directories, file contents are flushed anyway
+            log.trace("Failed to flush directory '{}'.", directory, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PackedWriteAction {
+
+        void write(PackedFileWriter writer) throws IOException;
+    }
+}
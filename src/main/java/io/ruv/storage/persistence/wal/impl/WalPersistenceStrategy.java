@@ -0,0 +1,666 @@
+package io.ruv.storage.persistence.wal.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.util.io.ByteBufferInputStream;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.WalPersistenceProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Implementation of {@link PersistenceStrategy} appending every mutation to a segmented write-ahead log.
+ * <p>
+ * Each record is {@code [crc32c][body length][type][key length][key][value]}, checksum covering the body.
+ * Stores of values with time to live have the deadline in epoch milliseconds in front of the value,
+ * {@code [deadline:long][value]}, and so do checkpoint records of {@link ExpiringValue expiring} values.
+ * Log position after a record serves as its sequence number, segment files are named by their start position.
+ * Writers waiting for durability share flushes: one of them forces the segment on behalf of all records
+ * appended so far while the others wait, so concurrent mutations are committed in groups.
+ * <p>
+ * {@link #persist} writes a checkpoint with the full state and drops segments preceding it,
+ * {@link #load} replays the newest checkpoint and the log after it. A torn record at the tail of the
+ * last segment is treated as an unfinished write and cut off.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class WalPersistenceStrategy implements PersistenceStrategy, Closeable {
+
+    private static final byte STORE = 1;
+    private static final byte DELETE = 2;
+    private static final byte STORE_EXPIRING = 3;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int BODY_HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT_TEMP = "checkpoint.tmp";
+
+
+    private final WalPersistenceProperties properties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+
+    /**
+     * Current segment open for appending, guarded by lock
+     */
+    private FileChannel segment;
+
+    /**
+     * Log positions of current segment start, last appended record end and last flushed record end, guarded by lock
+     */
+    private long segmentStart;
+    private long written;
+    private long durable;
+
+    /**
+     * Whether some writer is flushing current segment, guarded by lock
+     */
+    private boolean syncing;
+
+    /**
+     * Log position where the upcoming checkpoint starts, -1 if no snapshot began, guarded by lock
+     */
+    private long pendingCheckpoint = -1;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long logStore(String key, ByteBuffer... value) throws PersistenceException {
+
+        return append(STORE, key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long logStore(String key, long deadline, ByteBuffer... value) throws PersistenceException {
+
+        return append(STORE_EXPIRING, key, withDeadline(deadline, value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long logDelete(String key) throws PersistenceException {
+
+        return append(DELETE, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void awaitDurable(long sequence) throws PersistenceException {
+
+        if (sequence == 0 || !properties.isSync()) {
+
+            return;
+        }
+
+        lock.lock();
+
+        try {
+
+            while (durable < sequence) {
+
+                if (syncing) {
+
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+
+                // become the leader of a group commit covering everything appended so far
+                syncing = true;
+                val channel = segment;
+                val target = written;
+                IOException failure = null;
+
+                lock.unlock();
+
+                try {
+
+                    channel.force(false);
+                } catch (IOException e) {
+
+                    failure = e;
+                } finally {
+
+                    lock.lock();
+                }
+
+                syncing = false;
+                synced.signalAll();
+
+                if (failure != null) {
+
+                    throw PersistenceException.syncing(failure);
+                }
+                durable = Math.max(durable, target);
+            }
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Starts a new segment, records appended from now on are replayed on top of the following checkpoint.
+     */
+    @Override
+    public void beginSnapshot() throws PersistenceException {
+
+        lock.lock();
+
+        try {
+
+            openIfNeeded();
+
+            if (written > segmentStart) {
+
+                roll();
+            }
+            pendingCheckpoint = segmentStart;
+        } catch (IOException e) {
+
+            throw PersistenceException.writingStorage(e);
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Writes a checkpoint of provided state and removes log segments preceding it.
+     */
+    @Override
+    public void persist(Stream<? extends Map.Entry<String, ? extends Supplier<InputStream>>> stream) throws PersistenceException {
+
+        long checkpoint;
+
+        lock.lock();
+
+        try {
+
+            if (pendingCheckpoint < 0) {
+
+                beginSnapshot();
+            }
+            checkpoint = pendingCheckpoint;
+            pendingCheckpoint = -1;
+        } finally {
+
+            lock.unlock();
+        }
+
+        val temp = properties.getBasePath().resolve(CHECKPOINT_TEMP);
+
+        try (val channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            stream.forEach(entry -> writeCheckpointRecord(channel, entry.getKey(), entry.getValue()));
+            channel.force(false);
+        } catch (IOException e) {
+
+            throw PersistenceException.writingStorage(e);
+        }
+
+        try {
+
+            Files.move(temp, properties.getBasePath().resolve(name(CHECKPOINT_PREFIX, checkpoint)), StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+
+            for (val path : list(SEGMENT_PREFIX)) {
+
+                if (start(path, SEGMENT_PREFIX) < checkpoint) {
+
+                    Files.delete(path);
+                }
+            }
+
+            for (val path : list(CHECKPOINT_PREFIX)) {
+
+                if (start(path, CHECKPOINT_PREFIX) < checkpoint) {
+
+                    Files.delete(path);
+                }
+            }
+        } catch (IOException e) {
+
+            throw PersistenceException.cleaningStorage(e);
+        }
+        log.debug("Checkpoint at log position {}.", checkpoint);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Replays the newest checkpoint and every log segment after it.
+     */
+    @Override
+    public void load(BiConsumer<String, Supplier<InputStream>> loadAction) throws PersistenceException {
+
+        val state = new LinkedHashMap<String, Supplier<InputStream>>();
+
+        try {
+
+            lock.lock();
+
+            try {
+
+                openIfNeeded();
+            } finally {
+
+                lock.unlock();
+            }
+
+            val checkpoints = list(CHECKPOINT_PREFIX);
+            var checkpoint = 0L;
+
+            if (!checkpoints.isEmpty()) {
+
+                val path = checkpoints.get(checkpoints.size() - 1);
+                checkpoint = start(path, CHECKPOINT_PREFIX);
+                replayStrict(path, state);
+            }
+
+            val segments = list(SEGMENT_PREFIX);
+
+            for (var i = 0; i < segments.size(); i++) {
+
+                val path = segments.get(i);
+
+                if (start(path, SEGMENT_PREFIX) < checkpoint) {
+
+                    continue;
+                }
+
+                if (i == segments.size() - 1) {
+
+                    // tail may be concurrently appended or torn by a crash
+                    replay(path, state);
+                } else {
+
+                    replayStrict(path, state);
+                }
+            }
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+
+        state.forEach(loadAction);
+    }
+
+    /**
+     * Flushes and closes current segment, next mutation reopens it
+     */
+    @Override
+    public void close() throws IOException {
+
+        lock.lock();
+
+        try {
+
+            while (syncing) {
+
+                synced.awaitUninterruptibly();
+            }
+
+            if (segment != null) {
+
+                segment.force(false);
+                segment.close();
+                segment = null;
+            }
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    private long append(byte type, String key, ByteBuffer... value) throws PersistenceException {
+
+        val buffers = record(type, key, value);
+        val size = ByteBufferSupplier.length(buffers);
+
+        lock.lock();
+
+        try {
+
+            openIfNeeded();
+
+            if (written - segmentStart >= properties.getSegmentSize().toBytes()) {
+
+                roll();
+            }
+
+            writeFully(segment, buffers);
+            written += size;
+
+            return written;
+        } catch (IOException e) {
+
+            throw PersistenceException.writing(key, e);
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the last segment for appending after cutting off its torn tail, lock must be held
+     */
+    private void openIfNeeded() throws IOException {
+
+        if (segment != null) {
+
+            return;
+        }
+
+        val segments = list(SEGMENT_PREFIX);
+
+        if (segments.isEmpty()) {
+
+            val checkpoints = list(CHECKPOINT_PREFIX);
+            openSegment(checkpoints.isEmpty() ? 0 : start(checkpoints.get(checkpoints.size() - 1), CHECKPOINT_PREFIX));
+            return;
+        }
+
+        val path = segments.get(segments.size() - 1);
+        val valid = replay(path, null);
+
+        segment = FileChannel.open(path, StandardOpenOption.WRITE);
+
+        if (segment.size() > valid) {
+
+            log.warn("Cutting off torn log tail of '{}' at offset {}.", path, valid);
+            segment.truncate(valid);
+            segment.force(false);
+        }
+        segment.position(valid);
+
+        segmentStart = start(path, SEGMENT_PREFIX);
+        written = segmentStart + valid;
+        durable = written;
+    }
+
+    /**
+     * Flushes and closes current segment and starts a new one, lock must be held
+     */
+    private void roll() throws IOException {
+
+        while (syncing) {
+
+            synced.awaitUninterruptibly();
+        }
+
+        if (properties.isSync()) {
+
+            segment.force(false);
+        }
+        segment.close();
+        durable = written;
+
+        openSegment(written);
+    }
+
+    private void openSegment(long start) throws IOException {
+
+        val path = properties.getBasePath().resolve(name(SEGMENT_PREFIX, start));
+
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        forceDirectory();
+
+        segmentStart = start;
+        written = start;
+        durable = start;
+    }
+
+    private void writeCheckpointRecord(FileChannel channel, String key, Supplier<InputStream> value) {
+
+        try (val stream = value.get()) {
+
+            // values held in buffers are written from them, the stream keeps them valid until closed
+            val content = stream instanceof ByteBufferInputStream
+                    ? ((ByteBufferInputStream) stream).drain()
+                    : new ByteBuffer[]{ByteBuffer.wrap(stream.readAllBytes())};
+            val deadline = ExpiringValue.deadlineOf(value);
+
+            writeFully(channel, deadline != ExpiringValue.NO_DEADLINE
+                    ? record(STORE_EXPIRING, key, withDeadline(deadline, content))
+                    : record(STORE, key, content));
+        } catch (IOException e) {
+
+            throw PersistenceException.writing(key, e);
+        }
+    }
+
+    /**
+     * Builds buffers of a record, value buffers are duplicated rather than copied
+     *
+     * @throws PersistenceException when record exceeds maximum log record size
+     */
+    private static ByteBuffer[] record(byte type, String key, ByteBuffer... value) throws PersistenceException {
+
+        val keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        val buffers = new ByteBuffer[value.length + 2];
+        var valueLength = 0L;
+
+        for (var i = 0; i < value.length; i++) {
+
+            buffers[i + 2] = value[i].duplicate();
+            valueLength += value[i].remaining();
+        }
+
+        if (BODY_HEADER_SIZE + keyBytes.length + valueLength > Integer.MAX_VALUE) {
+
+            throw PersistenceException.writing(key, new IOException("Record exceeds maximum log record size."));
+        }
+
+        val header = ByteBuffer.allocate(HEADER_SIZE + BODY_HEADER_SIZE)
+                .putInt(0)
+                .putInt((int) (BODY_HEADER_SIZE + keyBytes.length + valueLength))
+                .put(type)
+                .putInt(keyBytes.length);
+
+        val crc = new CRC32C();
+        crc.update(header.array(), HEADER_SIZE, BODY_HEADER_SIZE);
+        crc.update(keyBytes);
+
+        for (var i = 0; i < value.length; i++) {
+
+            crc.update(value[i].duplicate());
+        }
+
+        header.putInt(0, (int) crc.getValue()).flip();
+
+        buffers[0] = header;
+        buffers[1] = ByteBuffer.wrap(keyBytes);
+
+        return buffers;
+    }
+
+    private void replayStrict(Path path, Map<String, Supplier<InputStream>> state) throws IOException {
+
+        val valid = replay(path, state);
+
+        if (valid < Files.size(path)) {
+
+            throw new IOException(String.format("Corrupted log record in '%s' at offset %d.", path, valid));
+        }
+    }
+
+    /**
+     * Applies records of provided file to state until the first torn or corrupted one
+     *
+     * @param state state to apply records to, {@code null} to only validate them
+     * @return length of valid file prefix
+     */
+    private long replay(Path path, Map<String, Supplier<InputStream>> state) throws IOException {
+
+        val size = Files.size(path);
+        var position = 0L;
+
+        try (val in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), properties.getBufferSize()))) {
+
+            while (position + HEADER_SIZE <= size) {
+
+                val checksum = in.readInt();
+                val length = in.readInt();
+
+                if (length < BODY_HEADER_SIZE || length > size - position - HEADER_SIZE) {
+
+                    break;
+                }
+
+                val body = in.readNBytes(length);
+
+                val crc = new CRC32C();
+                crc.update(body);
+
+                if (body.length < length || (int) crc.getValue() != checksum) {
+
+                    break;
+                }
+
+                val record = ByteBuffer.wrap(body);
+                val type = record.get();
+                val keyLength = record.getInt();
+                val deadlineLength = type == STORE_EXPIRING ? Long.BYTES : 0;
+
+                if (keyLength < 0 || keyLength > length - BODY_HEADER_SIZE - deadlineLength
+                        || type != STORE && type != DELETE && type != STORE_EXPIRING) {
+
+                    break;
+                }
+
+                val valueOffset = BODY_HEADER_SIZE + keyLength + deadlineLength;
+
+                if (state != null) {
+
+                    val key = new String(body, BODY_HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+
+                    if (type == STORE) {
+
+                        state.put(key, new ByteBufferSupplier(ByteBuffer.wrap(body, valueOffset, length - valueOffset)));
+                    } else if (type == STORE_EXPIRING) {
+
+                        state.put(key, ExpiringValue.of(new ByteBufferSupplier(ByteBuffer.wrap(body, valueOffset, length - valueOffset)),
+                                record.getLong(valueOffset - Long.BYTES)));
+                    } else {
+
+                        state.remove(key);
+                    }
+                }
+
+                position += HEADER_SIZE + length;
+            }
+        } catch (EOFException e) {
+
+            // torn header, valid prefix ends at current position
+        }
+
+        return position;
+    }
+
+    private List<Path> list(String prefix) throws IOException {
+
+        try (val files = Files.list(properties.getBasePath())) {
+
+            return files
+                    .filter(path -> {
+
+                        val name = path.getFileName().toString();
+                        return name.startsWith(prefix) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void forceDirectory() {
+
+        try (val directory = FileChannel.open(properties.getBasePath(), StandardOpenOption.READ)) {
+
+            directory.force(true);
+        } catch (IOException e) {
+
+            // not every platform allows opening directories, file contents are flushed anyway
+            log.trace("Failed to flush directory '{}'.", properties.getBasePath(), e);
+        }
+    }
+
+    private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+
+        var remaining = 0L;
+
+        for (val buffer : buffers) {
+
+            remaining += buffer.remaining();
+        }
+
+        while (remaining > 0) {
+
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * @return buffers of an expiring store record value, deadline in front of the value
+     */
+    private static ByteBuffer[] withDeadline(long deadline, ByteBuffer... value) {
+
+        val buffers = new ByteBuffer[value.length + 1];
+        buffers[0] = ByteBuffer.allocate(Long.BYTES).putLong(0, deadline);
+        System.arraycopy(value, 0, buffers, 1, value.length);
+        return buffers;
+    }
+
+    private static String name(String prefix, long start) {
+
+        return String.format("%s%020d%s", prefix, start, SUFFIX);
+    }
+
+    private static long start(Path path, String prefix) {
+
+        val name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,73 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of {@link StorageService} contract.
+ * <p>
+ * Returned futures complete exceptionally with exceptions of the corresponding {@link StorageService} operations.
+ * Saves and loads run as {@link PersistenceJob persistence jobs}, one at a time, and may be polled by job id.
+ */
+public interface AsyncStorageService {
+
+    /**
+     * @see StorageService#store(String, byte[])
+     */
+    CompletableFuture<Void> store(String key, byte[] value);
+
+    /**
+     * @return future of value to close once written
+     * @see StorageService#retrieveValue(String)
+     */
+    CompletableFuture<StoredValue> retrieveValue(String key);
+
+    /**
+     * @see StorageService#delete(String)
+     */
+    CompletableFuture<Void> delete(String key);
+
+    /**
+     * @see StorageService#storeAll(List)
+     */
+    CompletableFuture<List<BatchStatus>> storeAll(List<? extends Map.Entry<String, byte[]>> entries);
+
+    /**
+     * @see StorageService#retrieveAll(List)
+     */
+    CompletableFuture<List<StoredValue>> retrieveAll(List<String> keys);
+
+    /**
+     * @see StorageService#deleteAll(List)
+     */
+    CompletableFuture<List<BatchStatus>> deleteAll(List<String> keys);
+
+    /**
+     * Starts saving all key-value associations to persistent storage
+     *
+     * @return started job
+     * @throws ServiceUnavailableException when another persistence job is running
+     * @see StorageService#save()
+     */
+    PersistenceJob save() throws ServiceUnavailableException;
+
+    /**
+     * Starts loading all key-value associations from persistent storage
+     *
+     * @return started job
+     * @throws ServiceUnavailableException when another persistence job is running
+     * @see StorageService#load()
+     */
+    PersistenceJob load() throws ServiceUnavailableException;
+
+    /**
+     * Looks up a running or recently finished persistence job
+     *
+     * @param id job id
+     * @throws MissingJobException when no such job is known
+     */
+    PersistenceJob job(String id) throws MissingJobException;
+}
@@ -0,0 +1,22 @@
+package io.ruv.storage.service;
+
+/**
+ * Outcome of a single operation within a batch
+ */
+public enum BatchStatus {
+
+    /**
+     * Operation is applied, or value is found
+     */
+    OK,
+
+    /**
+     * Key is not associated with a value
+     */
+    MISSING_KEY,
+
+    /**
+     * Key is already associated with a value
+     */
+    DUPLICATE_KEY
+}
@@ -0,0 +1,82 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+
+/**
+ * Range of value bytes, from the first position up to the last one inclusive or the last bytes of a value,
+ * resolved against length of the value once it is known. Ranges reaching past the value end with it.
+ */
+@Value
+public class ByteRange {
+
+    /**
+     * First position, -1 for the last {@link #suffixLength} bytes of the value
+     */
+    long first;
+
+    /**
+     * Last position inclusive, {@link Long#MAX_VALUE} for the end of the value
+     */
+    long last;
+
+    long suffixLength;
+
+    /**
+     * @throws IllegalArgumentException when first position is negative or follows the last one
+     */
+    public static ByteRange of(long first, long last) {
+
+        if (first < 0 || last < first) {
+
+            throw new IllegalArgumentException(String.format("Illegal byte range %d-%d.", first, last));
+        }
+
+        return new ByteRange(first, last, 0);
+    }
+
+    /**
+     * @return range from provided position to the end of the value
+     */
+    public static ByteRange from(long first) {
+
+        return of(first, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return range of the last bytes of the value, the whole value when it is shorter
+     * @throws IllegalArgumentException when length is negative
+     */
+    public static ByteRange suffix(long length) {
+
+        if (length < 0) {
+
+            throw new IllegalArgumentException(String.format("Illegal byte range -%d.", length));
+        }
+
+        return new ByteRange(-1, Long.MAX_VALUE, length);
+    }
+
+    /**
+     * @return whether range selects at least one byte of a value of provided length
+     */
+    public boolean isSatisfiable(long valueLength) {
+
+        return first < 0 ? suffixLength > 0 && valueLength > 0 : first < valueLength;
+    }
+
+    /**
+     * @return position of the range within a value of provided length, range must be satisfiable
+     */
+    public long offset(long valueLength) {
+
+        return first < 0 ? Math.max(0, valueLength - suffixLength) : first;
+    }
+
+    /**
+     * @return number of bytes of the range within a value of provided length, range must be satisfiable
+     */
+    public long length(long valueLength) {
+
+        return Math.min(last, valueLength - 1) - offset(valueLength) + 1;
+    }
+}
@@ -0,0 +1,33 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating value stored with time to live into storage that does not expire values
+ */
+@Getter
+public class ExpirationNotSupportedException extends BadRequestException {
+
+    private final String key;
+    private final ErrorCode errorCode = ErrorCode.EXPIRATION_NOT_SUPPORTED;
+
+    public static ExpirationNotSupportedException of(String key) {
+
+        return new ExpirationNotSupportedException(key,
+                String.format("Value associated with key '%s' can not expire, storage does not support time to live.", key));
+    }
+
+    private ExpirationNotSupportedException(String key, String message) {
+
+        super(message);
+        this.key = key;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key};
+    }
+}
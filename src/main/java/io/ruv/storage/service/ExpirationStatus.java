@@ -0,0 +1,32 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+
+/**
+ * Keys stored with time to live and keys removed once it passed
+ */
+@Value
+public class ExpirationStatus {
+
+    public static final ExpirationStatus NONE = new ExpirationStatus(false, 0, 0, 0);
+
+    /**
+     * Whether storage accepts time to live at all, other figures are zero otherwise
+     */
+    boolean enabled;
+
+    /**
+     * Number of stored keys with time to live
+     */
+    long expiringKeys;
+
+    /**
+     * Number of keys removed by background expiration
+     */
+    long reapedKeys;
+
+    /**
+     * Number of keys removed when accessed after their time to live passed, before background expiration
+     */
+    long lazilyExpiredKeys;
+}
@@ -0,0 +1,35 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating that a value stream ended before its declared length on store operation
+ */
+@Getter
+public class IncompleteValueException extends BadRequestException {
+
+    private final String key;
+    private final long length;
+    private final ErrorCode errorCode = ErrorCode.INCOMPLETE_VALUE;
+
+    public static IncompleteValueException of(String key, long length) {
+
+        return new IncompleteValueException(key, length,
+                String.format("Value associated with key '%s' ended before its declared length of %d bytes.", key, length));
+    }
+
+    private IncompleteValueException(String key, long length, String message) {
+
+        super(message);
+        this.key = key;
+        this.length = length;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key, String.valueOf(length)};
+    }
+}
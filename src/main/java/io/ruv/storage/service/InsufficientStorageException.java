@@ -0,0 +1,39 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.FrontalExceptionSupport;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception indicating that storage has no memory left for a value on store operation
+ */
+@Getter
+public class InsufficientStorageException extends FrontalExceptionSupport {
+
+    private final String key;
+    private final ErrorCode errorCode = ErrorCode.INSUFFICIENT_STORAGE;
+
+    public static InsufficientStorageException of(String key, long size) {
+
+        return new InsufficientStorageException(key, String.format("Not enough memory to store %d bytes on key '%s'.", size, key));
+    }
+
+    private InsufficientStorageException(String key, String message) {
+
+        super(message);
+        this.key = key;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key};
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+
+        return HttpStatus.INSUFFICIENT_STORAGE;
+    }
+}
@@ -0,0 +1,90 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+import lombok.val;
+
+/**
+ * Range of keys in {@link String#compareTo(String) natural order}, from its lower bound inclusive
+ * up to its upper bound exclusive
+ */
+@Value
+public class KeyRange {
+
+    public static final KeyRange ALL = new KeyRange(null, null);
+
+    /**
+     * Lowest key of the range, {@code null} when unbounded
+     */
+    String from;
+
+    /**
+     * Lowest key above the range, {@code null} when unbounded
+     */
+    String to;
+
+    public static KeyRange of(String from, String to) {
+
+        return new KeyRange(from, to);
+    }
+
+    /**
+     * @return range of all keys starting with provided prefix
+     */
+    public static KeyRange prefix(String prefix) {
+
+        var end = prefix.length();
+
+        // a prefix of maximum chars has no upper bound of the same length
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+
+            end--;
+        }
+
+        if (end == 0) {
+
+            return new KeyRange(prefix.isEmpty() ? null : prefix, null);
+        }
+
+        return new KeyRange(prefix, prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1));
+    }
+
+    /**
+     * Narrows range to keys following provided one, so that a scan continues after the last key it returned
+     *
+     * @param key key to continue after, {@code null} to keep the range as it is
+     * @return keys of this range greater than provided key
+     */
+    public KeyRange after(String key) {
+
+        if (key == null) {
+
+            return this;
+        }
+
+        // the least string greater than a key is the key followed by the least char
+        val successor = key + Character.MIN_VALUE;
+
+        return from == null || successor.compareTo(from) > 0 ? new KeyRange(successor, to) : this;
+    }
+
+    public boolean contains(String key) {
+
+        return (from == null || key.compareTo(from) >= 0) && (to == null || key.compareTo(to) < 0);
+    }
+
+    /**
+     * @return whether range ends before provided key, so that neither the key nor any greater one is in range
+     */
+    public boolean endsBefore(String key) {
+
+        return to != null && key.compareTo(to) >= 0;
+    }
+
+    /**
+     * @return whether range holds no key at all
+     */
+    public boolean isEmpty() {
+
+        return from != null && to != null && from.compareTo(to) >= 0;
+    }
+}
@@ -0,0 +1,32 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating unknown or no longer retained persistence job
+ */
+@Getter
+public class MissingJobException extends BadRequestException {
+
+    private final String id;
+    private final ErrorCode errorCode = ErrorCode.MISSING_JOB;
+
+    public static MissingJobException of(String id) {
+
+        return new MissingJobException(id, String.format("Persistence job '%s' is not known.", id));
+    }
+
+    private MissingJobException(String id, String message) {
+
+        super(message);
+        this.id = id;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{id};
+    }
+}
@@ -0,0 +1,77 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.ErrorCodeContainer;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Save or load running in background
+ */
+@Getter
+public class PersistenceJob {
+
+    public enum Operation {
+        SAVE,
+        LOAD
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Operation operation;
+    private final Instant startedAt = Instant.now();
+
+    /**
+     * Completes once the job finishes, exceptionally with its failure
+     */
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private volatile Instant finishedAt;
+
+    @Getter(AccessLevel.NONE)
+    private volatile Throwable failure;
+
+    public PersistenceJob(Operation operation) {
+
+        this.operation = operation;
+    }
+
+    /**
+     * Records outcome and completes the job
+     *
+     * @param failure failure of the job, {@code null} if it succeeded
+     */
+    public void finish(Throwable failure) {
+
+        this.finishedAt = Instant.now();
+        this.failure = failure;
+
+        if (failure == null) {
+
+            completion.complete(null);
+        } else {
+
+            completion.completeExceptionally(failure);
+        }
+    }
+
+    public PersistenceJobStatus status() {
+
+        if (!completion.isDone()) {
+
+            return new PersistenceJobStatus(id, operation, PersistenceJobStatus.State.RUNNING, startedAt, null, null, null);
+        }
+
+        if (failure == null) {
+
+            return new PersistenceJobStatus(id, operation, PersistenceJobStatus.State.SUCCEEDED, startedAt, finishedAt, null, null);
+        }
+
+        String errorCode = failure instanceof ErrorCodeContainer ? ((ErrorCodeContainer) failure).getErrorCode().name() : null;
+
+        return new PersistenceJobStatus(id, operation, PersistenceJobStatus.State.FAILED, startedAt, finishedAt,
+                errorCode, failure.getMessage());
+    }
+}
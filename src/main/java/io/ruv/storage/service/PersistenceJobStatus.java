@@ -0,0 +1,34 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * State of a persistence job, outcome of a finished one
+ */
+@Value
+public class PersistenceJobStatus {
+
+    public enum State {
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    String id;
+    PersistenceJob.Operation operation;
+    State state;
+    Instant startedAt;
+    Instant finishedAt;
+
+    /**
+     * Error code of a failed job, {@code null} when the failure carries none
+     */
+    String errorCode;
+
+    /**
+     * Failure message of a failed job
+     */
+    String message;
+}
@@ -0,0 +1,55 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.FrontalExceptionSupport;
+import lombok.Getter;
+import lombok.val;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception indicating byte range that starts beyond the end of retrieved value
+ */
+@Getter
+public class RangeNotSatisfiableException extends FrontalExceptionSupport {
+
+    private final String key;
+    private final long length;
+    private final ErrorCode errorCode = ErrorCode.RANGE_NOT_SATISFIABLE;
+
+    public static RangeNotSatisfiableException of(String key, long length) {
+
+        return new RangeNotSatisfiableException(key, length,
+                String.format("Requested range is outside of value associated with key '%s' of %d bytes.", key, length));
+    }
+
+    private RangeNotSatisfiableException(String key, long length, String message) {
+
+        super(message);
+        this.key = key;
+        this.length = length;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key, String.valueOf(length)};
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+
+        return HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+    }
+
+    /**
+     * @return {@code Content-Range} header reporting length of the value
+     */
+    @Override
+    public HttpHeaders getHttpHeaders() {
+
+        val headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        return headers;
+    }
+}
@@ -0,0 +1,26 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Page of keys of a range scan in ascending order, along with their values when requested
+ */
+@Value
+public class ScanPage {
+
+    public static final ScanPage EMPTY = new ScanPage(List.of(), null, null);
+
+    List<String> keys;
+
+    /**
+     * Values of the keys in the same order to close once written, {@code null} when not requested
+     */
+    List<StoredValue> values;
+
+    /**
+     * Last key of the page to continue the scan after, {@code null} when no key follows it in range
+     */
+    String next;
+}
@@ -0,0 +1,40 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Progress of the current or the last finished save operation
+ */
+@Value
+public class SnapshotStatus {
+
+    public static final SnapshotStatus NONE = new SnapshotStatus(State.NONE, null, null, 0, 0, 0);
+
+    public enum State {
+        NONE,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    State state;
+    Instant startedAt;
+    Instant finishedAt;
+
+    /**
+     * Number of keys in the snapshot, known when it starts
+     */
+    long totalKeys;
+
+    /**
+     * Number of keys handed to persistence so far
+     */
+    long persistedKeys;
+
+    /**
+     * Time spent so far for a running snapshot, total time for a finished one
+     */
+    long durationMillis;
+}
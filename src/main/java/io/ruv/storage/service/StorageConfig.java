@@ -1,16 +1,164 @@
 package io.ruv.storage.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.persistence.PersistenceStrategyFactory;
+import io.ruv.storage.service.async.ExecutorAsyncStorageService;
+import io.ruv.storage.service.async.SnapshotScheduler;
+import io.ruv.storage.service.expiry.ExpirationReaper;
+import io.ruv.storage.service.impl.HashStorageOptions;
 import io.ruv.storage.service.impl.HashStorageService;
+import io.ruv.storage.service.impl.LsmStorageService;
+import io.ruv.storage.service.impl.ShardedStorageService;
+import io.ruv.storage.service.metrics.MeteredStorageService;
+import io.ruv.storage.service.impl.SlabStorageService;
+import io.ruv.storage.service.slab.SlabAllocator;
+import io.ruv.storage.util.concurrent.VirtualThreads;
+import io.ruv.storage.util.properties.AsyncStorageProperties;
+import io.ruv.storage.util.properties.CompressionProperties;
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import io.ruv.storage.util.properties.ExecutionProperties;
+import io.ruv.storage.util.properties.ExpirationProperties;
+import io.ruv.storage.util.properties.LsmStorageProperties;
+import io.ruv.storage.util.properties.ShardedStorageProperties;
+import io.ruv.storage.util.properties.SlabStorageProperties;
+import io.ruv.storage.util.properties.SnapshotScheduleProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import io.ruv.storage.util.properties.TieredStorageProperties;
+import lombok.val;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Executors;
 
 @Configuration
+@EnableConfigurationProperties({StorageProperties.class, CompressionProperties.class, DeduplicationProperties.class,
+        AsyncStorageProperties.class, ExpirationProperties.class})
 public class StorageConfig {
 
     @Bean
-    public StorageService hashStorageService(PersistenceStrategy persistenceStrategy) {
+    public AsyncStorageService asyncStorageService(StorageService storageService, AsyncStorageProperties properties,
+                                                   ExecutionProperties executionProperties) {
+
+        val virtual = executionProperties.getThreads() == ExecutionProperties.Threads.VIRTUAL;
+        val operationExecutor = virtual
+                ? VirtualThreads.newExecutor("storage-async-")
+                : Executors.newFixedThreadPool(properties.getThreads(), new CustomizableThreadFactory("storage-async-"));
+        val jobExecutor = Executors.newSingleThreadExecutor(virtual
+                ? VirtualThreads.factory("persistence-job-")
+                : new CustomizableThreadFactory("persistence-job-"));
+
+        return new ExecutorAsyncStorageService(storageService, operationExecutor, jobExecutor, properties);
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.service.schedule", name = "enabled", havingValue = "true")
+    @EnableConfigurationProperties(SnapshotScheduleProperties.class)
+    public static class SnapshotScheduleConfig {
+
+        @Bean
+        public SnapshotScheduler snapshotScheduler(StorageService storageService, AsyncStorageService asyncStorageService,
+                                                   SnapshotScheduleProperties properties) {
+
+            return new SnapshotScheduler(storageService, asyncStorageService, properties,
+                    Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("snapshot-scheduler-")));
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.service.expiration", name = "enabled", havingValue = "true")
+    public static class ExpirationConfig {
+
+        @Bean
+        public ExpirationReaper expirationReaper(StorageService storageService, ExpirationProperties properties) {
+
+            return new ExpirationReaper(storageService, properties,
+                    Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("storage-expiry-")));
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.service", name = "type", havingValue = "hash", matchIfMissing = true)
+    @EnableConfigurationProperties(TieredStorageProperties.class)
+    public static class HashStorageConfig {
+
+        @Bean
+        public StorageService hashStorageService(PersistenceStrategy persistenceStrategy,
+                                                 TieredStorageProperties tieredProperties,
+                                                 CompressionProperties compressionProperties,
+                                                 DeduplicationProperties deduplicationProperties,
+                                                 ExpirationProperties expirationProperties, StorageProperties properties,
+                                                 MeterRegistry registry) {
+
+            val options = HashStorageOptions.builder()
+                    .tiered(tieredProperties)
+                    .compression(compressionProperties)
+                    .deduplication(deduplicationProperties)
+                    .expiration(expirationProperties)
+                    .build();
+
+            return new MeteredStorageService(new HashStorageService(persistenceStrategy, properties, options), registry);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.service", name = "type", havingValue = "lsm")
+    @EnableConfigurationProperties(LsmStorageProperties.class)
+    public static class LsmStorageConfig {
+
+        @Bean
+        public StorageService lsmStorageService(LsmStorageProperties lsmProperties, StorageProperties properties,
+                                                MeterRegistry registry) {
+
+            return new MeteredStorageService(new LsmStorageService(lsmProperties, properties), registry);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.service", name = "type", havingValue = "slab")
+    @EnableConfigurationProperties(SlabStorageProperties.class)
+    public static class SlabStorageConfig {
+
+        @Bean
+        public StorageService slabStorageService(PersistenceStrategy persistenceStrategy,
+                                                 SlabStorageProperties slabProperties, StorageProperties properties,
+                                                 MeterRegistry registry) {
+
+            return new MeteredStorageService(
+                    new SlabStorageService(persistenceStrategy, new SlabAllocator(slabProperties), properties), registry);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "storage.service", name = "type", havingValue = "sharded")
+    @EnableConfigurationProperties(ShardedStorageProperties.class)
+    public static class ShardedStorageConfig {
+
+        @Bean
+        public StorageService shardedStorageService(PersistenceStrategyFactory persistenceStrategyFactory,
+                                                    ShardedStorageProperties shardedProperties, StorageProperties properties,
+                                                    CompressionProperties compressionProperties,
+                                                    DeduplicationProperties deduplicationProperties,
+                                                    ExpirationProperties expirationProperties,
+                                                    ExecutionProperties executionProperties, MeterRegistry registry) {
+
+            val shardOptions = HashStorageOptions.builder()
+                    .compression(compressionProperties)
+                    .deduplication(deduplicationProperties)
+                    .expiration(expirationProperties)
+                    .build();
+
+            val threadNamePrefix = "storage-shard-";
+            val threadFactory = executionProperties.getThreads() == ExecutionProperties.Threads.VIRTUAL
+                    ? VirtualThreads.factory(threadNamePrefix)
+                    : new CustomizableThreadFactory(threadNamePrefix);
 
-        return new HashStorageService(persistenceStrategy);
+            return new MeteredStorageService(
+                    new ShardedStorageService(persistenceStrategyFactory, properties, shardedProperties, threadFactory,
+                            shardOptions), registry);
+        }
     }
 }
@@ -2,13 +2,30 @@ package io.ruv.storage.service;
 
 import io.ruv.storage.persistence.PersistenceException;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Key-value storage provider contract
  */
 public interface StorageService {
 
+    /**
+     * Version of values of storage that does not keep versions, expected version of a key that must not be stored
+     */
+    long NO_VERSION = 0;
+
+    /**
+     * Expected version of a key that must be stored, regardless of its version
+     */
+    long ANY_VERSION = -1;
+
     /**
      * Stores provided value
      *
@@ -18,6 +35,71 @@ public interface StorageService {
      */
     void store(String key, byte[] value) throws DuplicateKeyException;
 
+    /**
+     * Stores value read from provided stream, reading it into the backing storage as it arrives
+     *
+     * @param key    key to associate provided value with
+     * @param value  stream of value bytes, read but not closed
+     * @param length value length, -1 if unknown
+     * @throws DuplicateKeyException    when provided key is already associated with some value
+     * @throws ValueTooLargeException   when value exceeds maximum value size
+     * @throws IncompleteValueException when stream ends before declared length
+     */
+    void store(String key, InputStream value, long length) throws DuplicateKeyException, ValueTooLargeException, IncompleteValueException;
+
+    /**
+     * Stores value read from provided stream, to be removed once provided time to live passes.
+     * Default implementation stores values without time to live only.
+     *
+     * @param key    key to associate provided value with
+     * @param value  stream of value bytes, read but not closed
+     * @param length value length, -1 if unknown
+     * @param ttl    time to live, {@code null} to keep value until it is deleted
+     * @throws DuplicateKeyException           when provided key is already associated with some value
+     * @throws ValueTooLargeException          when value exceeds maximum value size
+     * @throws IncompleteValueException        when stream ends before declared length
+     * @throws ExpirationNotSupportedException when time to live is set but storage does not expire values
+     */
+    default void store(String key, InputStream value, long length, Duration ttl)
+            throws DuplicateKeyException, ValueTooLargeException, ExpirationNotSupportedException {
+
+        if (ttl != null) {
+
+            throw ExpirationNotSupportedException.of(key);
+        }
+
+        store(key, value, length);
+    }
+
+    /**
+     * Stores value read from provided stream when the key holds expected version, compare-and-set.
+     * Default implementation stores values of keys that are not stored only, without versions.
+     *
+     * @param key             key to associate provided value with
+     * @param value           stream of value bytes, read but not closed
+     * @param length          value length, -1 if unknown
+     * @param ttl             time to live, {@code null} to keep value until it is deleted
+     * @param expectedVersion {@link #NO_VERSION} to store value of a key that is not stored,
+     *                        {@link #ANY_VERSION} or version the key holds to replace its value
+     * @return version of stored value, {@link #NO_VERSION} if storage does not keep versions
+     * @throws DuplicateKeyException           when key that must not be stored is associated with some value
+     * @throws VersionMismatchException        when key that must be stored is not or holds another version
+     * @throws VersioningNotSupportedException when value is to be replaced but storage does not keep versions
+     * @throws ValueTooLargeException          when value exceeds maximum value size
+     * @throws IncompleteValueException        when stream ends before declared length
+     */
+    default long compareAndStore(String key, InputStream value, long length, Duration ttl, long expectedVersion)
+            throws DuplicateKeyException, VersionMismatchException, VersioningNotSupportedException, ValueTooLargeException {
+
+        if (expectedVersion != NO_VERSION) {
+
+            throw VersioningNotSupportedException.of(key);
+        }
+
+        store(key, value, length, ttl);
+        return NO_VERSION;
+    }
+
     /**
      * Retrieves value associated with provided key
      *
@@ -27,6 +109,76 @@ public interface StorageService {
      */
     InputStream retrieve(String key) throws MissingKeyException;
 
+    /**
+     * Retrieves value associated with provided key as buffers, so it can be written without copying.
+     * Default implementation reads value stream to heap.
+     *
+     * @param key key associated with requested value
+     * @return value to close once written
+     * @throws MissingKeyException when provided key is not associated with a value
+     */
+    default StoredValue retrieveValue(String key) throws MissingKeyException {
+
+        try (InputStream stream = retrieve(key)) {
+
+            return StoredValue.of(ByteBuffer.wrap(stream.readAllBytes()));
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retrieves part of value associated with provided key as buffers positioned at the start of the part
+     * and bounded by its end, bytes before the part are neither read nor copied when storage holds the value
+     * as buffers. Default implementation retrieves the whole value and slices it.
+     *
+     * @param key   key associated with requested value
+     * @param range range of value bytes to retrieve
+     * @return part of the value to close once written, along with the length of the whole value
+     * @throws MissingKeyException          when provided key is not associated with a value
+     * @throws RangeNotSatisfiableException when range starts beyond the end of the value
+     */
+    default StoredValue retrieveRange(String key, ByteRange range) throws MissingKeyException, RangeNotSatisfiableException {
+
+        StoredValue value = retrieveValue(key);
+        long length = value.length();
+
+        if (!range.isSatisfiable(length)) {
+
+            value.close();
+            throw RangeNotSatisfiableException.of(key, length);
+        }
+
+        return value.slice(range.offset(length), range.length(length));
+    }
+
+    /**
+     * Whether values carry versions. Default implementation does not keep versions.
+     *
+     * @return {@code false} when every value is of {@link #NO_VERSION}
+     */
+    default boolean keepsVersions() {
+
+        return false;
+    }
+
+    /**
+     * Retrieves version of value associated with provided key, without retrieving the value when storage keeps versions.
+     * Default implementation retrieves the value.
+     *
+     * @param key key associated with requested value
+     * @return version of the value, {@link #NO_VERSION} if storage does not keep versions
+     * @throws MissingKeyException when provided key is not associated with a value
+     */
+    default long version(String key) throws MissingKeyException {
+
+        try (StoredValue value = retrieveValue(key)) {
+
+            return value.version();
+        }
+    }
+
     /**
      * Removes value associated with provided key
      *
@@ -35,6 +187,109 @@ public interface StorageService {
      */
     void delete(String key) throws MissingKeyException;
 
+    /**
+     * Removes value associated with provided key when it holds expected version, compare-and-set.
+     * Default implementation does not keep versions.
+     *
+     * @param key             key associated with value to delete
+     * @param expectedVersion {@link #ANY_VERSION} or version the key holds
+     * @throws VersionMismatchException        when key is not stored or holds another version
+     * @throws VersioningNotSupportedException when storage does not keep versions
+     */
+    default void compareAndDelete(String key, long expectedVersion) throws VersionMismatchException, VersioningNotSupportedException {
+
+        throw VersioningNotSupportedException.of(key);
+    }
+
+    /**
+     * Stores provided values, each independently of the others.
+     * Default implementation stores them one by one.
+     *
+     * @param entries keys and values to store
+     * @return outcome for each entry in provided order, {@link BatchStatus#OK} or {@link BatchStatus#DUPLICATE_KEY}
+     * @throws ValueTooLargeException when any value exceeds maximum value size, nothing is stored then
+     */
+    default List<BatchStatus> storeAll(List<? extends Map.Entry<String, byte[]>> entries) throws ValueTooLargeException {
+
+        List<BatchStatus> statuses = new ArrayList<>(entries.size());
+
+        for (Map.Entry<String, byte[]> entry : entries) {
+
+            try {
+
+                store(entry.getKey(), entry.getValue());
+                statuses.add(BatchStatus.OK);
+            } catch (DuplicateKeyException e) {
+
+                statuses.add(BatchStatus.DUPLICATE_KEY);
+            }
+        }
+
+        return statuses;
+    }
+
+    /**
+     * Retrieves values associated with provided keys.
+     * Default implementation retrieves them one by one.
+     *
+     * @param keys keys associated with requested values
+     * @return values in provided order to close once written, {@code null} for keys not associated with a value
+     */
+    default List<StoredValue> retrieveAll(List<String> keys) {
+
+        List<StoredValue> values = new ArrayList<>(keys.size());
+
+        for (String key : keys) {
+
+            try {
+
+                values.add(retrieveValue(key));
+            } catch (MissingKeyException e) {
+
+                values.add(null);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Removes values associated with provided keys, each independently of the others.
+     * Default implementation removes them one by one.
+     *
+     * @param keys keys associated with values to delete
+     * @return outcome for each key in provided order, {@link BatchStatus#OK} or {@link BatchStatus#MISSING_KEY}
+     */
+    default List<BatchStatus> deleteAll(List<String> keys) {
+
+        List<BatchStatus> statuses = new ArrayList<>(keys.size());
+
+        for (String key : keys) {
+
+            try {
+
+                delete(key);
+                statuses.add(BatchStatus.OK);
+            } catch (MissingKeyException e) {
+
+                statuses.add(BatchStatus.MISSING_KEY);
+            }
+        }
+
+        return statuses;
+    }
+
+    /**
+     * Lists stored keys of provided range in ascending order, a page at a time.
+     * Keys stored or deleted while pages are listed may or may not be listed.
+     *
+     * @param range  range of keys to list, narrowed by {@link KeyRange#after(String)} to continue a scan
+     * @param limit  maximum number of keys in the page, positive
+     * @param values whether to retrieve values of listed keys as well
+     * @return page of keys
+     */
+    ScanPage scan(KeyRange range, int limit, boolean values);
+
     /**
      * Saves all key-value associations to persistent storage
      *
@@ -50,4 +305,57 @@ public interface StorageService {
      * @see io.ruv.storage.persistence.PersistenceStrategy
      */
     void load() throws PersistenceException;
+
+    /**
+     * Reports progress of the current save operation or outcome of the last finished one
+     *
+     * @return snapshot status, {@link SnapshotStatus#NONE} if nothing was saved yet
+     */
+    SnapshotStatus snapshotStatus();
+
+    /**
+     * @return number of stored keys
+     */
+    long size();
+
+    /**
+     * @return number of value bytes held in memory, including memory mapped values
+     */
+    long residentBytes();
+
+    /**
+     * @return number of values stored and deleted since startup, loaded values are not counted
+     */
+    long modifications();
+
+    /**
+     * Removes values whose time to live passed, without scanning stored keys.
+     * Default implementation has nothing to remove, since it stores values without time to live.
+     *
+     * @return number of removed values
+     */
+    default long expire() {
+
+        return 0;
+    }
+
+    /**
+     * Reports keys stored with time to live and keys removed once it passed
+     *
+     * @return expiration status, {@link ExpirationStatus#NONE} if storage does not expire values
+     */
+    default ExpirationStatus expirationStatus() {
+
+        return ExpirationStatus.NONE;
+    }
+
+    /**
+     * Reports residency of values when storage keeps them within a memory budget
+     *
+     * @return tier status, {@link TierStatus#NONE} if memory is not bounded
+     */
+    default TierStatus tierStatus() {
+
+        return TierStatus.NONE;
+    }
 }
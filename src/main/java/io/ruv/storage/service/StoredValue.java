@@ -0,0 +1,161 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import lombok.val;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stored value exposed as buffers over storage memory, without copying it to heap.
+ * <p>
+ * Value must be closed once written, storage may reuse its memory afterwards.
+ *
+ * @see StorageService#compareAndStore
+ */
+public final class StoredValue implements Closeable {
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    private final ByteBuffer[] buffers;
+    private final Runnable releaseAction;
+    private final AtomicBoolean closed;
+    private final long version;
+
+    /**
+     * Position of a slice within the whole value, 0 otherwise
+     */
+    private final long offset;
+
+    /**
+     * Length of the whole value a slice is taken from, -1 when this is the whole value
+     */
+    private final long valueLength;
+
+    private StoredValue(Runnable releaseAction, ByteBuffer[] buffers, AtomicBoolean closed, long version,
+                        long offset, long valueLength) {
+
+        this.buffers = buffers;
+        this.releaseAction = releaseAction;
+        this.closed = closed;
+        this.version = version;
+        this.offset = offset;
+        this.valueLength = valueLength;
+    }
+
+    public static StoredValue of(ByteBuffer... buffers) {
+
+        return of(NOOP, buffers);
+    }
+
+    /**
+     * @param releaseAction action to run once on {@link #close()}, e.g. to release underlying memory
+     * @param buffers       buffers holding remaining bytes of the value, in order
+     */
+    public static StoredValue of(Runnable releaseAction, ByteBuffer... buffers) {
+
+        return new StoredValue(releaseAction, buffers, new AtomicBoolean(), StorageService.NO_VERSION, 0, -1);
+    }
+
+    /**
+     * @return the same value tagged with provided version, closing either of them closes both
+     */
+    public StoredValue withVersion(long version) {
+
+        return new StoredValue(releaseAction, buffers, closed, version, offset, valueLength);
+    }
+
+    /**
+     * Views a part of this value without copying it, buffers before and after the part are left out
+     *
+     * @param offset position of the part within this value
+     * @param length number of bytes of the part, up to the end of this value
+     * @return the part of this value, closing either of them closes both
+     */
+    public StoredValue slice(long offset, long length) {
+
+        val parts = new ArrayList<ByteBuffer>();
+        var skip = offset;
+        var remaining = length;
+
+        for (val buffer : buffers) {
+
+            if (remaining <= 0) {
+
+                break;
+            }
+
+            if (skip >= buffer.remaining()) {
+
+                skip -= buffer.remaining();
+                continue;
+            }
+
+            val part = buffer.duplicate();
+            part.position(part.position() + (int) skip);
+            part.limit(part.position() + (int) Math.min(part.remaining(), remaining));
+            remaining -= part.remaining();
+            skip = 0;
+            parts.add(part);
+        }
+
+        return new StoredValue(releaseAction, parts.toArray(ByteBuffer[]::new), closed, version,
+                this.offset + offset, valueLength());
+    }
+
+    /**
+     * @return independent views of value buffers, callers must not modify their contents
+     */
+    public ByteBuffer[] buffers() {
+
+        return ByteBufferSupplier.duplicate(buffers);
+    }
+
+    public long length() {
+
+        var length = 0L;
+
+        for (val buffer : buffers) {
+
+            length += buffer.remaining();
+        }
+
+        return length;
+    }
+
+    /**
+     * @return position of this slice within the whole value, 0 for the whole value
+     */
+    public long offset() {
+
+        return offset;
+    }
+
+    /**
+     * @return length of the whole value, equal to {@link #length()} unless this is a slice of it
+     */
+    public long valueLength() {
+
+        return valueLength >= 0 ? valueLength : length();
+    }
+
+    /**
+     * @return version of the value, {@link StorageService#NO_VERSION} if storage does not keep versions
+     */
+    public long version() {
+
+        return version;
+    }
+
+    @Override
+    public void close() {
+
+        if (closed.compareAndSet(false, true)) {
+
+            releaseAction.run();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.ruv.storage.service;
+
+import lombok.Value;
+
+/**
+ * Residency of values within memory budget of a bounded-memory storage
+ */
+@Value
+public class TierStatus {
+
+    public static final TierStatus NONE = new TierStatus(false, 0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Whether storage bounds memory at all, other figures are zero otherwise
+     */
+    boolean enabled;
+
+    long memoryBudget;
+    long residentKeys;
+    long residentBytes;
+    long spilledKeys;
+
+    /**
+     * Number of retrievals served from memory
+     */
+    long hits;
+
+    /**
+     * Number of retrievals faulting values in from disk
+     */
+    long misses;
+
+    /**
+     * Number of values spilled from memory to disk
+     */
+    long evictions;
+}
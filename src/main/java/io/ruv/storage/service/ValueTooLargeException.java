@@ -0,0 +1,42 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.FrontalExceptionSupport;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception indicating that a value exceeds maximum value size on store operation
+ */
+@Getter
+public class ValueTooLargeException extends FrontalExceptionSupport {
+
+    private final String key;
+    private final long maxSize;
+    private final ErrorCode errorCode = ErrorCode.VALUE_TOO_LARGE;
+
+    public static ValueTooLargeException of(String key, long maxSize) {
+
+        return new ValueTooLargeException(key, maxSize,
+                String.format("Value associated with key '%s' exceeds maximum size of %d bytes.", key, maxSize));
+    }
+
+    private ValueTooLargeException(String key, long maxSize, String message) {
+
+        super(message);
+        this.key = key;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key, String.valueOf(maxSize)};
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+
+        return HttpStatus.PAYLOAD_TOO_LARGE;
+    }
+}
@@ -0,0 +1,40 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.FrontalExceptionSupport;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception indicating conditional operation on a key that is not stored or holds another version than expected
+ */
+@Getter
+public class VersionMismatchException extends FrontalExceptionSupport {
+
+    private final String key;
+    private final ErrorCode errorCode = ErrorCode.VERSION_MISMATCH;
+
+    public static VersionMismatchException of(String key) {
+
+        return new VersionMismatchException(key,
+                String.format("Value associated with key '%s' does not have expected version.", key));
+    }
+
+    private VersionMismatchException(String key, String message) {
+
+        super(message);
+        this.key = key;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key};
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+
+        return HttpStatus.PRECONDITION_FAILED;
+    }
+}
@@ -0,0 +1,33 @@
+package io.ruv.storage.service;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating conditional replace or delete on storage that does not keep versions of values
+ */
+@Getter
+public class VersioningNotSupportedException extends BadRequestException {
+
+    private final String key;
+    private final ErrorCode errorCode = ErrorCode.VERSIONING_NOT_SUPPORTED;
+
+    public static VersioningNotSupportedException of(String key) {
+
+        return new VersioningNotSupportedException(key,
+                String.format("Value associated with key '%s' can not be modified conditionally, storage does not keep versions.", key));
+    }
+
+    private VersioningNotSupportedException(String key, String message) {
+
+        super(message);
+        this.key = key;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{key};
+    }
+}
@@ -0,0 +1,223 @@
+package io.ruv.storage.service.async;
+
+import io.ruv.storage.service.AsyncStorageService;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.MissingJobException;
+import io.ruv.storage.service.PersistenceJob;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.AsyncStorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Implementation of {@link AsyncStorageService} running operations of a synchronous storage on executors.
+ * <p>
+ * Persistence jobs run on an executor of their own, so that long saves and loads do not hold threads
+ * of regular operations. Status of {@link AsyncStorageProperties#getRetainedJobs() retained jobs}
+ * most recently started is kept.
+ */
+@Slf4j
+public class ExecutorAsyncStorageService implements AsyncStorageService, Closeable {
+
+    private final StorageService delegate;
+    private final Executor operationExecutor;
+    private final Executor jobExecutor;
+    private final int retainedJobs;
+
+    private final AtomicReference<PersistenceJob> running = new AtomicReference<>();
+
+    /**
+     * Jobs by id in order of start, guarded by itself
+     */
+    private final Map<String, PersistenceJob> jobs = new LinkedHashMap<>() {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PersistenceJob> eldest) {
+
+            return size() > retainedJobs;
+        }
+    };
+
+    /**
+     * @param operationExecutor executor of store, retrieve and delete operations
+     * @param jobExecutor       executor of saves and loads
+     */
+    public ExecutorAsyncStorageService(StorageService delegate, Executor operationExecutor, Executor jobExecutor,
+                                       AsyncStorageProperties properties) {
+
+        this.delegate = delegate;
+        this.operationExecutor = operationExecutor;
+        this.jobExecutor = jobExecutor;
+        this.retainedJobs = properties.getRetainedJobs();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> store(String key, byte[] value) {
+
+        return CompletableFuture.runAsync(() -> delegate.store(key, value), operationExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<StoredValue> retrieveValue(String key) {
+
+        return CompletableFuture.supplyAsync(() -> delegate.retrieveValue(key), operationExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+
+        return CompletableFuture.runAsync(() -> delegate.delete(key), operationExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<BatchStatus>> storeAll(List<? extends Map.Entry<String, byte[]>> entries) {
+
+        return CompletableFuture.supplyAsync(() -> delegate.storeAll(entries), operationExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<StoredValue>> retrieveAll(List<String> keys) {
+
+        return CompletableFuture.supplyAsync(() -> delegate.retrieveAll(keys), operationExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<BatchStatus>> deleteAll(List<String> keys) {
+
+        return CompletableFuture.supplyAsync(() -> delegate.deleteAll(keys), operationExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PersistenceJob save() throws ServiceUnavailableException {
+
+        return start(new PersistenceJob(PersistenceJob.Operation.SAVE), delegate::save);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PersistenceJob load() throws ServiceUnavailableException {
+
+        return start(new PersistenceJob(PersistenceJob.Operation.LOAD), delegate::load);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PersistenceJob job(String id) throws MissingJobException {
+
+        synchronized (jobs) {
+
+            val job = jobs.get(id);
+
+            if (job == null) {
+
+                throw MissingJobException.of(id);
+            }
+
+            return job;
+        }
+    }
+
+    private PersistenceJob start(PersistenceJob job, Runnable action) {
+
+        if (!running.compareAndSet(null, job)) {
+
+            throw new ServiceUnavailableException("Persistence job in progress.");
+        }
+
+        synchronized (jobs) {
+
+            jobs.put(job.getId(), job);
+        }
+
+        try {
+
+            jobExecutor.execute(() -> run(job, action));
+        } catch (RejectedExecutionException e) {
+
+            val rejection = new ServiceUnavailableException("Persistence jobs are not accepted.");
+            running.set(null);
+            job.finish(rejection);
+            throw rejection;
+        }
+
+        log.debug("Persistence job '{}' of {} started.", job.getId(), job.getOperation());
+        return job;
+    }
+
+    /**
+     * Shuts executors down when they are executor services, running jobs are left to finish
+     */
+    @Override
+    public void close() {
+
+        for (val executor : List.of(operationExecutor, jobExecutor)) {
+
+            if (executor instanceof ExecutorService) {
+
+                ((ExecutorService) executor).shutdown();
+            }
+        }
+    }
+
+    private void run(PersistenceJob job, Runnable action) {
+
+        Throwable failure = null;
+
+        try {
+
+            action.run();
+        } catch (RuntimeException e) {
+
+            log.error("Persistence job '{}' of {} failed.", job.getId(), job.getOperation(), e);
+            failure = e;
+        } catch (Error e) {
+
+            log.error("Persistence job '{}' of {} failed.", job.getId(), job.getOperation(), e);
+            failure = e;
+            // left to the executor once the job is finished below
+            throw e;
+        } finally {
+
+            // released before completion, so that a job may be started as soon as the previous one completes
+            running.set(null);
+            job.finish(failure);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.ruv.storage.service.async;
+
+import io.ruv.storage.service.AsyncStorageService;
+import io.ruv.storage.service.PersistenceJob;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.SnapshotScheduleProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves storage in background once it was modified {@link SnapshotScheduleProperties#getModifications() enough}
+ * or the {@link SnapshotScheduleProperties#getInterval() interval} since the last save has passed.
+ * <p>
+ * Saves run as regular persistence jobs, a check finding another job running waits for the next one.
+ * Storage that was not modified since the last save is not saved again.
+ */
+@Slf4j
+public class SnapshotScheduler implements Closeable {
+
+    private final StorageService storageService;
+    private final AsyncStorageService asyncStorageService;
+    private final ScheduledExecutorService scheduler;
+
+    private final long intervalNanos;
+    private final long modificationThreshold;
+
+    /**
+     * Save started by the last check, {@code null} until one is started, guarded by this
+     */
+    private PersistenceJob pending;
+    private long pendingModifications;
+    private long pendingStartedAt;
+
+    /**
+     * Modifications and time at start of the last successful save, guarded by this
+     */
+    private long savedModifications;
+    private long savedAt = System.nanoTime();
+
+    /**
+     * @param scheduler executor running checks, shut down on close
+     */
+    public SnapshotScheduler(StorageService storageService, AsyncStorageService asyncStorageService,
+                             SnapshotScheduleProperties properties, ScheduledExecutorService scheduler) {
+
+        this.storageService = storageService;
+        this.asyncStorageService = asyncStorageService;
+        this.scheduler = scheduler;
+        this.intervalNanos = properties.getInterval().toNanos();
+        this.modificationThreshold = properties.getModifications();
+        this.savedModifications = storageService.modifications();
+
+        val checkInterval = properties.getCheckInterval().toNanos();
+        scheduler.scheduleWithFixedDelay(this::checkQuietly, checkInterval, checkInterval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts a save if storage is due to be saved
+     *
+     * @return whether a save was started
+     */
+    public synchronized boolean check() {
+
+        if (pending != null) {
+
+            if (!pending.getCompletion().isDone()) {
+
+                return false;
+            }
+
+            if (!pending.getCompletion().isCompletedExceptionally()) {
+
+                savedModifications = pendingModifications;
+                savedAt = pendingStartedAt;
+            }
+
+            pending = null;
+        }
+
+        val modifications = storageService.modifications();
+        val unsaved = modifications - savedModifications;
+        val now = System.nanoTime();
+
+        if (unsaved <= 0) {
+
+            return false;
+        }
+
+        if ((modificationThreshold == 0 || unsaved < modificationThreshold) && now - savedAt < intervalNanos) {
+
+            return false;
+        }
+
+        try {
+
+            pending = asyncStorageService.save();
+            pendingModifications = modifications;
+            pendingStartedAt = now;
+            log.debug("Scheduled save '{}' started, {} modifications since the last one.", pending.getId(), unsaved);
+            return true;
+        } catch (ServiceUnavailableException e) {
+
+            log.debug("Scheduled save postponed, another persistence job is running.");
+            return false;
+        }
+    }
+
+    /**
+     * Stops checks, a save already started is not interrupted
+     */
+    @Override
+    public void close() {
+
+        scheduler.shutdown();
+    }
+
+    private void checkQuietly() {
+
+        try {
+
+            check();
+        } catch (RuntimeException e) {
+
+            // an exception would cancel following checks
+            log.error("Scheduled save check failed.", e);
+        }
+    }
+}
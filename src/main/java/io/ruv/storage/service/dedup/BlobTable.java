@@ -0,0 +1,197 @@
+package io.ruv.storage.service.dedup;
+
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Content-addressed table of values shared between keys. Values are identified by SHA-256 digest
+ * of their content and reference counted, a value is dropped once the last key holding it releases it.
+ * <p>
+ * Keys holding the same content hold the very same supplier instance, so persistence may recognize
+ * shared values by identity.
+ */
+public class BlobTable {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private final long minSize;
+    private final ToLongFunction<Supplier<InputStream>> lengthOf;
+
+    private final ConcurrentHashMap<Digest, Blob> blobs = new ConcurrentHashMap<>();
+
+    /**
+     * Blobs by their shared values, value suppliers compare by identity
+     */
+    private final ConcurrentHashMap<Supplier<InputStream>, Blob> values = new ConcurrentHashMap<>();
+
+    private final LongAdder residentBytes = new LongAdder();
+
+    /**
+     * @param lengthOf bytes a value holds in memory
+     */
+    public BlobTable(DeduplicationProperties properties, ToLongFunction<Supplier<InputStream>> lengthOf) {
+
+        this.minSize = properties.getMinSize().toBytes();
+        this.lengthOf = lengthOf;
+    }
+
+    /**
+     * @return whether values of the length are shared
+     */
+    public boolean accepts(long length) {
+
+        return length >= minSize;
+    }
+
+    /**
+     * @param content buffers holding remaining bytes of the value, left untouched
+     */
+    public Digest digest(ByteBuffer... content) {
+
+        val digest = messageDigest();
+
+        for (val buffer : content) {
+
+            digest.update(buffer.duplicate());
+        }
+
+        return new Digest(digest.digest());
+    }
+
+    /**
+     * Reads the whole value to compute its digest
+     */
+    public Digest digest(Supplier<InputStream> value) {
+
+        val digest = messageDigest();
+
+        try (val stream = new DigestInputStream(value.get(), digest)) {
+
+            stream.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+
+        return new Digest(digest.digest());
+    }
+
+    /**
+     * Takes a reference to the value of the content
+     *
+     * @param factory creates the value when no key holds the content yet
+     * @return value shared by all keys holding the content
+     */
+    public Supplier<InputStream> acquire(Digest digest, Supplier<Supplier<InputStream>> factory) {
+
+        return blobs.compute(digest, (d, blob) -> {
+
+            if (blob != null) {
+
+                blob.references++;
+                return blob;
+            }
+
+            val created = new Blob(d, factory.get());
+            values.put(created.value, created);
+            residentBytes.add(lengthOf.applyAsLong(created.value));
+            return created;
+        }).value;
+    }
+
+    /**
+     * Drops a reference to the value, the value is dropped along with the last one
+     *
+     * @return whether the value is held by the table
+     */
+    public boolean release(Supplier<InputStream> value) {
+
+        val blob = values.get(value);
+
+        if (blob == null) {
+
+            return false;
+        }
+
+        blobs.computeIfPresent(blob.digest, (d, current) -> {
+
+            if (current != blob || --current.references > 0) {
+
+                return current;
+            }
+
+            values.remove(current.value);
+            residentBytes.add(-lengthOf.applyAsLong(current.value));
+            return null;
+        });
+
+        return true;
+    }
+
+    /**
+     * @return number of distinct values held
+     */
+    public long size() {
+
+        return blobs.size();
+    }
+
+    /**
+     * @return bytes of distinct values held in memory
+     */
+    public long residentBytes() {
+
+        return residentBytes.sum();
+    }
+
+    private static MessageDigest messageDigest() {
+
+        try {
+
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+
+            // every platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    public static final class Digest {
+
+        private final byte[] bytes;
+    }
+
+    private static final class Blob {
+
+        private final Digest digest;
+        private final Supplier<InputStream> value;
+
+        /**
+         * Guarded by the table entry of the digest
+         */
+        private int references = 1;
+
+        private Blob(Digest digest, Supplier<InputStream> value) {
+
+            this.digest = digest;
+            this.value = value;
+        }
+    }
+}
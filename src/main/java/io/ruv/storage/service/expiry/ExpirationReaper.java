@@ -0,0 +1,66 @@
+package io.ruv.storage.service.expiry;
+
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.ExpirationProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes values whose time to live passed in background, once every {@link ExpirationProperties#getTick() tick}.
+ * <p>
+ * Storage unavailable while it is saved or loaded is expired by a following run,
+ * keys due meanwhile are still removed when accessed.
+ */
+@Slf4j
+public class ExpirationReaper implements Closeable {
+
+    private final StorageService storageService;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param scheduler executor running expiration, shut down on close
+     */
+    public ExpirationReaper(StorageService storageService, ExpirationProperties properties,
+                            ScheduledExecutorService scheduler) {
+
+        this.storageService = storageService;
+        this.scheduler = scheduler;
+
+        val tick = properties.getTick().toNanos();
+        scheduler.scheduleWithFixedDelay(this::expireQuietly, tick, tick, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops expiration, a run already started is not interrupted
+     */
+    @Override
+    public void close() {
+
+        scheduler.shutdown();
+    }
+
+    private void expireQuietly() {
+
+        try {
+
+            val expired = storageService.expire();
+
+            if (expired > 0) {
+
+                log.debug("Expired {} keys.", expired);
+            }
+        } catch (ServiceUnavailableException e) {
+
+            log.debug("Expiration postponed, storage is being saved or loaded.");
+        } catch (RuntimeException e) {
+
+            // an exception would cancel following runs
+            log.error("Expiration failed.", e);
+        }
+    }
+}
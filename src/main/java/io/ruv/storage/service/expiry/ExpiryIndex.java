@@ -0,0 +1,102 @@
+package io.ruv.storage.service.expiry;
+
+import io.ruv.storage.util.properties.ExpirationProperties;
+import lombok.val;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deadlines of keys stored with time to live. Lookups by key serve lazy checks on access,
+ * the {@link TimerWheel} hands over keys due for removal without scanning keys.
+ * <p>
+ * Keys must be scheduled, cancelled and removed by the modifications of the storage while they hold the key.
+ */
+public final class ExpiryIndex {
+
+    private final ConcurrentHashMap<String, TimerWheel.Timer> timers = new ConcurrentHashMap<>();
+    private final TimerWheel wheel;
+
+    public ExpiryIndex(ExpirationProperties properties) {
+
+        this.wheel = new TimerWheel(properties.getTick().toMillis(), System.currentTimeMillis());
+    }
+
+    /**
+     * Sets deadline of the key, replacing its previous one
+     *
+     * @param deadline deadline in epoch milliseconds
+     */
+    public void schedule(String key, long deadline) {
+
+        val previous = timers.put(key, wheel.schedule(key, deadline));
+
+        if (previous != null) {
+
+            wheel.cancel(previous);
+        }
+    }
+
+    /**
+     * Clears deadline of the key, if any
+     */
+    public void cancel(String key) {
+
+        val timer = timers.remove(key);
+
+        if (timer != null) {
+
+            wheel.cancel(timer);
+        }
+    }
+
+    /**
+     * @return deadline of the key in epoch milliseconds, 0 when it has none
+     */
+    public long deadline(String key) {
+
+        val timer = timers.get(key);
+        return timer != null ? timer.getDeadline() : 0;
+    }
+
+    /**
+     * @return timer of the key when its deadline passed by provided time, {@code null} otherwise
+     */
+    public TimerWheel.Timer due(String key, long now) {
+
+        val timer = timers.get(key);
+        return timer != null && timer.isDue(now) ? timer : null;
+    }
+
+    /**
+     * Clears deadline of the key unless it was replaced since provided timer fired
+     *
+     * @return whether provided timer was the deadline of the key
+     */
+    public boolean remove(String key, TimerWheel.Timer timer) {
+
+        if (!timers.remove(key, timer)) {
+
+            return false;
+        }
+
+        wheel.cancel(timer);
+        return true;
+    }
+
+    /**
+     * @return timers due by provided time, candidates to {@link #remove(String, TimerWheel.Timer) remove}
+     */
+    public List<TimerWheel.Timer> advance(long now) {
+
+        return wheel.advance(now);
+    }
+
+    /**
+     * @return number of keys with a deadline
+     */
+    public int size() {
+
+        return timers.size();
+    }
+}
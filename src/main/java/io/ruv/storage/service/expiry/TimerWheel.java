@@ -0,0 +1,220 @@
+package io.ruv.storage.service.expiry;
+
+import lombok.Getter;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel of key deadlines, scheduling and cancelling a timer take constant time
+ * and advancing the wheel touches only timers due or moved to a finer level.
+ * <p>
+ * Level {@code n} has {@link #BUCKETS} buckets of {@code BUCKETS^n} ticks each. A timer is placed on the finest
+ * level whose span covers its distance from the current tick. Once the wheel turns over a bucket of a coarser
+ * level, timers of that bucket are scheduled again, now closer to the current tick, until they reach level 0
+ * and expire with their tick. Timers beyond the span of the coarsest level wait in its farthest bucket.
+ * <p>
+ * Wheel is guarded by its own monitor, callers may hold locks of their own while scheduling or cancelling.
+ */
+public final class TimerWheel {
+
+    static final int BITS = 6;
+    static final int BUCKETS = 1 << BITS;
+    static final int LEVELS = 4;
+
+    private static final long MASK = BUCKETS - 1;
+
+    /**
+     * Timer of a key, linked into the bucket it waits in
+     */
+    public static final class Timer {
+
+        @Getter
+        private final String key;
+
+        /**
+         * Deadline in epoch milliseconds
+         */
+        @Getter
+        private final long deadline;
+
+        private final long tick;
+
+        private Timer previous;
+        private Timer next;
+
+        Timer(String key, long deadline, long tick) {
+
+            this.key = key;
+            this.deadline = deadline;
+            this.tick = tick;
+        }
+
+        /**
+         * @return whether deadline passed by provided time in epoch milliseconds
+         */
+        public boolean isDue(long now) {
+
+            return deadline <= now;
+        }
+    }
+
+    private final long tickMillis;
+
+    /**
+     * Sentinels of circular bucket lists by level
+     */
+    private final Timer[][] buckets = new Timer[LEVELS][BUCKETS];
+
+    /**
+     * Next tick to process, timers of earlier ticks have fired
+     */
+    private long currentTick;
+
+    private int size;
+
+    /**
+     * @param tickMillis resolution of the wheel in milliseconds
+     * @param now        current time in epoch milliseconds
+     */
+    public TimerWheel(long tickMillis, long now) {
+
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+
+        for (val level : buckets) {
+
+            for (var i = 0; i < BUCKETS; i++) {
+
+                val sentinel = new Timer(null, 0, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                level[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * @param deadline deadline in epoch milliseconds
+     * @return scheduled timer to cancel if the key goes away before it fires
+     */
+    public synchronized Timer schedule(String key, long deadline) {
+
+        // rounded up, a timer never fires before its deadline
+        val timer = new Timer(key, deadline, Math.floorDiv(deadline + tickMillis - 1, tickMillis));
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * @return whether timer was still scheduled
+     */
+    public synchronized boolean cancel(Timer timer) {
+
+        if (timer.next == null) {
+
+            return false;
+        }
+
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Turns the wheel up to provided time
+     *
+     * @param now current time in epoch milliseconds
+     * @return timers due by provided time, no longer scheduled
+     */
+    public synchronized List<Timer> advance(long now) {
+
+        val target = now / tickMillis;
+        val due = new ArrayList<Timer>();
+
+        for (; currentTick <= target; currentTick++) {
+
+            cascade();
+
+            val sentinel = buckets[0][(int) (currentTick & MASK)];
+
+            while (sentinel.next != sentinel) {
+
+                val timer = sentinel.next;
+                unlink(timer);
+                due.add(timer);
+            }
+        }
+
+        size -= due.size();
+        return due;
+    }
+
+    /**
+     * @return number of scheduled timers
+     */
+    public synchronized int size() {
+
+        return size;
+    }
+
+    /**
+     * Moves timers of coarser buckets the wheel turned over to finer levels
+     */
+    private void cascade() {
+
+        for (var level = 1; level < LEVELS; level++) {
+
+            if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) {
+
+                return;
+            }
+
+            val sentinel = buckets[level][(int) ((currentTick >>> (BITS * level)) & MASK)];
+            var timer = sentinel.next;
+            sentinel.next = sentinel;
+            sentinel.previous = sentinel;
+
+            while (timer != sentinel) {
+
+                val next = timer.next;
+                place(timer);
+                timer = next;
+            }
+        }
+    }
+
+    private void place(Timer timer) {
+
+        val distance = timer.tick - currentTick;
+        var tick = Math.max(timer.tick, currentTick);
+        var level = 0;
+
+        while (level < LEVELS - 1 && distance >= 1L << (BITS * (level + 1))) {
+
+            level++;
+        }
+
+        if (distance >= 1L << (BITS * LEVELS)) {
+
+            // beyond the span of the wheel, waits in the farthest bucket
+            tick = currentTick + (1L << (BITS * LEVELS)) - 1;
+        }
+
+        val sentinel = buckets[level][(int) ((tick >>> (BITS * level)) & MASK)];
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+    }
+
+    private static void unlink(Timer timer) {
+
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+    }
+}
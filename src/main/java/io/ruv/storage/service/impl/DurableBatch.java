@@ -0,0 +1,38 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.persistence.PersistenceStrategy;
+
+/**
+ * Persistence sequences of batch operations, awaited at once when the batch is closed.
+ * Operations applied before a failure of the batch become durable as well.
+ */
+final class DurableBatch implements AutoCloseable {
+
+    private final PersistenceStrategy persistenceStrategy;
+    private long sequence;
+
+    DurableBatch(PersistenceStrategy persistenceStrategy) {
+
+        this.persistenceStrategy = persistenceStrategy;
+    }
+
+    /**
+     * @param sequence persistence sequence of an applied operation
+     */
+    void add(long sequence) {
+
+        this.sequence = Math.max(this.sequence, sequence);
+    }
+
+    /**
+     * Blocks until operations applied so far survive a crash
+     *
+     * @throws PersistenceException when underlying persistence mechanism fails
+     */
+    @Override
+    public void close() throws PersistenceException {
+
+        persistenceStrategy.awaitDurable(sequence);
+    }
+}
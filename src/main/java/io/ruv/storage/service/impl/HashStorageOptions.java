@@ -0,0 +1,37 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.util.properties.CompressionProperties;
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import io.ruv.storage.util.properties.ExpirationProperties;
+import io.ruv.storage.util.properties.TieredStorageProperties;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Optional features of {@link HashStorageService}, each one disabled unless its properties enable it
+ */
+@Value
+@Builder(toBuilder = true)
+public class HashStorageOptions {
+
+    /**
+     * Memory budget, values beyond it are spilled to files
+     */
+    @Builder.Default
+    TieredStorageProperties tiered = new TieredStorageProperties();
+
+    @Builder.Default
+    CompressionProperties compression = new CompressionProperties();
+
+    /**
+     * Sharing of identical values between keys, does not apply to tiered storage
+     */
+    @Builder.Default
+    DeduplicationProperties deduplication = new DeduplicationProperties();
+
+    /**
+     * Time to live of values
+     */
+    @Builder.Default
+    ExpirationProperties expiration = new ExpirationProperties();
+}
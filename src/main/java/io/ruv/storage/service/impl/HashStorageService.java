@@ -1,31 +1,90 @@
 package io.ruv.storage.service.impl;
 
+import io.ruv.storage.persistence.ExpiringValue;
 import io.ruv.storage.persistence.PersistenceException;
 import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.service.BatchStatus;
 import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.ExpirationNotSupportedException;
+import io.ruv.storage.service.ExpirationStatus;
+import io.ruv.storage.service.KeyRange;
 import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
 import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.TierStatus;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.VersionMismatchException;
+import io.ruv.storage.service.dedup.BlobTable;
+import io.ruv.storage.service.expiry.ExpiryIndex;
+import io.ruv.storage.service.expiry.TimerWheel;
+import io.ruv.storage.service.tier.MemoryTier;
+import io.ruv.storage.util.compression.CompressedValue;
+import io.ruv.storage.util.compression.Compressor;
+import io.ruv.storage.util.exception.InitializationException;
 import io.ruv.storage.util.exception.ServiceUnavailableException;
-import lombok.RequiredArgsConstructor;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.ExpirationProperties;
+import io.ruv.storage.util.properties.StorageProperties;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 
 /**
  * Implementation of {@link StorageService} with {@link ConcurrentHashMap} as a backing storage
  */
 @Slf4j
-@RequiredArgsConstructor
 public class HashStorageService implements StorageService {
 
     private final PersistenceStrategy persistenceStrategy;
+    private final StorageProperties.SnapshotMode snapshotMode;
+    private final boolean incrementalSave;
+    private final long maxValueSize;
+
+    /**
+     * Deadline of values stored without time to live
+     */
+    private static final long NO_DEADLINE = ExpiringValue.NO_DEADLINE;
+
+    /**
+     * Versions start at startup time shifted by this many bits, a later run does not repeat versions
+     * unless this one assigned more than a million versions per millisecond since startup
+     */
+    private static final int VERSION_SEED_SHIFT = 20;
 
     private final ConcurrentHashMap<String, Supplier<InputStream>> storage = new ConcurrentHashMap<>();
 
+    /**
+     * Versions of stored values, negated while a new value of the key is being published
+     *
+     * @see #retrieveValue(String)
+     */
+    private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong versionSequence = new AtomicLong(System.currentTimeMillis() << VERSION_SEED_SHIFT);
+
+    /**
+     * Stored keys in order, for range scans
+     */
+    private final KeyIndex index = new KeyIndex();
+
     private final Runnable noop = () -> {
     };
 
@@ -35,37 +94,349 @@ public class HashStorageService implements StorageService {
      */
     private final AtomicReference<Runnable> preAccessAction = new AtomicReference<>(noop);
 
+    /**
+     * Overlay of a concurrent save in progress, captures values replaced while it runs
+     */
+    private final AtomicReference<SnapshotOverlay> overlay = new AtomicReference<>();
+
+    /**
+     * Held shared by a modification from logging it until it is captured and marked dirty, held exclusively
+     * while a save begins its snapshot, so that a modification is either logged after the snapshot begins
+     * or part of the snapshot
+     */
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean saving = new AtomicBoolean();
+
+    private final SnapshotTracker snapshotTracker = new SnapshotTracker();
+
+    /**
+     * Keys modified since the last successful save, mapped to the number of their last modification.
+     * Tracked only when saves are incremental.
+     */
+    private final ConcurrentHashMap<String, Long> dirty = new ConcurrentHashMap<>();
+
+    private final AtomicLong modifications = new AtomicLong();
+
+    /**
+     * Stores and deletes applied, tracked regardless of incremental saves
+     */
+    private final LongAdder applied = new LongAdder();
+
+    /**
+     * Bytes of values held as buffers, tracked only when memory is not bounded
+     */
+    private final LongAdder residentBytes = new LongAdder();
+
+    /**
+     * Keeps values within memory budget, {@code null} when memory is not bounded
+     */
+    private final MemoryTier tier;
+
+    /**
+     * Compresses stored values, {@code null} when compression is disabled
+     */
+    private final Compressor compressor;
+
+    /**
+     * Shares identical values between keys, {@code null} when deduplication is disabled
+     */
+    private final BlobTable blobs;
+
+    /**
+     * Deadlines of keys stored with time to live, {@code null} when expiration is disabled
+     */
+    private final ExpiryIndex expiry;
+
+    private final LongAdder reaped = new LongAdder();
+    private final LongAdder lazilyExpired = new LongAdder();
+
+    public HashStorageService(PersistenceStrategy persistenceStrategy) {
+
+        this(persistenceStrategy, new StorageProperties());
+    }
+
+    public HashStorageService(PersistenceStrategy persistenceStrategy, StorageProperties properties) {
+
+        this(persistenceStrategy, properties, HashStorageOptions.builder().build());
+    }
+
+    /**
+     * @throws InitializationException when deduplication is enabled along with bounded memory
+     */
+    public HashStorageService(PersistenceStrategy persistenceStrategy, StorageProperties properties,
+                              HashStorageOptions options) throws InitializationException {
+
+        if (options.getTiered().isEnabled() && options.getDeduplication().isEnabled()) {
+
+            throw new InitializationException("Deduplication does not apply to tiered storage.");
+        }
+
+        this.persistenceStrategy = persistenceStrategy;
+        this.snapshotMode = properties.getSnapshotMode();
+        this.incrementalSave = properties.isIncrementalSave();
+        this.maxValueSize = properties.getMaxValueSize().toBytes();
+        this.tier = options.getTiered().isEnabled() ? new MemoryTier(storage, saving::get, options.getTiered()) : null;
+        this.compressor = options.getCompression().isEnabled() ? new Compressor(options.getCompression()) : null;
+        this.blobs = options.getDeduplication().isEnabled()
+                ? new BlobTable(options.getDeduplication(), HashStorageService::lengthOf) : null;
+        this.expiry = options.getExpiration().isEnabled() ? new ExpiryIndex(options.getExpiration()) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(String key, byte[] value) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        ValueReader.checkLength(key, value.length, maxValueSize);
+        storeBuffers(key, NO_DEADLINE, NO_VERSION, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Value is read into heap once, into an exactly sized array when its length is known.
+     */
+    @Override
+    public void store(String key, InputStream value, long length) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        store(key, value, length, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Value is read into heap once, into an exactly sized array when its length is known.
+     * Time to live is accepted when {@link ExpirationProperties#isEnabled() expiration} is enabled.
+     */
+    @Override
+    public void store(String key, InputStream value, long length, Duration ttl)
+            throws DuplicateKeyException, ValueTooLargeException, ExpirationNotSupportedException, PersistenceException {
+
+        compareAndStore(key, value, length, ttl, NO_VERSION);
+    }
+
     /**
      * {@inheritDoc}
+     * <p>
+     * Value is read into heap once, into an exactly sized array when its length is known.
+     * Expected version is checked before the value is read and once again when it is stored.
      */
     @Override
-    public void store(String key, byte[] value) throws DuplicateKeyException {
+    public long compareAndStore(String key, InputStream value, long length, Duration ttl, long expectedVersion)
+            throws DuplicateKeyException, VersionMismatchException, ValueTooLargeException, ExpirationNotSupportedException,
+            PersistenceException {
 
         preAccessAction.get().run();
 
-        Supplier<InputStream> wrapper = () -> new ByteArrayInputStream(value);
+        if (ttl != null && expiry == null) {
+
+            throw ExpirationNotSupportedException.of(key);
+        }
+
+        // fail before reading the whole value
+        ValueReader.checkLength(key, length, maxValueSize);
 
-        if (this.storage.putIfAbsent(key, wrapper) != null) {
+        checkVersion(key, lookup(key) != null, currentVersion(key), expectedVersion);
 
-            throw DuplicateKeyException.of(key);
+        try {
+
+            return storeBuffers(key, ttl != null ? System.currentTimeMillis() + ttl.toMillis() : NO_DEADLINE,
+                    expectedVersion, ValueReader.read(key, value, length, maxValueSize));
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
         }
+    }
+
+    /**
+     * @return version of stored value
+     */
+    private long storeBuffers(String key, long deadline, long expectedVersion, ByteBuffer... value) {
+
+        val version = versionSequence.incrementAndGet();
+        persistenceStrategy.awaitDurable(applyStore(key, deadline, expectedVersion, version, value));
         log.debug("Store on key '{}'.", key);
+        return version;
+    }
+
+    /**
+     * @param stored  whether key is stored
+     * @param current version the key holds
+     * @throws DuplicateKeyException    when key that must not be stored is
+     * @throws VersionMismatchException when key that must be stored is not or holds another version
+     */
+    private static void checkVersion(String key, boolean stored, long current, long expectedVersion) {
+
+        if (expectedVersion == NO_VERSION) {
+
+            if (stored) {
+
+                throw DuplicateKeyException.of(key);
+            }
+        } else if (!stored || expectedVersion != ANY_VERSION && expectedVersion != current) {
+
+            throw VersionMismatchException.of(key);
+        }
+    }
+
+    /**
+     * @return version the key holds, {@link #NO_VERSION} when it is not stored
+     */
+    private long currentVersion(String key) {
+
+        val version = versions.get(key);
+        return version != null ? Math.abs(version) : NO_VERSION;
+    }
+
+    /**
+     * Stores value without waiting for it to become durable, compressed when compression pays off
+     * and shared with keys holding the same content when deduplicated
+     *
+     * @param deadline        epoch milliseconds to expire value at, {@link #NO_DEADLINE} to keep it until deleted
+     * @param expectedVersion version the key must hold, {@link #NO_VERSION} when it must not be stored
+     * @param version         version of stored value
+     * @return persistence sequence to await
+     */
+    private long applyStore(String key, long deadline, long expectedVersion, long version, ByteBuffer... value) {
+
+        // an expired value does not hold the key
+        expireIfDue(key);
+
+        // hashed before taking the lock of the key
+        val digest = blobs != null && blobs.accepts(ByteBufferSupplier.length(value)) ? blobs.digest(value) : null;
+        val wrapper = new AtomicReference<Supplier<InputStream>>();
+        val replaced = new AtomicReference<Supplier<InputStream>>();
+        val sequence = new AtomicLong();
+
+        if (digest == null) {
+
+            wrapper.set(wrap(value));
+        }
+
+        snapshotLock.readLock().lock();
+
+        try {
+
+            storage.compute(key, (k, existing) -> {
+
+                checkVersion(k, existing != null, currentVersion(k), expectedVersion);
+
+                sequence.set(deadline != NO_DEADLINE
+                        ? persistenceStrategy.logStore(k, deadline, value)
+                        : persistenceStrategy.logStore(k, value));
+
+                if (digest != null) {
+
+                    wrapper.set(blobs.acquire(digest, () -> wrap(value)));
+                }
+
+                captureForSnapshot(k, existing);
+                index.add(k);
+
+                if (deadline != NO_DEADLINE) {
+
+                    expiry.schedule(k, deadline);
+                } else if (existing != null && expiry != null) {
+
+                    expiry.cancel(k);
+                }
+
+                versions.put(k, -version);
+                replaced.set(existing);
+                return wrapper.get();
+            });
+
+            // published, unless another modification of the key followed
+            versions.replace(key, -version, version);
+            markDirty(key);
+        } finally {
+
+            snapshotLock.readLock().unlock();
+        }
+
+        if (tier != null) {
+
+            if (replaced.get() != null) {
+
+                tier.removed(key, replaced.get());
+            }
+
+            tier.admitted(key, wrapper.get());
+        } else {
+
+            if (replaced.get() != null) {
+
+                release(replaced.get());
+            }
+
+            if (digest == null) {
+
+                residentBytes.add(lengthOf(wrapper.get()));
+            }
+        }
+
+        return sequence.get();
+    }
+
+    private Supplier<InputStream> wrap(ByteBuffer... value) {
+
+        return compressor != null ? compressor.compress(value) : new ByteBufferSupplier(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Values are stored as they are and all of them become durable at once.
+     */
+    @Override
+    public List<BatchStatus> storeAll(List<? extends Map.Entry<String, byte[]>> entries) throws ValueTooLargeException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        entries.forEach(entry -> ValueReader.checkLength(entry.getKey(), entry.getValue().length, maxValueSize));
+
+        val statuses = new ArrayList<BatchStatus>(entries.size());
+
+        try (val batch = new DurableBatch(persistenceStrategy)) {
+
+            for (val entry : entries) {
+
+                try {
+
+                    batch.add(applyStore(entry.getKey(), NO_DEADLINE, NO_VERSION,
+                            versionSequence.incrementAndGet(), ByteBuffer.wrap(entry.getValue())));
+                    statuses.add(BatchStatus.OK);
+                } catch (DuplicateKeyException e) {
+
+                    statuses.add(BatchStatus.DUPLICATE_KEY);
+                }
+            }
+        }
+
+        log.debug("Store on {} keys.", entries.size());
+        return statuses;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Compressed values are decompressed as the stream is read.
      */
     @Override
     public InputStream retrieve(String key) throws MissingKeyException {
 
         preAccessAction.get().run();
 
-        Supplier<InputStream> wrapper = storage.get(key);
+        Supplier<InputStream> wrapper = lookup(key);
 
         if (wrapper != null) {
 
             log.debug("Retrieve on key '{}'.", key);
-            return wrapper.get();
+            return resident(key, wrapper).get();
         } else {
 
             throw MissingKeyException.of(key);
@@ -74,18 +445,150 @@ public class HashStorageService implements StorageService {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Values stored or loaded as buffers are exposed without copying, compressed values are decompressed to heap.
+     * <p>
+     * Version is read around the value without holding the key. A modification negates version of the key
+     * before it publishes the new value, so the same positive version read on both sides belongs to the value.
+     * Otherwise value and its version are read holding the key.
      */
     @Override
-    public void delete(String key) throws MissingKeyException {
+    public StoredValue retrieveValue(String key) throws MissingKeyException {
 
         preAccessAction.get().run();
 
-        Supplier<InputStream> wrapper = storage.remove(key);
+        expireIfDue(key);
+
+        val before = versions.get(key);
+        var wrapper = storage.get(key);
+        val after = versions.get(key);
+        var version = before != null ? before : NO_VERSION;
+
+        if (wrapper != null && (version <= 0 || !before.equals(after))) {
+
+            val current = new AtomicReference<Supplier<InputStream>>();
+            val currentVersion = new AtomicLong();
+
+            storage.computeIfPresent(key, (k, existing) -> {
+
+                current.set(existing);
+                currentVersion.set(currentVersion(k));
+                return existing;
+            });
+
+            wrapper = current.get();
+            version = currentVersion.get();
+        }
 
         if (wrapper == null) {
 
             throw MissingKeyException.of(key);
         }
+
+        log.debug("Retrieve on key '{}'.", key);
+        return toStoredValue(resident(key, wrapper)).withVersion(version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keepsVersions() {
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long version(String key) throws MissingKeyException {
+
+        preAccessAction.get().run();
+
+        val version = lookup(key) != null ? currentVersion(key) : NO_VERSION;
+
+        if (version == NO_VERSION) {
+
+            throw MissingKeyException.of(key);
+        }
+
+        return version;
+    }
+
+    /**
+     * Faults value in when it is spilled from memory
+     */
+    private Supplier<InputStream> resident(String key, Supplier<InputStream> wrapper) {
+
+        return tier != null ? tier.accessed(key, wrapper) : wrapper;
+    }
+
+    private StoredValue toStoredValue(Supplier<InputStream> wrapper) {
+
+        if (wrapper instanceof ByteBufferSupplier) {
+
+            return StoredValue.of(((ByteBufferSupplier) wrapper).buffers());
+        }
+
+        try (val stream = wrapper.get()) {
+
+            return StoredValue.of(ByteBuffer.wrap(stream.readAllBytes()));
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<StoredValue> retrieveAll(List<String> keys) {
+
+        preAccessAction.get().run();
+
+        val values = new ArrayList<StoredValue>(keys.size());
+
+        for (val key : keys) {
+
+            Supplier<InputStream> wrapper = lookup(key);
+            values.add(wrapper != null ? toStoredValue(resident(key, wrapper)) : null);
+        }
+
+        log.debug("Retrieve on {} keys.", keys.size());
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are listed from an ordered index kept alongside the map.
+     */
+    @Override
+    public ScanPage scan(KeyRange range, int limit, boolean values) {
+
+        preAccessAction.get().run();
+
+        val page = index.scan(range, limit, key -> lookup(key) != null, values ? key -> {
+
+            Supplier<InputStream> wrapper = lookup(key);
+            return wrapper != null ? toStoredValue(resident(key, wrapper)) : null;
+        } : null);
+
+        log.debug("Scan on {} keys.", page.getKeys().size());
+        return page;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws MissingKeyException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        persistenceStrategy.awaitDurable(applyDelete(key, ANY_VERSION));
         log.debug("Delete on key '{}'.", key);
     }
 
@@ -93,22 +596,611 @@ public class HashStorageService implements StorageService {
      * {@inheritDoc}
      */
     @Override
-    public void save() throws PersistenceException, ServiceUnavailableException {
+    public void compareAndDelete(String key, long expectedVersion) throws VersionMismatchException, PersistenceException {
 
-        preAccessAction.set(this::unavailableWhileSaving);
-        persistenceStrategy.persist(storage.entrySet().stream());
-        preAccessAction.set(noop);
+        preAccessAction.get().run();
+
+        try {
+
+            persistenceStrategy.awaitDurable(applyDelete(key, expectedVersion));
+        } catch (MissingKeyException e) {
+
+            throw VersionMismatchException.of(key);
+        }
+
+        log.debug("Delete on key '{}'.", key);
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * All deletions become durable at once.
      */
     @Override
-    public void load() throws PersistenceException, ServiceUnavailableException {
+    public List<BatchStatus> deleteAll(List<String> keys) throws PersistenceException {
 
-        preAccessAction.set(this::unavailableWhileLoading);
-        persistenceStrategy.load(storage::put);
-        preAccessAction.set(noop);
+        preAccessAction.get().run();
+
+        val statuses = new ArrayList<BatchStatus>(keys.size());
+
+        try (val batch = new DurableBatch(persistenceStrategy)) {
+
+            for (val key : keys) {
+
+                try {
+
+                    batch.add(applyDelete(key, ANY_VERSION));
+                    statuses.add(BatchStatus.OK);
+                } catch (MissingKeyException e) {
+
+                    statuses.add(BatchStatus.MISSING_KEY);
+                }
+            }
+        }
+
+        log.debug("Delete on {} keys.", keys.size());
+        return statuses;
+    }
+
+    /**
+     * Removes value without waiting for removal to become durable
+     *
+     * @param expectedVersion version the key must hold, {@link #ANY_VERSION} to remove its value regardless
+     * @return persistence sequence to await
+     */
+    private long applyDelete(String key, long expectedVersion) {
+
+        // an expired value is missing already
+        expireIfDue(key);
+
+        val sequence = new AtomicLong();
+        val removed = new AtomicReference<Supplier<InputStream>>();
+
+        snapshotLock.readLock().lock();
+
+        try {
+
+            storage.compute(key, (k, existing) -> {
+
+                if (existing == null) {
+
+                    throw MissingKeyException.of(k);
+                }
+
+                checkVersion(k, true, currentVersion(k), expectedVersion);
+
+                sequence.set(persistenceStrategy.logDelete(k));
+                captureForSnapshot(k, existing);
+                index.remove(k);
+                versions.remove(k);
+
+                if (expiry != null) {
+
+                    expiry.cancel(k);
+                }
+
+                removed.set(existing);
+                return null;
+            });
+
+            markDirty(key);
+        } finally {
+
+            snapshotLock.readLock().unlock();
+        }
+
+        if (tier != null) {
+
+            tier.removed(key, removed.get());
+        } else {
+
+            release(removed.get());
+        }
+
+        return sequence.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * In {@link StorageProperties.SnapshotMode#CONCURRENT concurrent} snapshot mode access is served
+     * while a point-in-time view of the storage is persisted.
+     * <p>
+     * With {@link StorageProperties#isIncrementalSave() incremental saves} only keys modified since
+     * the last successful save are persisted, whenever persistence strategy can apply them on top of it.
+     */
+    @Override
+    public void save() throws PersistenceException, ServiceUnavailableException {
+
+        if (!saving.compareAndSet(false, true)) {
+
+            unavailableWhileSaving();
+        }
+
+        try {
+
+            if (snapshotMode == StorageProperties.SnapshotMode.CONCURRENT) {
+
+                saveConcurrently();
+            } else {
+
+                saveBlocking();
+            }
+        } finally {
+
+            saving.set(false);
+
+            if (tier != null) {
+
+                tier.drainRetired();
+            }
+        }
+    }
+
+    private void saveBlocking() {
+
+        preAccessAction.set(this::unavailableWhileSaving);
+
+        try {
+
+            val changes = beginSnapshot(null);
+            val now = System.currentTimeMillis();
+
+            if (incrementalSave && persistenceStrategy.canPersistDelta()) {
+
+                snapshotTracker.start(changes.size());
+
+                // expired keys are persisted as deleted
+                persistenceStrategy.persistDelta(changes.keySet().stream()
+                        .map(key -> new AbstractMap.SimpleImmutableEntry<>(key, isLive(key, now) ? withDeadline(key, storage.get(key)) : null))
+                        .peek(entry -> snapshotTracker.progress()));
+            } else {
+
+                snapshotTracker.start(storage.size());
+
+                persistenceStrategy.persist(storage.entrySet().stream()
+                        .filter(entry -> isLive(entry.getKey(), now))
+                        .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), withDeadline(entry.getKey(), entry.getValue())))
+                        .peek(entry -> snapshotTracker.progress()));
+            }
+
+            snapshotTracker.finish(true);
+            changes.forEach(dirty::remove);
+        } catch (RuntimeException e) {
+
+            snapshotTracker.finish(false);
+            throw e;
+        } finally {
+
+            preAccessAction.set(noop);
+        }
+    }
+
+    private void saveConcurrently() {
+
+        preAccessAction.get().run();
+
+        val snapshot = new SnapshotOverlay();
+
+        try {
+
+            val changes = beginSnapshot(snapshot);
+            val now = System.currentTimeMillis();
+
+            if (incrementalSave && persistenceStrategy.canPersistDelta()) {
+
+                snapshotTracker.start(changes.size());
+
+                // expired keys are persisted as deleted
+                persistenceStrategy.persistDelta(changes.keySet().stream()
+                        .map(key -> new AbstractMap.SimpleImmutableEntry<>(key,
+                                isLive(key, now) ? withDeadline(key, snapshot.valueOf(key, storage)) : null))
+                        .peek(entry -> snapshotTracker.progress()));
+            } else {
+
+                snapshotTracker.start(storage.size());
+
+                persistenceStrategy.persist(snapshot.view(storage)
+                        .filter(entry -> isLive(entry.getKey(), now))
+                        .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), withDeadline(entry.getKey(), entry.getValue())))
+                        .peek(entry -> snapshotTracker.progress()));
+            }
+
+            snapshotTracker.finish(true);
+            changes.forEach(dirty::remove);
+        } catch (RuntimeException e) {
+
+            snapshotTracker.finish(false);
+            throw e;
+        } finally {
+
+            overlay.set(null);
+        }
+    }
+
+    /**
+     * Begins snapshot of persistence strategy while no modification is between being logged and being captured
+     *
+     * @param snapshot overlay to install, {@code null} when saving blocks access
+     * @return dirty keys to persist as changes
+     */
+    private Map<String, Long> beginSnapshot(SnapshotOverlay snapshot) {
+
+        snapshotLock.writeLock().lock();
+
+        try {
+
+            persistenceStrategy.beginSnapshot();
+
+            // dirty keys are taken before the overlay is installed, keys modified later stay dirty
+            val changes = copyDirty();
+
+            if (snapshot != null) {
+
+                overlay.set(snapshot);
+            }
+
+            return changes;
+        } finally {
+
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void load() throws PersistenceException, ServiceUnavailableException {
+
+        if (saving.get()) {
+
+            unavailableWhileSaving();
+        }
+
+        preAccessAction.set(this::unavailableWhileLoading);
+
+        try {
+
+            persistenceStrategy.load(tier != null ? this::loadTiered : this::loadResident);
+        } finally {
+
+            preAccessAction.set(noop);
+        }
+    }
+
+    /**
+     * Loaded values are hashed by their content when deduplicated, duplicates loaded later are dropped
+     * in favour of the value loaded first
+     */
+    private void loadResident(String key, Supplier<InputStream> persisted) {
+
+        val deadline = ExpiringValue.deadlineOf(persisted);
+
+        if (expiredWhilePersisted(deadline)) {
+
+            return;
+        }
+
+        val value = ExpiringValue.unwrap(persisted);
+        val shared = blobs != null && blobs.accepts(contentLength(value));
+        val loaded = shared ? blobs.acquire(blobs.digest(value), () -> value) : value;
+        versions.put(key, versionSequence.incrementAndGet());
+        val previous = storage.put(key, loaded);
+        index.add(key);
+        restoreDeadline(key, deadline);
+
+        if (!shared) {
+
+            residentBytes.add(lengthOf(loaded));
+        }
+
+        if (previous != null) {
+
+            release(previous);
+        }
+    }
+
+    /**
+     * Accounts removal of a resident value
+     */
+    private void release(Supplier<InputStream> value) {
+
+        if (blobs == null || !blobs.release(value)) {
+
+            residentBytes.add(-lengthOf(value));
+        }
+    }
+
+    private void loadTiered(String key, Supplier<InputStream> persisted) {
+
+        val deadline = ExpiringValue.deadlineOf(persisted);
+
+        if (expiredWhilePersisted(deadline)) {
+
+            return;
+        }
+
+        val value = ExpiringValue.unwrap(persisted);
+        versions.put(key, versionSequence.incrementAndGet());
+        val previous = storage.put(key, value);
+        index.add(key);
+        restoreDeadline(key, deadline);
+
+        if (previous != null) {
+
+            tier.removed(key, previous);
+        }
+
+        tier.admitted(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapshotStatus snapshotStatus() {
+
+        return snapshotTracker.status();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys due are handed over by a timer wheel, their removal is logged without waiting for it to become durable.
+     */
+    @Override
+    public long expire() throws ServiceUnavailableException {
+
+        if (expiry == null) {
+
+            return 0;
+        }
+
+        preAccessAction.get().run();
+
+        long count = 0;
+
+        for (val timer : expiry.advance(System.currentTimeMillis())) {
+
+            if (expire(timer.getKey(), timer)) {
+
+                count++;
+            }
+        }
+
+        reaped.add(count);
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExpirationStatus expirationStatus() {
+
+        return expiry != null ? new ExpirationStatus(true, expiry.size(), reaped.sum(), lazilyExpired.sum()) : ExpirationStatus.NONE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TierStatus tierStatus() {
+
+        return tier != null ? tier.status() : TierStatus.NONE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+
+        return storage.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With bounded memory, values resident within the budget are counted. Deduplicated values are counted once.
+     */
+    @Override
+    public long residentBytes() {
+
+        if (tier != null) {
+
+            return tier.status().getResidentBytes();
+        }
+
+        return blobs != null ? residentBytes.sum() + blobs.residentBytes() : residentBytes.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long modifications() {
+
+        return applied.sum();
+    }
+
+    private static long lengthOf(Supplier<InputStream> value) {
+
+        if (value instanceof CompressedValue) {
+
+            return ((CompressedValue) value).getCompressedLength();
+        }
+
+        return value instanceof ByteBufferSupplier ? ((ByteBufferSupplier) value).length() : 0;
+    }
+
+    /**
+     * @return length of value content, regardless of compression
+     */
+    private static long contentLength(Supplier<InputStream> value) {
+
+        return value instanceof CompressedValue ? ((CompressedValue) value).getLength() : lengthOf(value);
+    }
+
+    /**
+     * Looks value up, removing it first when its time to live passed
+     *
+     * @return value of the key, {@code null} when key is not stored
+     */
+    private Supplier<InputStream> lookup(String key) {
+
+        expireIfDue(key);
+        return storage.get(key);
+    }
+
+    /**
+     * Removes value of the key when its time to live passed, so that access finds the key missing
+     * without waiting for background expiration
+     */
+    private void expireIfDue(String key) {
+
+        if (expiry == null) {
+
+            return;
+        }
+
+        val timer = expiry.due(key, System.currentTimeMillis());
+
+        if (timer != null && expire(key, timer)) {
+
+            lazilyExpired.increment();
+        }
+    }
+
+    /**
+     * Removes value of the key unless it was replaced since provided timer fired,
+     * without waiting for removal to become durable
+     *
+     * @return whether value was removed
+     */
+    private boolean expire(String key, TimerWheel.Timer timer) {
+
+        val removed = new AtomicReference<Supplier<InputStream>>();
+
+        snapshotLock.readLock().lock();
+
+        try {
+
+            storage.computeIfPresent(key, (k, existing) -> {
+
+                if (!expiry.remove(k, timer)) {
+
+                    return existing;
+                }
+
+                persistenceStrategy.logDelete(k);
+                captureForSnapshot(k, existing);
+                index.remove(k);
+                versions.remove(k);
+                removed.set(existing);
+                return null;
+            });
+
+            if (removed.get() == null) {
+
+                // value went away by other means, its stale deadline goes as well
+                expiry.remove(key, timer);
+                return false;
+            }
+
+            markDirty(key);
+        } finally {
+
+            snapshotLock.readLock().unlock();
+        }
+
+        if (tier != null) {
+
+            tier.removed(key, removed.get());
+        } else {
+
+            release(removed.get());
+        }
+
+        log.debug("Expire on key '{}'.", key);
+        return true;
+    }
+
+    private boolean isLive(String key, long now) {
+
+        return expiry == null || expiry.due(key, now) == null;
+    }
+
+    /**
+     * @return value to persist, carrying deadline of the key when it has one
+     */
+    private Supplier<InputStream> withDeadline(String key, Supplier<InputStream> value) {
+
+        return expiry != null && value != null ? ExpiringValue.of(value, expiry.deadline(key)) : value;
+    }
+
+    /**
+     * Values loaded past their deadline are dropped, also when expiration is disabled
+     */
+    private static boolean expiredWhilePersisted(long deadline) {
+
+        return deadline != NO_DEADLINE && deadline <= System.currentTimeMillis();
+    }
+
+    /**
+     * Sets deadline persisted with a loaded value, deadline of a value it replaces is cleared when it has none.
+     * Values keep no deadline when expiration is disabled.
+     */
+    private void restoreDeadline(String key, long deadline) {
+
+        if (expiry == null) {
+
+            return;
+        }
+
+        if (deadline != NO_DEADLINE) {
+
+            expiry.schedule(key, deadline);
+        } else {
+
+            expiry.cancel(key);
+        }
+    }
+
+    /**
+     * Copies dirty keys for the following save, copied ones are marked clean once it succeeds
+     * unless modified again in the meantime
+     */
+    private Map<String, Long> copyDirty() {
+
+        return incrementalSave ? Map.copyOf(dirty) : Map.of();
+    }
+
+    /**
+     * Marks key modified, must be called after the modification is visible
+     */
+    private void markDirty(String key) {
+
+        applied.increment();
+
+        if (incrementalSave) {
+
+            dirty.put(key, modifications.incrementAndGet());
+        }
+    }
+
+    /**
+     * Keeps value replaced by a modification for a concurrent save in progress, must be called within the modification
+     */
+    private void captureForSnapshot(String key, Supplier<InputStream> previous) {
+
+        val snapshot = overlay.get();
+
+        if (snapshot != null) {
+
+            snapshot.capture(key, previous);
+        }
     }
 
     private void unavailableWhileSaving() {
@@ -0,0 +1,95 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.StoredValue;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Ordered set of keys kept alongside a hash map, so that key ranges are listed without sorting the map.
+ * <p>
+ * Keys are added and removed by the modifications of the map while they hold the key, so index and map
+ * disagree only about keys being modified at the moment. Scans look every listed key up in the map
+ * and skip keys gone from it.
+ */
+final class KeyIndex {
+
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+    void add(String key) {
+
+        keys.add(key);
+    }
+
+    void remove(String key) {
+
+        keys.remove(key);
+    }
+
+    /**
+     * Lists a page of keys walking the index in place, without copying it
+     *
+     * @param present whether key is still stored, used when values are not requested
+     * @param reader  value of the key, {@code null} when key is no longer stored, or {@code null} when values
+     *                are not requested
+     */
+    ScanPage scan(KeyRange range, int limit, Predicate<String> present, Function<String, StoredValue> reader) {
+
+        if (range.isEmpty()) {
+
+            return ScanPage.EMPTY;
+        }
+
+        val listed = new ArrayList<String>(Math.min(limit, 1024));
+        val values = reader != null ? new ArrayList<StoredValue>(Math.min(limit, 1024)) : null;
+        val candidates = view(range).iterator();
+
+        while (listed.size() < limit && candidates.hasNext()) {
+
+            val key = candidates.next();
+
+            if (reader == null) {
+
+                if (present.test(key)) {
+
+                    listed.add(key);
+                }
+            } else {
+
+                val value = reader.apply(key);
+
+                if (value != null) {
+
+                    listed.add(key);
+                    values.add(value);
+                }
+            }
+        }
+
+        val next = listed.size() == limit && candidates.hasNext() ? listed.get(listed.size() - 1) : null;
+        return new ScanPage(listed, values, next);
+    }
+
+    private NavigableSet<String> view(KeyRange range) {
+
+        NavigableSet<String> view = keys;
+
+        if (range.getFrom() != null) {
+
+            view = view.tailSet(range.getFrom(), true);
+        }
+
+        if (range.getTo() != null) {
+
+            view = view.headSet(range.getTo(), false);
+        }
+
+        return view;
+    }
+}
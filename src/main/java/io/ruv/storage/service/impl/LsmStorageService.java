@@ -0,0 +1,284 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.lsm.LsmTree;
+import io.ruv.storage.util.io.ByteBufferInputStream;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.LsmStorageProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link StorageService} on an embedded {@link LsmTree}, for data sets larger than memory.
+ * <p>
+ * Persistence is native to the tree: every write is logged before it is acknowledged and values live
+ * in table files, so storage is opened from disk on startup. Save flushes memtables to table files,
+ * load has nothing to do. Neither blocks access.
+ */
+@Slf4j
+public class LsmStorageService implements StorageService, Closeable {
+
+    private final LsmTree tree;
+    private final long maxValueSize;
+
+    private final SnapshotTracker snapshotTracker = new SnapshotTracker();
+
+    private final LongAdder modifications = new LongAdder();
+
+    public LsmStorageService(LsmStorageProperties properties) {
+
+        this(properties, new StorageProperties());
+    }
+
+    public LsmStorageService(LsmStorageProperties properties, StorageProperties storageProperties) {
+
+        this(properties, storageProperties, Executors.newSingleThreadExecutor(new CustomizableThreadFactory("lsm-background-")));
+    }
+
+    /**
+     * @param background executor of flushes and compactions
+     */
+    public LsmStorageService(LsmStorageProperties properties, StorageProperties storageProperties, Executor background) {
+
+        this.tree = new LsmTree(properties, background);
+        this.maxValueSize = storageProperties.getMaxValueSize().toBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(String key, byte[] value) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        ValueReader.checkLength(key, value.length, maxValueSize);
+        storeBuffer(key, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Value is read into heap once, a value of unknown length read in chunks is joined into one buffer.
+     */
+    @Override
+    public void store(String key, InputStream value, long length) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        // fail before reading the whole value
+        ValueReader.checkLength(key, length, maxValueSize);
+
+        if (tree.get(key) != null) {
+
+            throw DuplicateKeyException.of(key);
+        }
+
+        ByteBuffer[] buffers;
+
+        try {
+
+            buffers = ValueReader.read(key, value, length, maxValueSize);
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+
+        if (buffers.length == 1) {
+
+            storeBuffer(key, buffers[0]);
+            return;
+        }
+
+        val joined = ByteBuffer.allocate((int) ByteBufferSupplier.length(buffers));
+
+        for (val buffer : buffers) {
+
+            joined.put(buffer);
+        }
+
+        storeBuffer(key, joined.flip());
+    }
+
+    private void storeBuffer(String key, ByteBuffer value) throws DuplicateKeyException, PersistenceException {
+
+        if (!tree.putIfAbsent(key, value)) {
+
+            throw DuplicateKeyException.of(key);
+        }
+
+        modifications.increment();
+        log.debug("Store on key '{}'.", key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream retrieve(String key) throws MissingKeyException, PersistenceException {
+
+        return new ByteBufferInputStream(find(key).duplicate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StoredValue retrieveValue(String key) throws MissingKeyException, PersistenceException {
+
+        return StoredValue.of(find(key).duplicate());
+    }
+
+    private ByteBuffer find(String key) throws MissingKeyException, PersistenceException {
+
+        val value = tree.get(key);
+
+        if (value == null) {
+
+            throw MissingKeyException.of(key);
+        }
+
+        log.debug("Retrieve on key '{}'.", key);
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are kept in order by the tree, a scan reads only table blocks that may hold keys of the range.
+     */
+    @Override
+    public ScanPage scan(KeyRange range, int limit, boolean values) throws PersistenceException {
+
+        if (range.isEmpty()) {
+
+            return ScanPage.EMPTY;
+        }
+
+        // one record more tells whether another page follows
+        val records = tree.scan(range, Math.max(limit, limit + 1));
+        val page = records.subList(0, Math.min(limit, records.size()));
+
+        val keys = page.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+        val found = values ? page.stream().map(record -> StoredValue.of(record.getValue().duplicate())).collect(Collectors.toList()) : null;
+
+        log.debug("Scan on {} keys.", keys.size());
+        return new ScanPage(keys, found, records.size() > limit ? keys.get(keys.size() - 1) : null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws MissingKeyException, PersistenceException {
+
+        if (!tree.remove(key)) {
+
+            throw MissingKeyException.of(key);
+        }
+
+        modifications.increment();
+        log.debug("Delete on key '{}'.", key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flushes memtables to table files, writes are logged durably before that already.
+     */
+    @Override
+    public void save() throws PersistenceException {
+
+        try {
+
+            snapshotTracker.start(tree.keys());
+            tree.flush();
+            snapshotTracker.progress(tree.keys());
+            snapshotTracker.finish(true);
+        } catch (RuntimeException e) {
+
+            snapshotTracker.finish(false);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Storage is opened from disk on startup, there is nothing to load.
+     */
+    @Override
+    public void load() {
+
+        log.debug("Load requested, lsm storage is opened from disk on startup.");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapshotStatus snapshotStatus() {
+
+        return snapshotTracker.status();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+
+        return tree.keys();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys and values of memtables are counted, values of table files are read on demand.
+     */
+    @Override
+    public long residentBytes() {
+
+        return tree.memtableBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long modifications() {
+
+        return modifications.sum();
+    }
+
+    /**
+     * @return number of table files of each level
+     */
+    public int[] tableCounts() {
+
+        return tree.tableCounts();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        tree.close();
+    }
+}
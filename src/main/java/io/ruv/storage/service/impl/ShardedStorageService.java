@@ -0,0 +1,671 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.persistence.PersistenceStrategyFactory;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.ByteRange;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.ExpirationNotSupportedException;
+import io.ruv.storage.service.ExpirationStatus;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.RangeNotSatisfiableException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.VersionMismatchException;
+import io.ruv.storage.util.exception.InitializationException;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.ShardedStorageProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import io.ruv.storage.util.properties.TieredStorageProperties;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link StorageService} partitioning the keyspace into a fixed number of
+ * {@link HashStorageService hash storage} shards by key hash.
+ * <p>
+ * Every shard has its own map, save state and persistence strategy storing into {@code shard-<n>}
+ * subdirectory, so saves and loads run shard by shard, or several shards at a time, and only shards
+ * being saved or loaded are unavailable in blocking snapshot mode. The number of shards is recorded
+ * next to the shard directories and must not change afterwards, since keys would map to other shards.
+ */
+public class ShardedStorageService implements StorageService, Closeable {
+
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String SHARD_COUNT_FILE = "shards";
+
+    private final HashStorageService[] shards;
+    private final PersistenceStrategy[] persistenceStrategies;
+    private final long maxValueSize;
+
+    /**
+     * Executor saving and loading several shards at a time, {@code null} when shards are processed one by one
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Whether a save runs, shards may still be saved or loaded individually by their own operations
+     */
+    private final AtomicBoolean saving = new AtomicBoolean();
+
+    public ShardedStorageService(PersistenceStrategyFactory persistenceStrategyFactory, StorageProperties properties,
+                                 ShardedStorageProperties shardedProperties, ThreadFactory threadFactory) {
+
+        this(persistenceStrategyFactory, properties, shardedProperties, threadFactory, HashStorageOptions.builder().build());
+    }
+
+    /**
+     * @param shardOptions features of every shard except tiered storage, memory of shards is not bounded.
+     *                     Values are deduplicated within a shard and every shard keeps deadlines of its own keys.
+     */
+    public ShardedStorageService(PersistenceStrategyFactory persistenceStrategyFactory, StorageProperties properties,
+                                 ShardedStorageProperties shardedProperties, ThreadFactory threadFactory,
+                                 HashStorageOptions shardOptions) {
+
+        checkShardCount(persistenceStrategyFactory, shardedProperties.getShards());
+
+        this.shards = new HashStorageService[shardedProperties.getShards()];
+        this.persistenceStrategies = new PersistenceStrategy[shards.length];
+        this.maxValueSize = properties.getMaxValueSize().toBytes();
+
+        val parallelism = Math.min(shardedProperties.getParallelism(), shards.length);
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, threadFactory) : null;
+
+        val untiered = shardOptions.toBuilder().tiered(new TieredStorageProperties()).build();
+
+        for (var i = 0; i < shards.length; i++) {
+
+            persistenceStrategies[i] = persistenceStrategyFactory.create(SHARD_PREFIX + i);
+            shards[i] = new HashStorageService(persistenceStrategies[i], properties, untiered);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(String key, byte[] value) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        shardOf(key).store(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(String key, InputStream value, long length) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        shardOf(key).store(key, value, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(String key, InputStream value, long length, Duration ttl)
+            throws DuplicateKeyException, ValueTooLargeException, ExpirationNotSupportedException, PersistenceException {
+
+        shardOf(key).store(key, value, length, ttl);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long compareAndStore(String key, InputStream value, long length, Duration ttl, long expectedVersion)
+            throws DuplicateKeyException, VersionMismatchException, ValueTooLargeException, PersistenceException {
+
+        return shardOf(key).compareAndStore(key, value, length, ttl, expectedVersion);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Values are stored shard by shard, entries of each shard become durable at once.
+     */
+    @Override
+    public List<BatchStatus> storeAll(List<? extends Map.Entry<String, byte[]>> entries) throws ValueTooLargeException, PersistenceException {
+
+        // fail before any shard stores anything
+        entries.forEach(entry -> ValueReader.checkLength(entry.getKey(), entry.getValue().length, maxValueSize));
+
+        return scatter(entries, Map.Entry::getKey, HashStorageService::storeAll);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream retrieve(String key) throws MissingKeyException {
+
+        return shardOf(key).retrieve(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StoredValue retrieveValue(String key) throws MissingKeyException {
+
+        return shardOf(key).retrieveValue(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StoredValue retrieveRange(String key, ByteRange range) throws MissingKeyException, RangeNotSatisfiableException {
+
+        return shardOf(key).retrieveRange(key, range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keepsVersions() {
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long version(String key) throws MissingKeyException {
+
+        return shardOf(key).version(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<StoredValue> retrieveAll(List<String> keys) {
+
+        return scatter(keys, Function.identity(), HashStorageService::retrieveAll);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys of a range are spread over every shard, so each shard lists a page of the range and pages
+     * are merged in order. Values of keys left beyond the merged page are closed.
+     */
+    @Override
+    public ScanPage scan(KeyRange range, int limit, boolean values) {
+
+        val pages = new ArrayList<ScanPage>(shards.length);
+
+        try {
+
+            for (val shard : shards) {
+
+                pages.add(shard.scan(range, limit, values));
+            }
+        } catch (RuntimeException e) {
+
+            pages.forEach(page -> closeValues(page, 0));
+            throw e;
+        }
+
+        return merge(pages, limit, values);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws MissingKeyException, PersistenceException {
+
+        shardOf(key).delete(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void compareAndDelete(String key, long expectedVersion) throws VersionMismatchException, PersistenceException {
+
+        shardOf(key).compareAndDelete(key, expectedVersion);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are deleted shard by shard, deletions of each shard become durable at once.
+     */
+    @Override
+    public List<BatchStatus> deleteAll(List<String> keys) throws PersistenceException {
+
+        return scatter(keys, Function.identity(), HashStorageService::deleteAll);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Shards are saved independently, a failed shard does not stop the others. Each shard is unavailable
+     * only while it is saved in {@link StorageProperties.SnapshotMode#BLOCKING blocking} snapshot mode.
+     */
+    @Override
+    public void save() throws PersistenceException, ServiceUnavailableException {
+
+        if (!saving.compareAndSet(false, true)) {
+
+            throw new ServiceUnavailableException("Save operation in progress.");
+        }
+
+        try {
+
+            forEachShard(HashStorageService::save, PersistenceException::writingStorage);
+        } finally {
+
+            saving.set(false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Shards are loaded independently, each one is unavailable only while it is loaded.
+     */
+    @Override
+    public void load() throws PersistenceException, ServiceUnavailableException {
+
+        if (saving.get()) {
+
+            throw new ServiceUnavailableException("Save operation in progress.");
+        }
+
+        forEachShard(HashStorageService::load, PersistenceException::readingStorage);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Status combines statuses of all shards: key counts are summed and the save runs until every shard finishes.
+     * While a save runs, shards not reached yet report keys of their previous save.
+     */
+    @Override
+    public SnapshotStatus snapshotStatus() {
+
+        val statuses = Arrays.stream(shards)
+                .map(HashStorageService::snapshotStatus)
+                .filter(status -> status.getState() != SnapshotStatus.State.NONE)
+                .toArray(SnapshotStatus[]::new);
+
+        if (statuses.length == 0 && !saving.get()) {
+
+            return SnapshotStatus.NONE;
+        }
+
+        var state = saving.get() ? SnapshotStatus.State.RUNNING : SnapshotStatus.State.SUCCEEDED;
+        Instant startedAt = null;
+        Instant finishedAt = null;
+        long totalKeys = 0;
+        long persistedKeys = 0;
+
+        for (val status : statuses) {
+
+            if (status.getState() == SnapshotStatus.State.RUNNING
+                    || status.getState() == SnapshotStatus.State.FAILED && state == SnapshotStatus.State.SUCCEEDED) {
+
+                state = status.getState();
+            }
+
+            if (startedAt == null || status.getStartedAt().isBefore(startedAt)) {
+
+                startedAt = status.getStartedAt();
+            }
+
+            if (status.getFinishedAt() != null && (finishedAt == null || status.getFinishedAt().isAfter(finishedAt))) {
+
+                finishedAt = status.getFinishedAt();
+            }
+
+            totalKeys += status.getTotalKeys();
+            persistedKeys += status.getPersistedKeys();
+        }
+
+        if (state == SnapshotStatus.State.RUNNING) {
+
+            finishedAt = null;
+        }
+
+        val duration = startedAt == null ? Duration.ZERO
+                : Duration.between(startedAt, finishedAt == null ? Instant.now() : finishedAt);
+
+        return new SnapshotStatus(state, startedAt, finishedAt, totalKeys, persistedKeys, duration.toMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+
+        return Arrays.stream(shards).mapToLong(HashStorageService::size).sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long residentBytes() {
+
+        return Arrays.stream(shards).mapToLong(HashStorageService::residentBytes).sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long modifications() {
+
+        return Arrays.stream(shards).mapToLong(HashStorageService::modifications).sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Shards are expired one by one, a shard being saved in blocking snapshot mode fails the whole call.
+     */
+    @Override
+    public long expire() throws ServiceUnavailableException {
+
+        return Arrays.stream(shards).mapToLong(HashStorageService::expire).sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExpirationStatus expirationStatus() {
+
+        val statuses = Arrays.stream(shards).map(HashStorageService::expirationStatus).collect(Collectors.toList());
+
+        if (!statuses.get(0).isEnabled()) {
+
+            return ExpirationStatus.NONE;
+        }
+
+        return new ExpirationStatus(true,
+                statuses.stream().mapToLong(ExpirationStatus::getExpiringKeys).sum(),
+                statuses.stream().mapToLong(ExpirationStatus::getReapedKeys).sum(),
+                statuses.stream().mapToLong(ExpirationStatus::getLazilyExpiredKeys).sum());
+    }
+
+    /**
+     * Shuts down the executor of parallel saves and loads and closes persistence strategies of the shards
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (executor != null) {
+
+            executor.shutdown();
+        }
+
+        for (val persistenceStrategy : persistenceStrategies) {
+
+            if (persistenceStrategy instanceof Closeable) {
+
+                ((Closeable) persistenceStrategy).close();
+            }
+        }
+    }
+
+    private static ScanPage merge(List<ScanPage> pages, int limit, boolean values) {
+
+        val positions = new int[pages.size()];
+        val keys = new ArrayList<String>(limit);
+        val merged = values ? new ArrayList<StoredValue>(limit) : null;
+        var more = pages.stream().anyMatch(page -> page.getNext() != null);
+
+        while (true) {
+
+            var least = -1;
+
+            for (var i = 0; i < pages.size(); i++) {
+
+                val shardKeys = pages.get(i).getKeys();
+
+                if (positions[i] < shardKeys.size()
+                        && (least < 0 || shardKeys.get(positions[i]).compareTo(pages.get(least).getKeys().get(positions[least])) < 0)) {
+
+                    least = i;
+                }
+            }
+
+            if (least < 0) {
+
+                break;
+            }
+
+            if (keys.size() == limit) {
+
+                more = true;
+                break;
+            }
+
+            val page = pages.get(least);
+            keys.add(page.getKeys().get(positions[least]));
+
+            if (merged != null) {
+
+                merged.add(page.getValues().get(positions[least]));
+            }
+
+            positions[least]++;
+        }
+
+        for (var i = 0; i < pages.size(); i++) {
+
+            closeValues(pages.get(i), positions[i]);
+        }
+
+        return new ScanPage(keys, merged, more && !keys.isEmpty() ? keys.get(keys.size() - 1) : null);
+    }
+
+    private static void closeValues(ScanPage page, int from) {
+
+        if (page.getValues() != null) {
+
+            page.getValues().subList(from, page.getValues().size()).forEach(StoredValue::close);
+        }
+    }
+
+    private HashStorageService shardOf(String key) {
+
+        return shards[shardIndex(key)];
+    }
+
+    private int shardIndex(String key) {
+
+        val hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Applies batch operation to each shard with its items, results are returned in order of items
+     */
+    private <T, R> List<R> scatter(List<? extends T> items, Function<T, String> keyOf,
+                                   BiFunction<HashStorageService, List<T>, List<R>> operation) {
+
+        val shardItems = new ArrayList<List<T>>(Collections.nCopies(shards.length, null));
+        val shardPositions = new ArrayList<List<Integer>>(Collections.nCopies(shards.length, null));
+
+        for (var position = 0; position < items.size(); position++) {
+
+            T item = items.get(position);
+            val index = shardIndex(keyOf.apply(item));
+
+            if (shardItems.get(index) == null) {
+
+                shardItems.set(index, new ArrayList<>());
+                shardPositions.set(index, new ArrayList<>());
+            }
+
+            shardItems.get(index).add(item);
+            shardPositions.get(index).add(position);
+        }
+
+        val results = new ArrayList<R>(items.size());
+
+        for (var i = 0; i < items.size(); i++) {
+
+            results.add(null);
+        }
+
+        for (var index = 0; index < shards.length; index++) {
+
+            if (shardItems.get(index) == null) {
+
+                continue;
+            }
+
+            val shardResults = operation.apply(shards[index], shardItems.get(index));
+            val positions = shardPositions.get(index);
+
+            for (var i = 0; i < positions.size(); i++) {
+
+                results.set(positions.get(i), shardResults.get(i));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Applies action to every shard, up to configured number of shards at a time. Every shard is attempted,
+     * the failure of the first failed shard is rethrown once all of them are done.
+     *
+     * @param interrupted factory of exception to throw when calling thread is interrupted while waiting
+     */
+    private void forEachShard(Consumer<HashStorageService> action, Function<Exception, PersistenceException> interrupted) {
+
+        RuntimeException failure = null;
+
+        if (executor == null) {
+
+            for (val shard : shards) {
+
+                try {
+
+                    action.accept(shard);
+                } catch (RuntimeException e) {
+
+                    failure = accumulate(failure, e);
+                }
+            }
+        } else {
+
+            try {
+
+                val tasks = new ArrayList<Callable<Void>>(shards.length);
+
+                for (val shard : shards) {
+
+                    tasks.add(() -> {
+
+                        action.accept(shard);
+                        return null;
+                    });
+                }
+
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+
+                    try {
+
+                        future.get();
+                    } catch (ExecutionException e) {
+
+                        if (e.getCause() instanceof Error) {
+
+                            throw (Error) e.getCause();
+                        }
+
+                        failure = accumulate(failure, (RuntimeException) e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+
+                // tasks not finished yet are cancelled by invokeAll
+                Thread.currentThread().interrupt();
+                throw interrupted.apply(e);
+            }
+        }
+
+        if (failure != null) {
+
+            throw failure;
+        }
+    }
+
+    private static RuntimeException accumulate(RuntimeException failure, RuntimeException next) {
+
+        if (failure == null) {
+
+            return next;
+        }
+
+        failure.addSuppressed(next);
+        return failure;
+    }
+
+    /**
+     * Records number of shards on first start, fails when persisted shards were laid out for another number
+     */
+    private static void checkShardCount(PersistenceStrategyFactory persistenceStrategyFactory, int shards) {
+
+        val path = persistenceStrategyFactory.getBasePath().resolve(SHARD_COUNT_FILE);
+
+        try {
+
+            if (Files.exists(path)) {
+
+                val persisted = Integer.parseInt(Files.readString(path, StandardCharsets.US_ASCII).trim());
+
+                if (persisted != shards) {
+
+                    throw new InitializationException(String.format(
+                            "Persisted storage is partitioned into %d shards, but %d are configured.", persisted, shards));
+                }
+            } else {
+
+                Files.writeString(path, Integer.toString(shards), StandardCharsets.US_ASCII);
+            }
+        } catch (IOException | NumberFormatException e) {
+
+            throw new InitializationException(String.format("Failed to read shard count from '%s': %s", path, e.getMessage()));
+        }
+    }
+}
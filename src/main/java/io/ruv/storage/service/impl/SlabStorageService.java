@@ -0,0 +1,641 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.IncompleteValueException;
+import io.ruv.storage.service.InsufficientStorageException;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.slab.SlabAllocator;
+import io.ruv.storage.service.slab.SlabChunk;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.io.ByteBufferInputStream;
+import io.ruv.storage.util.properties.StorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of {@link StorageService} keeping values off-heap in memory chunks of {@link SlabAllocator}.
+ * Backing {@link ConcurrentHashMap} holds only chunk handles, so values put no pressure on garbage collector.
+ */
+@Slf4j
+public class SlabStorageService implements StorageService {
+
+    private final PersistenceStrategy persistenceStrategy;
+    private final SlabAllocator allocator;
+    private final long maxValueSize;
+
+    private final ConcurrentHashMap<String, SlabChunk> storage = new ConcurrentHashMap<>();
+
+    /**
+     * Stored keys in order, for range scans
+     */
+    private final KeyIndex index = new KeyIndex();
+
+    private final Runnable noop = () -> {
+    };
+
+    /**
+     * Action to execute before internal storage access.
+     * Currently used only to circuit break requests while saving/loading.
+     */
+    private final AtomicReference<Runnable> preAccessAction = new AtomicReference<>(noop);
+
+    /**
+     * Held shared by a modification from logging it until it is applied to the map, held exclusively
+     * while a save begins its snapshot, so that a modification is either logged after the snapshot begins
+     * or part of the snapshot
+     */
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private final SnapshotTracker snapshotTracker = new SnapshotTracker();
+
+    private final LongAdder modifications = new LongAdder();
+
+    public SlabStorageService(PersistenceStrategy persistenceStrategy, SlabAllocator allocator) {
+
+        this(persistenceStrategy, allocator, new StorageProperties());
+    }
+
+    public SlabStorageService(PersistenceStrategy persistenceStrategy, SlabAllocator allocator, StorageProperties properties) {
+
+        this.persistenceStrategy = persistenceStrategy;
+        this.allocator = allocator;
+        this.maxValueSize = properties.getMaxValueSize().toBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws InsufficientStorageException when off-heap memory limit is reached even after compaction
+     */
+    @Override
+    public void store(String key, byte[] value) throws DuplicateKeyException, ValueTooLargeException, InsufficientStorageException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        ValueReader.checkLength(key, value.length, maxValueSize);
+
+        if (storage.containsKey(key)) {
+
+            throw DuplicateKeyException.of(key);
+        }
+
+        val chunk = allocate(key, value.length);
+        chunk.write(value);
+
+        persistenceStrategy.awaitDurable(publish(key, chunk));
+        log.debug("Store on key '{}'.", key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Value of known length is streamed straight into off-heap memory, value of unknown length
+     * is read into heap first, since chunk size has to be known upfront.
+     *
+     * @throws InsufficientStorageException when off-heap memory limit is reached even after compaction
+     */
+    @Override
+    public void store(String key, InputStream value, long length) throws DuplicateKeyException, ValueTooLargeException, InsufficientStorageException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        // fail before reading the whole value
+        ValueReader.checkLength(key, length, maxValueSize);
+
+        if (storage.containsKey(key)) {
+
+            throw DuplicateKeyException.of(key);
+        }
+
+        SlabChunk chunk = null;
+
+        try {
+
+            if (length >= 0) {
+
+                chunk = allocate(key, length);
+                chunk.write(value);
+            } else {
+
+                val buffers = ValueReader.read(key, value, length, maxValueSize);
+
+                chunk = allocate(key, Arrays.stream(buffers).mapToLong(ByteBuffer::remaining).sum());
+                chunk.write(new ByteBufferInputStream(buffers));
+            }
+        } catch (IOException e) {
+
+            if (chunk != null) {
+
+                chunk.release();
+            }
+
+            if (e instanceof EOFException) {
+
+                throw IncompleteValueException.of(key, length);
+            }
+
+            throw new UncheckedIOException(e);
+        }
+
+        persistenceStrategy.awaitDurable(publish(key, chunk));
+        log.debug("Store on key '{}'.", key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All values become durable at once.
+     *
+     * @throws InsufficientStorageException when off-heap memory limit is reached even after compaction,
+     *                                      values stored before it stay stored
+     */
+    @Override
+    public List<BatchStatus> storeAll(List<? extends Map.Entry<String, byte[]>> entries) throws ValueTooLargeException, InsufficientStorageException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        entries.forEach(entry -> ValueReader.checkLength(entry.getKey(), entry.getValue().length, maxValueSize));
+
+        val statuses = new ArrayList<BatchStatus>(entries.size());
+
+        try (val batch = new DurableBatch(persistenceStrategy)) {
+
+            for (val entry : entries) {
+
+                if (storage.containsKey(entry.getKey())) {
+
+                    statuses.add(BatchStatus.DUPLICATE_KEY);
+                    continue;
+                }
+
+                val chunk = allocate(entry.getKey(), entry.getValue().length);
+                chunk.write(entry.getValue());
+
+                try {
+
+                    batch.add(publish(entry.getKey(), chunk));
+                    statuses.add(BatchStatus.OK);
+                } catch (DuplicateKeyException e) {
+
+                    statuses.add(BatchStatus.DUPLICATE_KEY);
+                }
+            }
+        }
+
+        log.debug("Store on {} keys.", entries.size());
+        return statuses;
+    }
+
+    /**
+     * Makes a filled chunk visible under provided key, releasing it on failure
+     *
+     * @return persistence sequence to await
+     */
+    private long publish(String key, SlabChunk chunk) throws DuplicateKeyException, PersistenceException {
+
+        val sequence = new AtomicLong();
+
+        snapshotLock.readLock().lock();
+
+        try {
+
+            storage.compute(key, (k, existing) -> {
+
+                if (existing != null) {
+
+                    throw DuplicateKeyException.of(k);
+                }
+
+                sequence.set(persistenceStrategy.logStore(k, chunk.buffer()));
+                index.add(k);
+                return chunk;
+            });
+        } catch (RuntimeException e) {
+
+            chunk.release();
+            throw e;
+        } finally {
+
+            snapshotLock.readLock().unlock();
+        }
+
+        modifications.increment();
+        return sequence.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returned stream reads straight from off-heap memory and must be closed to release it.
+     */
+    @Override
+    public InputStream retrieve(String key) throws MissingKeyException {
+
+        preAccessAction.get().run();
+
+        val chunk = retain(key);
+        return new ByteBufferInputStream(chunk::release, chunk.buffer());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Value is exposed as a view of off-heap memory, which is not reused until the value is closed.
+     */
+    @Override
+    public StoredValue retrieveValue(String key) throws MissingKeyException {
+
+        preAccessAction.get().run();
+
+        val chunk = retain(key);
+        return StoredValue.of(chunk::release, chunk.buffer());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Values are exposed as views of off-heap memory, which is not reused until each value is closed.
+     */
+    @Override
+    public List<StoredValue> retrieveAll(List<String> keys) {
+
+        preAccessAction.get().run();
+
+        val values = new ArrayList<StoredValue>(keys.size());
+
+        for (val key : keys) {
+
+            try {
+
+                val chunk = retain(key);
+                values.add(StoredValue.of(chunk::release, chunk.buffer()));
+            } catch (MissingKeyException e) {
+
+                values.add(null);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are listed from an ordered index kept alongside the map, values read straight from off-heap memory
+     * must be closed to release it.
+     */
+    @Override
+    public ScanPage scan(KeyRange range, int limit, boolean values) {
+
+        preAccessAction.get().run();
+
+        return index.scan(range, limit, storage::containsKey, values ? key -> {
+
+            try {
+
+                val chunk = retain(key);
+                return StoredValue.of(chunk::release, chunk.buffer());
+            } catch (MissingKeyException e) {
+
+                return null;
+            }
+        } : null);
+    }
+
+    private SlabChunk retain(String key) throws MissingKeyException {
+
+        while (true) {
+
+            val chunk = storage.get(key);
+
+            if (chunk == null) {
+
+                throw MissingKeyException.of(key);
+            }
+
+            // chunk may be released by concurrent delete or relocation, look it up again then
+            if (chunk.retain()) {
+
+                log.debug("Retrieve on key '{}'.", key);
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws MissingKeyException, PersistenceException {
+
+        preAccessAction.get().run();
+
+        persistenceStrategy.awaitDurable(applyDelete(key));
+        log.debug("Delete on key '{}'.", key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All deletions become durable at once.
+     */
+    @Override
+    public List<BatchStatus> deleteAll(List<String> keys) throws PersistenceException {
+
+        preAccessAction.get().run();
+
+        val statuses = new ArrayList<BatchStatus>(keys.size());
+
+        try (val batch = new DurableBatch(persistenceStrategy)) {
+
+            for (val key : keys) {
+
+                try {
+
+                    batch.add(applyDelete(key));
+                    statuses.add(BatchStatus.OK);
+                } catch (MissingKeyException e) {
+
+                    statuses.add(BatchStatus.MISSING_KEY);
+                }
+            }
+        }
+
+        log.debug("Delete on {} keys.", keys.size());
+        return statuses;
+    }
+
+    /**
+     * Removes value and releases its chunk without waiting for removal to become durable
+     *
+     * @return persistence sequence to await
+     */
+    private long applyDelete(String key) {
+
+        val removed = new AtomicReference<SlabChunk>();
+        val sequence = new AtomicLong();
+
+        snapshotLock.readLock().lock();
+
+        try {
+
+            storage.compute(key, (k, existing) -> {
+
+                if (existing == null) {
+
+                    throw MissingKeyException.of(k);
+                }
+
+                sequence.set(persistenceStrategy.logDelete(k));
+                index.remove(k);
+                removed.set(existing);
+                return null;
+            });
+        } finally {
+
+            snapshotLock.readLock().unlock();
+        }
+
+        removed.get().release();
+        modifications.increment();
+        return sequence.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save() throws PersistenceException, ServiceUnavailableException {
+
+        preAccessAction.set(this::unavailableWhileSaving);
+
+        try {
+
+            beginSnapshot();
+            snapshotTracker.start(storage.size());
+
+            persistenceStrategy.persist(storage.entrySet().stream()
+                    .peek(entry -> snapshotTracker.progress()));
+
+            snapshotTracker.finish(true);
+        } catch (RuntimeException e) {
+
+            snapshotTracker.finish(false);
+            throw e;
+        } finally {
+
+            preAccessAction.set(noop);
+        }
+    }
+
+    /**
+     * Begins snapshot of persistence strategy while no modification is between being logged and being applied
+     */
+    private void beginSnapshot() throws PersistenceException {
+
+        snapshotLock.writeLock().lock();
+
+        try {
+
+            persistenceStrategy.beginSnapshot();
+        } finally {
+
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws InsufficientStorageException when loaded values do not fit into off-heap memory limit
+     */
+    @Override
+    public void load() throws PersistenceException, ServiceUnavailableException, InsufficientStorageException {
+
+        preAccessAction.set(this::unavailableWhileLoading);
+
+        try {
+
+            persistenceStrategy.load(this::storeLoaded);
+        } finally {
+
+            preAccessAction.set(noop);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapshotStatus snapshotStatus() {
+
+        return snapshotTracker.status();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+
+        return storage.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Whole slabs reserved from off-heap memory are counted, including their free chunks.
+     */
+    @Override
+    public long residentBytes() {
+
+        return allocator.reservedBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long modifications() {
+
+        return modifications.sum();
+    }
+
+    /**
+     * Relocates values out of sparsely used slabs, so emptied slabs can be reused by other size classes
+     */
+    public synchronized void compact() {
+
+        val evacuating = allocator.beginEvacuation();
+
+        if (evacuating == 0) {
+
+            return;
+        }
+
+        try {
+
+            storage.forEach((key, chunk) -> {
+
+                if (chunk.isEvacuating() && chunk.retain()) {
+
+                    try {
+
+                        val copy = allocator.relocate(chunk);
+
+                        if (copy != null) {
+
+                            if (storage.replace(key, chunk, copy)) {
+
+                                chunk.release();
+                            } else {
+
+                                copy.release();
+                            }
+                        }
+                    } finally {
+
+                        chunk.release();
+                    }
+                }
+            });
+        } finally {
+
+            allocator.endEvacuation();
+        }
+        log.debug("Compaction of {} slabs, {} bytes reserved.", evacuating, allocator.reservedBytes());
+    }
+
+    private SlabChunk allocate(String key, long size) {
+
+        if (size > Integer.MAX_VALUE) {
+
+            throw InsufficientStorageException.of(key, size);
+        }
+
+        var chunk = allocator.allocate((int) size);
+
+        if (chunk == null) {
+
+            compact();
+            chunk = allocator.allocate((int) size);
+        }
+
+        if (chunk == null) {
+
+            throw InsufficientStorageException.of(key, size);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Values persisted with time to live are kept without it, unless their deadline passed already
+     */
+    private void storeLoaded(String key, Supplier<InputStream> value) {
+
+        val deadline = ExpiringValue.deadlineOf(value);
+
+        if (deadline != ExpiringValue.NO_DEADLINE && deadline <= System.currentTimeMillis()) {
+
+            return;
+        }
+
+        byte[] bytes;
+
+        try (val stream = value.get()) {
+
+            bytes = stream.readAllBytes();
+        } catch (IOException e) {
+
+            throw PersistenceException.reading(key, e);
+        }
+
+        val chunk = allocate(key, bytes.length);
+        chunk.write(bytes);
+
+        val previous = storage.put(key, chunk);
+        index.add(key);
+
+        if (previous != null) {
+
+            previous.release();
+        }
+    }
+
+    private void unavailableWhileSaving() {
+
+        throw new ServiceUnavailableException("Save operation in progress.");
+    }
+
+    private void unavailableWhileLoading() {
+
+        throw new ServiceUnavailableException("Load operation in progress.");
+    }
+}
@@ -0,0 +1,86 @@
+package io.ruv.storage.service.impl;
+
+import lombok.val;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Copy-on-write overlay providing a point-in-time view of a live map while it keeps being modified.
+ * <p>
+ * Writers {@link #capture(String, Supplier) capture} the previous value of a key on its first modification
+ * after the overlay was installed, atomically with the modification itself. The view reads untouched keys
+ * from the live map and modified ones from captured values, so it reflects the map as of installation.
+ */
+class SnapshotOverlay {
+
+    /**
+     * Marks keys which did not exist when the overlay was installed
+     */
+    private static final Supplier<InputStream> ABSENT = () -> {
+
+        throw new IllegalStateException("Absent value marker.");
+    };
+
+    /**
+     * Marks keys already emitted to the view from the live map
+     */
+    private static final Supplier<InputStream> EMITTED = () -> {
+
+        throw new IllegalStateException("Emitted value marker.");
+    };
+
+    private final ConcurrentHashMap<String, Supplier<InputStream>> captured = new ConcurrentHashMap<>();
+
+    /**
+     * Records value of a key before its modification, must be called atomically with the modification
+     *
+     * @param key      modified key
+     * @param previous value before modification, {@code null} if key was absent
+     */
+    void capture(String key, Supplier<InputStream> previous) {
+
+        captured.putIfAbsent(key, previous == null ? ABSENT : previous);
+    }
+
+    /**
+     * @param key  key to look up, each key is expected to be looked up at most once per overlay
+     * @param live map this overlay is installed on
+     * @return value of a key as of overlay installation, {@code null} if key was absent
+     */
+    Supplier<InputStream> valueOf(String key, Map<String, Supplier<InputStream>> live) {
+
+        // live value is read before claiming the key, so a writer capturing after the claim did not change it yet
+        val current = live.get(key);
+        val previous = captured.putIfAbsent(key, EMITTED);
+
+        if (previous == null || previous == EMITTED) {
+
+            return current;
+        }
+
+        return previous == ABSENT ? null : previous;
+    }
+
+    /**
+     * @param live map this overlay is installed on
+     * @return lazy stream of key-value pairs as of overlay installation, each key appearing once
+     */
+    Stream<Map.Entry<String, Supplier<InputStream>>> view(ConcurrentHashMap<String, Supplier<InputStream>> live) {
+
+        // a key is emitted from the live map only if no writer captured it first, captured ones follow after
+        val untouched = live.entrySet().stream()
+                .filter(entry -> captured.putIfAbsent(entry.getKey(), EMITTED) == null)
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue()));
+
+        // captured map is streamed only once the live pass is over, so captures made during it are seen
+        val modified = Stream.of(captured)
+                .flatMap(map -> map.entrySet().stream())
+                .filter(entry -> entry.getValue() != ABSENT && entry.getValue() != EMITTED);
+
+        return Stream.concat(untouched, modified);
+    }
+}
@@ -0,0 +1,62 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.service.SnapshotStatus;
+import lombok.val;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks progress and duration of save operations
+ */
+class SnapshotTracker {
+
+    private final LongAdder persistedKeys = new LongAdder();
+
+    private volatile SnapshotStatus.State state = SnapshotStatus.State.NONE;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile long totalKeys;
+
+    void start(long totalKeys) {
+
+        this.persistedKeys.reset();
+        this.totalKeys = totalKeys;
+        this.finishedAt = null;
+        this.startedAt = Instant.now();
+        this.state = SnapshotStatus.State.RUNNING;
+    }
+
+    void progress() {
+
+        persistedKeys.increment();
+    }
+
+    void progress(long keys) {
+
+        persistedKeys.add(keys);
+    }
+
+    void finish(boolean succeeded) {
+
+        this.finishedAt = Instant.now();
+        this.state = succeeded ? SnapshotStatus.State.SUCCEEDED : SnapshotStatus.State.FAILED;
+    }
+
+    SnapshotStatus status() {
+
+        val state = this.state;
+
+        if (state == SnapshotStatus.State.NONE) {
+
+            return SnapshotStatus.NONE;
+        }
+
+        val startedAt = this.startedAt;
+        val finishedAt = state == SnapshotStatus.State.RUNNING ? null : this.finishedAt;
+        val duration = Duration.between(startedAt, finishedAt == null ? Instant.now() : finishedAt);
+
+        return new SnapshotStatus(state, startedAt, finishedAt, totalKeys, persistedKeys.sum(), duration.toMillis());
+    }
+}
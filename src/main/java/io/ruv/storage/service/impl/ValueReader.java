@@ -0,0 +1,94 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.service.IncompleteValueException;
+import io.ruv.storage.service.ValueTooLargeException;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Reads values of store operations from streams into heap, enforcing maximum value size
+ */
+final class ValueReader {
+
+    /**
+     * Chunk size for values of unknown length, so they are never copied to grow a buffer
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private ValueReader() {
+    }
+
+    /**
+     * Fails fast on values declared larger than allowed
+     *
+     * @param length declared value length, -1 if unknown
+     * @throws ValueTooLargeException when declared length exceeds maximum value size
+     */
+    static void checkLength(String key, long length, long maxSize) throws ValueTooLargeException {
+
+        if (length > maxSize) {
+
+            throw ValueTooLargeException.of(key, maxSize);
+        }
+    }
+
+    /**
+     * Reads value of known length into exactly sized arrays, value of unknown length into chunks
+     *
+     * @param length value length, -1 if unknown
+     * @return buffers holding value bytes, in order
+     * @throws ValueTooLargeException   when value exceeds maximum value size, no more than one byte over it is read
+     * @throws IncompleteValueException when stream ends before declared length
+     * @throws IOException              when stream fails
+     */
+    static ByteBuffer[] read(String key, InputStream in, long length, long maxSize)
+            throws ValueTooLargeException, IncompleteValueException, IOException {
+
+        checkLength(key, length, maxSize);
+
+        val chunks = new ArrayList<ByteBuffer>();
+        var total = 0L;
+
+        while (true) {
+
+            val size = length >= 0 ? Math.min(length - total, MAX_ARRAY_SIZE) : Math.min(CHUNK_SIZE, maxSize - total + 1);
+
+            if (size == 0) {
+
+                break;
+            }
+
+            val chunk = new byte[(int) size];
+            val read = in.readNBytes(chunk, 0, chunk.length);
+            total += read;
+
+            if (total > maxSize) {
+
+                throw ValueTooLargeException.of(key, maxSize);
+            }
+
+            if (read > 0) {
+
+                chunks.add(ByteBuffer.wrap(chunk, 0, read));
+            }
+
+            if (read < chunk.length) {
+
+                if (length >= 0) {
+
+                    throw IncompleteValueException.of(key, length);
+                }
+
+                break;
+            }
+        }
+
+        return chunks.toArray(ByteBuffer[]::new);
+    }
+}
@@ -0,0 +1,138 @@
+package io.ruv.storage.service.lsm;
+
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter over keys of a table file, answers whether a key may be in the table.
+ * <p>
+ * Bit positions are derived from a single 64-bit hash of the key by double hashing.
+ */
+final class BloomFilter {
+
+    /**
+     * Filter of a table written without filters, every key may be present
+     */
+    static final BloomFilter ALL = new BloomFilter(0, new long[0]);
+
+    private final int hashCount;
+    private final long[] words;
+
+    private BloomFilter(int hashCount, long[] words) {
+
+        this.hashCount = hashCount;
+        this.words = words;
+    }
+
+    /**
+     * @param hashes     {@link #hash(String) hashes} of all keys of the table
+     * @param count      number of hashes
+     * @param bitsPerKey filter bits per key, zero for a filter letting every key through
+     */
+    static BloomFilter of(long[] hashes, int count, int bitsPerKey) {
+
+        if (bitsPerKey == 0 || count == 0) {
+
+            return ALL;
+        }
+
+        val bits = Math.max(64L, (long) count * bitsPerKey);
+        val filter = new BloomFilter(Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2)))),
+                new long[(int) ((bits + 63) / 64)]);
+
+        for (var i = 0; i < count; i++) {
+
+            filter.add(hashes[i]);
+        }
+
+        return filter;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of UTF-8 key bytes, mixed to spread its bits
+     */
+    static long hash(String key) {
+
+        var hash = 0xcbf29ce484222325L;
+
+        for (val b : key.getBytes(StandardCharsets.UTF_8)) {
+
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    boolean mightContain(String key) {
+
+        if (words.length == 0) {
+
+            return true;
+        }
+
+        val hash = hash(key);
+        val bits = (long) words.length * 64;
+        val h1 = (int) hash;
+        val h2 = (int) (hash >>> 32);
+
+        for (var i = 0; i < hashCount; i++) {
+
+            val bit = Math.floorMod(h1 + (long) i * h2, bits);
+
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    int encodedSize() {
+
+        return Integer.BYTES + Integer.BYTES + words.length * Long.BYTES;
+    }
+
+    void encode(ByteBuffer buffer) {
+
+        buffer.putInt(hashCount).putInt(words.length);
+
+        for (val word : words) {
+
+            buffer.putLong(word);
+        }
+    }
+
+    static BloomFilter decode(ByteBuffer buffer) {
+
+        val hashCount = buffer.getInt();
+        val words = new long[buffer.getInt()];
+
+        for (var i = 0; i < words.length; i++) {
+
+            words[i] = buffer.getLong();
+        }
+
+        return words.length == 0 ? ALL : new BloomFilter(hashCount, words);
+    }
+
+    private void add(long hash) {
+
+        val bits = (long) words.length * 64;
+        val h1 = (int) hash;
+        val h2 = (int) (hash >>> 32);
+
+        for (var i = 0; i < hashCount; i++) {
+
+            val bit = Math.floorMod(h1 + (long) i * h2, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+}
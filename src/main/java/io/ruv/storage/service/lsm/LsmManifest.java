@@ -0,0 +1,156 @@
+package io.ruv.storage.service.lsm;
+
+import lombok.Value;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable record of table files by level, replaced atomically after every flush and compaction.
+ * <pre>
+ * [magic][next id:long][flushed log id:long][keys:long][level count:int]([table count:int][table id:long]*)*[crc32c:int]
+ * </pre>
+ * Logs up to the flushed log id are in tables already, keys is the number of stored keys as of that log.
+ */
+final class LsmManifest {
+
+    static final String NAME = "MANIFEST";
+
+    private static final byte[] MAGIC = "KVSLSMM1".getBytes(StandardCharsets.US_ASCII);
+
+    @Value
+    static class State {
+
+        long nextId;
+        long flushedLog;
+        long keys;
+        List<List<Long>> levels;
+    }
+
+    private LsmManifest() {
+    }
+
+    /**
+     * @return recorded state, empty state when no manifest was written yet
+     * @throws IOException when manifest is corrupted
+     */
+    static State read(Path basePath) throws IOException {
+
+        val path = basePath.resolve(NAME);
+
+        if (!Files.exists(path)) {
+
+            return new State(1, 0, 0, List.of());
+        }
+
+        val manifest = ByteBuffer.wrap(Files.readAllBytes(path));
+        val size = manifest.remaining();
+
+        if (size < MAGIC.length + Integer.BYTES) {
+
+            throw corrupted("manifest is truncated");
+        }
+
+        val magic = new byte[MAGIC.length];
+        manifest.get(magic);
+
+        val crc = new CRC32C();
+        crc.update(manifest.array(), 0, size - Integer.BYTES);
+
+        if (!Arrays.equals(magic, MAGIC) || (int) crc.getValue() != manifest.getInt(size - Integer.BYTES)) {
+
+            throw corrupted("manifest checksum mismatch");
+        }
+
+        try {
+
+            val nextId = manifest.getLong();
+            val flushedLog = manifest.getLong();
+            val keys = manifest.getLong();
+            val levels = new ArrayList<List<Long>>();
+
+            for (var level = manifest.getInt(); level > 0; level--) {
+
+                val tables = new ArrayList<Long>();
+
+                for (var table = manifest.getInt(); table > 0; table--) {
+
+                    tables.add(manifest.getLong());
+                }
+
+                levels.add(tables);
+            }
+
+            return new State(nextId, flushedLog, keys, levels);
+        } catch (BufferUnderflowException e) {
+
+            throw corrupted("manifest entries are invalid");
+        }
+    }
+
+    /**
+     * Writes manifest to a temporary file and renames it over the previous one
+     */
+    static void write(Path basePath, long nextId, long flushedLog, long keys, Version version) throws IOException {
+
+        var size = MAGIC.length + Long.BYTES * 3 + Integer.BYTES + Integer.BYTES;
+
+        for (var level = 0; level < Version.LEVELS; level++) {
+
+            size += Integer.BYTES + version.level(level).size() * Long.BYTES;
+        }
+
+        val manifest = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .putLong(nextId)
+                .putLong(flushedLog)
+                .putLong(keys)
+                .putInt(Version.LEVELS);
+
+        for (var level = 0; level < Version.LEVELS; level++) {
+
+            manifest.putInt(version.level(level).size());
+
+            for (val table : version.level(level)) {
+
+                manifest.putLong(table.getId());
+            }
+        }
+
+        val crc = new CRC32C();
+        crc.update(manifest.array(), 0, manifest.position());
+        manifest.putInt((int) crc.getValue()).flip();
+
+        val temporary = basePath.resolve(NAME + ".tmp");
+
+        try (val channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            while (manifest.hasRemaining()) {
+
+                channel.write(manifest);
+            }
+
+            channel.force(false);
+        }
+
+        Files.move(temporary, basePath.resolve(NAME), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static IOException corrupted(String reason) {
+
+        return new IOException(String.format("Lsm manifest is corrupted: %s.", reason));
+    }
+}
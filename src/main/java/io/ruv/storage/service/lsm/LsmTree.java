@@ -0,0 +1,843 @@
+package io.ruv.storage.service.lsm;
+
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.util.properties.LsmStorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Embedded log-structured merge tree mapping keys to values.
+ * <p>
+ * Writes go to a write-ahead log and a memtable. A full memtable is sealed and flushed to a level 0 table
+ * in background, while a new one takes writes; writes stall while
+ * {@link LsmStorageProperties#getMaxImmutableMemtables() too many} memtables wait for a flush, so memory
+ * stays bounded and writes proceed at the rate tables are written. Level 0 tables are compacted into
+ * level 1, each level exceeding its size into the next one, with tombstones dropped at the bottom level.
+ * <p>
+ * Reads look up memtables, then tables from the newest, skipping tables by key range and Bloom filter.
+ * Flushes and compactions run one at a time on the background executor.
+ * <p>
+ * Keys are compared as strings. Stored key count is kept exact by writing only new keys and
+ * deleting only present ones, both checked under a lock striped by key.
+ */
+@Slf4j
+public class LsmTree implements Closeable {
+
+    private static final int STRIPES = 64;
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String TABLE_SUFFIX = ".sst";
+
+    /**
+     * Memtables and tables visible to readers, replaced as a whole
+     */
+    private static final class State {
+
+        final Memtable active;
+
+        /**
+         * Sealed memtables waiting for a flush, the newest first
+         */
+        final List<Memtable> immutables;
+
+        final Version version;
+
+        State(Memtable active, List<Memtable> immutables, Version version) {
+
+            this.active = active;
+            this.immutables = immutables;
+            this.version = version;
+        }
+    }
+
+    private final LsmStorageProperties properties;
+    private final Path basePath;
+    private final Executor background;
+
+    private final Object[] stripes = new Object[STRIPES];
+
+    /**
+     * Guards write-ahead log, key count and replacement of state by writes
+     */
+    private final Object writeMonitor = new Object();
+
+    private volatile State state;
+
+    private WriteAheadLog wal;
+    private volatile long keys;
+
+    private final AtomicLong nextId;
+
+    /**
+     * Failure of a log write or a background flush, writes fail once it is set
+     */
+    private volatile Exception failure;
+
+    private volatile boolean closed;
+
+    /**
+     * Flushed log id and keys as of it, recorded in manifest, accessed by background executor only
+     */
+    private long flushedLog;
+    private long flushedKeys;
+
+    /**
+     * Last key compacted from each level, compaction of a level proceeds round robin by key range
+     */
+    private final String[] compactPointers = new String[Version.LEVELS];
+
+    /**
+     * Opens tree at {@link LsmStorageProperties#getBasePath() base path}, replaying logs of writes
+     * not yet flushed and flushing them before the tree takes writes
+     *
+     * @param background executor of flushes and compactions, shut down on close when it is an executor service
+     * @throws PersistenceException when tables or manifest can not be read
+     */
+    public LsmTree(LsmStorageProperties properties, Executor background) throws PersistenceException {
+
+        this.properties = properties;
+        this.basePath = properties.getBasePath();
+        this.background = background;
+
+        for (var i = 0; i < STRIPES; i++) {
+
+            stripes[i] = new Object();
+        }
+
+        try {
+
+            val manifest = LsmManifest.read(basePath);
+            val listed = new HashSet<Long>();
+            val levels = new ArrayList<List<SSTable>>();
+            var maxId = manifest.getNextId() - 1;
+
+            for (val ids : manifest.getLevels()) {
+
+                val tables = new ArrayList<SSTable>();
+
+                for (val id : ids) {
+
+                    tables.add(SSTable.open(id, tablePath(id)));
+                    listed.add(id);
+                }
+
+                levels.add(tables);
+            }
+
+            val logs = new ArrayList<Long>();
+
+            try (val files = Files.list(basePath)) {
+
+                for (val path : files.collect(Collectors.toList())) {
+
+                    val name = path.getFileName().toString();
+                    maxId = Math.max(maxId, idOf(name));
+
+                    if (name.endsWith(TABLE_SUFFIX) && !listed.contains(idOf(name))) {
+
+                        // written by a flush or compaction not recorded in manifest
+                        Files.delete(path);
+                    } else if (name.endsWith(LOG_SUFFIX)) {
+
+                        if (idOf(name) > manifest.getFlushedLog()) {
+
+                            logs.add(idOf(name));
+                        } else {
+
+                            Files.delete(path);
+                        }
+                    }
+                }
+            }
+
+            this.nextId = new AtomicLong(maxId + 1);
+            this.flushedLog = manifest.getFlushedLog();
+            this.flushedKeys = manifest.getKeys();
+
+            var version = new Version(levels);
+            version = recover(version, logs.stream().sorted().collect(Collectors.toList()));
+
+            this.keys = flushedKeys;
+
+            val active = new Memtable(nextId.getAndIncrement());
+            this.wal = WriteAheadLog.create(logPath(active.getId()));
+            this.state = new State(active, List.of(), version);
+        } catch (IOException e) {
+
+            throw PersistenceException.readingStorage(e);
+        }
+
+        background.execute(this::compactQuietly);
+    }
+
+    /**
+     * @return value of the key, {@code null} when key is not stored
+     * @throws PersistenceException when a table can not be read
+     */
+    public ByteBuffer get(String key) throws PersistenceException {
+
+        val current = acquire();
+
+        try {
+
+            var value = current.active.get(key);
+
+            for (var i = 0; value == null && i < current.immutables.size(); i++) {
+
+                value = current.immutables.get(i).get(key);
+            }
+
+            if (value == null) {
+
+                value = current.version.get(key);
+            }
+
+            return value == Memtable.TOMBSTONE ? null : value;
+        } catch (IOException e) {
+
+            throw PersistenceException.reading(key, e);
+        } finally {
+
+            current.version.release();
+        }
+    }
+
+    /**
+     * Lists records of a key range merging memtables and tables of the current version,
+     * reading only blocks that may hold keys of the range
+     *
+     * @param limit maximum number of records
+     * @return stored keys of the range in ascending order with their values
+     * @throws PersistenceException when a table can not be read
+     */
+    public List<Map.Entry<String, ByteBuffer>> scan(KeyRange range, int limit) throws PersistenceException {
+
+        val current = acquire();
+
+        try {
+
+            val sources = new ArrayList<Iterator<Map.Entry<String, ByteBuffer>>>();
+            sources.add(current.active.iterator(range));
+            current.immutables.forEach(memtable -> sources.add(memtable.iterator(range)));
+            current.version.scan(range, sources);
+
+            val records = new ArrayList<Map.Entry<String, ByteBuffer>>(Math.min(limit, 1024));
+            val merged = new MergingIterator(sources);
+
+            while (records.size() < limit && merged.hasNext()) {
+
+                val record = merged.next();
+
+                if (range.endsBefore(record.getKey())) {
+
+                    break;
+                }
+
+                if (record.getValue() != Memtable.TOMBSTONE) {
+
+                    records.add(record);
+                }
+            }
+
+            return records;
+        } catch (UncheckedIOException e) {
+
+            throw PersistenceException.readingStorage(e.getCause());
+        } finally {
+
+            current.version.release();
+        }
+    }
+
+    /**
+     * Stores value unless key is already stored
+     *
+     * @param value value to store, must not be modified afterwards
+     * @return whether value was stored
+     * @throws PersistenceException when write can not be logged
+     */
+    public boolean putIfAbsent(String key, ByteBuffer value) throws PersistenceException {
+
+        synchronized (stripe(key)) {
+
+            if (get(key) != null) {
+
+                return false;
+            }
+
+            write(key, value, 1);
+            return true;
+        }
+    }
+
+    /**
+     * Deletes value of the key
+     *
+     * @return whether key was stored
+     * @throws PersistenceException when write can not be logged
+     */
+    public boolean remove(String key) throws PersistenceException {
+
+        synchronized (stripe(key)) {
+
+            if (get(key) == null) {
+
+                return false;
+            }
+
+            write(key, Memtable.TOMBSTONE, -1);
+            return true;
+        }
+    }
+
+    /**
+     * Flushes all writes to tables and waits for the flush to finish
+     *
+     * @throws PersistenceException when flush fails
+     */
+    public void flush() throws PersistenceException {
+
+        synchronized (writeMonitor) {
+
+            if (!state.active.isEmpty()) {
+
+                rotate();
+            }
+
+            while (!state.immutables.isEmpty()) {
+
+                checkFailure();
+                await();
+            }
+
+            checkFailure();
+        }
+    }
+
+    /**
+     * @return number of stored keys
+     */
+    public long keys() {
+
+        return keys;
+    }
+
+    /**
+     * @return size of keys and values held in memtables
+     */
+    public long memtableBytes() {
+
+        val current = state;
+        return current.active.bytes() + current.immutables.stream().mapToLong(Memtable::bytes).sum();
+    }
+
+    /**
+     * @return number of table files of each level
+     */
+    public int[] tableCounts() {
+
+        val current = acquire();
+
+        try {
+
+            val counts = new int[Version.LEVELS];
+
+            for (var level = 0; level < Version.LEVELS; level++) {
+
+                counts[level] = current.version.level(level).size();
+            }
+
+            return counts;
+        } finally {
+
+            current.version.release();
+        }
+    }
+
+    /**
+     * Waits for running flush and compaction, closes log and tables. Writes of the memtable
+     * are replayed from its log on the next open.
+     */
+    @Override
+    public void close() throws IOException {
+
+        closed = true;
+
+        if (background instanceof ExecutorService) {
+
+            val executor = (ExecutorService) background;
+            executor.shutdown();
+
+            try {
+
+                if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+
+                    log.warn("Background flush or compaction did not finish in time.");
+                }
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (writeMonitor) {
+
+            writeMonitor.notifyAll();
+
+            try {
+
+                wal.sync();
+            } finally {
+
+                wal.close();
+            }
+        }
+
+        state.version.close();
+    }
+
+    private void write(String key, ByteBuffer value, int keyDelta) throws PersistenceException {
+
+        synchronized (writeMonitor) {
+
+            checkFailure();
+
+            if (state.active.bytes() >= properties.getMemtableSize().toBytes()) {
+
+                rotate();
+            }
+
+            try {
+
+                wal.append(key, value);
+
+                if (properties.isSync()) {
+
+                    wal.sync();
+                }
+            } catch (IOException e) {
+
+                // a torn record would end replay of the records following it
+                failure = e;
+                throw PersistenceException.writing(key, e);
+            }
+
+            state.active.put(key, value);
+            keys += keyDelta;
+        }
+    }
+
+    /**
+     * Seals active memtable and schedules its flush, waiting while too many memtables wait for a flush
+     */
+    private void rotate() throws PersistenceException {
+
+        while (state.immutables.size() >= properties.getMaxImmutableMemtables()) {
+
+            checkFailure();
+            await();
+        }
+
+        checkFailure();
+
+        val current = state;
+
+        try {
+
+            wal.sync();
+            wal.close();
+
+            current.active.seal(keys);
+
+            val active = new Memtable(nextId.getAndIncrement());
+            wal = WriteAheadLog.create(logPath(active.getId()));
+
+            val immutables = new ArrayList<Memtable>(current.immutables.size() + 1);
+            immutables.add(current.active);
+            immutables.addAll(current.immutables);
+
+            state = new State(active, immutables, current.version);
+        } catch (IOException e) {
+
+            failure = e;
+            throw PersistenceException.writingStorage(e);
+        }
+
+        background.execute(() -> flush(current.active));
+    }
+
+    private void flush(Memtable memtable) {
+
+        try {
+
+            val tables = memtable.isEmpty() ? List.<SSTable>of() : writeTables(memtable.iterator(), false, Long.MAX_VALUE);
+            val current = state.version;
+            val next = current.withFlushed(tables);
+
+            flushedLog = memtable.getId();
+            flushedKeys = memtable.keysAfter();
+            LsmManifest.write(basePath, nextId.get(), flushedLog, flushedKeys, next);
+            forceDirectory();
+
+            synchronized (writeMonitor) {
+
+                val immutables = new ArrayList<>(state.immutables);
+                immutables.remove(memtable);
+                state = new State(state.active, immutables, next);
+                writeMonitor.notifyAll();
+            }
+
+            current.release();
+            Files.deleteIfExists(logPath(memtable.getId()));
+            log.debug("Memtable {} flushed to {} tables.", memtable.getId(), tables.size());
+
+            compact();
+        } catch (IOException | RuntimeException e) {
+
+            log.error("Flush of memtable {} failed.", memtable.getId(), e);
+
+            synchronized (writeMonitor) {
+
+                failure = e;
+                writeMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void compactQuietly() {
+
+        try {
+
+            compact();
+        } catch (IOException | RuntimeException e) {
+
+            log.error("Compaction failed.", e);
+        }
+    }
+
+    /**
+     * Compacts levels until each is within its limits
+     */
+    private void compact() throws IOException {
+
+        while (!closed) {
+
+            val version = state.version;
+            val level = pickLevel(version);
+
+            if (level < 0) {
+
+                return;
+            }
+
+            compact(version, level);
+        }
+    }
+
+    private int pickLevel(Version version) {
+
+        if (version.level(0).size() >= properties.getLevel0CompactionTrigger()) {
+
+            return 0;
+        }
+
+        var maxSize = (double) properties.getLevelBaseSize().toBytes();
+
+        for (var level = 1; level < Version.LEVELS - 1; level++) {
+
+            if (version.levelSize(level) > maxSize) {
+
+                return level;
+            }
+
+            maxSize *= properties.getLevelSizeMultiplier();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Merges tables of a level with overlapping tables of the next one into new tables of the next level
+     */
+    private void compact(Version version, int level) throws IOException {
+
+        List<SSTable> inputs;
+
+        if (level == 0) {
+
+            inputs = version.level(0);
+        } else {
+
+            val pointer = compactPointers[level];
+            val tables = version.level(level);
+
+            inputs = List.of(tables.stream()
+                    .filter(table -> pointer == null || table.getFirstKey().compareTo(pointer) > 0)
+                    .findFirst()
+                    .orElse(tables.get(0)));
+        }
+
+        var first = inputs.stream().map(SSTable::getFirstKey).min(String::compareTo).orElseThrow();
+        var last = inputs.stream().map(SSTable::getLastKey).max(String::compareTo).orElseThrow();
+
+        val rangeFirst = first;
+        val rangeLast = last;
+        val overlapping = version.level(level + 1).stream()
+                .filter(table -> table.overlaps(rangeFirst, rangeLast))
+                .collect(Collectors.toList());
+
+        for (val table : overlapping) {
+
+            first = table.getFirstKey().compareTo(first) < 0 ? table.getFirstKey() : first;
+            last = table.getLastKey().compareTo(last) > 0 ? table.getLastKey() : last;
+        }
+
+        val sources = new ArrayList<Iterator<Map.Entry<String, ByteBuffer>>>();
+        inputs.forEach(table -> sources.add(table.iterator()));
+        overlapping.forEach(table -> sources.add(table.iterator()));
+
+        val outputs = writeTables(new MergingIterator(sources), version.isBottom(level + 1, first, last),
+                properties.getTargetFileSize().toBytes());
+        val next = version.withCompacted(level, inputs, overlapping, outputs);
+
+        LsmManifest.write(basePath, nextId.get(), flushedLog, flushedKeys, next);
+        forceDirectory();
+        compactPointers[level] = rangeLast;
+
+        synchronized (writeMonitor) {
+
+            state = new State(state.active, state.immutables, next);
+        }
+
+        inputs.forEach(SSTable::markObsolete);
+        overlapping.forEach(SSTable::markObsolete);
+        version.release();
+
+        log.debug("Compaction of {} tables of level {} and {} of level {} into {} tables.",
+                inputs.size(), level, overlapping.size(), level + 1, outputs.size());
+    }
+
+    /**
+     * Writes records into tables split at provided size
+     *
+     * @param dropTombstones whether deleted keys are left out, when no older records of them remain
+     * @return opened tables, in key order
+     */
+    private List<SSTable> writeTables(Iterator<Map.Entry<String, ByteBuffer>> records, boolean dropTombstones,
+                                      long splitSize) throws IOException {
+
+        val tables = new ArrayList<SSTable>();
+        SSTableWriter writer = null;
+        long id = 0;
+
+        try {
+
+            while (records.hasNext()) {
+
+                val record = records.next();
+
+                if (dropTombstones && record.getValue() == Memtable.TOMBSTONE) {
+
+                    continue;
+                }
+
+                if (writer == null) {
+
+                    id = nextId.getAndIncrement();
+                    writer = SSTableWriter.create(tablePath(id), (int) properties.getBlockSize().toBytes(),
+                            properties.getBloomBitsPerKey());
+                }
+
+                writer.add(record.getKey(), record.getValue());
+
+                if (writer.size() >= splitSize) {
+
+                    writer.finish();
+                    writer = null;
+                    tables.add(SSTable.open(id, tablePath(id)));
+                }
+            }
+
+            if (writer != null) {
+
+                writer.finish();
+                writer = null;
+                tables.add(SSTable.open(id, tablePath(id)));
+            }
+
+            return tables;
+        } catch (IOException | RuntimeException e) {
+
+            if (writer != null) {
+
+                writer.close();
+                Files.deleteIfExists(tablePath(id));
+            }
+
+            for (val table : tables) {
+
+                table.close();
+                Files.deleteIfExists(tablePath(table.getId()));
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Replays logs of writes not yet flushed and flushes them into a level 0 table
+     *
+     * @return version holding the flushed table
+     */
+    private Version recover(Version version, List<Long> logs) throws IOException {
+
+        if (logs.isEmpty()) {
+
+            return version;
+        }
+
+        val recovered = new Memtable(0);
+        var replayedKeys = flushedKeys;
+
+        for (val id : logs) {
+
+            val replayed = new long[1];
+
+            WriteAheadLog.replay(logPath(id), (key, value) -> {
+
+                recovered.put(key, value);
+                replayed[0] += value == Memtable.TOMBSTONE ? -1 : 1;
+            });
+
+            replayedKeys += replayed[0];
+        }
+
+        val tables = recovered.isEmpty() ? List.<SSTable>of() : writeTables(recovered.iterator(), false, Long.MAX_VALUE);
+        val next = version.withFlushed(tables);
+
+        flushedLog = logs.get(logs.size() - 1);
+        flushedKeys = replayedKeys;
+        LsmManifest.write(basePath, nextId.get(), flushedLog, flushedKeys, next);
+        forceDirectory();
+        version.release();
+
+        for (val id : logs) {
+
+            Files.deleteIfExists(logPath(id));
+        }
+
+        log.info("Recovered writes of {} logs.", logs.size());
+        return next;
+    }
+
+    private State acquire() {
+
+        while (true) {
+
+            val current = state;
+
+            // version is released by flush or compaction replacing it
+            if (current.version.retain()) {
+
+                return current;
+            }
+        }
+    }
+
+    private void checkFailure() throws PersistenceException {
+
+        if (failure != null) {
+
+            throw PersistenceException.writingStorage(failure);
+        }
+
+        if (closed) {
+
+            throw PersistenceException.writingStorage(new IOException("Storage is closed."));
+        }
+    }
+
+    /**
+     * Waits for a flush to finish, holding write monitor
+     */
+    private void await() throws PersistenceException {
+
+        try {
+
+            writeMonitor.wait();
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw PersistenceException.writingStorage(new InterruptedIOException("Interrupted while waiting for flush."));
+        }
+    }
+
+    private Object stripe(String key) {
+
+        return stripes[Math.floorMod(key.hashCode(), STRIPES)];
+    }
+
+    private Path logPath(long id) {
+
+        return basePath.resolve(id + LOG_SUFFIX);
+    }
+
+    private Path tablePath(long id) {
+
+        return basePath.resolve(id + TABLE_SUFFIX);
+    }
+
+    private void forceDirectory() {
+
+        try (val directory = FileChannel.open(basePath, StandardOpenOption.READ)) {
+
+            directory.force(true);
+        } catch (IOException e) {
+
+            // not every platform allows opening directories, file contents are flushed anyway
+            log.trace("Failed to flush directory '{}'.", basePath, e);
+        }
+    }
+
+    /**
+     * @return id of log or table file, -1 for other files
+     */
+    private static long idOf(String name) {
+
+        val suffix = name.endsWith(LOG_SUFFIX) ? LOG_SUFFIX : name.endsWith(TABLE_SUFFIX) ? TABLE_SUFFIX : null;
+
+        if (suffix == null) {
+
+            return -1;
+        }
+
+        try {
+
+            return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.ruv.storage.service.lsm;
+
+import io.ruv.storage.service.KeyRange;
+import lombok.Getter;
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorted in-memory table of the most recent writes, backed by a write-ahead log of the same id.
+ * Deleted keys are kept as {@link #TOMBSTONE} until compaction drops them.
+ */
+final class Memtable {
+
+    /**
+     * Value of deleted keys, compared by identity
+     */
+    static final ByteBuffer TOMBSTONE = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    /**
+     * Rough per-record overhead of skip list nodes and key objects
+     */
+    private static final int RECORD_OVERHEAD = 64;
+
+    /**
+     * Id of the log holding records of this memtable
+     */
+    @Getter
+    private final long id;
+
+    private final ConcurrentSkipListMap<String, ByteBuffer> records = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Number of stored keys of the whole tree once this memtable stopped taking writes, -1 while it takes them
+     */
+    private volatile long keysAfter = -1;
+
+    Memtable(long id) {
+
+        this.id = id;
+    }
+
+    void put(String key, ByteBuffer value) {
+
+        val previous = records.put(key, value);
+        var delta = (long) value.remaining() + RECORD_OVERHEAD;
+
+        if (previous == null) {
+
+            delta += key.length() * 2L;
+        } else {
+
+            delta -= previous.remaining() + RECORD_OVERHEAD;
+        }
+
+        bytes.addAndGet(delta);
+    }
+
+    /**
+     * @return value, {@link #TOMBSTONE} for deleted key, {@code null} when this memtable does not hold the key
+     */
+    ByteBuffer get(String key) {
+
+        return records.get(key);
+    }
+
+    Iterator<Map.Entry<String, ByteBuffer>> iterator() {
+
+        return records.entrySet().iterator();
+    }
+
+    /**
+     * @return records of the range in key order
+     */
+    Iterator<Map.Entry<String, ByteBuffer>> iterator(KeyRange range) {
+
+        NavigableMap<String, ByteBuffer> view = records;
+
+        if (range.getFrom() != null) {
+
+            view = view.tailMap(range.getFrom(), true);
+        }
+
+        if (range.getTo() != null) {
+
+            view = view.headMap(range.getTo(), false);
+        }
+
+        return view.entrySet().iterator();
+    }
+
+    boolean isEmpty() {
+
+        return records.isEmpty();
+    }
+
+    long bytes() {
+
+        return bytes.get();
+    }
+
+    void seal(long keys) {
+
+        this.keysAfter = keys;
+    }
+
+    long keysAfter() {
+
+        return keysAfter;
+    }
+}
@@ -0,0 +1,84 @@
+package io.ruv.storage.service.lsm;
+
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted record iterators into one, a key present in several of them yields the record
+ * of the newest source only
+ */
+final class MergingIterator implements Iterator<Map.Entry<String, ByteBuffer>> {
+
+    private static final class Head {
+
+        final Map.Entry<String, ByteBuffer> entry;
+        final int source;
+
+        Head(Map.Entry<String, ByteBuffer> entry, int source) {
+
+            this.entry = entry;
+            this.source = source;
+        }
+    }
+
+    private final List<Iterator<Map.Entry<String, ByteBuffer>>> sources;
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(
+            Comparator.<Head, String>comparing(head -> head.entry.getKey()).thenComparingInt(head -> head.source));
+
+    /**
+     * @param sources iterators in ascending key order, the newest first
+     */
+    MergingIterator(List<Iterator<Map.Entry<String, ByteBuffer>>> sources) {
+
+        this.sources = sources;
+
+        for (var i = 0; i < sources.size(); i++) {
+
+            advance(i);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<String, ByteBuffer> next() {
+
+        val head = heads.poll();
+
+        if (head == null) {
+
+            throw new NoSuchElementException();
+        }
+
+        advance(head.source);
+
+        // older records of the same key are shadowed
+        while (!heads.isEmpty() && heads.peek().entry.getKey().equals(head.entry.getKey())) {
+
+            advance(heads.poll().source);
+        }
+
+        return head.entry;
+    }
+
+    private void advance(int source) {
+
+        val iterator = sources.get(source);
+
+        if (iterator.hasNext()) {
+
+            heads.add(new Head(iterator.next(), source));
+        }
+    }
+}
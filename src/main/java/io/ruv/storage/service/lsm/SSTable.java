@@ -0,0 +1,394 @@
+package io.ruv.storage.service.lsm;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+/**
+ * Immutable sorted table file. Block index and Bloom filter are held in memory, blocks are read on demand.
+ * <pre>
+ * [block]*      records {@code [key length:int][key][value length:int][value]}, value length -1 for deleted keys
+ * [index]       {@code [block count:int]([first key length:int][first key][offset:long][length:int][crc32c:int])*}
+ *               {@code [last key length:int][last key]}
+ * [filter]      {@code [hash count:int][word count:int][word:long]*}
+ * [footer]      {@code [index offset:long][index length:int][filter length:int][entry count:long][index and filter crc32c:int][magic]}
+ * </pre>
+ * Table is reference counted by versions of the tree holding it, an obsolete table is deleted
+ * once the last version holding it is released.
+ */
+@Slf4j
+final class SSTable {
+
+    static final byte[] MAGIC = "KVSLSMT1".getBytes(StandardCharsets.US_ASCII);
+
+    static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + MAGIC.length;
+
+    @Getter
+    private final long id;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    @Getter
+    private final long size;
+
+    @Getter
+    private final long entries;
+
+    @Getter
+    private final String firstKey;
+
+    @Getter
+    private final String lastKey;
+
+    private final String[] blockKeys;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockCrcs;
+    private final BloomFilter bloom;
+
+    private final AtomicInteger refs = new AtomicInteger();
+    private volatile boolean obsolete;
+
+    private SSTable(long id, Path path, FileChannel channel, long size, long entries, String[] blockKeys,
+                    long[] blockOffsets, int[] blockLengths, int[] blockCrcs, String lastKey, BloomFilter bloom) {
+
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.entries = entries;
+        this.blockKeys = blockKeys;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.blockCrcs = blockCrcs;
+        this.firstKey = blockKeys.length == 0 ? "" : blockKeys[0];
+        this.lastKey = lastKey;
+        this.bloom = bloom;
+    }
+
+    /**
+     * Opens table file and reads its index and filter
+     *
+     * @throws IOException when file is truncated or corrupted
+     */
+    static SSTable open(long id, Path path) throws IOException {
+
+        val channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+
+            val name = path.getFileName().toString();
+            val size = channel.size();
+
+            if (size < FOOTER_SIZE) {
+
+                throw corrupted(name, "file is truncated");
+            }
+
+            val footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            val indexOffset = footer.getLong();
+            val indexLength = footer.getInt();
+            val bloomLength = footer.getInt();
+            val entries = footer.getLong();
+            val crc = footer.getInt();
+            val magic = new byte[MAGIC.length];
+            footer.get(magic);
+
+            if (!Arrays.equals(magic, MAGIC) || indexOffset < 0 || indexLength < 0 || bloomLength < 0
+                    || indexOffset + indexLength + bloomLength != size - FOOTER_SIZE) {
+
+                throw corrupted(name, "footer is invalid");
+            }
+
+            val meta = readFully(channel, indexOffset, indexLength + bloomLength);
+            val actual = new CRC32C();
+            actual.update(meta.duplicate());
+
+            if ((int) actual.getValue() != crc) {
+
+                throw corrupted(name, "index checksum mismatch");
+            }
+
+            try {
+
+                val blocks = meta.getInt();
+                val blockKeys = new String[blocks];
+                val blockOffsets = new long[blocks];
+                val blockLengths = new int[blocks];
+                val blockCrcs = new int[blocks];
+
+                for (var i = 0; i < blocks; i++) {
+
+                    blockKeys[i] = readKey(meta);
+                    blockOffsets[i] = meta.getLong();
+                    blockLengths[i] = meta.getInt();
+                    blockCrcs[i] = meta.getInt();
+                }
+
+                val lastKey = readKey(meta);
+
+                return new SSTable(id, path, channel, size, entries, blockKeys, blockOffsets, blockLengths, blockCrcs,
+                        lastKey, BloomFilter.decode(meta));
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+
+                throw corrupted(name, "index is invalid");
+            }
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return value, {@link Memtable#TOMBSTONE} for deleted key, {@code null} when table does not hold the key
+     */
+    ByteBuffer get(String key) throws IOException {
+
+        if (blockKeys.length == 0 || key.compareTo(firstKey) < 0 || key.compareTo(lastKey) > 0 || !bloom.mightContain(key)) {
+
+            return null;
+        }
+
+        val block = readBlock(blockOf(key));
+
+        while (block.hasRemaining()) {
+
+            val recordKey = readKey(block);
+            val valueLength = block.getInt();
+            val comparison = recordKey.compareTo(key);
+
+            if (comparison == 0) {
+
+                return valueLength < 0 ? Memtable.TOMBSTONE : block.slice().limit(valueLength);
+            }
+
+            if (comparison > 0) {
+
+                return null;
+            }
+
+            block.position(block.position() + Math.max(valueLength, 0));
+        }
+
+        return null;
+    }
+
+    /**
+     * @return records in key order, read block by block, failures are thrown as {@link UncheckedIOException}
+     */
+    Iterator<Map.Entry<String, ByteBuffer>> iterator() {
+
+        return iterator(null);
+    }
+
+    /**
+     * @param from least key to return, {@code null} to start with the first record
+     * @return records from provided key on in key order, read block by block starting with the block
+     * that may hold the key, failures are thrown as {@link UncheckedIOException}
+     */
+    Iterator<Map.Entry<String, ByteBuffer>> iterator(String from) {
+
+        return new BlockIterator(from != null && blockKeys.length > 0 ? blockOf(from) : 0, from);
+    }
+
+    boolean overlaps(String first, String last) {
+
+        return entries > 0 && firstKey.compareTo(last) <= 0 && lastKey.compareTo(first) >= 0;
+    }
+
+    void retain() {
+
+        refs.incrementAndGet();
+    }
+
+    void release() {
+
+        if (refs.decrementAndGet() == 0 && obsolete) {
+
+            close();
+
+            try {
+
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+
+                log.warn("Failed to delete table '{}'.", path, e);
+            }
+        }
+    }
+
+    /**
+     * Marks table replaced by compaction, its file is deleted once no version holds it
+     */
+    void markObsolete() {
+
+        obsolete = true;
+    }
+
+    void close() {
+
+        try {
+
+            channel.close();
+        } catch (IOException e) {
+
+            log.warn("Failed to close table '{}'.", path, e);
+        }
+    }
+
+    /**
+     * @return last block starting at or before the key, the first block when key precedes every block
+     */
+    private int blockOf(String key) {
+
+        var low = 0;
+        var high = blockKeys.length - 1;
+
+        while (low < high) {
+
+            val middle = (low + high + 1) >>> 1;
+
+            if (blockKeys[middle].compareTo(key) <= 0) {
+
+                low = middle;
+            } else {
+
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private ByteBuffer readBlock(int index) throws IOException {
+
+        val block = readFully(channel, blockOffsets[index], blockLengths[index]);
+        val crc = new CRC32C();
+        crc.update(block.duplicate());
+
+        if ((int) crc.getValue() != blockCrcs[index]) {
+
+            throw corrupted(path.getFileName().toString(), String.format("block %d checksum mismatch", index));
+        }
+
+        return block;
+    }
+
+    private static String readKey(ByteBuffer buffer) {
+
+        val key = new byte[buffer.getInt()];
+        buffer.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+
+        val buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * Reads records of consecutive blocks one record ahead, skipping records below the least key to return
+     */
+    private final class BlockIterator implements Iterator<Map.Entry<String, ByteBuffer>> {
+
+        private int nextBlock;
+        private ByteBuffer block = ByteBuffer.allocate(0);
+        private Map.Entry<String, ByteBuffer> pending;
+
+        BlockIterator(int firstBlock, String from) {
+
+            this.nextBlock = firstBlock;
+            this.pending = read();
+
+            while (from != null && pending != null && pending.getKey().compareTo(from) < 0) {
+
+                pending = read();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            return pending != null;
+        }
+
+        @Override
+        public Map.Entry<String, ByteBuffer> next() {
+
+            if (pending == null) {
+
+                throw new NoSuchElementException();
+            }
+
+            val next = pending;
+            pending = read();
+            return next;
+        }
+
+        private Map.Entry<String, ByteBuffer> read() {
+
+            if (!block.hasRemaining()) {
+
+                if (nextBlock == blockKeys.length) {
+
+                    return null;
+                }
+
+                try {
+
+                    block = readBlock(nextBlock++);
+                } catch (IOException e) {
+
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            val key = readKey(block);
+            val valueLength = block.getInt();
+
+            if (valueLength < 0) {
+
+                return new AbstractMap.SimpleImmutableEntry<>(key, Memtable.TOMBSTONE);
+            }
+
+            val value = block.slice().limit(valueLength);
+            block.position(block.position() + valueLength);
+
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        }
+    }
+
+    static IOException corrupted(String name, String reason) {
+
+        return new IOException(String.format("Table file '%s' is corrupted: %s.", name, reason));
+    }
+}
@@ -0,0 +1,190 @@
+package io.ruv.storage.service.lsm;
+
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes records in ascending key order into a table file laid out as described by {@link SSTable}
+ */
+final class SSTableWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final int bloomBitsPerKey;
+
+    private final List<byte[]> blockKeys = new ArrayList<>();
+    private final List<long[]> blockHandles = new ArrayList<>();
+
+    private ByteBuffer block;
+    private byte[] blockFirstKey;
+    private byte[] lastKey = new byte[0];
+    private long offset;
+
+    private long[] hashes = new long[1024];
+    private int entries;
+
+    private SSTableWriter(FileChannel channel, int blockSize, int bloomBitsPerKey) {
+
+        this.channel = channel;
+        this.blockSize = blockSize;
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        this.block = ByteBuffer.allocate(blockSize);
+    }
+
+    static SSTableWriter create(Path path, int blockSize, int bloomBitsPerKey) throws IOException {
+
+        return new SSTableWriter(FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                blockSize, bloomBitsPerKey);
+    }
+
+    /**
+     * @param value value to write, {@link Memtable#TOMBSTONE} for deleted key
+     */
+    void add(String key, ByteBuffer value) throws IOException {
+
+        val keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        val deleted = value == Memtable.TOMBSTONE;
+        val size = Integer.BYTES + keyBytes.length + Integer.BYTES + (deleted ? 0 : value.remaining());
+
+        if (block.position() > 0 && block.position() + size > blockSize) {
+
+            flushBlock();
+        }
+
+        if (block.remaining() < size) {
+
+            block = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + size)).put(block.flip());
+        }
+
+        if (blockFirstKey == null) {
+
+            blockFirstKey = keyBytes;
+        }
+
+        block.putInt(keyBytes.length).put(keyBytes).putInt(deleted ? -1 : value.remaining());
+
+        if (!deleted) {
+
+            block.put(value.duplicate());
+        }
+
+        if (entries == hashes.length) {
+
+            hashes = Arrays.copyOf(hashes, entries * 2);
+        }
+
+        hashes[entries++] = BloomFilter.hash(key);
+        lastKey = keyBytes;
+    }
+
+    /**
+     * @return bytes written so far, including the pending block
+     */
+    long size() {
+
+        return offset + block.position();
+    }
+
+    long entries() {
+
+        return entries;
+    }
+
+    /**
+     * Writes index, filter and footer and flushes the file to disk
+     */
+    void finish() throws IOException {
+
+        flushBlock();
+
+        var indexSize = Integer.BYTES + Integer.BYTES + lastKey.length;
+
+        for (val key : blockKeys) {
+
+            indexSize += Integer.BYTES + key.length + Long.BYTES + Integer.BYTES + Integer.BYTES;
+        }
+
+        val bloom = BloomFilter.of(hashes, entries, bloomBitsPerKey);
+        val meta = ByteBuffer.allocate(indexSize + bloom.encodedSize()).putInt(blockKeys.size());
+
+        for (var i = 0; i < blockKeys.size(); i++) {
+
+            val key = blockKeys.get(i);
+            val handle = blockHandles.get(i);
+            meta.putInt(key.length).put(key).putLong(handle[0]).putInt((int) handle[1]).putInt((int) handle[2]);
+        }
+
+        meta.putInt(lastKey.length).put(lastKey);
+        bloom.encode(meta);
+        meta.flip();
+
+        val crc = new CRC32C();
+        crc.update(meta.duplicate());
+
+        val footer = ByteBuffer.allocate(SSTable.FOOTER_SIZE)
+                .putLong(offset)
+                .putInt(indexSize)
+                .putInt(bloom.encodedSize())
+                .putLong(entries)
+                .putInt((int) crc.getValue())
+                .put(SSTable.MAGIC)
+                .flip();
+
+        writeFully(meta);
+        writeFully(footer);
+        channel.force(false);
+        channel.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    private void flushBlock() throws IOException {
+
+        if (block.position() == 0) {
+
+            return;
+        }
+
+        block.flip();
+
+        val crc = new CRC32C();
+        crc.update(block.duplicate());
+
+        blockKeys.add(blockFirstKey);
+        blockHandles.add(new long[]{offset, block.remaining(), (int) crc.getValue()});
+
+        offset += block.remaining();
+        writeFully(block);
+
+        if (block.capacity() > blockSize) {
+
+            block = ByteBuffer.allocate(blockSize);
+        }
+
+        block.clear();
+        blockFirstKey = null;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+
+        while (buffer.hasRemaining()) {
+
+            channel.write(buffer);
+        }
+    }
+}
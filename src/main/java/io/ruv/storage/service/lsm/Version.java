@@ -0,0 +1,286 @@
+package io.ruv.storage.service.lsm;
+
+import io.ruv.storage.service.KeyRange;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable set of table files by level. Level 0 tables may overlap and are ordered the newest first,
+ * tables of other levels are disjoint and ordered by key.
+ * <p>
+ * Version is reference counted by the tree while current and by readers while in use,
+ * tables are released once no version holds them.
+ */
+final class Version {
+
+    static final int LEVELS = 7;
+
+    private final List<List<SSTable>> levels;
+
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    Version(List<List<SSTable>> levels) {
+
+        val copy = new ArrayList<List<SSTable>>(LEVELS);
+
+        for (var level = 0; level < LEVELS; level++) {
+
+            copy.add(Collections.unmodifiableList(new ArrayList<>(level < levels.size() ? levels.get(level) : List.of())));
+        }
+
+        this.levels = Collections.unmodifiableList(copy);
+        this.levels.forEach(tables -> tables.forEach(SSTable::retain));
+    }
+
+    static Version empty() {
+
+        return new Version(List.of());
+    }
+
+    List<SSTable> level(int level) {
+
+        return levels.get(level);
+    }
+
+    long levelSize(int level) {
+
+        return levels.get(level).stream().mapToLong(SSTable::getSize).sum();
+    }
+
+    /**
+     * @return value, {@link Memtable#TOMBSTONE} for deleted key, {@code null} when no table holds the key
+     */
+    ByteBuffer get(String key) throws IOException {
+
+        for (val table : levels.get(0)) {
+
+            val value = table.get(key);
+
+            if (value != null) {
+
+                return value;
+            }
+        }
+
+        for (var level = 1; level < LEVELS; level++) {
+
+            val table = find(levels.get(level), key);
+
+            if (table != null) {
+
+                val value = table.get(key);
+
+                if (value != null) {
+
+                    return value;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds iterators over records of the range to provided ones, the newest first: one per level 0 table
+     * and one per other level walking its tables in turn
+     *
+     * @param range   range of keys, iterators may return keys above it
+     * @param sources iterators to add to
+     */
+    void scan(KeyRange range, List<Iterator<Map.Entry<String, ByteBuffer>>> sources) {
+
+        for (val table : levels.get(0)) {
+
+            if (overlaps(table, range)) {
+
+                sources.add(table.iterator(range.getFrom()));
+            }
+        }
+
+        for (var level = 1; level < LEVELS; level++) {
+
+            val tables = levels.get(level).stream()
+                    .filter(table -> overlaps(table, range))
+                    .collect(Collectors.toList());
+
+            if (!tables.isEmpty()) {
+
+                sources.add(new LevelIterator(tables, range.getFrom()));
+            }
+        }
+    }
+
+    /**
+     * @return version with provided tables flushed into level 0
+     */
+    Version withFlushed(List<SSTable> flushed) {
+
+        val next = new ArrayList<>(levels);
+        val level0 = new ArrayList<SSTable>(flushed);
+        level0.addAll(levels.get(0));
+        next.set(0, level0);
+
+        return new Version(next);
+    }
+
+    /**
+     * @return version with compacted tables of a level and the next one replaced by compaction output
+     */
+    Version withCompacted(int level, List<SSTable> inputs, List<SSTable> overlapping, List<SSTable> outputs) {
+
+        val next = new ArrayList<>(levels);
+
+        val source = new ArrayList<>(levels.get(level));
+        source.removeAll(inputs);
+        next.set(level, source);
+
+        val target = new ArrayList<>(levels.get(level + 1));
+        target.removeAll(overlapping);
+        target.addAll(outputs);
+        target.sort(Comparator.comparing(SSTable::getFirstKey));
+        next.set(level + 1, target);
+
+        return new Version(next);
+    }
+
+    /**
+     * @return whether no table below provided level overlaps the key range
+     */
+    boolean isBottom(int level, String first, String last) {
+
+        for (var deeper = level + 1; deeper < LEVELS; deeper++) {
+
+            for (val table : levels.get(deeper)) {
+
+                if (table.overlaps(first, last)) {
+
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Takes a reference for a reader
+     *
+     * @return {@code false} when version was already released by the tree
+     */
+    boolean retain() {
+
+        while (true) {
+
+            val current = refs.get();
+
+            if (current == 0) {
+
+                return false;
+            }
+
+            if (refs.compareAndSet(current, current + 1)) {
+
+                return true;
+            }
+        }
+    }
+
+    void release() {
+
+        if (refs.decrementAndGet() == 0) {
+
+            levels.forEach(tables -> tables.forEach(SSTable::release));
+        }
+    }
+
+    void close() {
+
+        levels.forEach(tables -> tables.forEach(SSTable::close));
+    }
+
+    private static boolean overlaps(SSTable table, KeyRange range) {
+
+        return table.getEntries() > 0
+                && (range.getFrom() == null || table.getLastKey().compareTo(range.getFrom()) >= 0)
+                && !range.endsBefore(table.getFirstKey());
+    }
+
+    /**
+     * @return table of a disjoint level whose range holds the key
+     */
+    private static SSTable find(List<SSTable> tables, String key) {
+
+        var low = 0;
+        var high = tables.size() - 1;
+
+        while (low <= high) {
+
+            val middle = (low + high) >>> 1;
+            val table = tables.get(middle);
+
+            if (table.getLastKey().compareTo(key) < 0) {
+
+                low = middle + 1;
+            } else if (table.getFirstKey().compareTo(key) > 0) {
+
+                high = middle - 1;
+            } else {
+
+                return table;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Walks disjoint tables of a level in key order, opening the next table once the previous one is exhausted
+     */
+    private static final class LevelIterator implements Iterator<Map.Entry<String, ByteBuffer>> {
+
+        private final List<SSTable> tables;
+        private final String from;
+
+        private int nextTable;
+        private Iterator<Map.Entry<String, ByteBuffer>> current = Collections.emptyIterator();
+
+        LevelIterator(List<SSTable> tables, String from) {
+
+            this.tables = tables;
+            this.from = from;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while (!current.hasNext() && nextTable < tables.size()) {
+
+                current = tables.get(nextTable++).iterator(from);
+            }
+
+            return current.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, ByteBuffer> next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+
+            return current.next();
+        }
+    }
+}
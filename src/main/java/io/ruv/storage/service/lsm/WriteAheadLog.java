@@ -0,0 +1,136 @@
+package io.ruv.storage.service.lsm;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of writes to a memtable, replayed on startup to recover writes not yet flushed to tables.
+ * <pre>
+ * [record]*     {@code [crc32c:int][key length:int][value length:int][key][value]}, value length -1 for deletes
+ * </pre>
+ * Checksum covers everything after it, a record torn by a crash ends replay.
+ */
+@Slf4j
+final class WriteAheadLog implements Closeable {
+
+    private static final int HEADER_SIZE = Integer.BYTES * 3;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    private WriteAheadLog(Path path, FileChannel channel) {
+
+        this.path = path;
+        this.channel = channel;
+    }
+
+    static WriteAheadLog create(Path path) throws IOException {
+
+        return new WriteAheadLog(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @param value value to log, {@link Memtable#TOMBSTONE} for deletes
+     */
+    void append(String key, ByteBuffer value) throws IOException {
+
+        val keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        val deleted = value == Memtable.TOMBSTONE;
+        val header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length)
+                .putInt(0)
+                .putInt(keyBytes.length)
+                .putInt(deleted ? -1 : value.remaining())
+                .put(keyBytes)
+                .flip();
+
+        val crc = new CRC32C();
+        crc.update(header.duplicate().position(Integer.BYTES));
+        crc.update(value.duplicate());
+        header.putInt(0, (int) crc.getValue());
+
+        val buffers = new ByteBuffer[]{header, value.duplicate()};
+
+        while (buffers[1].hasRemaining() || header.hasRemaining()) {
+
+            channel.write(buffers);
+        }
+    }
+
+    void sync() throws IOException {
+
+        channel.force(false);
+    }
+
+    Path path() {
+
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    /**
+     * Passes logged records to provided action in order of writes
+     *
+     * @param action receives key and value, {@link Memtable#TOMBSTONE} for deletes
+     */
+    static void replay(Path path, BiConsumer<String, ByteBuffer> action) throws IOException {
+
+        val content = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        while (content.remaining() >= HEADER_SIZE) {
+
+            val start = content.position();
+            val crc = content.getInt();
+            val keyLength = content.getInt();
+            val valueLength = content.getInt();
+
+            if (keyLength < 0 || valueLength < -1 || content.remaining() < (long) keyLength + Math.max(valueLength, 0)) {
+
+                content.position(start);
+                break;
+            }
+
+            val actual = new CRC32C();
+            actual.update(content.duplicate().position(start + Integer.BYTES).limit(content.position() + keyLength + Math.max(valueLength, 0)));
+
+            if ((int) actual.getValue() != crc) {
+
+                content.position(start);
+                break;
+            }
+
+            val key = new byte[keyLength];
+            content.get(key);
+
+            ByteBuffer value = Memtable.TOMBSTONE;
+
+            if (valueLength >= 0) {
+
+                value = content.slice().limit(valueLength);
+                content.position(content.position() + valueLength);
+            }
+
+            action.accept(new String(key, StandardCharsets.UTF_8), value);
+        }
+
+        if (content.hasRemaining()) {
+
+            log.warn("Log '{}' ends with {} bytes of a torn record, ignoring them.", path, content.remaining());
+        }
+    }
+}
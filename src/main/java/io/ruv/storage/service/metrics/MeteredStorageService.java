@@ -0,0 +1,484 @@
+package io.ruv.storage.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.ByteRange;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.ExpirationNotSupportedException;
+import io.ruv.storage.service.ExpirationStatus;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.RangeNotSatisfiableException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.TierStatus;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.VersionMismatchException;
+import io.ruv.storage.service.VersioningNotSupportedException;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@link StorageService} recording latency, value sizes and rejections of delegate operations to a meter registry.
+ * <p>
+ * Meters:
+ * <ul>
+ *     <li>{@code storage.operations} - latency histogram per operation and outcome</li>
+ *     <li>{@code storage.value.size} - sizes of stored and retrieved values</li>
+ *     <li>{@code storage.snapshot} - duration of saves and loads per outcome</li>
+ *     <li>{@code storage.snapshot.keys} - keys persisted by saves and present after loads</li>
+ *     <li>{@code storage.rejections} - operations rejected with 503 while saving or loading</li>
+ *     <li>{@code storage.keys}, {@code storage.resident.bytes} - stored keys and value bytes held in memory</li>
+ *     <li>{@code storage.expiring.keys}, {@code storage.expired} - keys with time to live and keys removed
+ *     once it passed, by background expiration or on access</li>
+ * </ul>
+ */
+public class MeteredStorageService implements StorageService, Closeable {
+
+    private static final String SUCCESS = "success";
+    private static final String FAILURE = "failure";
+
+    private static final List<String> OPERATIONS = List.of(
+            "store", "store.batch", "retrieve", "retrieve.batch", "version", "scan", "delete", "delete.batch", "expire", "save", "load");
+
+    private final StorageService delegate;
+    private final MeterRegistry registry;
+
+    private final DistributionSummary storedSize;
+    private final DistributionSummary retrievedSize;
+
+    /**
+     * Meters of each operation, registered upfront to keep registry lookups off the hot path
+     */
+    private final Map<String, Timer> succeeded = new HashMap<>();
+    private final Map<String, Timer> failed = new HashMap<>();
+    private final Map<String, Counter> rejections = new HashMap<>();
+
+    public MeteredStorageService(StorageService delegate, MeterRegistry registry) {
+
+        this.delegate = delegate;
+        this.registry = registry;
+
+        this.storedSize = valueSize("store");
+        this.retrievedSize = valueSize("retrieve");
+
+        for (val operation : OPERATIONS) {
+
+            succeeded.put(operation, timer(operation, SUCCESS));
+            failed.put(operation, timer(operation, FAILURE));
+            rejections.put(operation, Counter.builder("storage.rejections")
+                    .description("Operations rejected while saving or loading")
+                    .tag("operation", operation)
+                    .register(registry));
+        }
+
+        Gauge.builder("storage.keys", delegate, StorageService::size)
+                .description("Number of stored keys")
+                .register(registry);
+        Gauge.builder("storage.resident.bytes", delegate, StorageService::residentBytes)
+                .description("Value bytes held in memory")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("storage.expiring.keys", delegate, storage -> storage.expirationStatus().getExpiringKeys())
+                .description("Number of stored keys with time to live")
+                .register(registry);
+        FunctionCounter.builder("storage.expired", delegate, storage -> storage.expirationStatus().getReapedKeys())
+                .description("Keys removed once their time to live passed")
+                .tag("mode", "reaped")
+                .register(registry);
+        FunctionCounter.builder("storage.expired", delegate, storage -> storage.expirationStatus().getLazilyExpiredKeys())
+                .description("Keys removed once their time to live passed")
+                .tag("mode", "lazy")
+                .register(registry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(String key, byte[] value) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        record("store", () -> {
+
+            delegate.store(key, value);
+            return null;
+        });
+        storedSize.record(value.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Size is recorded only for values of known length.
+     */
+    @Override
+    public void store(String key, InputStream value, long length) throws DuplicateKeyException, ValueTooLargeException, PersistenceException {
+
+        record("store", () -> {
+
+            delegate.store(key, value, length);
+            return null;
+        });
+
+        if (length >= 0) {
+
+            storedSize.record(length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Recorded as a store, size is recorded only for values of known length.
+     */
+    @Override
+    public void store(String key, InputStream value, long length, Duration ttl)
+            throws DuplicateKeyException, ValueTooLargeException, ExpirationNotSupportedException, PersistenceException {
+
+        record("store", () -> {
+
+            delegate.store(key, value, length, ttl);
+            return null;
+        });
+
+        if (length >= 0) {
+
+            storedSize.record(length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Recorded as a store, size is recorded only for values of known length.
+     */
+    @Override
+    public long compareAndStore(String key, InputStream value, long length, Duration ttl, long expectedVersion)
+            throws DuplicateKeyException, VersionMismatchException, VersioningNotSupportedException, ValueTooLargeException,
+            PersistenceException {
+
+        val version = record("store", () -> delegate.compareAndStore(key, value, length, ttl, expectedVersion));
+
+        if (length >= 0) {
+
+            storedSize.record(length);
+        }
+
+        return version;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BatchStatus> storeAll(List<? extends Map.Entry<String, byte[]>> entries) throws ValueTooLargeException, PersistenceException {
+
+        val statuses = record("store.batch", () -> delegate.storeAll(entries));
+
+        for (var i = 0; i < statuses.size(); i++) {
+
+            if (statuses.get(i) == BatchStatus.OK) {
+
+                storedSize.record(entries.get(i).getValue().length);
+            }
+        }
+
+        return statuses;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Size of streamed values is not recorded.
+     */
+    @Override
+    public InputStream retrieve(String key) throws MissingKeyException {
+
+        return record("retrieve", () -> delegate.retrieve(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StoredValue retrieveValue(String key) throws MissingKeyException {
+
+        val value = record("retrieve", () -> delegate.retrieveValue(key));
+        retrievedSize.record(value.length());
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Recorded as a retrieve, size of the retrieved part is recorded.
+     */
+    @Override
+    public StoredValue retrieveRange(String key, ByteRange range) throws MissingKeyException, RangeNotSatisfiableException {
+
+        val value = record("retrieve", () -> delegate.retrieveRange(key, range));
+        retrievedSize.record(value.length());
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keepsVersions() {
+
+        return delegate.keepsVersions();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long version(String key) throws MissingKeyException {
+
+        return record("version", () -> delegate.version(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<StoredValue> retrieveAll(List<String> keys) {
+
+        val values = record("retrieve.batch", () -> delegate.retrieveAll(keys));
+
+        for (val value : values) {
+
+            if (value != null) {
+
+                retrievedSize.record(value.length());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScanPage scan(KeyRange range, int limit, boolean values) {
+
+        val page = record("scan", () -> delegate.scan(range, limit, values));
+
+        if (page.getValues() != null) {
+
+            page.getValues().forEach(value -> retrievedSize.record(value.length()));
+        }
+
+        return page;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String key) throws MissingKeyException, PersistenceException {
+
+        record("delete", () -> {
+
+            delegate.delete(key);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Recorded as a delete.
+     */
+    @Override
+    public void compareAndDelete(String key, long expectedVersion)
+            throws VersionMismatchException, VersioningNotSupportedException, PersistenceException {
+
+        record("delete", () -> {
+
+            delegate.compareAndDelete(key, expectedVersion);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BatchStatus> deleteAll(List<String> keys) throws PersistenceException {
+
+        return record("delete.batch", () -> delegate.deleteAll(keys));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save() throws PersistenceException, ServiceUnavailableException {
+
+        recordSnapshot("save", delegate::save);
+        registry.counter("storage.snapshot.keys", "operation", "save")
+                .increment(delegate.snapshotStatus().getPersistedKeys());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void load() throws PersistenceException, ServiceUnavailableException {
+
+        recordSnapshot("load", delegate::load);
+        registry.counter("storage.snapshot.keys", "operation", "load")
+                .increment(delegate.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapshotStatus snapshotStatus() {
+
+        return delegate.snapshotStatus();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long expire() throws ServiceUnavailableException {
+
+        return record("expire", delegate::expire);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExpirationStatus expirationStatus() {
+
+        return delegate.expirationStatus();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TierStatus tierStatus() {
+
+        return delegate.tierStatus();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+
+        return delegate.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long residentBytes() {
+
+        return delegate.residentBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long modifications() {
+
+        return delegate.modifications();
+    }
+
+    /**
+     * Closes delegate when it is closeable
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (delegate instanceof Closeable) {
+
+            ((Closeable) delegate).close();
+        }
+    }
+
+    private <T> T record(String operation, Supplier<T> action) {
+
+        val start = System.nanoTime();
+        var timers = failed;
+
+        try {
+
+            val result = action.get();
+            timers = succeeded;
+            return result;
+        } catch (ServiceUnavailableException e) {
+
+            rejections.get(operation).increment();
+            throw e;
+        } finally {
+
+            timers.get(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recordSnapshot(String operation, Runnable action) {
+
+        record(operation, () -> {
+
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Saves and loads are timed separately from access, their latency is of another scale
+     */
+    private Timer timer(String operation, String outcome) {
+
+        val snapshot = operation.equals("save") || operation.equals("load");
+
+        return Timer.builder(snapshot ? "storage.snapshot" : "storage.operations")
+                .description(snapshot ? "Duration of saves and loads" : "Latency of storage operations")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram(!snapshot)
+                .register(registry);
+    }
+
+    private DistributionSummary valueSize(String operation) {
+
+        return DistributionSummary.builder("storage.value.size")
+                .description("Sizes of stored and retrieved values")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+}
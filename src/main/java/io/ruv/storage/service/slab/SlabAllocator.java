@@ -0,0 +1,361 @@
+package io.ruv.storage.service.slab;
+
+import io.ruv.storage.util.properties.SlabStorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Allocator of off-heap memory chunks.
+ * <p>
+ * Memory is reserved as fixed-size direct slabs, each slab is carved into equal chunks of a single size class.
+ * Every size class keeps its own free lists and lock, so allocations of different sizes do not contend.
+ * Slabs which become empty return to a shared pool and can be reused by any size class.
+ * Values larger than a slab get a dedicated direct region.
+ */
+@Slf4j
+public class SlabAllocator {
+
+    private final int slabSize;
+    private final long maxMemory;
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * Empty slabs ready for reuse by any size class, guarded by {@code this}
+     */
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    /**
+     * Bytes of direct memory currently held by slabs (including pooled ones) and large regions, guarded by {@code this}
+     */
+    private long reserved;
+
+    public SlabAllocator(SlabStorageProperties properties) {
+
+        this.slabSize = (int) properties.getSlabSize().toBytes();
+        this.maxMemory = properties.getMaxMemory().toBytes();
+        this.sizeClasses = sizeClasses((int) properties.getMinChunkSize().toBytes(), properties.getGrowthFactor(), slabSize);
+
+        log.debug("Slab allocator with {} size classes up to {} bytes.", sizeClasses.length, slabSize);
+    }
+
+    private static SizeClass[] sizeClasses(int minChunkSize, double growthFactor, int slabSize) {
+
+        val classes = new ArrayList<SizeClass>();
+        var chunkSize = minChunkSize;
+
+        while (chunkSize < slabSize) {
+
+            classes.add(new SizeClass(chunkSize, slabSize / chunkSize));
+            // keep chunks 8-byte aligned and make sure every step grows
+            chunkSize = Math.max(chunkSize + 8, (int) Math.ceil(chunkSize * growthFactor)) + 7 & ~7;
+        }
+        classes.add(new SizeClass(slabSize, 1));
+
+        return classes.toArray(SizeClass[]::new);
+    }
+
+    /**
+     * Allocates a chunk able to hold provided amount of bytes
+     *
+     * @param size value size in bytes
+     * @return allocated chunk with a single reference, or {@code null} when memory limit is reached
+     */
+    public SlabChunk allocate(int size) {
+
+        if (size > slabSize) {
+
+            return allocateLarge(size);
+        }
+
+        val sizeClass = sizeClassFor(size);
+
+        synchronized (sizeClass) {
+
+            var slab = sizeClass.partial.peekFirst();
+
+            if (slab == null) {
+
+                val memory = acquireSlab();
+
+                if (memory == null) {
+
+                    return null;
+                }
+
+                slab = new Slab(memory, sizeClass);
+                sizeClass.slabs.add(slab);
+                sizeClass.partial.addFirst(slab);
+                slab.partial = true;
+            }
+
+            val offset = slab.free[--slab.freeCount];
+
+            if (slab.freeCount == 0) {
+
+                sizeClass.partial.pollFirst();
+                slab.partial = false;
+            }
+
+            return new SlabChunk(this, slab, slab.memory, offset, size);
+        }
+    }
+
+    /**
+     * Copies chunk contents into a new chunk outside of evacuating slabs
+     *
+     * @param chunk chunk to relocate, caller must hold a reference to it
+     * @return new chunk with a single reference, or {@code null} when memory limit is reached
+     */
+    public SlabChunk relocate(SlabChunk chunk) {
+
+        val copy = allocate(chunk.length());
+
+        if (copy != null) {
+
+            copy.write(chunk.buffer());
+        }
+
+        return copy;
+    }
+
+    /**
+     * Marks sparsely used slabs as evacuating, so no new chunks are allocated from them.
+     * Only as many slabs are marked as other slabs of the same size class can absorb.
+     * Chunks of evacuating slabs should be {@link #relocate(SlabChunk) relocated}, after which emptied slabs
+     * return to the shared pool.
+     *
+     * @return number of slabs marked as evacuating
+     * @see #endEvacuation()
+     */
+    public int beginEvacuation() {
+
+        var marked = 0;
+
+        for (val sizeClass : sizeClasses) {
+
+            synchronized (sizeClass) {
+
+                val candidates = new ArrayList<>(sizeClass.slabs);
+                candidates.sort(Comparator.comparingInt(Slab::used));
+
+                var keptFree = candidates.stream().mapToLong(slab -> slab.freeCount).sum();
+                var committed = 0L;
+
+                for (val slab : candidates) {
+
+                    if (slab.used() > keptFree - slab.freeCount - committed) {
+
+                        break;
+                    }
+
+                    keptFree -= slab.freeCount;
+                    committed += slab.used();
+
+                    slab.evacuating = true;
+                    sizeClass.partial.remove(slab);
+                    slab.partial = false;
+                    marked++;
+                }
+            }
+        }
+
+        return marked;
+    }
+
+    /**
+     * Returns slabs which could not be emptied back to regular use
+     *
+     * @see #beginEvacuation()
+     */
+    public void endEvacuation() {
+
+        for (val sizeClass : sizeClasses) {
+
+            synchronized (sizeClass) {
+
+                for (val slab : sizeClass.slabs) {
+
+                    if (slab.evacuating) {
+
+                        slab.evacuating = false;
+
+                        if (slab.freeCount > 0) {
+
+                            sizeClass.partial.addLast(slab);
+                            slab.partial = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes of direct memory held by this allocator
+     */
+    public synchronized long reservedBytes() {
+
+        return reserved;
+    }
+
+    void free(SlabChunk chunk) {
+
+        val slab = chunk.slab();
+
+        if (slab == null) {
+
+            synchronized (this) {
+
+                reserved -= chunk.length();
+            }
+            return;
+        }
+
+        val sizeClass = slab.sizeClass;
+
+        synchronized (sizeClass) {
+
+            slab.free[slab.freeCount++] = chunk.offset();
+
+            val empty = slab.freeCount == slab.free.length;
+
+            if (empty && (slab.evacuating || sizeClass.partial.size() > (slab.partial ? 1 : 0))) {
+
+                sizeClass.slabs.remove(slab);
+
+                if (slab.partial) {
+
+                    sizeClass.partial.remove(slab);
+                }
+                releaseSlab(slab.memory);
+            } else if (!slab.partial && !slab.evacuating) {
+
+                sizeClass.partial.addLast(slab);
+                slab.partial = true;
+            }
+        }
+    }
+
+    private SizeClass sizeClassFor(int size) {
+
+        var low = 0;
+        var high = sizeClasses.length - 1;
+
+        while (low < high) {
+
+            val middle = (low + high) >>> 1;
+
+            if (sizeClasses[middle].chunkSize < size) {
+
+                low = middle + 1;
+            } else {
+
+                high = middle;
+            }
+        }
+
+        return sizeClasses[low];
+    }
+
+    private synchronized ByteBuffer acquireSlab() {
+
+        if (!pool.isEmpty()) {
+
+            return pool.pop();
+        }
+
+        if (reserved + slabSize > maxMemory) {
+
+            return null;
+        }
+
+        reserved += slabSize;
+        return ByteBuffer.allocateDirect(slabSize);
+    }
+
+    private synchronized void releaseSlab(ByteBuffer memory) {
+
+        pool.push(memory);
+    }
+
+    private SlabChunk allocateLarge(int size) {
+
+        synchronized (this) {
+
+            // pooled slabs are only a cache, drop them to make room
+            while (reserved + size > maxMemory && !pool.isEmpty()) {
+
+                pool.pop();
+                reserved -= slabSize;
+            }
+
+            if (reserved + size > maxMemory) {
+
+                return null;
+            }
+
+            reserved += size;
+        }
+
+        return new SlabChunk(this, null, ByteBuffer.allocateDirect(size), 0, size);
+    }
+
+    private static final class SizeClass {
+
+        private final int chunkSize;
+        private final int chunksPerSlab;
+
+        private final List<Slab> slabs = new ArrayList<>();
+
+        /**
+         * Slabs with free chunks which are not evacuating
+         */
+        private final ArrayDeque<Slab> partial = new ArrayDeque<>();
+
+        private SizeClass(int chunkSize, int chunksPerSlab) {
+
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = chunksPerSlab;
+        }
+    }
+
+    static final class Slab {
+
+        private final ByteBuffer memory;
+        private final SizeClass sizeClass;
+
+        /**
+         * Stack of free chunk offsets, guarded by size class
+         */
+        private final int[] free;
+        private int freeCount;
+        private boolean partial;
+
+        volatile boolean evacuating;
+
+        private Slab(ByteBuffer memory, SizeClass sizeClass) {
+
+            this.memory = memory;
+            this.sizeClass = sizeClass;
+            this.free = new int[sizeClass.chunksPerSlab];
+
+            // lower offsets are handed out first
+            for (var i = 0; i < free.length; i++) {
+
+                free[i] = (free.length - 1 - i) * sizeClass.chunkSize;
+            }
+            this.freeCount = free.length;
+        }
+
+        private int used() {
+
+            return free.length - freeCount;
+        }
+    }
+}
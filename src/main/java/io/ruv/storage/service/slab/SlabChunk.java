@@ -0,0 +1,161 @@
+package io.ruv.storage.service.slab;
+
+import io.ruv.storage.util.io.ByteBufferInputStream;
+import lombok.val;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * Reference counted handle of an off-heap memory chunk holding a single value.
+ * <p>
+ * A chunk is created with one reference owned by its creator. Memory returns to the allocator
+ * once every reference is {@link #release() released}, so readers can keep streaming a value
+ * which was concurrently deleted or relocated.
+ */
+public final class SlabChunk implements Supplier<InputStream> {
+
+    private static final AtomicIntegerFieldUpdater<SlabChunk> REFERENCES =
+            AtomicIntegerFieldUpdater.newUpdater(SlabChunk.class, "references");
+
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final SlabAllocator allocator;
+    private final SlabAllocator.Slab slab;
+    private final ByteBuffer memory;
+    private final int offset;
+    private final int length;
+
+    @SuppressWarnings("unused")
+    private volatile int references = 1;
+
+    SlabChunk(SlabAllocator allocator, SlabAllocator.Slab slab, ByteBuffer memory, int offset, int length) {
+
+        this.allocator = allocator;
+        this.slab = slab;
+        this.memory = memory;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Acquires an additional reference
+     *
+     * @return {@code false} if memory was already released and must not be accessed
+     */
+    public boolean retain() {
+
+        int current;
+
+        do {
+
+            current = references;
+
+            if (current == 0) {
+
+                return false;
+            }
+        } while (!REFERENCES.compareAndSet(this, current, current + 1));
+
+        return true;
+    }
+
+    /**
+     * Releases a reference, returning memory to the allocator when it was the last one
+     */
+    public void release() {
+
+        if (REFERENCES.decrementAndGet(this) == 0) {
+
+            allocator.free(this);
+        }
+    }
+
+    /**
+     * Opens a stream over chunk contents, holding a reference until the stream is closed
+     *
+     * @throws IllegalStateException when memory was already released
+     */
+    @Override
+    public InputStream get() {
+
+        if (!retain()) {
+
+            throw new IllegalStateException("Chunk memory is already released.");
+        }
+
+        return new ByteBufferInputStream(this::release, buffer());
+    }
+
+    /**
+     * @return view of chunk contents, valid only while caller holds a reference
+     */
+    public ByteBuffer buffer() {
+
+        return memory.slice(offset, length);
+    }
+
+    public int length() {
+
+        return length;
+    }
+
+    /**
+     * @return {@code true} if chunk should be relocated to free its slab
+     */
+    public boolean isEvacuating() {
+
+        return slab != null && slab.evacuating;
+    }
+
+    /**
+     * Copies value into chunk memory, only valid for the creator before the chunk is published
+     */
+    public void write(byte[] value) {
+
+        memory.put(offset, value);
+    }
+
+    /**
+     * Streams value into chunk memory until the chunk is filled, only valid for the creator before the chunk is published
+     *
+     * @throws EOFException when stream ends before the chunk is filled
+     */
+    public void write(InputStream value) throws IOException {
+
+        val transfer = new byte[Math.min(length, TRANSFER_SIZE)];
+        var position = 0;
+
+        while (position < length) {
+
+            val read = value.read(transfer, 0, Math.min(transfer.length, length - position));
+
+            if (read < 0) {
+
+                throw new EOFException(String.format("Value ended after %d of %d bytes.", position, length));
+            }
+
+            memory.put(offset + position, transfer, 0, read);
+            position += read;
+        }
+    }
+
+    void write(ByteBuffer value) {
+
+        memory.put(offset, value, value.position(), value.remaining());
+    }
+
+    SlabAllocator.Slab slab() {
+
+        return slab;
+    }
+
+    int offset() {
+
+        return offset;
+    }
+}
@@ -0,0 +1,47 @@
+package io.ruv.storage.service.tier;
+
+import java.util.List;
+
+/**
+ * Decides which values stay resident within a memory budget. Implementations are not thread-safe.
+ */
+interface EvictionPolicy {
+
+    /**
+     * Records a value becoming resident, replacing the record of the same key if any
+     *
+     * @param key    key of the value
+     * @param weight size of the value in bytes
+     * @return keys to evict to fit the budget, possibly including the admitted one
+     */
+    List<String> admit(String key, long weight);
+
+    /**
+     * Records a value that failed to be evicted as resident again, without evicting others.
+     * Resident bytes may exceed the budget until following admissions.
+     *
+     * @param key    key of the value
+     * @param weight size of the value in bytes
+     */
+    void restore(String key, long weight);
+
+    /**
+     * Records an access to a resident value
+     */
+    void recordAccess(String key);
+
+    /**
+     * Forgets a value no longer resident, unknown keys are ignored
+     */
+    void remove(String key);
+
+    /**
+     * @return number of resident values
+     */
+    int residentKeys();
+
+    /**
+     * @return total size of resident values in bytes
+     */
+    long residentBytes();
+}
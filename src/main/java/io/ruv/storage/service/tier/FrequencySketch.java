@@ -0,0 +1,93 @@
+package io.ruv.storage.service.tier;
+
+/**
+ * Count-min sketch estimating recent access frequency of keys with 4-bit counters.
+ * <p>
+ * Once the number of recorded accesses reaches ten times the width, all counters are halved,
+ * so that estimates follow recent popularity rather than all time one.
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final byte[][] counters = new byte[SEEDS.length][];
+    private final int mask;
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * @param width number of counters per row, rounded up to a power of two
+     */
+    FrequencySketch(int width) {
+
+        var size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+
+        for (var row = 0; row < counters.length; row++) {
+
+            counters[row] = new byte[size];
+        }
+
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    void increment(String key) {
+
+        var hash = key.hashCode();
+        var added = false;
+
+        for (var row = 0; row < counters.length; row++) {
+
+            var index = index(hash, row);
+
+            if (counters[row][index] < MAX_COUNT) {
+
+                counters[row][index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+
+            age();
+        }
+    }
+
+    int frequency(String key) {
+
+        var hash = key.hashCode();
+        var frequency = MAX_COUNT;
+
+        for (var row = 0; row < counters.length; row++) {
+
+            frequency = Math.min(frequency, counters[row][index(hash, row)]);
+        }
+
+        return frequency;
+    }
+
+    private int index(int hash, int row) {
+
+        var mixed = (hash + SEEDS[row]) * SEEDS[row];
+        mixed ^= mixed >>> 32;
+        return (int) mixed & mask;
+    }
+
+    private void age() {
+
+        for (var row : counters) {
+
+            for (var i = 0; i < row.length; i++) {
+
+                row[i] >>= 1;
+            }
+        }
+
+        additions /= 2;
+    }
+}
@@ -0,0 +1,85 @@
+package io.ruv.storage.service.tier;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Evicts least recently used values first
+ */
+class LruEvictionPolicy implements EvictionPolicy {
+
+    private final long budget;
+
+    /**
+     * Resident keys and their weights in access order, least recently used first
+     */
+    private final LinkedHashMap<String, Long> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long residentBytes;
+
+    LruEvictionPolicy(long budget) {
+
+        this.budget = budget;
+    }
+
+    @Override
+    public List<String> admit(String key, long weight) {
+
+        remove(key);
+        resident.put(key, weight);
+        residentBytes += weight;
+
+        val victims = new ArrayList<String>();
+        val iterator = resident.entrySet().iterator();
+
+        while (residentBytes > budget && iterator.hasNext()) {
+
+            val eldest = iterator.next();
+            iterator.remove();
+            residentBytes -= eldest.getValue();
+            victims.add(eldest.getKey());
+        }
+
+        return victims;
+    }
+
+    @Override
+    public void restore(String key, long weight) {
+
+        remove(key);
+        resident.put(key, weight);
+        residentBytes += weight;
+    }
+
+    @Override
+    public void recordAccess(String key) {
+
+        resident.get(key);
+    }
+
+    @Override
+    public void remove(String key) {
+
+        val weight = resident.remove(key);
+
+        if (weight != null) {
+
+            residentBytes -= weight;
+        }
+    }
+
+    @Override
+    public int residentKeys() {
+
+        return resident.size();
+    }
+
+    @Override
+    public long residentBytes() {
+
+        return residentBytes;
+    }
+}
@@ -0,0 +1,343 @@
+package io.ruv.storage.service.tier;
+
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.TierStatus;
+import io.ruv.storage.util.compression.CompressedValue;
+import io.ruv.storage.util.exception.InitializationException;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.TieredStorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps values of a storage map within a memory budget, spilling cold values to files and faulting them
+ * back in on access.
+ * <p>
+ * Spilled values stay in the map as {@link SpilledValue} suppliers, so saves persist them as any other value.
+ * Compressed values are accounted by their compressed length and spilled compressed.
+ * Spill files of values dropped from the map are removed only while no save is running, since a concurrent
+ * save may still read them, and once the save finishes otherwise.
+ * <p>
+ * Memory is accounted by value sizes recorded after each modification, so it may briefly exceed the budget
+ * under concurrent access. Policy bookkeeping is serialized.
+ */
+@Slf4j
+public class MemoryTier {
+
+    private static final String SPILL_PREFIX = "spill-";
+
+    private final ConcurrentHashMap<String, Supplier<InputStream>> storage;
+    private final BooleanSupplier saving;
+    private final Path spillPath;
+    private final long memoryBudget;
+    private final EvictionPolicy policy;
+
+    private final AtomicLong spillFiles = new AtomicLong();
+    private final AtomicLong spilledKeys = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Spilled values dropped from the map while a save was running
+     */
+    private final ConcurrentLinkedQueue<SpilledValue> retired = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param storage map to keep within budget
+     * @param saving  whether a save is running
+     */
+    public MemoryTier(ConcurrentHashMap<String, Supplier<InputStream>> storage, BooleanSupplier saving, TieredStorageProperties properties) {
+
+        this.storage = storage;
+        this.saving = saving;
+        this.spillPath = properties.getSpillPath();
+        this.memoryBudget = properties.getMemoryBudget().toBytes();
+        this.policy = properties.getPolicy() == TieredStorageProperties.Policy.LRU
+                ? new LruEvictionPolicy(memoryBudget)
+                : new TinyLfuEvictionPolicy(memoryBudget);
+
+        cleanSpillFiles();
+    }
+
+    /**
+     * Records a value put to the map, must be called after it is visible. Spills values exceeding the budget.
+     */
+    public void admitted(String key, Supplier<InputStream> value) {
+
+        val weight = weightOf(value);
+
+        if (weight < 0) {
+
+            return;
+        }
+
+        List<String> victims;
+
+        synchronized (policy) {
+
+            victims = policy.admit(key, weight);
+        }
+
+        victims.forEach(this::spill);
+    }
+
+    /**
+     * Records an access to a value of the map, faulting it in when spilled
+     *
+     * @param value value looked up in the map
+     * @return value held in memory
+     * @throws MissingKeyException when the value is removed from the map while being faulted in
+     */
+    public Supplier<InputStream> accessed(String key, Supplier<InputStream> value) throws MissingKeyException, PersistenceException {
+
+        if (!(value instanceof SpilledValue)) {
+
+            hits.increment();
+
+            synchronized (policy) {
+
+                policy.recordAccess(key);
+            }
+
+            return value;
+        }
+
+        misses.increment();
+
+        while (true) {
+
+            val spilled = (SpilledValue) value;
+
+            try {
+
+                val content = Files.readAllBytes(spilled.getPath());
+                val loaded = spilled.getCodec() != null
+                        ? new CompressedValue(spilled.getCodec(), ByteBuffer.wrap(content), spilled.getLength())
+                        : ByteBufferSupplier.of(content);
+
+                if (storage.replace(key, spilled, loaded)) {
+
+                    retire(spilled);
+                    admitted(key, loaded);
+                }
+
+                return loaded;
+            } catch (NoSuchFileException e) {
+
+                // faulted in and retired concurrently, look it up again
+                value = storage.get(key);
+
+                if (value == null) {
+
+                    throw MissingKeyException.of(key);
+                }
+
+                if (!(value instanceof SpilledValue)) {
+
+                    return value;
+                }
+            } catch (IOException e) {
+
+                throw PersistenceException.reading(key, e);
+            }
+        }
+    }
+
+    /**
+     * Records a value dropped from the map, must be called after it is no longer visible
+     */
+    public void removed(String key, Supplier<InputStream> previous) {
+
+        if (previous instanceof SpilledValue) {
+
+            retire((SpilledValue) previous);
+        } else {
+
+            synchronized (policy) {
+
+                policy.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes spill files retired during a save, must be called once it finishes
+     */
+    public void drainRetired() {
+
+        SpilledValue spilled;
+
+        while (!saving.getAsBoolean() && (spilled = retired.poll()) != null) {
+
+            delete(spilled);
+        }
+    }
+
+    public TierStatus status() {
+
+        int residentKeys;
+        long residentBytes;
+
+        synchronized (policy) {
+
+            residentKeys = policy.residentKeys();
+            residentBytes = policy.residentBytes();
+        }
+
+        return new TierStatus(true, memoryBudget, residentKeys, residentBytes, spilledKeys.get(),
+                hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Writes resident value to a spill file and replaces it in the map, unless it was changed meanwhile
+     */
+    private void spill(String key) {
+
+        val resident = storage.get(key);
+        val weight = weightOf(resident);
+
+        if (weight < 0) {
+
+            return;
+        }
+
+        val path = spillPath.resolve(SPILL_PREFIX + spillFiles.incrementAndGet());
+        SpilledValue spilled;
+
+        try (val channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+            if (resident instanceof CompressedValue) {
+
+                val compressed = (CompressedValue) resident;
+                val buffer = compressed.compressed();
+
+                while (buffer.hasRemaining()) {
+
+                    channel.write(buffer);
+                }
+
+                spilled = new SpilledValue(path, compressed.getLength(), compressed.getCodec());
+            } else {
+
+                val buffers = ((ByteBufferSupplier) resident).buffers();
+
+                while (hasRemaining(buffers)) {
+
+                    channel.write(buffers);
+                }
+
+                spilled = new SpilledValue(path, weight);
+            }
+        } catch (IOException e) {
+
+            log.warn("Failed to spill value associated with key '{}', keeping it in memory.", key, e);
+            deleteQuietly(path);
+
+            synchronized (policy) {
+
+                // evicted by the policy already, a value removed meanwhile was forgotten by removed
+                if (storage.get(key) == resident) {
+
+                    policy.restore(key, weight);
+                }
+            }
+
+            return;
+        }
+
+        if (storage.replace(key, resident, spilled)) {
+
+            spilledKeys.incrementAndGet();
+            evictions.increment();
+            log.debug("Spill of key '{}'.", key);
+        } else {
+
+            deleteQuietly(path);
+        }
+    }
+
+    private void retire(SpilledValue spilled) {
+
+        spilledKeys.decrementAndGet();
+
+        if (saving.getAsBoolean()) {
+
+            retired.add(spilled);
+        } else {
+
+            delete(spilled);
+        }
+    }
+
+    private void delete(SpilledValue spilled) {
+
+        deleteQuietly(spilled.getPath());
+    }
+
+    private void deleteQuietly(Path path) {
+
+        try {
+
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+
+            log.warn("Failed to delete spill file '{}'.", path, e);
+        }
+    }
+
+    private void cleanSpillFiles() {
+
+        try (val files = Files.list(spillPath)) {
+
+            files.filter(path -> path.getFileName().toString().startsWith(SPILL_PREFIX))
+                    .forEach(this::deleteQuietly);
+        } catch (IOException e) {
+
+            throw new InitializationException(String.format("Failed to clean spill directory '%s'.", spillPath));
+        }
+    }
+
+    /**
+     * @return bytes a value held in memory takes, -1 for values not held in memory
+     */
+    private static long weightOf(Supplier<InputStream> value) {
+
+        if (value instanceof CompressedValue) {
+
+            return ((CompressedValue) value).getCompressedLength();
+        }
+
+        return value instanceof ByteBufferSupplier ? ((ByteBufferSupplier) value).length() : -1;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+
+        for (val buffer : buffers) {
+
+            if (buffer.hasRemaining()) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,49 @@
+package io.ruv.storage.service.tier;
+
+import io.ruv.storage.util.compression.CompressionCodec;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * Value evicted from memory to a spill file, supplying streams reading the file
+ */
+@Getter
+@RequiredArgsConstructor
+public class SpilledValue implements Supplier<InputStream> {
+
+    private final Path path;
+
+    /**
+     * Length of the value once decompressed
+     */
+    private final long length;
+
+    /**
+     * Codec of the file content when the value was held compressed, {@code null} otherwise
+     */
+    private final CompressionCodec codec;
+
+    public SpilledValue(Path path, long length) {
+
+        this(path, length, null);
+    }
+
+    @Override
+    public InputStream get() {
+
+        try {
+
+            return codec != null ? codec.decompressing(Files.newInputStream(path)) : Files.newInputStream(path);
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+}
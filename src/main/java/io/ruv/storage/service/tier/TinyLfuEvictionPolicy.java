@@ -0,0 +1,199 @@
+package io.ruv.storage.service.tier;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Window TinyLFU policy, resistant to scans and bursts of one-time accesses.
+ * <p>
+ * New values enter a small LRU window taking 1% of the budget. Values leaving the window become candidates
+ * for the main space, where a candidate is admitted only if its estimated access frequency beats the one of
+ * the value it would evict. Main space is segmented: values accessed once again are promoted from probation
+ * to the protected segment taking 80% of it, and evictions are taken from probation first.
+ */
+class TinyLfuEvictionPolicy implements EvictionPolicy {
+
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Expected average value size sizing the frequency sketch
+     */
+    private static final long SKETCH_SIZING_WEIGHT = 1024;
+
+    private final long windowBudget;
+    private final long mainBudget;
+    private final long protectedBudget;
+
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<String, Long> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    TinyLfuEvictionPolicy(long budget) {
+
+        this.windowBudget = Math.max(1, (long) (budget * WINDOW_SHARE));
+        this.mainBudget = budget - windowBudget;
+        this.protectedBudget = (long) (mainBudget * PROTECTED_SHARE);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(budget / SKETCH_SIZING_WEIGHT, 16)));
+    }
+
+    @Override
+    public List<String> admit(String key, long weight) {
+
+        remove(key);
+        sketch.increment(key);
+        window.put(key, weight);
+        windowBytes += weight;
+
+        val victims = new ArrayList<String>();
+
+        while (windowBytes > windowBudget && !window.isEmpty()) {
+
+            val eldest = removeEldest(window);
+            windowBytes -= eldest.getValue();
+
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldest.getValue();
+
+            evictFromMain(eldest.getKey(), victims);
+        }
+
+        return victims;
+    }
+
+    /**
+     * Evicts until main space fits its budget, dueling provided candidate with probation victims
+     */
+    private void evictFromMain(String candidate, List<String> victims) {
+
+        if (probation.get(candidate) > mainBudget) {
+
+            probationBytes -= probation.remove(candidate);
+            victims.add(candidate);
+            return;
+        }
+
+        while (probationBytes + protectedBytes > mainBudget) {
+
+            val victim = eldestExcept(probation, candidate);
+
+            if (victim == null && !protectedSegment.isEmpty()) {
+
+                val eldest = removeEldest(protectedSegment);
+                protectedBytes -= eldest.getValue();
+                victims.add(eldest.getKey());
+            } else if (candidate != null && (victim == null || sketch.frequency(candidate) <= sketch.frequency(victim))) {
+
+                probationBytes -= probation.remove(candidate);
+                victims.add(candidate);
+                candidate = null;
+            } else if (victim == null) {
+
+                return;
+            } else {
+
+                probationBytes -= probation.remove(victim);
+                victims.add(victim);
+            }
+        }
+    }
+
+    @Override
+    public void restore(String key, long weight) {
+
+        remove(key);
+        probation.put(key, weight);
+        probationBytes += weight;
+    }
+
+    @Override
+    public void recordAccess(String key) {
+
+        sketch.increment(key);
+
+        if (window.get(key) != null || protectedSegment.get(key) != null) {
+
+            return;
+        }
+
+        val weight = probation.remove(key);
+
+        if (weight == null) {
+
+            return;
+        }
+
+        probationBytes -= weight;
+        protectedSegment.put(key, weight);
+        protectedBytes += weight;
+
+        // overflow of protected segment is demoted back to probation
+        while (protectedBytes > protectedBudget && protectedSegment.size() > 1) {
+
+            val eldest = removeEldest(protectedSegment);
+            protectedBytes -= eldest.getValue();
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldest.getValue();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+
+        Long weight;
+
+        if ((weight = window.remove(key)) != null) {
+
+            windowBytes -= weight;
+        } else if ((weight = probation.remove(key)) != null) {
+
+            probationBytes -= weight;
+        } else if ((weight = protectedSegment.remove(key)) != null) {
+
+            protectedBytes -= weight;
+        }
+    }
+
+    @Override
+    public int residentKeys() {
+
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    @Override
+    public long residentBytes() {
+
+        return windowBytes + probationBytes + protectedBytes;
+    }
+
+    private static Map.Entry<String, Long> removeEldest(LinkedHashMap<String, Long> segment) {
+
+        val iterator = segment.entrySet().iterator();
+        val eldest = iterator.next();
+        iterator.remove();
+        return eldest;
+    }
+
+    private static String eldestExcept(LinkedHashMap<String, Long> segment, String excluded) {
+
+        for (val key : segment.keySet()) {
+
+            if (!key.equals(excluded)) {
+
+                return key;
+            }
+        }
+
+        return null;
+    }
+}
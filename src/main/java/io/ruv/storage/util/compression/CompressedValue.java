@@ -0,0 +1,55 @@
+package io.ruv.storage.util.compression;
+
+import io.ruv.storage.util.io.ByteBufferInputStream;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Supplier of streams decompressing a value held compressed in memory as it is read.
+ * Buffer contents must not be modified once supplied.
+ */
+@RequiredArgsConstructor
+public class CompressedValue implements Supplier<InputStream> {
+
+    @Getter
+    private final CompressionCodec codec;
+
+    private final ByteBuffer compressed;
+
+    /**
+     * Length of the value once decompressed
+     */
+    @Getter
+    private final long length;
+
+    @Override
+    public InputStream get() {
+
+        try {
+
+            return codec.decompressing(new ByteBufferInputStream(compressed()));
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return independent view of compressed bytes
+     */
+    public ByteBuffer compressed() {
+
+        return compressed.duplicate();
+    }
+
+    public long getCompressedLength() {
+
+        return compressed.remaining();
+    }
+}
@@ -0,0 +1,52 @@
+package io.ruv.storage.util.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streaming compression algorithm. Implementations must be thread-safe.
+ */
+public interface CompressionCodec {
+
+    /**
+     * @return identifier of the codec within persisted values, never {@link #NONE}
+     */
+    byte getId();
+
+    /**
+     * @param output stream to write compressed bytes to, closed along with the returned stream
+     * @return stream compressing bytes written to it, compressed data is complete once it is closed
+     */
+    OutputStream compressing(OutputStream output) throws IOException;
+
+    /**
+     * @param input stream of compressed bytes, closed along with the returned stream
+     * @return stream of decompressed bytes, decompressed as they are read
+     */
+    InputStream decompressing(InputStream input) throws IOException;
+
+    /**
+     * Identifier of values stored as they are
+     */
+    byte NONE = 0;
+
+    /**
+     * @return codec with provided identifier
+     * @throws IllegalArgumentException when no codec has such identifier
+     */
+    static CompressionCodec byId(byte id) {
+
+        if (id == DeflateCodec.INSTANCE.getId()) {
+
+            return DeflateCodec.INSTANCE;
+        }
+
+        if (id == Lz4Codec.INSTANCE.getId()) {
+
+            return Lz4Codec.INSTANCE;
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown compression codec '%d'.", id));
+    }
+}
@@ -0,0 +1,118 @@
+package io.ruv.storage.util.compression;
+
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.CompressionProperties;
+import lombok.val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.function.Supplier;
+
+/**
+ * Compresses values worth it: values smaller than minimum size are not attempted, compressed values
+ * not reaching maximum ratio are dropped in favour of the original ones.
+ */
+public class Compressor {
+
+    private final CompressionCodec codec;
+    private final long minSize;
+    private final double maxRatio;
+
+    public Compressor(CompressionProperties properties) {
+
+        this.codec = properties.getCodec().getCodec();
+        this.minSize = properties.getMinSize().toBytes();
+        this.maxRatio = properties.getMaxRatio();
+    }
+
+    /**
+     * @param value buffers holding remaining bytes of the value, left untouched
+     * @return compressed value, or the value as it is when compression does not pay off
+     */
+    public Supplier<InputStream> compress(ByteBuffer... value) {
+
+        val original = new ByteBufferSupplier(value);
+        val length = original.length();
+
+        if (length < minSize) {
+
+            return original;
+        }
+
+        // the largest output still worth keeping
+        val limit = (long) (length * maxRatio);
+        val output = new LimitedOutputStream(limit);
+
+        try (val compressing = Channels.newChannel(codec.compressing(output))) {
+
+            for (val buffer : original.buffers()) {
+
+                while (buffer.hasRemaining()) {
+
+                    compressing.write(buffer);
+                }
+            }
+        } catch (LimitExceededException e) {
+
+            return original;
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+
+        return new CompressedValue(codec, output.toBuffer(), length);
+    }
+
+    /**
+     * Buffers output until limit is exceeded, so incompressible values are given up early
+     */
+    private static class LimitedOutputStream extends ByteArrayOutputStream {
+
+        private final long limit;
+
+        LimitedOutputStream(long limit) {
+
+            super((int) Math.min(limit, 8192));
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+
+            checkLimit(1);
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+
+            checkLimit(len);
+            super.write(b, off, len);
+        }
+
+        private void checkLimit(int length) {
+
+            if (count + (long) length > limit) {
+
+                throw new LimitExceededException();
+            }
+        }
+
+        ByteBuffer toBuffer() {
+
+            return ByteBuffer.wrap(buf, 0, count).slice();
+        }
+    }
+
+    private static class LimitExceededException extends UncheckedIOException {
+
+        LimitExceededException() {
+
+            super(new IOException("Compressed value exceeds limit."));
+        }
+    }
+}
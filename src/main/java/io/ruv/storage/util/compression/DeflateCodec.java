@@ -0,0 +1,51 @@
+package io.ruv.storage.util.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Deflate compression of {@link java.util.zip}, better ratio at a higher cpu cost
+ */
+public final class DeflateCodec implements CompressionCodec {
+
+    public static final DeflateCodec INSTANCE = new DeflateCodec();
+
+    private DeflateCodec() {
+    }
+
+    @Override
+    public byte getId() {
+
+        return 1;
+    }
+
+    @Override
+    public OutputStream compressing(OutputStream output) {
+
+        return new DeflaterOutputStream(output, new Deflater(Deflater.BEST_SPEED)) {
+
+            @Override
+            public void close() throws IOException {
+
+                try {
+
+                    super.close();
+                } finally {
+
+                    // deflater is not owned by the stream when passed in, release its native memory
+                    def.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompressing(InputStream input) {
+
+        return new InflaterInputStream(input);
+    }
+}
@@ -0,0 +1,36 @@
+package io.ruv.storage.util.compression;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LZ4 block compression, lower ratio but several times faster than deflate
+ */
+public final class Lz4Codec implements CompressionCodec {
+
+    public static final Lz4Codec INSTANCE = new Lz4Codec();
+
+    private Lz4Codec() {
+    }
+
+    @Override
+    public byte getId() {
+
+        return 2;
+    }
+
+    @Override
+    public OutputStream compressing(OutputStream output) {
+
+        return new LZ4BlockOutputStream(output);
+    }
+
+    @Override
+    public InputStream decompressing(InputStream input) {
+
+        return new LZ4BlockInputStream(input);
+    }
+}
@@ -0,0 +1,50 @@
+package io.ruv.storage.util.concurrent;
+
+import io.ruv.storage.util.properties.ExecutionProperties;
+import io.ruv.storage.web.servlet.ExecutorDispatcherServlet;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+@Configuration
+@EnableConfigurationProperties(ExecutionProperties.class)
+public class ExecutionConfig {
+
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty(prefix = "storage.execution", name = "threads", havingValue = "virtual")
+    @EnableConfigurationProperties(WebMvcProperties.class)
+    @Slf4j
+    public static class VirtualThreadWebConfig {
+
+        @Bean(destroyMethod = "shutdown")
+        public ExecutorService requestExecutor() {
+
+            log.info("Serving requests on virtual threads.");
+            return VirtualThreads.newExecutor("http-virtual-");
+        }
+
+        /**
+         * Replaces auto-configured dispatcher servlet, configured the same way
+         */
+        @Bean(name = DispatcherServletAutoConfiguration.DEFAULT_DISPATCHER_SERVLET_BEAN_NAME)
+        public ExecutorDispatcherServlet dispatcherServlet(ExecutorService requestExecutor, WebMvcProperties properties) {
+
+            val dispatcherServlet = new ExecutorDispatcherServlet(requestExecutor);
+            dispatcherServlet.setDispatchOptionsRequest(properties.isDispatchOptionsRequest());
+            dispatcherServlet.setDispatchTraceRequest(properties.isDispatchTraceRequest());
+            dispatcherServlet.setThrowExceptionIfNoHandlerFound(properties.isThrowExceptionIfNoHandlerFound());
+            dispatcherServlet.setPublishEvents(properties.isPublishRequestHandledEvents());
+            dispatcherServlet.setEnableLoggingRequestDetails(properties.isLogRequestDetails());
+            return dispatcherServlet;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.ruv.storage.util.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads without compiling against them.
+ * <p>
+ * Virtual threads are a preview API on Java 19 and 20, usable only when the JVM is started with
+ * {@code --enable-preview}, and final since Java 21. They are looked up reflectively, so the project
+ * builds without preview features and fails with a clear message where they are unavailable.
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return {@code true} if running JVM can start virtual threads
+     */
+    public static boolean isSupported() {
+
+        try {
+
+            factory("probe-");
+            return true;
+        } catch (UnsupportedOperationException e) {
+
+            log.debug("Virtual threads are not supported.", e);
+            return false;
+        }
+    }
+
+    /**
+     * @param namePrefix prefix of thread names, followed by a sequence number
+     * @return factory of virtual threads
+     * @throws UnsupportedOperationException when virtual threads are not available
+     */
+    public static ThreadFactory factory(String namePrefix) throws UnsupportedOperationException {
+
+        try {
+
+            val builderClass = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = method(builderClass, "name", String.class, long.class).invoke(builder, namePrefix, 0L);
+
+            return (ThreadFactory) method(builderClass, "factory").invoke(builder);
+        } catch (InvocationTargetException e) {
+
+            throw new UnsupportedOperationException("Virtual threads are not enabled, start JVM with --enable-preview.", e.getCause());
+        } catch (ReflectiveOperationException e) {
+
+            throw new UnsupportedOperationException("Virtual threads require Java 19 or later.", e);
+        }
+    }
+
+    /**
+     * @param namePrefix prefix of thread names, followed by a sequence number
+     * @return executor starting a new virtual thread for each task
+     * @throws UnsupportedOperationException when virtual threads are not available
+     */
+    public static ExecutorService newExecutor(String namePrefix) throws UnsupportedOperationException {
+
+        val factory = factory(namePrefix);
+
+        try {
+
+            return (ExecutorService) method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (InvocationTargetException e) {
+
+            throw new UnsupportedOperationException("Virtual threads are not enabled, start JVM with --enable-preview.", e.getCause());
+        } catch (ReflectiveOperationException e) {
+
+            throw new UnsupportedOperationException("Virtual threads require Java 19 or later.", e);
+        }
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+
+        return type.getMethod(name, parameterTypes);
+    }
+}
@@ -14,6 +14,19 @@ public enum ErrorCode {
 
     MISSING_KEY("errors.access.missing-key"),
     DUPLICATE_KEY("errors.access.duplicate-key"),
+    INSUFFICIENT_STORAGE("errors.access.insufficient-storage"),
+    VALUE_TOO_LARGE("errors.access.value-too-large"),
+    INCOMPLETE_VALUE("errors.access.incomplete-value"),
+    MALFORMED_BATCH("errors.access.malformed-batch"),
+    BATCH_TOO_LARGE("errors.access.batch-too-large"),
+    MISSING_JOB("errors.access.missing-job"),
+    INVALID_SCAN("errors.access.invalid-scan"),
+    EXPIRATION_NOT_SUPPORTED("errors.access.expiration-not-supported"),
+    INVALID_TTL("errors.access.invalid-ttl"),
+    VERSION_MISMATCH("errors.access.version-mismatch"),
+    VERSIONING_NOT_SUPPORTED("errors.access.versioning-not-supported"),
+    INVALID_PRECONDITION("errors.access.invalid-precondition"),
+    RANGE_NOT_SATISFIABLE("errors.access.range-not-satisfiable"),
 
     PERSISTENCE_WRITE("errors.persistence.write"),
 
@@ -21,8 +34,12 @@ public enum ErrorCode {
 
     PERSISTENCE_READ_STORAGE("errors.persistence.read-storage"),
 
+    PERSISTENCE_WRITE_STORAGE("errors.persistence.write-storage"),
+
     PERSISTENCE_CLEAN_STORAGE("errors.persistence.clean-storage"),
 
+    PERSISTENCE_SYNC("errors.persistence.sync"),
+
     SERVICE_UNAVAILABLE("errors.access.service-unavailable");
 
     private final String messageCode;
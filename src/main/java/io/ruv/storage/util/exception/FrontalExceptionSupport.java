@@ -3,6 +3,7 @@ package io.ruv.storage.util.exception;
 import io.ruv.storage.web.dto.ErrorWrapperDto;
 import lombok.val;
 import org.springframework.context.MessageSource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 
 public abstract class FrontalExceptionSupport extends RuntimeException implements ErrorCodeContainer {
@@ -21,6 +22,14 @@ public abstract class FrontalExceptionSupport extends RuntimeException implement
 
     public abstract HttpStatus getHttpStatus();
 
+    /**
+     * @return headers to send along with the error, none by default
+     */
+    public HttpHeaders getHttpHeaders() {
+
+        return HttpHeaders.EMPTY;
+    }
+
     public ErrorWrapperDto makeErrorWrapper(MessageSource messageSource) {
 
         val errorCode = this.getErrorCode();
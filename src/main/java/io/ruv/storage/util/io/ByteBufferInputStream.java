@@ -0,0 +1,181 @@
+package io.ruv.storage.util.io;
+
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * {@link InputStream} reading remaining bytes of provided buffers without copying them to heap first.
+ * Buffers are consumed by this stream, so callers should pass independent views (duplicates or slices).
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    private final ByteBuffer[] buffers;
+    private final Runnable closeAction;
+
+    private int current;
+    private boolean closed;
+
+    public ByteBufferInputStream(ByteBuffer... buffers) {
+
+        this(NOOP, buffers);
+    }
+
+    /**
+     * @param closeAction action to run once on {@link #close()}, e.g. to release underlying memory
+     * @param buffers     buffers to read remaining bytes of, in order
+     */
+    public ByteBufferInputStream(Runnable closeAction, ByteBuffer... buffers) {
+
+        this.buffers = buffers;
+        this.closeAction = closeAction;
+    }
+
+    @Override
+    public int read() {
+
+        val buffer = nextReadable();
+        return buffer == null ? -1 : buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+
+        if (length == 0) {
+
+            return 0;
+        }
+
+        var total = 0;
+        ByteBuffer buffer;
+
+        while (total < length && (buffer = nextReadable()) != null) {
+
+            val count = Math.min(length - total, buffer.remaining());
+            buffer.get(bytes, offset + total, count);
+            total += count;
+        }
+
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public long skip(long n) {
+
+        var skipped = 0L;
+        ByteBuffer buffer;
+
+        while (skipped < n && (buffer = nextReadable()) != null) {
+
+            val count = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+
+        var available = 0L;
+
+        for (var i = current; i < buffers.length; i++) {
+
+            available += buffers[i].remaining();
+        }
+
+        return (int) Math.min(available, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes heap-backed buffers straight from their arrays and everything else through a bounded chunk.
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+
+        var transferred = 0L;
+        byte[] chunk = null;
+        ByteBuffer buffer;
+
+        while ((buffer = nextReadable()) != null) {
+
+            val count = buffer.remaining();
+
+            if (buffer.hasArray()) {
+
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+                buffer.position(buffer.limit());
+            } else {
+
+                if (chunk == null) {
+
+                    chunk = new byte[Math.min(count, 8192)];
+                }
+
+                while (buffer.hasRemaining()) {
+
+                    val length = Math.min(chunk.length, buffer.remaining());
+                    buffer.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+            transferred += count;
+        }
+
+        return transferred;
+    }
+
+    /**
+     * Hands over unread bytes as views of the buffers without copying them, leaving the stream at its end.
+     * Views are valid only until the stream is closed.
+     */
+    public ByteBuffer[] drain() {
+
+        val views = new ByteBuffer[buffers.length - current];
+
+        for (var i = current; i < buffers.length; i++) {
+
+            views[i - current] = buffers[i].duplicate();
+            buffers[i].position(buffers[i].limit());
+        }
+        current = buffers.length;
+
+        return views;
+    }
+
+    @Override
+    public void close() {
+
+        if (!closed) {
+
+            closed = true;
+            closeAction.run();
+        }
+    }
+
+    private ByteBuffer nextReadable() {
+
+        while (current < buffers.length) {
+
+            val buffer = buffers[current];
+
+            if (buffer.hasRemaining()) {
+
+                return buffer;
+            }
+            current++;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package io.ruv.storage.util.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Supplier of streams over buffers held in memory, also exposing the buffers themselves for zero-copy access.
+ * Buffer contents must not be modified once supplied.
+ */
+public class ByteBufferSupplier implements Supplier<InputStream> {
+
+    private final ByteBuffer[] buffers;
+
+    /**
+     * @param buffers buffers holding remaining bytes of the value, in order
+     */
+    public ByteBufferSupplier(ByteBuffer... buffers) {
+
+        this.buffers = buffers;
+    }
+
+    public static ByteBufferSupplier of(byte[] bytes) {
+
+        return new ByteBufferSupplier(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public InputStream get() {
+
+        return new ByteBufferInputStream(buffers());
+    }
+
+    /**
+     * @return total number of bytes in the buffers
+     */
+    public long length() {
+
+        return length(buffers);
+    }
+
+    /**
+     * @return total number of remaining bytes in the buffers
+     */
+    public static long length(ByteBuffer... buffers) {
+
+        long length = 0;
+
+        for (var buffer : buffers) {
+
+            length += buffer.remaining();
+        }
+
+        return length;
+    }
+
+    /**
+     * @return independent views of the buffers
+     */
+    public ByteBuffer[] buffers() {
+
+        return duplicate(buffers);
+    }
+
+    /**
+     * @return independent views of provided buffers
+     */
+    public static ByteBuffer[] duplicate(ByteBuffer[] buffers) {
+
+        var views = new ByteBuffer[buffers.length];
+
+        for (var i = 0; i < buffers.length; i++) {
+
+            views[i] = buffers[i].duplicate();
+        }
+
+        return views;
+    }
+}
@@ -0,0 +1,74 @@
+package io.ruv.storage.util.io;
+
+import lombok.val;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of permits taken by any number of threads. Permits not taken while idle are kept
+ * for at most one second, so a burst after idling does not exceed one second worth of permits.
+ */
+public class Throttle {
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Throttle letting everything through
+     */
+    public static final Throttle NONE = new Throttle(0);
+
+    private final double nanosPerPermit;
+
+    /**
+     * Time the next permit becomes available, guarded by this
+     */
+    private long nextFree = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond permits available per second, zero or less for no limit
+     */
+    public Throttle(long permitsPerSecond) {
+
+        this.nanosPerPermit = permitsPerSecond > 0 ? (double) BURST_NANOS / permitsPerSecond : 0;
+    }
+
+    /**
+     * Waits until permits are available. Permits exceeding the rate are granted at once,
+     * making following callers wait for them.
+     *
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    public void acquire(long permits) throws InterruptedIOException {
+
+        if (nanosPerPermit == 0 || permits <= 0) {
+
+            return;
+        }
+
+        long waitNanos;
+
+        synchronized (this) {
+
+            val now = System.nanoTime();
+            val start = Math.max(nextFree, now - BURST_NANOS);
+
+            nextFree = start + (long) (permits * nanosPerPermit);
+            waitNanos = start - now;
+        }
+
+        if (waitNanos <= 0) {
+
+            return;
+        }
+
+        try {
+
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled.");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.async.ExecutorAsyncStorageService;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Externalized properties for asynchronous storage access and persistence jobs
+ *
+ * @see ExecutorAsyncStorageService
+ */
+@Data
+@ConfigurationProperties("storage.service.async")
+public class AsyncStorageProperties {
+
+    /**
+     * Number of platform threads running asynchronous operations. Must be greater than zero.
+     * With virtual threads each operation runs on its own thread.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of the most recent persistence jobs whose status is kept. Must be greater than zero.
+     */
+    private int retainedJobs = 64;
+
+    @PostConstruct
+    public void validate() {
+
+        if (threads <= 0) {
+
+            throw new InitializationException(String.format("Illegal threads value '%d'. Must be greater than 0.", threads));
+        }
+
+        if (retainedJobs <= 0) {
+
+            throw new InitializationException(String.format("Illegal retained jobs value '%d'. Must be greater than 0.", retainedJobs));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.util.compression.CompressionCodec;
+import io.ruv.storage.util.compression.Compressor;
+import io.ruv.storage.util.compression.DeflateCodec;
+import io.ruv.storage.util.compression.Lz4Codec;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Externalized properties for value compression
+ *
+ * @see Compressor
+ */
+@Data
+@ConfigurationProperties("storage.compression")
+public class CompressionProperties {
+
+    /**
+     * Whether hash storage keeps values compressed and nio persistence writes them compressed.
+     * Nio files carry a codec header while enabled, so a storage persisted with another setting
+     * must not be loaded.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Algorithm compressing new values. Values compressed by other codecs are still read.
+     */
+    private Codec codec = Codec.LZ4;
+
+    /**
+     * Values smaller than this are kept as they are.
+     */
+    private DataSize minSize = DataSize.ofBytes(512);
+
+    /**
+     * Largest ratio of compressed to original size worth keeping, within (0, 1].
+     */
+    private double maxRatio = 0.9;
+
+    @PostConstruct
+    public void validate() {
+
+        if (minSize.toBytes() < 0) {
+
+            throw new InitializationException(String.format("Illegal min size value '%s'. Must not be negative.", minSize));
+        }
+
+        if (maxRatio <= 0 || maxRatio > 1) {
+
+            throw new InitializationException(String.format("Illegal max ratio value '%s'. Must be within (0, 1].", maxRatio));
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Codec {
+
+        DEFLATE(DeflateCodec.INSTANCE),
+        LZ4(Lz4Codec.INSTANCE);
+
+        private final CompressionCodec codec;
+    }
+}
@@ -0,0 +1,39 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.dedup.BlobTable;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Externalized properties for content-addressed deduplication of values
+ *
+ * @see BlobTable
+ */
+@Data
+@ConfigurationProperties("storage.dedup")
+public class DeduplicationProperties {
+
+    /**
+     * Whether hash storage shares identical values between keys and nio persistence links their files.
+     * Does not apply to tiered storage.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Values smaller than this are kept per key, hashing them costs more than sharing saves.
+     */
+    private DataSize minSize = DataSize.ofBytes(64);
+
+    @PostConstruct
+    public void validate() {
+
+        if (minSize.toBytes() < 0) {
+
+            throw new InitializationException(String.format("Illegal min size value '%s'. Must not be negative.", minSize));
+        }
+    }
+}
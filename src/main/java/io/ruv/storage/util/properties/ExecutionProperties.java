@@ -0,0 +1,45 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.util.concurrent.VirtualThreads;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Externalized properties for threads serving requests and persistence i/o
+ *
+ * @see io.ruv.storage.util.concurrent.ExecutionConfig
+ */
+@Data
+@ConfigurationProperties("storage.execution")
+public class ExecutionProperties {
+
+    /**
+     * Kind of threads handling requests and persistence i/o.
+     */
+    private Threads threads = Threads.PLATFORM;
+
+    @PostConstruct
+    public void validate() {
+
+        if (threads == Threads.VIRTUAL && !VirtualThreads.isSupported()) {
+
+            throw new InitializationException("Virtual threads require Java 21, or Java 19 and 20 started with --enable-preview.");
+        }
+    }
+
+    public enum Threads {
+
+        /**
+         * Requests are served by the bounded Tomcat thread pool
+         */
+        PLATFORM,
+
+        /**
+         * Each request and persistence task runs on its own virtual thread, unbounded by Tomcat thread pool
+         */
+        VIRTUAL
+    }
+}
@@ -0,0 +1,39 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.expiry.TimerWheel;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Externalized properties for time to live of values
+ *
+ * @see TimerWheel
+ */
+@Data
+@ConfigurationProperties("storage.service.expiration")
+public class ExpirationProperties {
+
+    /**
+     * Whether hash and sharded storage accept values with time to live and remove them once it passes.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Resolution of expiration, values are removed within one tick after their time to live passes.
+     * Expired values are never served, regardless of the tick.
+     */
+    private Duration tick = Duration.ofSeconds(1);
+
+    @PostConstruct
+    public void validate() {
+
+        if (tick.toMillis() < 1) {
+
+            throw new InitializationException(String.format("Illegal tick value '%s'. Must be at least 1ms.", tick));
+        }
+    }
+}
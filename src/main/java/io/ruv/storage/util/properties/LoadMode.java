@@ -0,0 +1,18 @@
+package io.ruv.storage.util.properties;
+
+/**
+ * How file-based persistence strategies hand persisted values over to storage on load
+ */
+public enum LoadMode {
+
+    /**
+     * Values are read and copied to heap, load time is proportional to the amount of data
+     */
+    COPY,
+
+    /**
+     * Values are backed by memory-mapped regions of persisted files and paged in by the OS on first access,
+     * load time is proportional to the number of keys
+     */
+    MAP
+}
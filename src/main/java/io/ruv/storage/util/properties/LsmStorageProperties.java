@@ -0,0 +1,127 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.impl.LsmStorageService;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Externalized properties for log-structured merge tree storage
+ *
+ * @see LsmStorageService
+ */
+@Data
+@ConfigurationProperties("storage.service.lsm")
+public class LsmStorageProperties {
+
+    /**
+     * Directory of logs, table files and manifest. Must be an existing directory.
+     */
+    private Path basePath;
+
+    /**
+     * Size of values and keys held in memory before they are flushed to a table file.
+     * Must be greater than zero.
+     */
+    private DataSize memtableSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Number of full memtables waiting to be flushed before writes stall. Must be greater than zero.
+     */
+    private int maxImmutableMemtables = 2;
+
+    /**
+     * Size of table blocks, the unit of reads. Must be greater than zero.
+     */
+    private DataSize blockSize = DataSize.ofKilobytes(4);
+
+    /**
+     * Bloom filter bits per key of table files, zero for no filters.
+     */
+    private int bloomBitsPerKey = 10;
+
+    /**
+     * Size at which table files written by compaction are split. Must be greater than zero.
+     */
+    private DataSize targetFileSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Number of level 0 table files compacted together into level 1. Must be greater than 1.
+     */
+    private int level0CompactionTrigger = 4;
+
+    /**
+     * Size of level 1, compacted into level 2 once exceeded. Must be greater than zero.
+     */
+    private DataSize levelBaseSize = DataSize.ofMegabytes(256);
+
+    /**
+     * Ratio between sizes of adjacent levels starting from level 1. Must be greater than 1.
+     */
+    private int levelSizeMultiplier = 10;
+
+    /**
+     * Whether each write is flushed to disk before it is acknowledged. Logs are always flushed
+     * once their memtable is full and on save.
+     */
+    private boolean sync = false;
+
+    @PostConstruct
+    public void validate() {
+
+        if (basePath == null || !Files.exists(basePath)) {
+
+            throw new InitializationException(String.format("Directory '%s' does not exist.", basePath));
+        }
+
+        if (!Files.isDirectory(basePath)) {
+
+            throw new InitializationException(String.format("File '%s' is not a directory.", basePath.toString()));
+        }
+
+        if (memtableSize.toBytes() <= 0) {
+
+            throw new InitializationException(String.format("Illegal memtable size value '%s'. Must be greater than 0.", memtableSize));
+        }
+
+        if (maxImmutableMemtables <= 0) {
+
+            throw new InitializationException(String.format("Illegal max immutable memtables value '%d'. Must be greater than 0.", maxImmutableMemtables));
+        }
+
+        if (blockSize.toBytes() <= 0 || blockSize.toBytes() > Integer.MAX_VALUE) {
+
+            throw new InitializationException(String.format("Illegal block size value '%s'. Must be greater than 0 and less than 2GB.", blockSize));
+        }
+
+        if (bloomBitsPerKey < 0) {
+
+            throw new InitializationException(String.format("Illegal bloom bits per key value '%d'. Must not be negative.", bloomBitsPerKey));
+        }
+
+        if (targetFileSize.toBytes() <= 0) {
+
+            throw new InitializationException(String.format("Illegal target file size value '%s'. Must be greater than 0.", targetFileSize));
+        }
+
+        if (level0CompactionTrigger <= 1) {
+
+            throw new InitializationException(String.format("Illegal level 0 compaction trigger value '%d'. Must be greater than 1.", level0CompactionTrigger));
+        }
+
+        if (levelBaseSize.toBytes() <= 0) {
+
+            throw new InitializationException(String.format("Illegal level base size value '%s'. Must be greater than 0.", levelBaseSize));
+        }
+
+        if (levelSizeMultiplier <= 1) {
+
+            throw new InitializationException(String.format("Illegal level size multiplier value '%d'. Must be greater than 1.", levelSizeMultiplier));
+        }
+    }
+}
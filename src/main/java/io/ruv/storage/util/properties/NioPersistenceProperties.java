@@ -4,6 +4,7 @@ import io.ruv.storage.persistence.nio.impl.NioPersistenceStrategy;
 import io.ruv.storage.util.exception.InitializationException;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 import javax.annotation.PostConstruct;
 import java.nio.file.Files;
@@ -28,6 +29,56 @@ public class NioPersistenceProperties {
      */
     private int bufferSize;
 
+    /**
+     * Whether loaded values are copied to heap or mapped from persisted files.
+     */
+    private LoadMode loadMode = LoadMode.COPY;
+
+    /**
+     * Files smaller than this are copied rather than mapped by {@link LoadMode#MAP map} load mode.
+     */
+    private DataSize minMappedSize = DataSize.ofKilobytes(64);
+
+    /**
+     * Number of files mapped by a {@link LoadMode#MAP map} load, further files are copied. Each mapping counts
+     * towards the limit of mappings per process, {@code vm.max_map_count} on Linux. Must not be negative.
+     */
+    private int maxMappedFiles = 16384;
+
+    /**
+     * Number of threads writing and reading files. Must be greater than zero.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Number of the most recent snapshots kept, loads fall back to older ones when the latest can not be read.
+     * Must be greater than zero.
+     */
+    private int retainedSnapshots = 2;
+
+    /**
+     * Number of deltas chained on top of a complete snapshot before they are compacted into a new one.
+     * Must not be negative.
+     */
+    private int maxDeltas = 8;
+
+    /**
+     * Whether files of a snapshot are flushed to disk before it is published. Without it a power loss
+     * may leave a published snapshot with lost writes, found by checksums on load.
+     */
+    private boolean sync = true;
+
+    /**
+     * Bytes written per second while persisting, zero for no limit.
+     */
+    private DataSize maxWriteRate = DataSize.ofBytes(0);
+
+    /**
+     * Write operations per second while persisting, zero for no limit. Each buffer write and each file link
+     * takes one.
+     */
+    private int maxWriteOps = 0;
+
     @PostConstruct
     public void validate() {
 
@@ -45,5 +96,40 @@ public class NioPersistenceProperties {
 
             throw new InitializationException(String.format("Illegal buffer size value '%d'. Must be greater than 0.", bufferSize));
         }
+
+        if (minMappedSize.toBytes() < 0) {
+
+            throw new InitializationException(String.format("Illegal min mapped size value '%s'. Must not be negative.", minMappedSize));
+        }
+
+        if (maxMappedFiles < 0) {
+
+            throw new InitializationException(String.format("Illegal max mapped files value '%d'. Must not be negative.", maxMappedFiles));
+        }
+
+        if (parallelism <= 0) {
+
+            throw new InitializationException(String.format("Illegal parallelism value '%d'. Must be greater than 0.", parallelism));
+        }
+
+        if (retainedSnapshots <= 0) {
+
+            throw new InitializationException(String.format("Illegal retained snapshots value '%d'. Must be greater than 0.", retainedSnapshots));
+        }
+
+        if (maxDeltas < 0) {
+
+            throw new InitializationException(String.format("Illegal max deltas value '%d'. Must not be negative.", maxDeltas));
+        }
+
+        if (maxWriteRate.toBytes() < 0) {
+
+            throw new InitializationException(String.format("Illegal max write rate value '%s'. Must not be negative.", maxWriteRate));
+        }
+
+        if (maxWriteOps < 0) {
+
+            throw new InitializationException(String.format("Illegal max write ops value '%d'. Must not be negative.", maxWriteOps));
+        }
     }
 }
@@ -0,0 +1,77 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.persistence.packed.impl.PackedPersistenceStrategy;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Externalized properties for packed snapshot storage
+ *
+ * @see PackedPersistenceStrategy
+ */
+@Data
+@ConfigurationProperties("storage.persistence.packed")
+public class PackedPersistenceProperties {
+
+    /**
+     * Base filesystem path for snapshot files. Must be an existing directory.
+     */
+    private Path basePath;
+
+    /**
+     * Buffer size for i/o operations. Must be greater than zero.
+     */
+    private int bufferSize = 65536;
+
+    /**
+     * Amount of record data covered by a single checksum. Must be greater than zero.
+     */
+    private DataSize blockSize = DataSize.ofMegabytes(1);
+
+    /**
+     * Whether loaded values are copied to heap or mapped from persisted files.
+     * Mapped load verifies footer checksum only, block checksums are left unchecked.
+     */
+    private LoadMode loadMode = LoadMode.COPY;
+
+    /**
+     * Number of delta files kept on top of the snapshot file before they are compacted into a new one.
+     * Must not be negative.
+     */
+    private int maxDeltas = 8;
+
+    @PostConstruct
+    public void validate() {
+
+        if (!Files.exists(basePath)) {
+
+            throw new InitializationException(String.format("Directory '%s' does not exist.", basePath.toString()));
+        }
+
+        if (!Files.isDirectory(basePath)) {
+
+            throw new InitializationException(String.format("File '%s' is not a directory.", basePath.toString()));
+        }
+
+        if (bufferSize <= 0) {
+
+            throw new InitializationException(String.format("Illegal buffer size value '%d'. Must be greater than 0.", bufferSize));
+        }
+
+        if (blockSize.toBytes() <= 0) {
+
+            throw new InitializationException(String.format("Illegal block size value '%s'. Must be greater than 0.", blockSize));
+        }
+
+        if (maxDeltas < 0) {
+
+            throw new InitializationException(String.format("Illegal max deltas value '%d'. Must not be negative.", maxDeltas));
+        }
+    }
+}
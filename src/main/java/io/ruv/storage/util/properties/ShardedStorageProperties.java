@@ -0,0 +1,43 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.impl.ShardedStorageService;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Externalized properties for sharded storage
+ *
+ * @see ShardedStorageService
+ */
+@Data
+@ConfigurationProperties("storage.service.sharded")
+public class ShardedStorageProperties {
+
+    /**
+     * Number of shards the keyspace is partitioned into. Must be greater than zero and must not change
+     * once anything is persisted.
+     */
+    private int shards = 16;
+
+    /**
+     * Number of shards saved or loaded at the same time. Must be greater than zero.
+     */
+    private int parallelism = 1;
+
+    @PostConstruct
+    public void validate() {
+
+        if (shards <= 0) {
+
+            throw new InitializationException(String.format("Illegal shards value '%d'. Must be greater than 0.", shards));
+        }
+
+        if (parallelism <= 0) {
+
+            throw new InitializationException(String.format("Illegal parallelism value '%d'. Must be greater than 0.", parallelism));
+        }
+    }
+}
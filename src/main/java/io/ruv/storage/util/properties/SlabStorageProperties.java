@@ -0,0 +1,63 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.impl.SlabStorageService;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Externalized properties for off-heap slab storage
+ *
+ * @see SlabStorageService
+ */
+@Data
+@ConfigurationProperties("storage.service.slab")
+public class SlabStorageProperties {
+
+    /**
+     * Size of a single off-heap slab. Values larger than a slab get a dedicated off-heap region.
+     */
+    private DataSize slabSize = DataSize.ofMegabytes(1);
+
+    /**
+     * Chunk size of the smallest size class. Must be greater than zero and not exceed slab size.
+     */
+    private DataSize minChunkSize = DataSize.ofBytes(64);
+
+    /**
+     * Ratio between chunk sizes of adjacent size classes. Must be greater than 1.
+     */
+    private double growthFactor = 1.25;
+
+    /**
+     * Upper bound of off-heap memory reserved for values. Must not be less than slab size.
+     */
+    private DataSize maxMemory = DataSize.ofMegabytes(256);
+
+    @PostConstruct
+    public void validate() {
+
+        if (slabSize.toBytes() <= 0 || slabSize.toBytes() > Integer.MAX_VALUE) {
+
+            throw new InitializationException(String.format("Illegal slab size value '%s'. Must be greater than 0 and less than 2GB.", slabSize));
+        }
+
+        if (minChunkSize.toBytes() <= 0 || minChunkSize.toBytes() > slabSize.toBytes()) {
+
+            throw new InitializationException(String.format("Illegal min chunk size value '%s'. Must be greater than 0 and not exceed slab size.", minChunkSize));
+        }
+
+        if (growthFactor <= 1) {
+
+            throw new InitializationException(String.format("Illegal growth factor value '%s'. Must be greater than 1.", growthFactor));
+        }
+
+        if (maxMemory.toBytes() < slabSize.toBytes()) {
+
+            throw new InitializationException(String.format("Illegal max memory value '%s'. Must not be less than slab size.", maxMemory));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.async.SnapshotScheduler;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Externalized properties for saves started in background
+ *
+ * @see SnapshotScheduler
+ */
+@Data
+@ConfigurationProperties("storage.service.schedule")
+public class SnapshotScheduleProperties {
+
+    /**
+     * Whether storage is saved in background.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Time after the last save when modified storage is saved again. Must be positive.
+     */
+    private Duration interval = Duration.ofMinutes(5);
+
+    /**
+     * Number of modifications since the last save after which storage is saved without waiting for the interval,
+     * zero to save only by interval.
+     */
+    private long modifications = 0;
+
+    /**
+     * Time between checks of the conditions above. Must be positive.
+     */
+    private Duration checkInterval = Duration.ofSeconds(1);
+
+    @PostConstruct
+    public void validate() {
+
+        if (interval.isNegative() || interval.isZero()) {
+
+            throw new InitializationException(String.format("Illegal interval value '%s'. Must be positive.", interval));
+        }
+
+        if (modifications < 0) {
+
+            throw new InitializationException(String.format("Illegal modifications value '%d'. Must not be negative.", modifications));
+        }
+
+        if (checkInterval.isNegative() || checkInterval.isZero()) {
+
+            throw new InitializationException(String.format("Illegal check interval value '%s'. Must be positive.", checkInterval));
+        }
+    }
+}
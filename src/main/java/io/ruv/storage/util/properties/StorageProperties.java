@@ -0,0 +1,72 @@
+package io.ruv.storage.util.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Externalized properties for storage service
+ *
+ * @see io.ruv.storage.service.StorageService
+ */
+@Data
+@ConfigurationProperties("storage.service")
+public class StorageProperties {
+
+    /**
+     * Storage service implementation.
+     */
+    private Type type = Type.HASH;
+
+    /**
+     * How save operation treats concurrent access. Slab storage always blocks.
+     */
+    private SnapshotMode snapshotMode = SnapshotMode.BLOCKING;
+
+    /**
+     * Whether save persists only keys modified since the last successful save when persistence supports it.
+     * Applies to hash storage only.
+     */
+    private boolean incrementalSave = false;
+
+    /**
+     * Maximum size of a single value, larger values are rejected before or while they are read.
+     */
+    private DataSize maxValueSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Maximum number of keys in a single batch request.
+     */
+    private int maxBatchKeys = 1000;
+
+    /**
+     * Maximum total size of values in a single batch store request.
+     */
+    private DataSize maxBatchSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Maximum number of keys in a single page of a scan, also the page size when a scan does not set one.
+     */
+    private int maxScanKeys = 1000;
+
+    public enum Type {
+
+        HASH,
+        SLAB,
+        SHARDED,
+        LSM
+    }
+
+    public enum SnapshotMode {
+
+        /**
+         * Storage rejects access with 503 until save is over
+         */
+        BLOCKING,
+
+        /**
+         * Storage keeps serving access while a copy-on-write point-in-time view is saved
+         */
+        CONCURRENT
+    }
+}
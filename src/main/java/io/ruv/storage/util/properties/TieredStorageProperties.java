@@ -0,0 +1,79 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.service.tier.MemoryTier;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Externalized properties for bounded-memory hash storage
+ *
+ * @see MemoryTier
+ */
+@Data
+@ConfigurationProperties("storage.service.tiered")
+public class TieredStorageProperties {
+
+    /**
+     * Whether hash storage keeps values within memory budget, spilling cold ones to disk.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Total size of values kept in memory. Must be greater than zero.
+     */
+    private DataSize memoryBudget = DataSize.ofMegabytes(256);
+
+    /**
+     * Policy choosing values to keep in memory.
+     */
+    private Policy policy = Policy.TINY_LFU;
+
+    /**
+     * Directory for values spilled from memory, cleaned on startup. Must be an existing directory
+     * other than the one of persistence.
+     */
+    private Path spillPath;
+
+    @PostConstruct
+    public void validate() {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        if (memoryBudget.toBytes() <= 0) {
+
+            throw new InitializationException(String.format("Illegal memory budget value '%s'. Must be greater than 0.", memoryBudget));
+        }
+
+        if (spillPath == null || !Files.exists(spillPath)) {
+
+            throw new InitializationException(String.format("Directory '%s' does not exist.", spillPath));
+        }
+
+        if (!Files.isDirectory(spillPath)) {
+
+            throw new InitializationException(String.format("File '%s' is not a directory.", spillPath));
+        }
+    }
+
+    public enum Policy {
+
+        /**
+         * Least recently used values are spilled first
+         */
+        LRU,
+
+        /**
+         * Window TinyLFU, values are kept by recency and frequency of access, resisting scans
+         */
+        TINY_LFU
+    }
+}
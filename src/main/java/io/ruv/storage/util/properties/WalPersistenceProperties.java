@@ -0,0 +1,66 @@
+package io.ruv.storage.util.properties;
+
+import io.ruv.storage.persistence.wal.impl.WalPersistenceStrategy;
+import io.ruv.storage.util.exception.InitializationException;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Externalized properties for write-ahead log storage
+ *
+ * @see WalPersistenceStrategy
+ */
+@Data
+@ConfigurationProperties("storage.persistence.wal")
+public class WalPersistenceProperties {
+
+    /**
+     * Base filesystem path for log segments and checkpoints. Must be an existing directory.
+     */
+    private Path basePath;
+
+    /**
+     * Buffer size for i/o operations. Must be greater than zero.
+     */
+    private int bufferSize = 65536;
+
+    /**
+     * Size after which a new log segment is started. Must be greater than zero.
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Whether mutations are acknowledged only after being flushed to the device.
+     * Disabling it trades crash durability for latency, records are still written on every mutation.
+     */
+    private boolean sync = true;
+
+    @PostConstruct
+    public void validate() {
+
+        if (!Files.exists(basePath)) {
+
+            throw new InitializationException(String.format("Directory '%s' does not exist.", basePath.toString()));
+        }
+
+        if (!Files.isDirectory(basePath)) {
+
+            throw new InitializationException(String.format("File '%s' is not a directory.", basePath.toString()));
+        }
+
+        if (bufferSize <= 0) {
+
+            throw new InitializationException(String.format("Illegal buffer size value '%d'. Must be greater than 0.", bufferSize));
+        }
+
+        if (segmentSize.toBytes() <= 0) {
+
+            throw new InitializationException(String.format("Illegal segment size value '%s'. Must be greater than 0.", segmentSize));
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class FrontalExceptionAdvice {
 
         return ResponseEntity
                 .status(ex.getHttpStatus())
+                .headers(ex.getHttpHeaders())
                 .body(ex.makeErrorWrapper(messageSource));
     }
 }
@@ -0,0 +1,183 @@
+package io.ruv.storage.web.batch;
+
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.ValueTooLargeException;
+import lombok.val;
+import org.springframework.http.MediaType;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Length-prefixed binary framing of batch requests and responses, numbers are big-endian.
+ * <p>
+ * Request body is a sequence of frames up to its end, keys are UTF-8 encoded:
+ * <ul>
+ *     <li>get and delete: {@code int32 keyLength, key}</li>
+ *     <li>put: {@code int32 keyLength, key, int64 valueLength, value}</li>
+ * </ul>
+ * Response body has a frame for each request frame in the same order: {@code int8 status},
+ * followed by {@code int64 valueLength, value} for each value found by get.
+ * Statuses are {@code 0} for success, {@code 1} for a missing key and {@code 2} for a duplicate key.
+ * <p>
+ * Scan response body has a frame for each listed key in key order: {@code int32 keyLength, key},
+ * followed by {@code int64 valueLength, value} when values are requested.
+ */
+public final class BatchFraming {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-kvs-batch";
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    /**
+     * Maximum encoded key length, guards against allocating garbage lengths
+     */
+    public static final int MAX_KEY_LENGTH = 64 * 1024;
+
+    private BatchFraming() {
+    }
+
+    /**
+     * Reads keys of a get or delete request
+     *
+     * @param in      request body, read up to its end but not closed
+     * @param maxKeys maximum number of keys
+     * @return keys in request order
+     * @throws MalformedBatchException when body is not a sequence of key frames
+     * @throws BatchTooLargeException  when body has more than maximum number of keys
+     */
+    public static List<String> readKeys(InputStream in, int maxKeys) throws IOException, MalformedBatchException, BatchTooLargeException {
+
+        val data = new DataInputStream(in);
+        val keys = new ArrayList<String>();
+
+        try {
+
+            String key;
+
+            while ((key = readKey(data)) != null) {
+
+                if (keys.size() == maxKeys) {
+
+                    throw BatchTooLargeException.keys(maxKeys);
+                }
+
+                keys.add(key);
+            }
+        } catch (EOFException e) {
+
+            throw MalformedBatchException.of("truncated frame");
+        }
+
+        return keys;
+    }
+
+    /**
+     * Reads keys and values of a put request
+     *
+     * @param in           request body, read up to its end but not closed
+     * @param maxKeys      maximum number of keys
+     * @param maxValueSize maximum size of a single value
+     * @param maxBatchSize maximum total size of values
+     * @return entries in request order
+     * @throws MalformedBatchException when body is not a sequence of entry frames
+     * @throws BatchTooLargeException  when body exceeds maximum number of keys or total size of values
+     * @throws ValueTooLargeException  when a value exceeds maximum value size
+     */
+    public static List<Map.Entry<String, byte[]>> readEntries(InputStream in, int maxKeys, long maxValueSize, long maxBatchSize)
+            throws IOException, MalformedBatchException, BatchTooLargeException, ValueTooLargeException {
+
+        val data = new DataInputStream(in);
+        val entries = new ArrayList<Map.Entry<String, byte[]>>();
+        long batchSize = 0;
+
+        try {
+
+            String key;
+
+            while ((key = readKey(data)) != null) {
+
+                if (entries.size() == maxKeys) {
+
+                    throw BatchTooLargeException.keys(maxKeys);
+                }
+
+                val length = data.readLong();
+
+                if (length < 0) {
+
+                    throw MalformedBatchException.of("negative value length " + length);
+                }
+
+                if (length > maxValueSize) {
+
+                    throw ValueTooLargeException.of(key, maxValueSize);
+                }
+
+                batchSize += length;
+
+                if (batchSize > maxBatchSize) {
+
+                    throw BatchTooLargeException.bytes(maxBatchSize);
+                }
+
+                val value = new byte[(int) length];
+                data.readFully(value);
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            }
+        } catch (EOFException e) {
+
+            throw MalformedBatchException.of("truncated frame");
+        }
+
+        return entries;
+    }
+
+    /**
+     * @return status code of response frame
+     */
+    public static byte statusCode(BatchStatus status) {
+
+        switch (status) {
+
+            case OK:
+                return 0;
+            case MISSING_KEY:
+                return 1;
+            case DUPLICATE_KEY:
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unknown batch status " + status);
+        }
+    }
+
+    /**
+     * @return next key, {@code null} at the end of body
+     */
+    private static String readKey(DataInputStream data) throws IOException {
+
+        val first = data.read();
+
+        if (first < 0) {
+
+            return null;
+        }
+
+        val length = first << 24 | data.readUnsignedByte() << 16 | data.readUnsignedByte() << 8 | data.readUnsignedByte();
+
+        if (length <= 0 || length > MAX_KEY_LENGTH) {
+
+            throw MalformedBatchException.of("invalid key length " + length);
+        }
+
+        val key = new byte[length];
+        data.readFully(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+}
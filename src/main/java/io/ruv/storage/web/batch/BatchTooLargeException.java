@@ -0,0 +1,46 @@
+package io.ruv.storage.web.batch;
+
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.FrontalExceptionSupport;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception indicating that a batch request exceeds maximum number of keys or total value size
+ */
+@Getter
+public class BatchTooLargeException extends FrontalExceptionSupport {
+
+    private final long limit;
+    private final String unit;
+    private final ErrorCode errorCode = ErrorCode.BATCH_TOO_LARGE;
+
+    public static BatchTooLargeException keys(int maxKeys) {
+
+        return new BatchTooLargeException(maxKeys, "keys");
+    }
+
+    public static BatchTooLargeException bytes(long maxSize) {
+
+        return new BatchTooLargeException(maxSize, "bytes");
+    }
+
+    private BatchTooLargeException(long limit, String unit) {
+
+        super(String.format("Batch request exceeds maximum of %d %s.", limit, unit));
+        this.limit = limit;
+        this.unit = unit;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{String.valueOf(limit), unit};
+    }
+
+    @Override
+    public HttpStatus getHttpStatus() {
+
+        return HttpStatus.PAYLOAD_TOO_LARGE;
+    }
+}
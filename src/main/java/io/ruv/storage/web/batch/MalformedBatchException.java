@@ -0,0 +1,32 @@
+package io.ruv.storage.web.batch;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating batch request body not following {@link BatchFraming}
+ */
+@Getter
+public class MalformedBatchException extends BadRequestException {
+
+    private final String reason;
+    private final ErrorCode errorCode = ErrorCode.MALFORMED_BATCH;
+
+    public static MalformedBatchException of(String reason) {
+
+        return new MalformedBatchException(reason, String.format("Batch request is malformed: %s.", reason));
+    }
+
+    private MalformedBatchException(String reason, String message) {
+
+        super(message);
+        this.reason = reason;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{reason};
+    }
+}
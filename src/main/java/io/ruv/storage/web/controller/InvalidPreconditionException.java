@@ -0,0 +1,32 @@
+package io.ruv.storage.web.controller;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating conditional request headers that can not be combined or do not apply to the request
+ */
+@Getter
+public class InvalidPreconditionException extends BadRequestException {
+
+    private final String reason;
+    private final ErrorCode errorCode = ErrorCode.INVALID_PRECONDITION;
+
+    public static InvalidPreconditionException of(String reason) {
+
+        return new InvalidPreconditionException(reason, String.format("Precondition is invalid: %s.", reason));
+    }
+
+    private InvalidPreconditionException(String reason, String message) {
+
+        super(message);
+        this.reason = reason;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{reason};
+    }
+}
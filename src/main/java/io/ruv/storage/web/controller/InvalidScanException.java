@@ -0,0 +1,32 @@
+package io.ruv.storage.web.controller;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating scan request with conflicting range parameters or page size out of bounds
+ */
+@Getter
+public class InvalidScanException extends BadRequestException {
+
+    private final String reason;
+    private final ErrorCode errorCode = ErrorCode.INVALID_SCAN;
+
+    public static InvalidScanException of(String reason) {
+
+        return new InvalidScanException(reason, String.format("Scan request is invalid: %s.", reason));
+    }
+
+    private InvalidScanException(String reason, String message) {
+
+        super(message);
+        this.reason = reason;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{reason};
+    }
+}
@@ -0,0 +1,33 @@
+package io.ruv.storage.web.controller;
+
+import io.ruv.storage.util.exception.BadRequestException;
+import io.ruv.storage.util.exception.ErrorCode;
+import lombok.Getter;
+
+/**
+ * Exception indicating time to live header that is not a positive number of seconds
+ */
+@Getter
+public class InvalidTtlException extends BadRequestException {
+
+    private final String ttl;
+    private final ErrorCode errorCode = ErrorCode.INVALID_TTL;
+
+    public static InvalidTtlException of(String ttl) {
+
+        return new InvalidTtlException(ttl,
+                String.format("Time to live '%s' is invalid, must be a positive number of seconds.", ttl));
+    }
+
+    private InvalidTtlException(String ttl, String message) {
+
+        super(message);
+        this.ttl = ttl;
+    }
+
+    @Override
+    protected Object[] getArgs() {
+
+        return new Object[]{ttl};
+    }
+}
@@ -1,51 +1,416 @@
 package io.ruv.storage.web.controller;
 
+import io.ruv.storage.service.AsyncStorageService;
+import io.ruv.storage.service.ByteRange;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.ExpirationStatus;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.PersistenceJob;
+import io.ruv.storage.service.PersistenceJobStatus;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
 import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.TierStatus;
+import io.ruv.storage.service.VersionMismatchException;
+import io.ruv.storage.util.properties.StorageProperties;
+import io.ruv.storage.web.batch.BatchFraming;
+import io.ruv.storage.web.dto.BatchResponseDto;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
+import lombok.val;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @RequiredArgsConstructor
 @RestController
 @RequestMapping("api/storage")
 public class StorageController {
 
+    /**
+     * Header carrying time to live of a stored value in seconds
+     */
+    public static final String TTL_HEADER = "X-Ttl";
+
+    private static final String ANY_TAG = "*";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String BYTES_UNIT = "bytes";
+
     private final StorageService storageService;
+    private final AsyncStorageService asyncStorageService;
+    private final StorageProperties properties;
 
-    @GetMapping("/{key}")
-    public ResponseEntity<InputStreamResource> retrieve(@PathVariable String key) {
+    /**
+     * Lists keys starting with a prefix or keys from start inclusive up to end exclusive, a page at a time,
+     * along with their values when requested. While more keys follow in range, {@code Link} header points
+     * to the next page, continuing after the cursor key.
+     */
+    @GetMapping(produces = BatchFraming.MEDIA_TYPE_VALUE)
+    public ResponseEntity<ScanPage> scan(@RequestParam(required = false) String prefix,
+                                         @RequestParam(required = false) String start,
+                                         @RequestParam(required = false) String end,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(defaultValue = "false") boolean values) {
+
+        if (prefix != null && (start != null || end != null)) {
+
+            throw InvalidScanException.of("prefix can not be combined with start or end");
+        }
+
+        val pageSize = limit != null ? limit : properties.getMaxScanKeys();
+
+        if (pageSize <= 0 || pageSize > properties.getMaxScanKeys()) {
 
-        return ResponseEntity.ok()
-                .body(new InputStreamResource(storageService.retrieve(key)));
+            throw InvalidScanException.of(String.format("limit must be within 1 and %d", properties.getMaxScanKeys()));
+        }
+
+        val range = prefix != null ? KeyRange.prefix(prefix) : KeyRange.of(start, end);
+        val page = storageService.scan(range.after(cursor), pageSize, values);
+        val response = ResponseEntity.ok();
+
+        if (page.getNext() != null) {
+
+            val next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", URLEncoder.encode(page.getNext(), StandardCharsets.UTF_8))
+                    .build(true)
+                    .toUriString();
+
+            response.header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", next));
+        }
+
+        return response.body(page);
     }
 
+    /**
+     * Retrieves value along with its {@code ETag}, responds with 304 without retrieving the value
+     * when {@code If-None-Match} lists its current version. {@code If-None-Match} is not checked by storage
+     * without versions, which has no version to compare without retrieving the value. A single byte range of {@code Range} header
+     * is retrieved alone and responded with 206, multiple or malformed ranges are ignored.
+     */
+    @GetMapping("/{key}")
+    public ResponseEntity<StoredValue> retrieve(@PathVariable String key,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+
+        if (ifNoneMatch != null && storageService.keepsVersions()) {
 
+            val version = storageService.version(key);
+            val matches = ANY_TAG.equals(ifNoneMatch.trim()) || parseETags(ifNoneMatch, true).contains(version);
+
+            if (version != StorageService.NO_VERSION && matches) {
+
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag(version))
+                        .build();
+            }
+        }
+
+        val byteRange = range != null ? parseRange(range) : null;
+
+        if (byteRange != null) {
+
+            val part = storageService.retrieveRange(key, byteRange);
+            val contentRange = String.format("%s %d-%d/%d", BYTES_UNIT,
+                    part.offset(), part.offset() + part.length() - 1, part.valueLength());
+
+            return withETag(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), part.version())
+                    .header(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT)
+                    .header(HttpHeaders.CONTENT_RANGE, contentRange)
+                    .body(part);
+        }
+
+        val value = storageService.retrieveValue(key);
+        return withETag(ResponseEntity.ok(), value.version())
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT)
+                .body(value);
+    }
+
+    /**
+     * Stores value of the request body, removed once {@link #TTL_HEADER time to live} passes when it is set.
+     * Value of a stored key is replaced only when {@code If-Match} lists its current version or is {@code *},
+     * {@code If-None-Match: *} fails with 412 instead of 400 when key is stored.
+     */
     @PutMapping("/{key}")
-    public ResponseEntity<?> store(@PathVariable String key, @RequestBody byte[] content) {
+    public ResponseEntity<?> store(@PathVariable String key, @RequestHeader(value = TTL_HEADER, required = false) String ttl,
+                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                   HttpServletRequest request) throws IOException {
+
+        if (ifMatch != null && ifNoneMatch != null) {
+
+            throw InvalidPreconditionException.of("If-Match can not be combined with If-None-Match");
+        }
+
+        if (ifNoneMatch != null && !ANY_TAG.equals(ifNoneMatch.trim())) {
+
+            throw InvalidPreconditionException.of("If-None-Match of a store must be *");
+        }
+
+        val expectedVersion = ifMatch != null ? expectedVersion(key, ifMatch) : StorageService.NO_VERSION;
+        long version;
+
+        try {
 
-        storageService.store(key, content);
-        return ResponseEntity.ok().build();
+            version = storageService.compareAndStore(key, request.getInputStream(), request.getContentLengthLong(),
+                    ttl != null ? parseTtl(ttl) : null, expectedVersion);
+        } catch (DuplicateKeyException e) {
+
+            if (ifNoneMatch == null) {
+
+                throw e;
+            }
+
+            throw VersionMismatchException.of(key);
+        }
+
+        return withETag(ResponseEntity.ok(), version).build();
     }
 
+    /**
+     * Removes value, only when {@code If-Match} lists its current version or is {@code *} if the header is set
+     */
     @DeleteMapping("/{key}")
-    public ResponseEntity<?> delete(@PathVariable String key) {
+    public ResponseEntity<?> delete(@PathVariable String key,
+                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        if (ifMatch != null) {
+
+            storageService.compareAndDelete(key, expectedVersion(key, ifMatch));
+        } else {
+
+            storageService.delete(key);
+        }
 
-        storageService.delete(key);
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping(value = "/batch/get", produces = BatchFraming.MEDIA_TYPE_VALUE)
+    public ResponseEntity<BatchResponseDto> retrieveAll(HttpServletRequest request) throws IOException {
+
+        val keys = BatchFraming.readKeys(request.getInputStream(), properties.getMaxBatchKeys());
+        return ResponseEntity.ok(BatchResponseDto.ofValues(storageService.retrieveAll(keys)));
+    }
+
+    @PostMapping(value = "/batch/put", produces = BatchFraming.MEDIA_TYPE_VALUE)
+    public ResponseEntity<BatchResponseDto> storeAll(HttpServletRequest request) throws IOException {
+
+        val entries = BatchFraming.readEntries(request.getInputStream(), properties.getMaxBatchKeys(),
+                properties.getMaxValueSize().toBytes(), properties.getMaxBatchSize().toBytes());
+        return ResponseEntity.ok(BatchResponseDto.ofStatuses(storageService.storeAll(entries)));
+    }
+
+    @PostMapping(value = "/batch/delete", produces = BatchFraming.MEDIA_TYPE_VALUE)
+    public ResponseEntity<BatchResponseDto> deleteAll(HttpServletRequest request) throws IOException {
+
+        val keys = BatchFraming.readKeys(request.getInputStream(), properties.getMaxBatchKeys());
+        return ResponseEntity.ok(BatchResponseDto.ofStatuses(storageService.deleteAll(keys)));
+    }
+
+    /**
+     * Starts a save, returning status of the started job to poll at its location
+     */
     @PostMapping("/save")
-    public ResponseEntity<?> save() {
+    public ResponseEntity<PersistenceJobStatus> save() {
+
+        return accepted(asyncStorageService.save());
+    }
+
+    @GetMapping("/save/status")
+    public ResponseEntity<SnapshotStatus> saveStatus() {
 
-        storageService.save();
-        return ResponseEntity.ok().build();
+        return ResponseEntity.ok(storageService.snapshotStatus());
     }
 
+    /**
+     * Starts a load, returning status of the started job to poll at its location
+     */
     @PostMapping("/load")
-    public ResponseEntity<?> load() {
+    public ResponseEntity<PersistenceJobStatus> load() {
+
+        return accepted(asyncStorageService.load());
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<PersistenceJobStatus> jobStatus(@PathVariable String id) {
+
+        return ResponseEntity.ok(asyncStorageService.job(id).status());
+    }
+
+    @GetMapping("/tier/status")
+    public ResponseEntity<TierStatus> tierStatus() {
+
+        return ResponseEntity.ok(storageService.tierStatus());
+    }
+
+    @GetMapping("/expiration/status")
+    public ResponseEntity<ExpirationStatus> expirationStatus() {
+
+        return ResponseEntity.ok(storageService.expirationStatus());
+    }
+
+    /**
+     * Resolves version the key must hold to satisfy {@code If-Match} header, a list of several versions
+     * is resolved to the current version of the key when it is listed
+     *
+     * @throws VersionMismatchException when no version can match
+     */
+    private long expectedVersion(String key, String ifMatch) {
+
+        if (ANY_TAG.equals(ifMatch.trim())) {
+
+            return StorageService.ANY_VERSION;
+        }
+
+        val listed = parseETags(ifMatch, false);
+
+        if (listed.size() == 1) {
+
+            return listed.get(0);
+        }
+
+        if (!listed.isEmpty()) {
+
+            try {
+
+                val current = storageService.version(key);
+
+                if (listed.contains(current)) {
+
+                    return current;
+                }
+            } catch (MissingKeyException e) {
+
+                // fails below
+            }
+        }
+
+        throw VersionMismatchException.of(key);
+    }
+
+    /**
+     * @param weak whether weak entity tags match as well, strong comparison of {@code If-Match} ignores them
+     * @return versions of entity tags of the header, tags of other origin never match
+     */
+    private static List<Long> parseETags(String header, boolean weak) {
+
+        val versions = new ArrayList<Long>();
+
+        for (val tag : header.split(",")) {
+
+            var trimmed = tag.trim();
+
+            if (weak && trimmed.startsWith(WEAK_PREFIX)) {
+
+                trimmed = trimmed.substring(WEAK_PREFIX.length());
+            }
+
+            if (trimmed.length() > 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+
+                try {
+
+                    val version = Long.parseLong(trimmed.substring(1, trimmed.length() - 1));
+
+                    if (version > 0) {
+
+                        versions.add(version);
+                    }
+                } catch (NumberFormatException e) {
+
+                    // tag of other origin
+                }
+            }
+        }
+
+        return versions;
+    }
+
+    /**
+     * @return single byte range of the header, {@code null} for multiple or malformed ranges
+     */
+    private static ByteRange parseRange(String header) {
+
+        val trimmed = header.trim();
+
+        if (!trimmed.startsWith(BYTES_UNIT + "=")) {
+
+            return null;
+        }
+
+        val spec = trimmed.substring(BYTES_UNIT.length() + 1).trim();
+        val dash = spec.indexOf('-');
+
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+
+            return null;
+        }
+
+        val first = spec.substring(0, dash).trim();
+        val last = spec.substring(dash + 1).trim();
+
+        try {
+
+            if (first.isEmpty()) {
+
+                return ByteRange.suffix(Long.parseLong(last));
+            }
+
+            return last.isEmpty() ? ByteRange.from(Long.parseLong(first)) : ByteRange.of(Long.parseLong(first), Long.parseLong(last));
+        } catch (IllegalArgumentException e) {
+
+            // malformed numbers included
+            return null;
+        }
+    }
+
+    private static String eTag(long version) {
+
+        return "\"" + version + "\"";
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, long version) {
+
+        return version != StorageService.NO_VERSION ? response.eTag(eTag(version)) : response;
+    }
+
+    private static Duration parseTtl(String ttl) {
+
+        try {
+
+            val seconds = Long.parseLong(ttl.trim());
+
+            if (seconds > 0) {
+
+                return Duration.ofSeconds(seconds);
+            }
+        } catch (NumberFormatException e) {
+
+            // reported below along with non-positive values
+        }
+
+        throw InvalidTtlException.of(ttl);
+    }
+
+    private static ResponseEntity<PersistenceJobStatus> accepted(PersistenceJob job) {
+
+        val location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/storage/jobs/{id}")
+                .buildAndExpand(job.getId())
+                .toUri();
 
-        storageService.load();
-        return ResponseEntity.ok().build();
+        return ResponseEntity.accepted()
+                .location(location)
+                .body(job.status());
     }
 }
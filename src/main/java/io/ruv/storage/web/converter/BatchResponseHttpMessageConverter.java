@@ -0,0 +1,134 @@
+package io.ruv.storage.web.converter;
+
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.web.batch.BatchFraming;
+import io.ruv.storage.web.dto.BatchResponseDto;
+import lombok.val;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes {@link BatchResponseDto} response bodies in {@link BatchFraming batch framing}.
+ * <p>
+ * Values are written straight from their buffers the same way as by {@link StoredValueHttpMessageConverter}
+ * and closed once the response is written.
+ */
+@Component
+public class BatchResponseHttpMessageConverter extends AbstractHttpMessageConverter<BatchResponseDto> {
+
+    private static final int STATUS_LENGTH = Byte.BYTES;
+    private static final int VALUE_LENGTH_LENGTH = Long.BYTES;
+
+    public BatchResponseHttpMessageConverter() {
+
+        super(BatchFraming.MEDIA_TYPE, MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+
+        return BatchResponseDto.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+
+        return false;
+    }
+
+    @Override
+    protected BatchResponseDto readInternal(Class<? extends BatchResponseDto> clazz, HttpInputMessage inputMessage) {
+
+        throw new HttpMessageNotReadableException("Batch response can not be read from request.", inputMessage);
+    }
+
+    @Override
+    protected MediaType getDefaultContentType(BatchResponseDto response) {
+
+        return BatchFraming.MEDIA_TYPE;
+    }
+
+    @Override
+    protected Long getContentLength(BatchResponseDto response, MediaType contentType) {
+
+        long length = (long) response.getStatuses().size() * STATUS_LENGTH;
+
+        if (response.getValues() != null) {
+
+            for (val value : response.getValues()) {
+
+                if (value != null) {
+
+                    length += VALUE_LENGTH_LENGTH + value.length();
+                }
+            }
+        }
+
+        return length;
+    }
+
+    @Override
+    protected void writeInternal(BatchResponseDto response, HttpOutputMessage outputMessage) throws IOException {
+
+        val statuses = response.getStatuses();
+        val values = response.getValues();
+
+        try {
+
+            val out = outputMessage.getBody();
+            val header = ByteBuffer.allocate(STATUS_LENGTH + VALUE_LENGTH_LENGTH);
+
+            for (int i = 0; i < statuses.size(); i++) {
+
+                val status = statuses.get(i);
+                val value = values != null && status == BatchStatus.OK ? values.get(i) : null;
+
+                header.clear().put(BatchFraming.statusCode(status));
+
+                if (value != null) {
+
+                    header.putLong(value.length());
+                }
+
+                out.write(header.array(), 0, header.position());
+
+                if (value != null) {
+
+                    for (val buffer : value.buffers()) {
+
+                        StoredValueHttpMessageConverter.write(buffer, out);
+                    }
+                }
+            }
+
+            out.flush();
+        } finally {
+
+            close(values);
+        }
+    }
+
+    private static void close(Iterable<StoredValue> values) {
+
+        if (values == null) {
+
+            return;
+        }
+
+        for (val value : values) {
+
+            if (value != null) {
+
+                value.close();
+            }
+        }
+    }
+}
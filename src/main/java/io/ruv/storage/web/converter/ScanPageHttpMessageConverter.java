@@ -0,0 +1,156 @@
+package io.ruv.storage.web.converter;
+
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.web.batch.BatchFraming;
+import lombok.val;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link ScanPage} response bodies in {@link BatchFraming batch framing}.
+ * <p>
+ * Values are written straight from their buffers the same way as by {@link StoredValueHttpMessageConverter}
+ * and closed once the response is written.
+ */
+@Component
+public class ScanPageHttpMessageConverter extends AbstractHttpMessageConverter<ScanPage> {
+
+    private static final int KEY_LENGTH_LENGTH = Integer.BYTES;
+    private static final int VALUE_LENGTH_LENGTH = Long.BYTES;
+
+    public ScanPageHttpMessageConverter() {
+
+        super(BatchFraming.MEDIA_TYPE, MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+
+        return ScanPage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+
+        return false;
+    }
+
+    @Override
+    protected ScanPage readInternal(Class<? extends ScanPage> clazz, HttpInputMessage inputMessage) {
+
+        throw new HttpMessageNotReadableException("Scan page can not be read from request.", inputMessage);
+    }
+
+    @Override
+    protected MediaType getDefaultContentType(ScanPage page) {
+
+        return BatchFraming.MEDIA_TYPE;
+    }
+
+    @Override
+    protected Long getContentLength(ScanPage page, MediaType contentType) {
+
+        long length = 0;
+
+        for (val key : page.getKeys()) {
+
+            length += KEY_LENGTH_LENGTH + utf8Length(key);
+        }
+
+        if (page.getValues() != null) {
+
+            for (val value : page.getValues()) {
+
+                length += VALUE_LENGTH_LENGTH + value.length();
+            }
+        }
+
+        return length;
+    }
+
+    @Override
+    protected void writeInternal(ScanPage page, HttpOutputMessage outputMessage) throws IOException {
+
+        val keys = page.getKeys();
+        val values = page.getValues();
+
+        try {
+
+            val out = outputMessage.getBody();
+            val header = ByteBuffer.allocate(VALUE_LENGTH_LENGTH);
+
+            for (int i = 0; i < keys.size(); i++) {
+
+                val key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+
+                header.clear().putInt(key.length);
+                out.write(header.array(), 0, header.position());
+                out.write(key);
+
+                if (values != null) {
+
+                    val value = values.get(i);
+
+                    header.clear().putLong(value.length());
+                    out.write(header.array(), 0, header.position());
+
+                    for (val buffer : value.buffers()) {
+
+                        StoredValueHttpMessageConverter.write(buffer, out);
+                    }
+                }
+            }
+
+            out.flush();
+        } finally {
+
+            if (values != null) {
+
+                values.forEach(StoredValue::close);
+            }
+        }
+    }
+
+    /**
+     * Counts encoded length without encoding the key
+     */
+    private static int utf8Length(String key) {
+
+        var length = 0;
+
+        for (var i = 0; i < key.length(); i++) {
+
+            val c = key.charAt(i);
+
+            if (c < 0x80) {
+
+                length++;
+            } else if (c < 0x800) {
+
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < key.length() && Character.isLowSurrogate(key.charAt(i + 1))) {
+
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+
+                // unpaired surrogate is encoded as a replacement byte
+                length++;
+            } else {
+
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,101 @@
+package io.ruv.storage.web.converter;
+
+import io.ruv.storage.service.StoredValue;
+import lombok.val;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+/**
+ * Writes {@link StoredValue} response bodies straight from value buffers.
+ * <p>
+ * Heap buffers are written from their backing arrays and direct buffers are handed to Tomcat as is,
+ * so neither is copied to an intermediate heap buffer. Value is closed once written.
+ */
+@Component
+public class StoredValueHttpMessageConverter extends AbstractHttpMessageConverter<StoredValue> {
+
+    private static final boolean TOMCAT_PRESENT = ClassUtils.isPresent(
+            "org.apache.catalina.connector.CoyoteOutputStream",
+            StoredValueHttpMessageConverter.class.getClassLoader());
+
+    public StoredValueHttpMessageConverter() {
+
+        super(MediaType.APPLICATION_OCTET_STREAM, MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+
+        return StoredValue.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+
+        return false;
+    }
+
+    @Override
+    protected StoredValue readInternal(Class<? extends StoredValue> clazz, HttpInputMessage inputMessage) {
+
+        throw new HttpMessageNotReadableException("Stored value can not be read from request.", inputMessage);
+    }
+
+    @Override
+    protected MediaType getDefaultContentType(StoredValue value) {
+
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    @Override
+    protected Long getContentLength(StoredValue value, MediaType contentType) {
+
+        return value.length();
+    }
+
+    @Override
+    protected void writeInternal(StoredValue value, HttpOutputMessage outputMessage) throws IOException {
+
+        try (value) {
+
+            val out = outputMessage.getBody();
+
+            for (val buffer : value.buffers()) {
+
+                write(buffer, out);
+            }
+
+            out.flush();
+        }
+    }
+
+    static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+
+        if (buffer.hasArray()) {
+
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else if (TOMCAT_PRESENT && out instanceof CoyoteOutputStream) {
+
+            ((CoyoteOutputStream) out).write(buffer);
+        } else {
+
+            val channel = Channels.newChannel(out);
+
+            while (buffer.hasRemaining()) {
+
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.ruv.storage.web.dto;
+
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.StoredValue;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outcomes of a batch request, written in {@link io.ruv.storage.web.batch.BatchFraming batch framing}
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class BatchResponseDto {
+
+    private final List<BatchStatus> statuses;
+
+    /**
+     * Values found by get, {@code null} for other operations
+     */
+    private final List<StoredValue> values;
+
+    public static BatchResponseDto ofStatuses(List<BatchStatus> statuses) {
+
+        return new BatchResponseDto(statuses, null);
+    }
+
+    public static BatchResponseDto ofValues(List<StoredValue> values) {
+
+        return new BatchResponseDto(values.stream()
+                .map(value -> value != null ? BatchStatus.OK : BatchStatus.MISSING_KEY)
+                .collect(Collectors.toList()), values);
+    }
+}
@@ -0,0 +1,89 @@
+package io.ruv.storage.web.servlet;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link DispatcherServlet} handing requests over from container threads to the given executor.
+ * <p>
+ * Request is put in asynchronous mode, then handled and its response written on an executor thread,
+ * which completes the request once done. Container thread is released right away, so the number of requests
+ * blocked on storage or on slow clients is not capped by the container thread pool.
+ * <p>
+ * Tomcat runs container threads in a monitor, so a virtual thread given to Tomcat as a container thread
+ * would pin its carrier for the whole request, that is why virtual threads are plugged in here instead.
+ */
+@Slf4j
+public class ExecutorDispatcherServlet extends DispatcherServlet {
+
+    private final transient Executor executor;
+
+    public ExecutorDispatcherServlet(Executor executor) {
+
+        this.executor = executor;
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+        if (request.getDispatcherType() != DispatcherType.REQUEST || !request.isAsyncSupported()) {
+
+            super.service(request, response);
+            return;
+        }
+
+        val asyncContext = request.startAsync();
+        // handling completes the request itself, a timeout would cut off slow clients
+        asyncContext.setTimeout(0);
+
+        try {
+
+            executor.execute(() -> {
+
+                try {
+
+                    super.service(request, response);
+                } catch (Exception e) {
+
+                    log.error("Request handling failed.", e);
+                    sendError(response, HttpStatus.INTERNAL_SERVER_ERROR);
+                } finally {
+
+                    asyncContext.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+
+            log.warn("Request handling rejected.", e);
+            sendError(response, HttpStatus.SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+        }
+    }
+
+    private void sendError(HttpServletResponse response, HttpStatus status) {
+
+        if (response.isCommitted()) {
+
+            return;
+        }
+
+        try {
+
+            response.reset();
+            response.sendError(status.value());
+        } catch (IOException | IllegalStateException e) {
+
+            log.debug("Failed to send error response.", e);
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package io.ruv.storage.persistence.nio.impl;
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.ruv.storage.persistence.ExpiringValue;
 import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.util.compression.CompressedValue;
+import io.ruv.storage.util.compression.Compressor;
 import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.CompressionProperties;
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import io.ruv.storage.util.properties.LoadMode;
 import io.ruv.storage.util.properties.NioPersistenceProperties;
 import lombok.val;
 import org.assertj.core.api.Assertions;
@@ -12,17 +20,28 @@ import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.mockito.Mockito;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Execution(ExecutionMode.SAME_THREAD)
@@ -57,7 +76,8 @@ public class NioPersistenceStrategyTest {
 
         persistenceStrategy.persist(emptyStream);
 
-        Assertions.assertThat(properties.getBasePath()).isEmptyDirectory();
+        Assertions.assertThat(properties.getBasePath()).isDirectoryContaining(path -> path.equals(snapshot(1)));
+        Assertions.assertThat(values(1)).isEmptyDirectory();
     }
 
     @Test
@@ -71,10 +91,10 @@ public class NioPersistenceStrategyTest {
 
         persistenceStrategy.persist(stream);
 
-        Assertions.assertThat(properties.getBasePath()).isNotEmptyDirectory();
+        Assertions.assertThat(values(1)).isNotEmptyDirectory();
 
-        val file = properties.getBasePath().resolve(key);
-        val otherFile = properties.getBasePath().resolve(otherKey);
+        val file = values(1).resolve(key);
+        val otherFile = values(1).resolve(otherKey);
 
         Assertions.assertThat(file).isNotEmptyFile();
         Assertions.assertThat(otherFile).isNotEmptyFile();
@@ -86,6 +106,135 @@ public class NioPersistenceStrategyTest {
         Assertions.assertThat(otherBytes).isEqualTo(otherValue);
     }
 
+    @Test
+    public void valueLargerThanBufferIsPersistedWhole() throws IOException {
+
+        val large = new byte[properties.getBufferSize() * 3 + 17];
+        Arrays.fill(large, (byte) 7);
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(key, () -> new ByteArrayInputStream(large))
+                .entrySet().stream());
+
+        Assertions.assertThat(Files.readAllBytes(values(1).resolve(key))).isEqualTo(large);
+    }
+
+    @Test
+    public void fileWritesAndReadsAreMetered() {
+
+        val registry = new SimpleMeterRegistry();
+        val metered = new NioPersistenceStrategy(properties, NioPersistenceOptions.builder().registry(registry).build());
+
+        metered.persist(Map.<String, Supplier<InputStream>>of(
+                        key, () -> new ByteArrayInputStream(value),
+                        otherKey, () -> new ByteArrayInputStream(otherValue))
+                .entrySet().stream());
+        metered.load((key, value) -> {
+        });
+
+        Assertions.assertThat(registry.get("storage.persistence.file").tag("operation", "write").timer().count()).isEqualTo(2);
+        Assertions.assertThat(registry.get("storage.persistence.file").tag("operation", "read").timer().count()).isEqualTo(2);
+        Assertions.assertThat(registry.get("storage.persistence.bytes").tag("operation", "write").counter().count())
+                .isEqualTo(value.length + otherValue.length);
+        Assertions.assertThat(registry.get("storage.persistence.bytes").tag("operation", "read").counter().count())
+                .isEqualTo(value.length + otherValue.length);
+    }
+
+    @Test
+    public void deltaWritesOnlyChangedFiles() throws IOException {
+
+        Assertions.assertThat(persistenceStrategy.canPersistDelta()).isFalse();
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(
+                key, () -> new ByteArrayInputStream(value),
+                otherKey, () -> new ByteArrayInputStream(otherValue)).entrySet().stream());
+
+        Assertions.assertThat(persistenceStrategy.canPersistDelta()).isTrue();
+
+        persistenceStrategy.persistDelta(Stream.of(
+                new AbstractMap.SimpleImmutableEntry<String, Supplier<InputStream>>(key, () -> new ByteArrayInputStream(otherValue)),
+                new AbstractMap.SimpleImmutableEntry<String, Supplier<InputStream>>(otherKey, null)));
+
+        try (val files = Files.list(values(2))) {
+
+            Assertions.assertThat(files).containsExactly(values(2).resolve(key));
+        }
+
+        Assertions.assertThat(Files.readAllBytes(values(2).resolve(key))).isEqualTo(otherValue);
+
+        // previous snapshot is kept intact as the base of the delta
+        Assertions.assertThat(Files.readAllBytes(values(1).resolve(key))).isEqualTo(value);
+        Assertions.assertThat(Files.readAllBytes(values(1).resolve(otherKey))).isEqualTo(otherValue);
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(otherValue);
+        Assertions.assertThat(persistenceStrategy.canPersistDelta()).isFalse();
+    }
+
+    @Test
+    public void deltasAreCompactedIntoSnapshot() throws IOException {
+
+        properties.setMaxDeltas(1);
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(
+                key, () -> new ByteArrayInputStream(value),
+                otherKey, () -> new ByteArrayInputStream(otherValue)).entrySet().stream());
+        persistenceStrategy.persistDelta(Stream.of(
+                new AbstractMap.SimpleImmutableEntry<String, Supplier<InputStream>>(key, () -> new ByteArrayInputStream(otherValue))));
+        persistenceStrategy.persistDelta(Stream.of(
+                new AbstractMap.SimpleImmutableEntry<String, Supplier<InputStream>>(otherKey, null)));
+
+        // second delta is compacted, retained snapshots keep the bases of their deltas
+        Assertions.assertThat(values(4).resolve(key)).hasBinaryContent(otherValue);
+        Assertions.assertThat(values(4).resolve(otherKey)).doesNotExist();
+
+        try (val files = Files.list(properties.getBasePath())) {
+
+            Assertions.assertThat(files).containsExactlyInAnyOrder(snapshot(1), snapshot(2), snapshot(3), snapshot(4));
+        }
+
+        persistenceStrategy.persistDelta(Stream.of(
+                new AbstractMap.SimpleImmutableEntry<String, Supplier<InputStream>>(otherKey, () -> new ByteArrayInputStream(value))));
+
+        try (val files = Files.list(properties.getBasePath())) {
+
+            Assertions.assertThat(files).containsExactlyInAnyOrder(snapshot(4), snapshot(5));
+        }
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(otherValue);
+        Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(value);
+    }
+
+    @Test
+    public void deltaWithMissingBaseFallsBackToOlderSnapshot() throws IOException {
+
+        properties.setRetainedSnapshots(3);
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(key, () -> new ByteArrayInputStream(value))
+                .entrySet().stream());
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(otherKey, () -> new ByteArrayInputStream(otherValue))
+                .entrySet().stream());
+        persistenceStrategy.persistDelta(Stream.of(
+                new AbstractMap.SimpleImmutableEntry<String, Supplier<InputStream>>(key, () -> new ByteArrayInputStream(otherValue))));
+
+        FileSystemUtils.deleteRecursively(snapshot(2));
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(value);
+    }
+
     @Test
     public void persistNonExistingStorageThrowsException() throws IOException {
 
@@ -134,6 +283,123 @@ public class NioPersistenceStrategyTest {
         Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(otherValue);
     }
 
+    @Test
+    public void mappedLoadRecordsOutliveFiles() throws IOException {
+
+        properties.setLoadMode(LoadMode.MAP);
+        properties.setMinMappedSize(DataSize.ofBytes(0));
+
+        val file = properties.getBasePath().resolve(key);
+        val otherFile = properties.getBasePath().resolve(otherKey);
+
+        Files.write(file, value, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        Files.write(otherFile, new byte[0], StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Files.delete(file);
+        Files.delete(otherFile);
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(value);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(value);
+        Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(new byte[0]);
+    }
+
+    @Test
+    public void parallelPersistAndLoadKeepAllRecords() {
+
+        properties.setParallelism(4);
+
+        val parallelStrategy = new NioPersistenceStrategy(properties);
+        val values = new HashMap<String, Supplier<InputStream>>();
+
+        for (var i = 0; i < 200; i++) {
+
+            val bytes = (key + i).getBytes(StandardCharsets.UTF_8);
+            values.put(key + i, () -> new ByteArrayInputStream(bytes));
+        }
+
+        parallelStrategy.persist(values.entrySet().stream());
+
+        val resultMap = new ConcurrentHashMap<String, Supplier<InputStream>>();
+
+        parallelStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap).hasSize(200);
+        resultMap.forEach((k, v) -> Assertions.assertThat(v.get()).hasBinaryContent(k.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void parallelPersistThrowsFailureOfEarliestRecord() {
+
+        properties.setParallelism(4);
+
+        val parallelStrategy = new NioPersistenceStrategy(properties);
+        val failing = Set.of(key + 3, key + 40);
+
+        val stream = IntStream.range(0, 50)
+                .mapToObj(i -> Map.<String, Supplier<InputStream>>entry(key + i, () -> failing.contains(key + i)
+                        ? new FailingInputStream()
+                        : new ByteArrayInputStream(value)));
+
+        Assertions.assertThatThrownBy(() -> parallelStrategy.persist(stream))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_WRITE)
+                .hasFieldOrPropertyWithValue("key", key + 3);
+    }
+
+    @Test
+    public void parallelPersistsShareThreads() {
+
+        properties.setParallelism(4);
+
+        val threads = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+
+            threads.incrementAndGet();
+            return new Thread(runnable);
+        };
+
+        try (val parallelStrategy = new NioPersistenceStrategy(properties,
+                NioPersistenceOptions.builder().threadFactory(threadFactory).build())) {
+
+            for (var i = 0; i < 3; i++) {
+
+                parallelStrategy.persist(IntStream.range(0, 50)
+                        .mapToObj(j -> Map.<String, Supplier<InputStream>>entry(key + j, () -> new ByteArrayInputStream(value))));
+            }
+        }
+
+        Assertions.assertThat(threads.get()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    public void parallelPersistRethrowsError() {
+
+        properties.setParallelism(4);
+
+        try (val parallelStrategy = new NioPersistenceStrategy(properties)) {
+
+            val stream = IntStream.range(0, 50)
+                    .mapToObj(i -> Map.<String, Supplier<InputStream>>entry(key + i, () -> {
+
+                        if (i == 3) {
+
+                            throw new OutOfMemoryError("value does not fit");
+                        }
+
+                        return new ByteArrayInputStream(value);
+                    }));
+
+            Assertions.assertThatThrownBy(() -> parallelStrategy.persist(stream))
+                    .isInstanceOf(OutOfMemoryError.class)
+                    .hasMessage("value does not fit");
+        }
+    }
+
     @Test
     public void loadNonExistingStorageThrowsException() throws IOException {
 
@@ -144,4 +410,345 @@ public class NioPersistenceStrategyTest {
                 .isInstanceOf(PersistenceException.class)
                 .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
     }
+
+    @Test
+    public void compressedFormatKeepsValuesCompressed() throws IOException {
+
+        val compressionProperties = new CompressionProperties();
+        compressionProperties.setEnabled(true);
+        compressionProperties.setMinSize(DataSize.ofBytes(16));
+
+        val compressedStrategy = new NioPersistenceStrategy(properties,
+                NioPersistenceOptions.builder().compression(compressionProperties).build());
+        val compressible = "compressible".repeat(100).getBytes(StandardCharsets.UTF_8);
+        val compressed = new Compressor(compressionProperties).compress(ByteBuffer.wrap(compressible));
+        Supplier<InputStream> plain = () -> new ByteArrayInputStream(value);
+
+        compressedStrategy.persist(Map.of(key, compressed, otherKey, plain).entrySet().stream());
+
+        Assertions.assertThat(Files.size(values(1).resolve(key))).isLessThan(compressible.length);
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        compressedStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap.get(key)).isInstanceOf(CompressedValue.class);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(compressible);
+        Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(value);
+    }
+
+    @Test
+    public void snapshotIsLoadedInFormatItWasWritten() {
+
+        val compressionProperties = new CompressionProperties();
+        compressionProperties.setEnabled(true);
+        compressionProperties.setMinSize(DataSize.ofBytes(16));
+
+        val compressedStrategy = new NioPersistenceStrategy(properties,
+                NioPersistenceOptions.builder().compression(compressionProperties).build());
+        val compressible = "compressible".repeat(100).getBytes(StandardCharsets.UTF_8);
+        val compressed = new Compressor(compressionProperties).compress(ByteBuffer.wrap(compressible));
+
+        compressedStrategy.persist(Map.of(key, compressed).entrySet().stream());
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(compressible);
+
+        persistenceStrategy.persist(Map.of(otherKey, (Supplier<InputStream>) () -> new ByteArrayInputStream(value)).entrySet().stream());
+        resultMap.clear();
+
+        compressedStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(value);
+    }
+
+    @Test
+    public void deltaKeepsFormatOfPreviousSnapshot() {
+
+        val compressionProperties = new CompressionProperties();
+        compressionProperties.setEnabled(true);
+
+        val compressedStrategy = new NioPersistenceStrategy(properties,
+                NioPersistenceOptions.builder().compression(compressionProperties).build());
+
+        persistenceStrategy.persist(Map.of(key, (Supplier<InputStream>) () -> new ByteArrayInputStream(value)).entrySet().stream());
+        persistenceStrategy.persistDelta(Stream.of(new AbstractMap.SimpleImmutableEntry<>(otherKey,
+                (Supplier<InputStream>) () -> new ByteArrayInputStream(otherValue))));
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        compressedStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(value);
+        Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(otherValue);
+    }
+
+    @Test
+    public void deadlinesAreKeptAcrossDeltas() {
+
+        Supplier<InputStream> expiring = ExpiringValue.of(() -> new ByteArrayInputStream(value), 1000L);
+        persistenceStrategy.persist(Map.of(key, expiring).entrySet().stream());
+
+        Supplier<InputStream> otherExpiring = ExpiringValue.of(() -> new ByteArrayInputStream(otherValue), 2000L);
+        persistenceStrategy.persistDelta(Stream.of(new AbstractMap.SimpleImmutableEntry<>(otherKey, otherExpiring)));
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(ExpiringValue.deadlineOf(resultMap.get(key))).isEqualTo(1000L);
+        Assertions.assertThat(ExpiringValue.deadlineOf(resultMap.get(otherKey))).isEqualTo(2000L);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(value);
+        Assertions.assertThat(resultMap.get(otherKey).get()).hasBinaryContent(otherValue);
+    }
+
+    @Test
+    public void compressedFormatWithUnknownCodecThrowsException() throws IOException {
+
+        val compressionProperties = new CompressionProperties();
+        compressionProperties.setEnabled(true);
+
+        val compressedStrategy = new NioPersistenceStrategy(properties,
+                NioPersistenceOptions.builder().compression(compressionProperties).build());
+
+        Files.write(properties.getBasePath().resolve(key), new byte[]{42, 0, 0}, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        Assertions.assertThatThrownBy(() -> compressedStrategy.load((k, v) -> {
+                }))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ);
+    }
+
+    @Test
+    public void sharedValuesAreWrittenOnceAndLinked() throws IOException {
+
+        val deduplicationProperties = new DeduplicationProperties();
+        deduplicationProperties.setEnabled(true);
+        deduplicationProperties.setMinSize(DataSize.ofBytes(1));
+        properties.setParallelism(4);
+
+        val registry = new SimpleMeterRegistry();
+        val linkingStrategy = new NioPersistenceStrategy(properties,
+                NioPersistenceOptions.builder().registry(registry).deduplication(deduplicationProperties).build());
+        val shared = ByteBufferSupplier.of(value);
+        val values = new HashMap<String, Supplier<InputStream>>();
+
+        for (var i = 0; i < 20; i++) {
+
+            values.put(key + i, shared);
+        }
+
+        values.put(otherKey, ByteBufferSupplier.of(value));
+
+        linkingStrategy.persist(values.entrySet().stream());
+
+        for (var i = 1; i < 20; i++) {
+
+            Assertions.assertThat(Files.isSameFile(values(1).resolve(key + i), values(1).resolve(key + 0)))
+                    .isTrue();
+        }
+
+        Assertions.assertThat(Files.isSameFile(values(1).resolve(otherKey), values(1).resolve(key + 0)))
+                .isFalse();
+        Assertions.assertThat(registry.get("storage.persistence.bytes").tag("operation", "write").counter().count())
+                .isEqualTo(2 * value.length);
+
+        // rewriting a linked file leaves the other links intact
+        linkingStrategy.persistDelta(Stream.of(new AbstractMap.SimpleImmutableEntry<>(key + 0, ByteBufferSupplier.of(otherValue))));
+
+        Assertions.assertThat(values(2).resolve(key + 0)).hasBinaryContent(otherValue);
+        Assertions.assertThat(values(1).resolve(key + 0)).hasBinaryContent(value);
+        Assertions.assertThat(values(1).resolve(key + 1)).hasBinaryContent(value);
+    }
+
+    @Test
+    public void onlyRetainedSnapshotsAreKept() throws IOException {
+
+        Files.write(properties.getBasePath().resolve(otherKey), otherValue);
+
+        for (var i = 0; i < 3; i++) {
+
+            val bytes = (key + i).getBytes(StandardCharsets.UTF_8);
+            persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(key, () -> new ByteArrayInputStream(bytes))
+                    .entrySet().stream());
+        }
+
+        try (val files = Files.list(properties.getBasePath())) {
+
+            // values persisted before snapshots are removed along with snapshots no longer retained
+            Assertions.assertThat(files).containsExactlyInAnyOrder(snapshot(2), snapshot(3));
+        }
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent((key + 2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void corruptSnapshotFallsBackToOlderOne() throws IOException {
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(
+                key, () -> new ByteArrayInputStream(value),
+                otherKey, () -> new ByteArrayInputStream(otherValue)).entrySet().stream());
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(
+                key, () -> new ByteArrayInputStream(otherValue)).entrySet().stream());
+
+        // same length, different content
+        val corrupted = otherValue.clone();
+        corrupted[0] ^= 1;
+        Files.write(values(2).resolve(key), corrupted);
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(value);
+        Assertions.assertThat(values(2).resolve(key)).hasBinaryContent(corrupted);
+    }
+
+    @Test
+    public void mappedLoadChecksLengthOnly() throws IOException {
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(
+                key, () -> new ByteArrayInputStream(value),
+                otherKey, () -> new ByteArrayInputStream(otherValue)).entrySet().stream());
+
+        properties.setLoadMode(LoadMode.MAP);
+        properties.setMinMappedSize(DataSize.ofBytes(0));
+
+        // same length, different content is not read until accessed
+        val corrupted = value.clone();
+        corrupted[0] ^= 1;
+        Files.write(values(1).resolve(key), corrupted);
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        persistenceStrategy.load(resultMap::put);
+
+        Assertions.assertThat(resultMap.get(key).get()).hasBinaryContent(corrupted);
+
+        Files.write(values(1).resolve(otherKey), Arrays.copyOf(otherValue, 3));
+
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.load(resultMap::put))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("key", otherKey);
+    }
+
+    @Test
+    public void mappedLoadCopiesSmallFilesAndFilesBeyondLimit() throws IOException {
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(key, () -> new ByteArrayInputStream(value))
+                .entrySet().stream());
+
+        properties.setLoadMode(LoadMode.MAP);
+
+        val corrupted = value.clone();
+        corrupted[0] ^= 1;
+        Files.write(values(1).resolve(key), corrupted);
+
+        // copied files are verified against their checksum
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.load((k, v) -> {
+                }))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("key", key);
+
+        properties.setMinMappedSize(DataSize.ofBytes(0));
+        properties.setMaxMappedFiles(0);
+
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.load((k, v) -> {
+                }))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("key", key);
+    }
+
+    @Test
+    public void snapshotWithoutValidManifestFailsLoad() throws IOException {
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(key, () -> new ByteArrayInputStream(value))
+                .entrySet().stream());
+
+        val manifest = snapshot(1).resolve("manifest");
+        Files.write(manifest, Arrays.copyOf(Files.readAllBytes(manifest), 12));
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.load(resultMap::put))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
+        Assertions.assertThat(resultMap).isEmpty();
+    }
+
+    @Test
+    public void truncatedFileFailsLoadWithoutPartialResult() throws IOException {
+
+        persistenceStrategy.persist(Map.<String, Supplier<InputStream>>of(
+                key, () -> new ByteArrayInputStream(value),
+                otherKey, () -> new ByteArrayInputStream(otherValue)).entrySet().stream());
+
+        Files.write(values(1).resolve(otherKey), Arrays.copyOf(otherValue, 3));
+
+        val resultMap = new HashMap<String, Supplier<InputStream>>();
+
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.load(resultMap::put))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ)
+                .hasFieldOrPropertyWithValue("key", otherKey);
+        Assertions.assertThat(resultMap).isEmpty();
+    }
+
+    @Test
+    public void temporarySnapshotOfFailedPersistIsRemoved() {
+
+        val stream = Map.<String, Supplier<InputStream>>of(key, FailingInputStream::new).entrySet().stream();
+
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.persist(stream))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_WRITE);
+
+        Assertions.assertThat(properties.getBasePath()).isEmptyDirectory();
+        Assertions.assertThat(persistenceStrategy.canPersistDelta()).isFalse();
+    }
+
+    @Test
+    public void writesAreThrottled() {
+
+        properties.setMaxWriteRate(DataSize.ofKilobytes(8));
+
+        val throttledStrategy = new NioPersistenceStrategy(properties);
+        val large = new byte[4096];
+
+        val start = System.nanoTime();
+
+        throttledStrategy.persist(IntStream.range(0, 3)
+                .mapToObj(i -> Map.<String, Supplier<InputStream>>entry(key + i, () -> new ByteArrayInputStream(large))));
+
+        // the first value is written at once, each following one waits for half a second
+        Assertions.assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    private Path snapshot(int sequence) {
+
+        return properties.getBasePath().resolve("snapshot-" + sequence);
+    }
+
+    private Path values(int sequence) {
+
+        return snapshot(sequence).resolve("values");
+    }
+
+    private static class FailingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+
+            throw new IOException("Broken value.");
+        }
+    }
 }
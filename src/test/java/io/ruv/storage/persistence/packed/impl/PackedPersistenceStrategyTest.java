@@ -0,0 +1,334 @@
+package io.ruv.storage.persistence.packed.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.properties.LoadMode;
+import io.ruv.storage.util.properties.PackedPersistenceProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class PackedPersistenceStrategyTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private final PackedPersistenceProperties properties = new PackedPersistenceProperties();
+
+    {
+        properties.setBufferSize(64);
+        properties.setBlockSize(DataSize.ofBytes(128));
+    }
+
+    private final PackedPersistenceStrategy persistenceStrategy = new PackedPersistenceStrategy(properties);
+
+    private final String key = "tenant/1/key";
+    private final String otherKey = "../otherKey";
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+    private final byte[] otherValue = "otherValue".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    public void setTempDir() {
+
+        properties.setBasePath(tempDir);
+    }
+
+    @Test
+    public void persistWritesSingleFile() throws IOException {
+
+        persistenceStrategy.persist(entries(Map.of(key, value, otherKey, otherValue)));
+
+        try (val files = Files.list(tempDir)) {
+
+            Assertions.assertThat(files).containsExactly(tempDir.resolve(PackedPersistenceStrategy.SNAPSHOT));
+        }
+    }
+
+    @Test
+    public void persistedRecordsAreLoaded() {
+
+        persistenceStrategy.persist(entries(Map.of(key, value, otherKey, otherValue)));
+
+        val resultMap = loadAll();
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(resultMap.get(key)).isEqualTo(value);
+        Assertions.assertThat(resultMap.get(otherKey)).isEqualTo(otherValue);
+    }
+
+    @Test
+    public void recordsSpanningManyBlocksAndBuffersAreLoaded() {
+
+        val values = new LinkedHashMap<String, byte[]>();
+
+        for (var i = 0; i < 100; i++) {
+
+            val bytes = new byte[i * 7];
+            Arrays.fill(bytes, (byte) i);
+            values.put(key + i, bytes);
+        }
+
+        persistenceStrategy.persist(entries(values));
+
+        val resultMap = loadAll();
+
+        Assertions.assertThat(resultMap).hasSize(100);
+        values.forEach((k, v) -> Assertions.assertThat(resultMap.get(k)).isEqualTo(v));
+    }
+
+    @Test
+    public void mappedLoadUsesIndex() throws IOException {
+
+        properties.setLoadMode(LoadMode.MAP);
+
+        val values = new LinkedHashMap<String, byte[]>();
+
+        for (var i = 0; i < 20; i++) {
+
+            val bytes = new byte[i * 13];
+            Arrays.fill(bytes, (byte) i);
+            values.put(key + i, bytes);
+        }
+
+        persistenceStrategy.persist(entries(values));
+
+        val suppliers = new HashMap<String, Supplier<InputStream>>();
+        persistenceStrategy.load(suppliers::put);
+
+        // mapped regions stay readable after snapshot is replaced
+        persistenceStrategy.persist(entries(Map.of(otherKey, otherValue)));
+
+        Assertions.assertThat(suppliers).hasSize(20);
+
+        for (val entry : values.entrySet()) {
+
+            try (val stream = suppliers.get(entry.getKey()).get()) {
+
+                Assertions.assertThat(stream.readAllBytes()).isEqualTo(entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void mappedLoadOfCorruptedFooterThrowsException() throws IOException {
+
+        properties.setLoadMode(LoadMode.MAP);
+        persistenceStrategy.persist(entries(Map.of(key, value)));
+
+        val file = tempDir.resolve(PackedPersistenceStrategy.SNAPSHOT);
+        val bytes = Files.readAllBytes(file);
+        bytes[bytes.length - PackedFormat.TRAILER_SIZE - 1] ^= 1;
+        Files.write(file, bytes);
+
+        Assertions.assertThatThrownBy(this::loadAll)
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadMode.class)
+    public void deadlinesAreLoaded(LoadMode loadMode) {
+
+        properties.setLoadMode(loadMode);
+
+        Supplier<InputStream> expiring = ExpiringValue.of(() -> new ByteArrayInputStream(value), 1000L);
+        Supplier<InputStream> kept = () -> new ByteArrayInputStream(otherValue);
+        persistenceStrategy.persist(Stream.of(Map.entry(key, expiring), Map.entry(otherKey, kept)));
+
+        val suppliers = new HashMap<String, Supplier<InputStream>>();
+        persistenceStrategy.load(suppliers::put);
+
+        Assertions.assertThat(suppliers).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(ExpiringValue.deadlineOf(suppliers.get(key))).isEqualTo(1000L);
+        Assertions.assertThat(suppliers.get(key).get()).hasBinaryContent(value);
+        Assertions.assertThat(suppliers.get(otherKey)).isNotInstanceOf(ExpiringValue.class);
+    }
+
+    @Test
+    public void newSnapshotReplacesPrevious() {
+
+        persistenceStrategy.persist(entries(Map.of(key, value)));
+        persistenceStrategy.persist(entries(Map.of(otherKey, otherValue)));
+
+        Assertions.assertThat(loadAll()).containsOnlyKeys(otherKey);
+    }
+
+    @Test
+    public void deltasAreAppliedOnLoad() {
+
+        properties.setMaxDeltas(4);
+
+        Assertions.assertThat(persistenceStrategy.canPersistDelta()).isFalse();
+
+        persistenceStrategy.persist(entries(Map.of(key, value, otherKey, otherValue)));
+
+        Assertions.assertThat(persistenceStrategy.canPersistDelta()).isTrue();
+
+        persistenceStrategy.persistDelta(changes(key, otherValue, otherKey, null));
+        persistenceStrategy.persistDelta(changes("newKey", value, key, value));
+
+        val resultMap = loadAll();
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, "newKey");
+        Assertions.assertThat(resultMap.get(key)).isEqualTo(value);
+        Assertions.assertThat(resultMap.get("newKey")).isEqualTo(value);
+
+        properties.setLoadMode(LoadMode.MAP);
+
+        Assertions.assertThat(loadAll()).containsOnlyKeys(key, "newKey");
+    }
+
+    @Test
+    public void deltasAreCompactedIntoSnapshot() throws IOException {
+
+        properties.setMaxDeltas(2);
+
+        persistenceStrategy.persist(entries(Map.of(key, value)));
+
+        for (var i = 0; i < 3; i++) {
+
+            persistenceStrategy.persistDelta(changes(key + i, value, key, null));
+        }
+
+        try (val files = Files.list(tempDir)) {
+
+            Assertions.assertThat(files).containsExactly(tempDir.resolve(PackedPersistenceStrategy.SNAPSHOT));
+        }
+
+        Assertions.assertThat(loadAll()).containsOnlyKeys(key + 0, key + 1, key + 2);
+    }
+
+    @Test
+    public void deltasOfPreviousSnapshotAreSkipped() throws IOException {
+
+        persistenceStrategy.persist(entries(Map.of(key, value)));
+        persistenceStrategy.persistDelta(changes(otherKey, otherValue, key, null));
+
+        val delta = tempDir.resolve(String.format(PackedPersistenceStrategy.DELTA_FORMAT, 1));
+        val staleDelta = Files.readAllBytes(delta);
+
+        // a crash right after the new snapshot is renamed in place leaves delta files of the previous one
+        persistenceStrategy.persist(entries(Map.of(key, value)));
+        Files.write(delta, staleDelta);
+
+        Assertions.assertThat(new PackedPersistenceStrategy(properties).canPersistDelta()).isFalse();
+
+        val resultMap = new HashMap<String, byte[]>();
+        val recovered = new PackedPersistenceStrategy(properties);
+
+        recovered.load((k, v) -> resultMap.put(k, null));
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key);
+        Assertions.assertThat(recovered.canPersistDelta()).isTrue();
+    }
+
+    @Test
+    public void emptyStorageLoadsNothing() {
+
+        Assertions.assertThat(loadAll()).isEmpty();
+    }
+
+    @Test
+    public void corruptedBlockThrowsException() throws IOException {
+
+        persistenceStrategy.persist(entries(Map.of(key, value, otherKey, otherValue)));
+
+        val file = tempDir.resolve(PackedPersistenceStrategy.SNAPSHOT);
+        val bytes = Files.readAllBytes(file);
+        bytes[PackedFormat.MAGIC.length + 6] ^= 1;
+        Files.write(file, bytes);
+
+        Assertions.assertThatThrownBy(this::loadAll)
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
+    }
+
+    @Test
+    public void truncatedFileThrowsException() throws IOException {
+
+        persistenceStrategy.persist(entries(Map.of(key, value)));
+
+        val file = tempDir.resolve(PackedPersistenceStrategy.SNAPSHOT);
+        val bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        Assertions.assertThatThrownBy(this::loadAll)
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
+    }
+
+    @Test
+    public void persistNonExistingStorageThrowsException() throws IOException {
+
+        Files.delete(tempDir);
+
+        Assertions.assertThatThrownBy(() -> persistenceStrategy.persist(entries(Map.of(key, value))))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_WRITE_STORAGE);
+    }
+
+    @Test
+    public void loadNonExistingStorageThrowsException() throws IOException {
+
+        Files.delete(tempDir);
+
+        Assertions.assertThatThrownBy(this::loadAll)
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
+    }
+
+    private static Stream<Map.Entry<String, Supplier<InputStream>>> entries(Map<String, byte[]> values) {
+
+        return values.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), () -> new ByteArrayInputStream(entry.getValue())));
+    }
+
+    private static Stream<Map.Entry<String, Supplier<InputStream>>> changes(String key, byte[] value, String otherKey, byte[] otherValue) {
+
+        return Stream.of(change(key, value), change(otherKey, otherValue));
+    }
+
+    private static Map.Entry<String, Supplier<InputStream>> change(String key, byte[] value) {
+
+        return new AbstractMap.SimpleImmutableEntry<>(key, value == null ? null : () -> new ByteArrayInputStream(value));
+    }
+
+    private Map<String, byte[]> loadAll() {
+
+        val resultMap = new HashMap<String, byte[]>();
+
+        persistenceStrategy.load((k, v) -> {
+
+            try (val stream = v.get()) {
+
+                resultMap.put(k, stream.readAllBytes());
+            } catch (IOException e) {
+
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return resultMap;
+    }
+}
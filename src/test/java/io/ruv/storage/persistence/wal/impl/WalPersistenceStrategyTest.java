@@ -0,0 +1,269 @@
+package io.ruv.storage.persistence.wal.impl;
+
+import io.ruv.storage.persistence.ExpiringValue;
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.io.ByteBufferInputStream;
+import io.ruv.storage.util.properties.WalPersistenceProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public class WalPersistenceStrategyTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private final WalPersistenceProperties properties = new WalPersistenceProperties();
+
+    private final String key = "key";
+    private final String otherKey = "otherKey";
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+    private final byte[] otherValue = "otherValue".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    public void setTempDir() {
+
+        properties.setBasePath(tempDir);
+    }
+
+    @Test
+    public void valuesSpanningSeveralBuffersAreReplayed() {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+        val direct = ByteBuffer.allocateDirect(otherValue.length).put(otherValue).flip();
+
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key, ByteBuffer.wrap(value), direct));
+
+        val resultMap = loadAll(new WalPersistenceStrategy(properties));
+
+        Assertions.assertThat(resultMap.get(key)).isEqualTo("valueotherValue".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThat(direct.remaining()).isEqualTo(otherValue.length);
+    }
+
+    @Test
+    public void loggedMutationsAreReplayed() {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key, value));
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(otherKey, otherValue));
+        persistenceStrategy.awaitDurable(persistenceStrategy.logDelete(key));
+
+        val resultMap = loadAll(new WalPersistenceStrategy(properties));
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(otherKey);
+        Assertions.assertThat(resultMap.get(otherKey)).isEqualTo(otherValue);
+    }
+
+    @Test
+    public void sequenceNumbersGrow() {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+
+        val first = persistenceStrategy.logStore(key, value);
+        val second = persistenceStrategy.logDelete(key);
+
+        Assertions.assertThat(first).isPositive();
+        Assertions.assertThat(second).isGreaterThan(first);
+    }
+
+    @Test
+    public void segmentsAreRolled() throws IOException {
+
+        properties.setSegmentSize(DataSize.ofBytes(16));
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+
+        for (var i = 0; i < 10; i++) {
+
+            persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key + i, value));
+        }
+
+        try (val files = Files.list(tempDir)) {
+
+            Assertions.assertThat(files.count()).isEqualTo(10);
+        }
+
+        Assertions.assertThat(loadAll(new WalPersistenceStrategy(properties))).hasSize(10);
+    }
+
+    @Test
+    public void checkpointReplacesPrecedingSegments() throws IOException {
+
+        properties.setSegmentSize(DataSize.ofBytes(16));
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+
+        for (var i = 0; i < 10; i++) {
+
+            persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key + i, value));
+        }
+
+        Supplier<InputStream> supplier = () -> new ByteArrayInputStream(otherValue);
+        persistenceStrategy.persist(Map.of(otherKey, supplier).entrySet().stream());
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key, value));
+
+        try (val files = Files.list(tempDir)) {
+
+            Assertions.assertThat(files.map(path -> path.getFileName().toString()).collect(Collectors.toList()))
+                    .hasSize(2)
+                    .anyMatch(name -> name.startsWith("checkpoint-"))
+                    .anyMatch(name -> name.startsWith("segment-"));
+        }
+
+        val resultMap = loadAll(new WalPersistenceStrategy(properties));
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(resultMap.get(otherKey)).isEqualTo(otherValue);
+    }
+
+    @Test
+    public void recordsAfterSnapshotBeginAreReplayedOverCheckpoint() {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key, value));
+
+        persistenceStrategy.beginSnapshot();
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(otherKey, otherValue));
+
+        // the snapshot was taken before otherKey was stored
+        Supplier<InputStream> supplier = () -> new ByteArrayInputStream(value);
+        persistenceStrategy.persist(Map.of(key, supplier).entrySet().stream());
+
+        val resultMap = loadAll(new WalPersistenceStrategy(properties));
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+    }
+
+    @Test
+    public void deadlinesAreReplayed() {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key, 1000L, ByteBuffer.wrap(value)));
+
+        persistenceStrategy.beginSnapshot();
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(otherKey, 2000L, ByteBuffer.wrap(otherValue)));
+
+        // the checkpoint carries the deadline of key, the following segment the one of otherKey
+        Supplier<InputStream> supplier = ExpiringValue.of(() -> new ByteArrayInputStream(value), 1000L);
+        persistenceStrategy.persist(Map.of(key, supplier).entrySet().stream());
+
+        val deadlines = new HashMap<String, Long>();
+        val resultMap = loadAll(new WalPersistenceStrategy(properties), deadlines);
+
+        Assertions.assertThat(resultMap.get(key)).isEqualTo(value);
+        Assertions.assertThat(resultMap.get(otherKey)).isEqualTo(otherValue);
+        Assertions.assertThat(deadlines).containsOnly(Map.entry(key, 1000L), Map.entry(otherKey, 2000L));
+    }
+
+    @Test
+    public void checkpointWritesBufferedValuesWithDeadlines() {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+        val direct = ByteBuffer.allocateDirect(otherValue.length).put(otherValue).flip();
+
+        Supplier<InputStream> supplier = ExpiringValue.of(
+                () -> new ByteBufferInputStream(ByteBuffer.wrap(value), direct.duplicate()), 1000L);
+        persistenceStrategy.persist(Map.of(key, supplier).entrySet().stream());
+
+        val deadlines = new HashMap<String, Long>();
+        val resultMap = loadAll(new WalPersistenceStrategy(properties), deadlines);
+
+        Assertions.assertThat(resultMap.get(key)).isEqualTo("valueotherValue".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThat(deadlines).containsOnly(Map.entry(key, 1000L));
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+        persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key, value));
+
+        try (val files = Files.list(tempDir)) {
+
+            val segment = files.findFirst().orElseThrow();
+            Files.write(segment, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, StandardOpenOption.APPEND);
+        }
+
+        val recovered = new WalPersistenceStrategy(properties);
+        recovered.awaitDurable(recovered.logStore(otherKey, otherValue));
+
+        val resultMap = loadAll(new WalPersistenceStrategy(properties));
+
+        Assertions.assertThat(resultMap).containsOnlyKeys(key, otherKey);
+    }
+
+    @Test
+    public void concurrentWritersShareFlushes() throws InterruptedException {
+
+        val persistenceStrategy = new WalPersistenceStrategy(properties);
+        val executor = Executors.newFixedThreadPool(8);
+
+        for (var i = 0; i < 200; i++) {
+
+            val index = i;
+            executor.execute(() -> persistenceStrategy.awaitDurable(persistenceStrategy.logStore(key + index, value)));
+        }
+
+        executor.shutdown();
+        Assertions.assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        Assertions.assertThat(loadAll(new WalPersistenceStrategy(properties))).hasSize(200);
+    }
+
+    @Test
+    public void loadNonExistingStorageThrowsException() throws IOException {
+
+        Files.delete(tempDir);
+
+        Assertions.assertThatThrownBy(() -> new WalPersistenceStrategy(properties).load((k, v) -> {
+                }))
+                .isInstanceOf(PersistenceException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.PERSISTENCE_READ_STORAGE);
+    }
+
+    private static Map<String, byte[]> loadAll(WalPersistenceStrategy persistenceStrategy) {
+
+        return loadAll(persistenceStrategy, new HashMap<>());
+    }
+
+    private static Map<String, byte[]> loadAll(WalPersistenceStrategy persistenceStrategy, Map<String, Long> deadlines) {
+
+        val resultMap = new HashMap<String, byte[]>();
+
+        persistenceStrategy.load((k, v) -> {
+
+            if (v instanceof ExpiringValue) {
+
+                deadlines.put(k, ExpiringValue.deadlineOf(v));
+            }
+
+            try (val stream = v.get()) {
+
+                resultMap.put(k, stream.readAllBytes());
+            } catch (IOException e) {
+
+                throw new RuntimeException(e);
+            }
+        });
+
+        return resultMap;
+    }
+}
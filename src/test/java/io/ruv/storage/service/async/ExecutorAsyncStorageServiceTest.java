@@ -0,0 +1,125 @@
+package io.ruv.storage.service.async;
+
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.service.MissingJobException;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.PersistenceJobStatus;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.impl.HashStorageService;
+import io.ruv.storage.util.properties.AsyncStorageProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutorAsyncStorageServiceTest {
+
+    private final PersistenceStrategy persistenceStrategy = Mockito.mock(PersistenceStrategy.class);
+    private final StorageService storageService = Mockito.spy(new HashStorageService(persistenceStrategy));
+    private final ExecutorAsyncStorageService asyncStorageService = new ExecutorAsyncStorageService(storageService,
+            Executors.newFixedThreadPool(2, new CustomizableThreadFactory("async-test-")),
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("job-test-")),
+            new AsyncStorageProperties());
+
+    private final String key = "key";
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+
+    @AfterEach
+    public void close() {
+
+        asyncStorageService.close();
+    }
+
+    @Test
+    public void operationsCompleteFutures() {
+
+        asyncStorageService.store(key, value).join();
+
+        try (val stored = asyncStorageService.retrieveValue(key).join()) {
+
+            Assertions.assertThat(stored.buffers()).containsExactly(ByteBuffer.wrap(value));
+        }
+
+        asyncStorageService.delete(key).join();
+
+        Assertions.assertThatThrownBy(() -> asyncStorageService.delete(key).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(MissingKeyException.class);
+    }
+
+    @Test
+    public void jobRunsInBackgroundAndIsPolledById() throws InterruptedException {
+
+        val started = new CountDownLatch(1);
+        val proceed = new CountDownLatch(1);
+
+        Mockito.doAnswer(invocation -> {
+
+            started.countDown();
+            Assertions.assertThat(proceed.await(5, TimeUnit.SECONDS)).isTrue();
+            return invocation.callRealMethod();
+        }).when(storageService).save();
+
+        val job = asyncStorageService.save();
+        Assertions.assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Assertions.assertThat(asyncStorageService.job(job.getId()).status().getState()).isEqualTo(PersistenceJobStatus.State.RUNNING);
+
+        proceed.countDown();
+        job.getCompletion().join();
+
+        val status = asyncStorageService.job(job.getId()).status();
+
+        Assertions.assertThat(status.getState()).isEqualTo(PersistenceJobStatus.State.SUCCEEDED);
+        Assertions.assertThat(status.getFinishedAt()).isNotNull();
+
+        // a job may be started once the previous one completed
+        asyncStorageService.load().getCompletion().join();
+    }
+
+    @Test
+    public void jobFailingWithErrorIsFinished() {
+
+        Mockito.doThrow(new AssertionError("broken codec")).when(storageService).save();
+
+        val job = asyncStorageService.save();
+
+        Assertions.assertThatThrownBy(() -> job.getCompletion().join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(AssertionError.class);
+
+        val status = asyncStorageService.job(job.getId()).status();
+
+        Assertions.assertThat(status.getState()).isEqualTo(PersistenceJobStatus.State.FAILED);
+        Assertions.assertThat(status.getMessage()).isEqualTo("broken codec");
+
+        // the failed job does not block following ones
+        asyncStorageService.load().getCompletion().join();
+    }
+
+    @Test
+    public void onlyRecentJobsAreRetained() {
+
+        val properties = new AsyncStorageProperties();
+        properties.setRetainedJobs(2);
+
+        val retaining = new ExecutorAsyncStorageService(storageService, Runnable::run, Runnable::run, properties);
+        val first = retaining.save();
+        val second = retaining.save();
+        val third = retaining.save();
+
+        Assertions.assertThatThrownBy(() -> retaining.job(first.getId()))
+                .isInstanceOf(MissingJobException.class);
+        Assertions.assertThat(retaining.job(second.getId())).isSameAs(second);
+        Assertions.assertThat(retaining.job(third.getId())).isSameAs(third);
+    }
+}
@@ -0,0 +1,109 @@
+package io.ruv.storage.service.async;
+
+import io.ruv.storage.service.AsyncStorageService;
+import io.ruv.storage.service.PersistenceJob;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.SnapshotScheduleProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+public class SnapshotSchedulerTest {
+
+    private final StorageService storageService = Mockito.mock(StorageService.class);
+    private final AsyncStorageService asyncStorageService = Mockito.mock(AsyncStorageService.class);
+    private final SnapshotScheduleProperties properties = new SnapshotScheduleProperties();
+
+    private SnapshotScheduler scheduler;
+
+    {
+        // checks are run by tests
+        properties.setCheckInterval(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    public void close() {
+
+        scheduler.close();
+    }
+
+    @Test
+    public void saveStartsOnceModificationThresholdIsReached() {
+
+        properties.setModifications(10);
+        scheduler = scheduler();
+
+        val job = new PersistenceJob(PersistenceJob.Operation.SAVE);
+        Mockito.when(asyncStorageService.save()).thenReturn(job);
+
+        Mockito.when(storageService.modifications()).thenReturn(9L);
+        Assertions.assertThat(scheduler.check()).isFalse();
+
+        Mockito.when(storageService.modifications()).thenReturn(10L);
+        Assertions.assertThat(scheduler.check()).isTrue();
+
+        // the running save is not followed by another one
+        Mockito.when(storageService.modifications()).thenReturn(25L);
+        Assertions.assertThat(scheduler.check()).isFalse();
+
+        job.finish(null);
+
+        Assertions.assertThat(scheduler.check()).isTrue();
+        Mockito.verify(asyncStorageService, Mockito.times(2)).save();
+    }
+
+    @Test
+    public void modifiedStorageIsSavedAfterInterval() throws InterruptedException {
+
+        properties.setInterval(Duration.ofMillis(50));
+        scheduler = scheduler();
+
+        Mockito.when(asyncStorageService.save()).thenAnswer(invocation -> {
+
+            val job = new PersistenceJob(PersistenceJob.Operation.SAVE);
+            job.finish(null);
+            return job;
+        });
+
+        Thread.sleep(100);
+
+        // nothing to save
+        Assertions.assertThat(scheduler.check()).isFalse();
+
+        Mockito.when(storageService.modifications()).thenReturn(1L);
+
+        Assertions.assertThat(scheduler.check()).isTrue();
+        Assertions.assertThat(scheduler.check()).isFalse();
+    }
+
+    @Test
+    public void failedOrRejectedSaveIsRetried() {
+
+        properties.setModifications(1);
+        scheduler = scheduler();
+
+        val failed = new PersistenceJob(PersistenceJob.Operation.SAVE);
+        failed.finish(new IllegalStateException());
+
+        Mockito.when(storageService.modifications()).thenReturn(1L);
+        Mockito.when(asyncStorageService.save())
+                .thenThrow(new ServiceUnavailableException("Persistence job in progress."))
+                .thenReturn(failed);
+
+        Assertions.assertThat(scheduler.check()).isFalse();
+        Assertions.assertThat(scheduler.check()).isTrue();
+        Assertions.assertThat(scheduler.check()).isTrue();
+    }
+
+    private SnapshotScheduler scheduler() {
+
+        return new SnapshotScheduler(storageService, asyncStorageService, properties, Executors.newSingleThreadScheduledExecutor());
+    }
+}
@@ -0,0 +1,76 @@
+package io.ruv.storage.service.expiry;
+
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    public void advanceFiresTimersOfEveryLevelOnceDue() {
+
+        val wheel = new TimerWheel(TICK, 0);
+
+        // level 0, level 1 and level 3 timers
+        val near = wheel.schedule("near", 25);
+        val middle = wheel.schedule("middle", 1_000);
+        val far = wheel.schedule("far", 10_000_000);
+
+        Assertions.assertThat(wheel.size()).isEqualTo(3);
+        Assertions.assertThat(wheel.advance(20)).isEmpty();
+        Assertions.assertThat(wheel.advance(30)).containsExactly(near);
+        Assertions.assertThat(wheel.advance(999)).isEmpty();
+        Assertions.assertThat(wheel.advance(1_000)).containsExactly(middle);
+        Assertions.assertThat(wheel.advance(9_999_999)).isEmpty();
+        Assertions.assertThat(wheel.advance(10_000_000)).containsExactly(far);
+        Assertions.assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void timerNeverFiresBeforeItsDeadline() {
+
+        val wheel = new TimerWheel(TICK, 3);
+        val timer = wheel.schedule("key", 11);
+
+        Assertions.assertThat(wheel.advance(10)).isEmpty();
+        Assertions.assertThat(timer.isDue(10)).isFalse();
+        Assertions.assertThat(wheel.advance(20)).containsExactly(timer);
+        Assertions.assertThat(timer.isDue(20)).isTrue();
+    }
+
+    @Test
+    public void pastDeadlineFiresWithNextAdvance() {
+
+        val wheel = new TimerWheel(TICK, 1_000);
+        val timer = wheel.schedule("key", 0);
+
+        Assertions.assertThat(wheel.advance(1_000)).containsExactly(timer);
+    }
+
+    @Test
+    public void cancelledTimerDoesNotFire() {
+
+        val wheel = new TimerWheel(TICK, 0);
+        val cancelled = wheel.schedule("key", 5_000);
+        val kept = wheel.schedule("otherKey", 5_000);
+
+        Assertions.assertThat(wheel.cancel(cancelled)).isTrue();
+        Assertions.assertThat(wheel.cancel(cancelled)).isFalse();
+        Assertions.assertThat(wheel.advance(5_000)).containsExactly(kept);
+        Assertions.assertThat(wheel.cancel(kept)).isFalse();
+        Assertions.assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void timerBeyondSpanOfWheelWaitsUntilDue() {
+
+        val wheel = new TimerWheel(1, 0);
+        val span = 1L << (TimerWheel.BITS * TimerWheel.LEVELS);
+        val timer = wheel.schedule("key", 2 * span + 7);
+
+        Assertions.assertThat(wheel.advance(2 * span + 6)).isEmpty();
+        Assertions.assertThat(wheel.advance(2 * span + 7)).containsExactly(timer);
+    }
+}
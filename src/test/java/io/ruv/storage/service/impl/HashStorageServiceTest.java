@@ -1,25 +1,72 @@
 package io.ruv.storage.service.impl;
 
+import io.ruv.storage.persistence.PersistenceException;
 import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.persistence.nio.impl.NioPersistenceStrategy;
+import io.ruv.storage.persistence.wal.impl.WalPersistenceStrategy;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.ByteRange;
 import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.ExpirationNotSupportedException;
+import io.ruv.storage.service.ExpirationStatus;
+import io.ruv.storage.service.IncompleteValueException;
+import io.ruv.storage.service.KeyRange;
 import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.RangeNotSatisfiableException;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.VersionMismatchException;
+import io.ruv.storage.service.dedup.BlobTable;
+import io.ruv.storage.service.tier.SpilledValue;
+import io.ruv.storage.util.compression.CompressedValue;
+import io.ruv.storage.util.compression.Compressor;
 import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.InitializationException;
 import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.CompressionProperties;
+import io.ruv.storage.util.properties.DeduplicationProperties;
+import io.ruv.storage.util.properties.ExpirationProperties;
+import io.ruv.storage.util.properties.LoadMode;
+import io.ruv.storage.util.properties.NioPersistenceProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import io.ruv.storage.util.properties.TieredStorageProperties;
+import io.ruv.storage.util.properties.WalPersistenceProperties;
 import lombok.val;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @SuppressWarnings({"unchecked", "rawtypes", "ConstantConditions"})
 public class HashStorageServiceTest {
@@ -73,6 +120,52 @@ public class HashStorageServiceTest {
                 .hasFieldOrPropertyWithValue("errorCode", ErrorCode.DUPLICATE_KEY);
     }
 
+    @Test
+    public void storeStreamReadsValueOfKnownAndUnknownLength() throws IOException {
+
+        val large = new byte[200 * 1024];
+        Arrays.fill(large, (byte) 3);
+
+        hashStorageService.store(key, new ByteArrayInputStream(value), value.length);
+        hashStorageService.store(otherKey, new ByteArrayInputStream(large), -1);
+
+        Assertions.assertThat(hashStorageService.retrieve(key).readAllBytes()).isEqualTo(value);
+        Assertions.assertThat(hashStorageService.retrieve(otherKey).readAllBytes()).isEqualTo(large);
+    }
+
+    @Test
+    public void storeStreamOverMaxValueSizeThrowsException() {
+
+        val properties = new StorageProperties();
+        properties.setMaxValueSize(DataSize.ofBytes(4));
+
+        val limitedService = new HashStorageService(persistenceStrategy, properties);
+        val stream = new ByteArrayInputStream(value);
+
+        Assertions.assertThatThrownBy(() -> limitedService.store(key, stream, value.length))
+                .isInstanceOf(ValueTooLargeException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.VALUE_TOO_LARGE);
+
+        // declared length is rejected before anything is read
+        Assertions.assertThat(stream.available()).isEqualTo(value.length);
+
+        Assertions.assertThatThrownBy(() -> limitedService.store(key, stream, -1))
+                .isInstanceOf(ValueTooLargeException.class);
+
+        Assertions.assertThatThrownBy(() -> limitedService.store(key, value))
+                .isInstanceOf(ValueTooLargeException.class);
+    }
+
+    @Test
+    public void storeStreamShorterThanDeclaredLengthThrowsException() {
+
+        Assertions.assertThatThrownBy(() -> hashStorageService.store(key, new ByteArrayInputStream(value), value.length + 1))
+                .isInstanceOf(IncompleteValueException.class)
+                .hasFieldOrPropertyWithValue("length", (long) value.length + 1);
+
+        Assertions.assertThat(internalStorage).doesNotContainKey(key);
+    }
+
     @Test
     public void retrieveRetrievesValue() throws IOException {
 
@@ -90,6 +183,22 @@ public class HashStorageServiceTest {
         }
     }
 
+    @Test
+    public void retrieveValueExposesStoredBytesWithoutCopy() {
+
+        hashStorageService.store(key, value);
+        internalStorage.put(otherKey, () -> new ByteArrayInputStream(otherValue));
+
+        val buffers = hashStorageService.retrieveValue(key).buffers();
+
+        Assertions.assertThat(buffers).hasSize(1);
+        Assertions.assertThat(buffers[0].array()).isSameAs(value);
+
+        val otherBuffers = hashStorageService.retrieveValue(otherKey).buffers();
+
+        Assertions.assertThat(otherBuffers[0].array()).isEqualTo(otherValue);
+    }
+
     @Test
     public void retrieveMissingThrowsException() {
 
@@ -135,12 +244,14 @@ public class HashStorageServiceTest {
     }
 
     @Test
-    public void accessWhileSaveThrowsException() {
+    public void accessWhileSaveThrowsException() throws InterruptedException {
 
         val latch = new CountDownLatch(1);
+        val started = new CountDownLatch(1);
 
         Mockito.doAnswer(invocationOnMock -> {
 
+            started.countDown();
             //noinspection ResultOfMethodCallIgnored
             latch.await(3, TimeUnit.SECONDS);
             return null;
@@ -149,6 +260,8 @@ public class HashStorageServiceTest {
         val otherThread = new Thread(hashStorageService::save);
 
         otherThread.start();
+        //noinspection ResultOfMethodCallIgnored
+        started.await(3, TimeUnit.SECONDS);
 
         Assertions.assertThatThrownBy(() -> hashStorageService.retrieve(key))
                 .isInstanceOf(ServiceUnavailableException.class)
@@ -166,12 +279,14 @@ public class HashStorageServiceTest {
     }
 
     @Test
-    public void accessWhileLoadThrowsException() {
+    public void accessWhileLoadThrowsException() throws InterruptedException {
 
         val latch = new CountDownLatch(1);
+        val started = new CountDownLatch(1);
 
         Mockito.doAnswer(invocationOnMock -> {
 
+            started.countDown();
             //noinspection ResultOfMethodCallIgnored
             latch.await(3, TimeUnit.SECONDS);
             return null;
@@ -180,6 +295,8 @@ public class HashStorageServiceTest {
         val otherThread = new Thread(hashStorageService::load);
 
         otherThread.start();
+        //noinspection ResultOfMethodCallIgnored
+        started.await(3, TimeUnit.SECONDS);
 
         Assertions.assertThatThrownBy(() -> hashStorageService.retrieve(key))
                 .isInstanceOf(ServiceUnavailableException.class)
@@ -187,4 +304,1009 @@ public class HashStorageServiceTest {
 
         latch.countDown();
     }
+
+    @Test
+    public void concurrentSaveKeepsServingAndPersistsPointInTimeView() {
+
+        val concurrentService = new HashStorageService(persistenceStrategy, concurrentProperties());
+        concurrentService.store(key, value);
+        concurrentService.store(otherKey, otherValue);
+
+        val persisted = new HashMap<String, byte[]>();
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            // modifications made while save is in progress must not leak into the snapshot
+            concurrentService.delete(key);
+            concurrentService.store(key, otherValue);
+            concurrentService.delete(otherKey);
+            concurrentService.store("newKey", value);
+
+            Stream<Map.Entry<String, Supplier<InputStream>>> stream = invocationOnMock.getArgument(0);
+            stream.forEach(entry -> {
+
+                try (val in = entry.getValue().get()) {
+
+                    persisted.put(entry.getKey(), in.readAllBytes());
+                } catch (IOException e) {
+
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        concurrentService.save();
+
+        Assertions.assertThat(persisted).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(persisted.get(key)).isEqualTo(value);
+        Assertions.assertThat(persisted.get(otherKey)).isEqualTo(otherValue);
+    }
+
+    @Test
+    public void saveReportsSnapshotStatus() {
+
+        Assertions.assertThat(hashStorageService.snapshotStatus().getState()).isEqualTo(SnapshotStatus.State.NONE);
+
+        hashStorageService.store(key, value);
+        hashStorageService.store(otherKey, otherValue);
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            Stream<?> stream = invocationOnMock.getArgument(0);
+            stream.forEach(entry -> {
+            });
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        hashStorageService.save();
+
+        val status = hashStorageService.snapshotStatus();
+
+        Assertions.assertThat(status.getState()).isEqualTo(SnapshotStatus.State.SUCCEEDED);
+        Assertions.assertThat(status.getTotalKeys()).isEqualTo(2);
+        Assertions.assertThat(status.getPersistedKeys()).isEqualTo(2);
+        Assertions.assertThat(status.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    public void failedSaveReportsFailedSnapshotAndRestoresAccess() {
+
+        Mockito.doThrow(PersistenceException.cleaningStorage(new Exception()))
+                .when(persistenceStrategy).persist(Mockito.any());
+
+        Assertions.assertThatThrownBy(hashStorageService::save)
+                .isInstanceOf(PersistenceException.class);
+
+        Assertions.assertThat(hashStorageService.snapshotStatus().getState()).isEqualTo(SnapshotStatus.State.FAILED);
+
+        hashStorageService.store(key, value);
+    }
+
+    @Test
+    public void incrementalSavePersistsOnlyModifiedKeys() {
+
+        val properties = new StorageProperties();
+        properties.setIncrementalSave(true);
+
+        val incrementalService = new HashStorageService(persistenceStrategy, properties);
+        val persisted = new HashMap<String, byte[]>();
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            persisted.putAll(drain(invocationOnMock.getArgument(0)));
+            return null;
+        }).when(persistenceStrategy).persistDelta(Mockito.any());
+
+        incrementalService.store(key, value);
+        incrementalService.store(otherKey, otherValue);
+        incrementalService.save();
+
+        Mockito.verify(persistenceStrategy, Mockito.times(1)).persist(Mockito.any());
+
+        Mockito.when(persistenceStrategy.canPersistDelta()).thenReturn(true);
+
+        incrementalService.delete(key);
+        incrementalService.store("newKey", value);
+        incrementalService.save();
+
+        Mockito.verify(persistenceStrategy, Mockito.times(1)).persist(Mockito.any());
+        Assertions.assertThat(persisted).containsOnlyKeys(key, "newKey");
+        Assertions.assertThat(persisted.get(key)).isNull();
+        Assertions.assertThat(persisted.get("newKey")).isEqualTo(value);
+        Assertions.assertThat(incrementalService.snapshotStatus().getTotalKeys()).isEqualTo(2);
+
+        persisted.clear();
+        incrementalService.save();
+
+        Assertions.assertThat(persisted).isEmpty();
+    }
+
+    @Test
+    public void incrementalConcurrentSaveKeepsKeysModifiedDuringSaveDirty() {
+
+        val properties = concurrentProperties();
+        properties.setIncrementalSave(true);
+
+        val incrementalService = new HashStorageService(persistenceStrategy, properties);
+        val persisted = new HashMap<String, byte[]>();
+
+        Mockito.when(persistenceStrategy.canPersistDelta()).thenReturn(true);
+        Mockito.doAnswer(invocationOnMock -> {
+
+            if (persisted.isEmpty()) {
+
+                incrementalService.delete(key);
+            }
+
+            persisted.clear();
+            persisted.putAll(drain(invocationOnMock.getArgument(0)));
+            return null;
+        }).when(persistenceStrategy).persistDelta(Mockito.any());
+
+        incrementalService.store(key, value);
+        incrementalService.save();
+
+        Assertions.assertThat(persisted).containsOnlyKeys(key);
+        Assertions.assertThat(persisted.get(key)).isEqualTo(value);
+
+        incrementalService.save();
+
+        Assertions.assertThat(persisted).containsOnlyKeys(key);
+        Assertions.assertThat(persisted.get(key)).isNull();
+    }
+
+    @Test
+    public void failedIncrementalSaveKeepsKeysDirty() {
+
+        val properties = new StorageProperties();
+        properties.setIncrementalSave(true);
+
+        val incrementalService = new HashStorageService(persistenceStrategy, properties);
+        val persisted = new HashMap<String, byte[]>();
+
+        Mockito.when(persistenceStrategy.canPersistDelta()).thenReturn(true);
+        Mockito.doThrow(PersistenceException.writingStorage(new Exception()))
+                .doAnswer(invocationOnMock -> {
+
+                    persisted.putAll(drain(invocationOnMock.getArgument(0)));
+                    return null;
+                })
+                .when(persistenceStrategy).persistDelta(Mockito.any());
+
+        incrementalService.store(key, value);
+
+        Assertions.assertThatThrownBy(incrementalService::save)
+                .isInstanceOf(PersistenceException.class);
+
+        incrementalService.save();
+
+        Assertions.assertThat(persisted).containsOnlyKeys(key);
+    }
+
+    @Test
+    public void writesDuringConcurrentSavesAreReplayed(@TempDir Path basePath) throws Exception {
+
+        writesDuringSavesAreReplayed(basePath, concurrentProperties());
+    }
+
+    @Test
+    public void writesDuringBlockingSavesAreReplayed(@TempDir Path basePath) throws Exception {
+
+        writesDuringSavesAreReplayed(basePath, new StorageProperties());
+    }
+
+    /**
+     * Writers store and delete keys of their own until saves are over, state replayed from the last checkpoint
+     * and log must match every acknowledged modification
+     */
+    private static void writesDuringSavesAreReplayed(Path basePath, StorageProperties properties) throws Exception {
+
+        val walProperties = new WalPersistenceProperties();
+        walProperties.setBasePath(basePath);
+        walProperties.setSync(false);
+
+        // pauses after logging widen the window a save may begin in
+        val wal = new WalPersistenceStrategy(walProperties) {
+
+            @Override
+            public long logStore(String key, ByteBuffer... value) {
+
+                val sequence = super.logStore(key, value);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                return sequence;
+            }
+
+            @Override
+            public long logDelete(String key) {
+
+                val sequence = super.logDelete(key);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                return sequence;
+            }
+        };
+        val service = new HashStorageService(wal, properties);
+        val expected = new ConcurrentHashMap<String, byte[]>();
+        val writers = 4;
+        val executor = Executors.newFixedThreadPool(writers);
+        val saved = new AtomicBoolean();
+
+        try {
+
+            val results = new ArrayList<Future<?>>();
+
+            for (var w = 0; w < writers; w++) {
+
+                val writer = w;
+                results.add(executor.submit(() -> {
+
+                    for (var i = 0; !saved.get(); i++) {
+
+                        val stored = writer + "-" + i;
+                        val content = stored.getBytes(StandardCharsets.UTF_8);
+                        retryWhileSaving(() -> service.store(stored, content));
+                        expected.put(stored, content);
+
+                        if (i % 2 == 1) {
+
+                            val deleted = writer + "-" + (i - 1);
+                            retryWhileSaving(() -> service.delete(deleted));
+                            expected.remove(deleted);
+                        }
+                    }
+                }));
+            }
+
+            // a modification lost by a save would be written by the following one, the last save runs with writers too
+            for (var i = 0; i < 20; i++) {
+
+                service.save();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+
+            saved.set(true);
+
+            for (val result : results) {
+
+                result.get();
+            }
+        } finally {
+
+            executor.shutdownNow();
+            wal.close();
+        }
+
+        val replayed = new HashStorageService(new WalPersistenceStrategy(walProperties));
+        replayed.load();
+
+        Assertions.assertThat(replayed.size()).isEqualTo(expected.size());
+
+        for (val entry : expected.entrySet()) {
+
+            Assertions.assertThat(replayed.retrieve(entry.getKey())).hasBinaryContent(entry.getValue());
+        }
+    }
+
+    private static void retryWhileSaving(Runnable modification) {
+
+        while (true) {
+
+            try {
+
+                modification.run();
+                return;
+            } catch (ServiceUnavailableException e) {
+
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Reads persisted stream, deleted keys are mapped to {@code null}
+     */
+    private static Map<String, byte[]> drain(Stream<Map.Entry<String, Supplier<InputStream>>> stream) {
+
+        val result = new HashMap<String, byte[]>();
+
+        stream.forEach(entry -> {
+
+            if (entry.getValue() == null) {
+
+                result.put(entry.getKey(), null);
+                return;
+            }
+
+            try (val in = entry.getValue().get()) {
+
+                result.put(entry.getKey(), in.readAllBytes());
+            } catch (IOException e) {
+
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return result;
+    }
+
+    private static StorageProperties concurrentProperties() {
+
+        val properties = new StorageProperties();
+        properties.setSnapshotMode(StorageProperties.SnapshotMode.CONCURRENT);
+        return properties;
+    }
+
+    @Test
+    public void scanListsKeysOfRangeInPages() {
+
+        for (val stored : List.of("tenant/2/a", "tenant/1/b", "tenant/1/a", "tenant/10/a", "other")) {
+
+            hashStorageService.store(stored, value);
+        }
+
+        hashStorageService.delete("tenant/1/b");
+
+        val first = hashStorageService.scan(KeyRange.prefix("tenant/"), 2, false);
+
+        Assertions.assertThat(first.getKeys()).containsExactly("tenant/1/a", "tenant/10/a");
+        Assertions.assertThat(first.getValues()).isNull();
+        Assertions.assertThat(first.getNext()).isEqualTo("tenant/10/a");
+
+        val second = hashStorageService.scan(KeyRange.prefix("tenant/").after(first.getNext()), 2, true);
+
+        Assertions.assertThat(second.getKeys()).containsExactly("tenant/2/a");
+        Assertions.assertThat(second.getValues().get(0).buffers()).containsExactly(ByteBuffer.wrap(value));
+        Assertions.assertThat(second.getNext()).isNull();
+
+        Assertions.assertThat(hashStorageService.scan(KeyRange.of("tenant/10", "tenant/2"), 10, false).getKeys())
+                .containsExactly("tenant/10/a");
+        Assertions.assertThat(hashStorageService.scan(KeyRange.ALL, 10, false).getKeys())
+                .containsExactly("other", "tenant/1/a", "tenant/10/a", "tenant/2/a");
+    }
+
+    @Test
+    public void storeAllReportsDuplicatesAndAwaitsDurableOnce() throws IOException {
+
+        hashStorageService.store(key, value);
+        Mockito.reset(persistenceStrategy);
+        Mockito.when(persistenceStrategy.logStore(Mockito.anyString(), Mockito.any(ByteBuffer.class)))
+                .thenReturn(7L, 8L);
+
+        val statuses = hashStorageService.storeAll(List.of(
+                new AbstractMap.SimpleImmutableEntry<>(key, otherValue),
+                new AbstractMap.SimpleImmutableEntry<>(otherKey, otherValue),
+                new AbstractMap.SimpleImmutableEntry<>("thirdKey", value)));
+
+        Assertions.assertThat(statuses).containsExactly(BatchStatus.DUPLICATE_KEY, BatchStatus.OK, BatchStatus.OK);
+
+        try (val stream = internalStorage.get(otherKey).get()) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(otherValue);
+        }
+
+        try (val stream = internalStorage.get(key).get()) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+
+        Mockito.verify(persistenceStrategy).awaitDurable(8L);
+        Mockito.verify(persistenceStrategy, Mockito.times(1)).awaitDurable(Mockito.anyLong());
+    }
+
+    @Test
+    public void storeAllTooLargeStoresNothing() {
+
+        val properties = new StorageProperties();
+        properties.setMaxValueSize(DataSize.ofBytes(5));
+        val limited = new HashStorageService(persistenceStrategy, properties);
+
+        Assertions.assertThatThrownBy(() -> limited.storeAll(List.of(
+                        new AbstractMap.SimpleImmutableEntry<>(key, value),
+                        new AbstractMap.SimpleImmutableEntry<>(otherKey, otherValue))))
+                .isInstanceOf(ValueTooLargeException.class);
+
+        Assertions.assertThat(limited.retrieveAll(List.of(key, otherKey))).containsOnlyNulls();
+    }
+
+    @Test
+    public void retrieveAllReturnsNullsForMissingKeys() {
+
+        hashStorageService.store(key, value);
+
+        val values = hashStorageService.retrieveAll(List.of(otherKey, key));
+
+        Assertions.assertThat(values.get(0)).isNull();
+        Assertions.assertThat(values.get(1).buffers()).containsExactly(ByteBuffer.wrap(value));
+    }
+
+    @Test
+    public void deleteAllReportsMissingAndAwaitsDurableOnce() {
+
+        hashStorageService.store(key, value);
+        hashStorageService.store(otherKey, otherValue);
+        Mockito.reset(persistenceStrategy);
+        Mockito.when(persistenceStrategy.logDelete(Mockito.anyString()))
+                .thenReturn(3L, 4L);
+
+        val statuses = hashStorageService.deleteAll(List.of(key, "thirdKey", otherKey, key));
+
+        Assertions.assertThat(statuses)
+                .containsExactly(BatchStatus.OK, BatchStatus.MISSING_KEY, BatchStatus.OK, BatchStatus.MISSING_KEY);
+        Assertions.assertThat(internalStorage).isEmpty();
+
+        Mockito.verify(persistenceStrategy).awaitDurable(4L);
+        Mockito.verify(persistenceStrategy, Mockito.times(1)).awaitDurable(Mockito.anyLong());
+    }
+
+    @Test
+    public void tieredStorageSpillsLeastRecentlyUsedValues(@TempDir Path spillPath) throws IOException {
+
+        val tiered = tieredStorageService(spillPath);
+        val tieredStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(tiered, "storage");
+
+        tiered.store(key, value);
+        tiered.store(otherKey, otherValue);
+
+        Assertions.assertThat(tieredStorage.get(key)).isInstanceOf(SpilledValue.class);
+        Assertions.assertThat(tieredStorage.get(otherKey)).isNotInstanceOf(SpilledValue.class);
+        Assertions.assertThat(Files.readAllBytes(((SpilledValue) tieredStorage.get(key)).getPath())).isEqualTo(value);
+
+        val status = tiered.tierStatus();
+
+        Assertions.assertThat(status.isEnabled()).isTrue();
+        Assertions.assertThat(status.getResidentKeys()).isEqualTo(1);
+        Assertions.assertThat(status.getResidentBytes()).isEqualTo(otherValue.length);
+        Assertions.assertThat(status.getSpilledKeys()).isEqualTo(1);
+        Assertions.assertThat(status.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void tieredStorageFaultsSpilledValuesIn(@TempDir Path spillPath) throws IOException {
+
+        val tiered = tieredStorageService(spillPath);
+        val tieredStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(tiered, "storage");
+
+        tiered.store(key, value);
+        tiered.store(otherKey, otherValue);
+        val spilled = (SpilledValue) tieredStorage.get(key);
+
+        try (val stream = tiered.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+
+        Assertions.assertThat(tieredStorage.get(key)).isNotInstanceOf(SpilledValue.class);
+        Assertions.assertThat(tieredStorage.get(otherKey)).isInstanceOf(SpilledValue.class);
+        Assertions.assertThat(spilled.getPath()).doesNotExist();
+
+        Assertions.assertThat(tiered.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(value));
+
+        val status = tiered.tierStatus();
+
+        Assertions.assertThat(status.getHits()).isEqualTo(1);
+        Assertions.assertThat(status.getMisses()).isEqualTo(1);
+        Assertions.assertThat(status.getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void tieredStorageRemovesSpillFileOnDelete(@TempDir Path spillPath) {
+
+        val tiered = tieredStorageService(spillPath);
+        val tieredStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(tiered, "storage");
+
+        tiered.store(key, value);
+        tiered.store(otherKey, otherValue);
+        val spilled = (SpilledValue) tieredStorage.get(key);
+
+        tiered.delete(key);
+
+        Assertions.assertThat(spilled.getPath()).doesNotExist();
+        Assertions.assertThat(tiered.tierStatus().getSpilledKeys()).isZero();
+        Assertions.assertThatThrownBy(() -> tiered.retrieve(key))
+                .isInstanceOf(MissingKeyException.class);
+    }
+
+    @Test
+    public void tieredStorageKeepsSpillFilesUntilSaveFinishes(@TempDir Path spillPath) {
+
+        val properties = new StorageProperties();
+        properties.setSnapshotMode(StorageProperties.SnapshotMode.CONCURRENT);
+        val tiered = tieredStorageService(properties, spillPath);
+        val tieredStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(tiered, "storage");
+
+        tiered.store(key, value);
+        tiered.store(otherKey, otherValue);
+        val spilled = (SpilledValue) tieredStorage.get(key);
+
+        Mockito.doAnswer(invocation -> {
+
+            tiered.delete(key);
+            Assertions.assertThat(spilled.getPath()).exists();
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        tiered.save();
+
+        Assertions.assertThat(spilled.getPath()).doesNotExist();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void tieredStorageSpillsCompressedValuesCompressed(@TempDir Path spillPath) throws IOException {
+
+        val compressionProperties = new CompressionProperties();
+        compressionProperties.setEnabled(true);
+        compressionProperties.setMinSize(DataSize.ofBytes(16));
+
+        val compressible = "compressible".repeat(100).getBytes(StandardCharsets.UTF_8);
+        val compressed = (CompressedValue) new Compressor(compressionProperties).compress(ByteBuffer.wrap(compressible));
+        val compressedLength = compressed.getCompressedLength();
+
+        val tieredProperties = new TieredStorageProperties();
+        tieredProperties.setEnabled(true);
+        tieredProperties.setPolicy(TieredStorageProperties.Policy.LRU);
+        tieredProperties.setMemoryBudget(DataSize.ofBytes(compressedLength + compressedLength / 2));
+        tieredProperties.setSpillPath(spillPath);
+
+        val tiered = new HashStorageService(persistenceStrategy, new StorageProperties(),
+                HashStorageOptions.builder().tiered(tieredProperties).compression(compressionProperties).build());
+        val tieredStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(tiered, "storage");
+
+        tiered.store(key, compressible);
+        tiered.store(otherKey, compressible);
+
+        val spilled = (SpilledValue) tieredStorage.get(key);
+
+        Assertions.assertThat(spilled.getCodec()).isSameAs(compressed.getCodec());
+        Assertions.assertThat(Files.size(spilled.getPath())).isEqualTo(compressedLength);
+        Assertions.assertThat(tiered.tierStatus().getResidentBytes()).isEqualTo(compressedLength);
+
+        try (val stream = tiered.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(compressible);
+        }
+
+        Assertions.assertThat(tieredStorage.get(key)).isInstanceOf(CompressedValue.class);
+        Assertions.assertThat(tieredStorage.get(otherKey)).isInstanceOf(SpilledValue.class);
+        Assertions.assertThat(tiered.tierStatus().getResidentBytes()).isEqualTo(compressedLength);
+    }
+
+    @Test
+    public void tieredStorageKeepsAccountingValuesFailingToSpill(@TempDir Path spillPath) throws IOException {
+
+        val tiered = tieredStorageService(spillPath);
+
+        // the spill file can not be created over a directory
+        Files.createDirectory(spillPath.resolve("spill-1"));
+        Files.createFile(spillPath.resolve("spill-1").resolve("occupied"));
+
+        tiered.store(key, value);
+        tiered.store(otherKey, otherValue);
+
+        val status = tiered.tierStatus();
+
+        Assertions.assertThat(status.getResidentKeys()).isEqualTo(2);
+        Assertions.assertThat(status.getResidentBytes()).isEqualTo(value.length + otherValue.length);
+        Assertions.assertThat(status.getSpilledKeys()).isZero();
+    }
+
+    @Test
+    public void compressibleValuesAreHeldCompressed() throws IOException {
+
+        val compressionProperties = new CompressionProperties();
+        compressionProperties.setEnabled(true);
+        compressionProperties.setMinSize(DataSize.ofBytes(16));
+
+        val compressing = new HashStorageService(persistenceStrategy, new StorageProperties(),
+                HashStorageOptions.builder().compression(compressionProperties).build());
+        @SuppressWarnings("unchecked")
+        val compressingStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(compressing, "storage");
+        val compressible = "compressible".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+        compressing.store(key, compressible);
+        compressing.store(otherKey, otherValue);
+
+        Assertions.assertThat(compressingStorage.get(key)).isInstanceOf(CompressedValue.class);
+        Assertions.assertThat(compressingStorage.get(otherKey)).isInstanceOf(ByteBufferSupplier.class);
+        Assertions.assertThat(compressing.residentBytes())
+                .isEqualTo(((CompressedValue) compressingStorage.get(key)).getCompressedLength() + otherValue.length);
+        Assertions.assertThat(compressing.retrieve(key).readAllBytes()).isEqualTo(compressible);
+
+        try (val stored = compressing.retrieveValue(key)) {
+
+            Assertions.assertThat(stored.length()).isEqualTo(compressible.length);
+            Assertions.assertThat(stored.buffers()).containsExactly(ByteBuffer.wrap(compressible));
+        }
+    }
+
+    @Test
+    public void identicalValuesAreSharedUntilLastKeyIsDeleted() {
+
+        val deduplicationProperties = new DeduplicationProperties();
+        deduplicationProperties.setEnabled(true);
+        deduplicationProperties.setMinSize(DataSize.ofBytes(4));
+
+        val deduplicating = new HashStorageService(persistenceStrategy, new StorageProperties(),
+                HashStorageOptions.builder().deduplication(deduplicationProperties).build());
+        @SuppressWarnings("unchecked")
+        val deduplicatingStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(deduplicating, "storage");
+        val blobs = (BlobTable) ReflectionTestUtils.getField(deduplicating, "blobs");
+
+        deduplicating.store(key, value);
+        deduplicating.store(otherKey, value.clone());
+        deduplicating.store("small", new byte[]{1});
+
+        Assertions.assertThat(deduplicatingStorage.get(key)).isSameAs(deduplicatingStorage.get(otherKey));
+        Assertions.assertThat(blobs.size()).isEqualTo(1);
+        Assertions.assertThat(deduplicating.residentBytes()).isEqualTo(value.length + 1);
+
+        deduplicating.delete(key);
+
+        Assertions.assertThat(blobs.size()).isEqualTo(1);
+        Assertions.assertThat(deduplicating.retrieveValue(otherKey).buffers()).containsExactly(ByteBuffer.wrap(value));
+
+        deduplicating.delete(otherKey);
+
+        Assertions.assertThat(blobs.size()).isZero();
+        Assertions.assertThat(deduplicating.residentBytes()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadedDuplicatesAreShared() {
+
+        val deduplicationProperties = new DeduplicationProperties();
+        deduplicationProperties.setEnabled(true);
+        deduplicationProperties.setMinSize(DataSize.ofBytes(4));
+
+        val deduplicating = new HashStorageService(persistenceStrategy, new StorageProperties(),
+                HashStorageOptions.builder().deduplication(deduplicationProperties).build());
+        @SuppressWarnings("unchecked")
+        val deduplicatingStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(deduplicating, "storage");
+
+        Mockito.doAnswer(invocation -> {
+
+            BiConsumer<String, Supplier<InputStream>> loadAction = invocation.getArgument(0);
+            loadAction.accept(key, ByteBufferSupplier.of(value));
+            loadAction.accept(otherKey, ByteBufferSupplier.of(value.clone()));
+            return null;
+        }).when(persistenceStrategy).load(Mockito.any());
+
+        deduplicating.load();
+
+        Assertions.assertThat(deduplicatingStorage.get(otherKey)).isSameAs(deduplicatingStorage.get(key));
+        Assertions.assertThat(deduplicating.residentBytes()).isEqualTo(value.length);
+    }
+
+    @Test
+    public void compareAndStoreReplacesOnlyExpectedVersion() {
+
+        val version = hashStorageService.compareAndStore(key, new ByteArrayInputStream(value), value.length, null,
+                StorageService.NO_VERSION);
+
+        Assertions.assertThat(version).isPositive();
+        Assertions.assertThat(hashStorageService.version(key)).isEqualTo(version);
+        Assertions.assertThat(hashStorageService.retrieveValue(key).version()).isEqualTo(version);
+
+        Assertions.assertThatThrownBy(() -> hashStorageService.compareAndStore(key, new ByteArrayInputStream(otherValue),
+                        otherValue.length, null, version + 1))
+                .isInstanceOf(VersionMismatchException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.VERSION_MISMATCH);
+        Assertions.assertThatThrownBy(() -> hashStorageService.compareAndStore(key, new ByteArrayInputStream(otherValue),
+                        otherValue.length, null, StorageService.NO_VERSION))
+                .isInstanceOf(DuplicateKeyException.class);
+        Assertions.assertThatThrownBy(() -> hashStorageService.compareAndStore(otherKey, new ByteArrayInputStream(otherValue),
+                        otherValue.length, null, StorageService.ANY_VERSION))
+                .isInstanceOf(VersionMismatchException.class);
+
+        val replaced = hashStorageService.compareAndStore(key, new ByteArrayInputStream(otherValue), otherValue.length, null,
+                version);
+
+        Assertions.assertThat(replaced).isNotEqualTo(version);
+        Assertions.assertThat(hashStorageService.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(otherValue));
+        Assertions.assertThat(hashStorageService.retrieveValue(key).version()).isEqualTo(replaced);
+        Assertions.assertThat(hashStorageService.residentBytes()).isEqualTo(otherValue.length);
+        Assertions.assertThat(hashStorageService.size()).isEqualTo(1);
+
+        Mockito.verify(persistenceStrategy).logStore(key, ByteBuffer.wrap(otherValue));
+    }
+
+    @Test
+    public void compareAndDeleteRemovesOnlyExpectedVersion() {
+
+        hashStorageService.store(key, value);
+        val version = hashStorageService.version(key);
+
+        Assertions.assertThatThrownBy(() -> hashStorageService.compareAndDelete(key, version + 1))
+                .isInstanceOf(VersionMismatchException.class);
+        Assertions.assertThatThrownBy(() -> hashStorageService.compareAndDelete(otherKey, StorageService.ANY_VERSION))
+                .isInstanceOf(VersionMismatchException.class);
+
+        hashStorageService.compareAndDelete(key, version);
+
+        Assertions.assertThat(internalStorage).isEmpty();
+        Assertions.assertThatThrownBy(() -> hashStorageService.version(key))
+                .isInstanceOf(MissingKeyException.class);
+    }
+
+    @Test
+    public void concurrentSavePersistsValueReplacedWhileSaving() {
+
+        val concurrentService = new HashStorageService(persistenceStrategy, concurrentProperties());
+        concurrentService.store(key, value);
+
+        val persisted = new HashMap<String, byte[]>();
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            concurrentService.compareAndStore(key, new ByteArrayInputStream(otherValue), otherValue.length, null,
+                    StorageService.ANY_VERSION);
+
+            Stream<Map.Entry<String, Supplier<InputStream>>> stream = invocationOnMock.getArgument(0);
+            stream.forEach(entry -> {
+
+                try (val in = entry.getValue().get()) {
+
+                    persisted.put(entry.getKey(), in.readAllBytes());
+                } catch (IOException e) {
+
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        concurrentService.save();
+
+        Assertions.assertThat(persisted.get(key)).isEqualTo(value);
+        Assertions.assertThat(concurrentService.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(otherValue));
+    }
+
+    @Test
+    public void retrieveRangeViewsStoredBufferWithoutCopying() {
+
+        val digits = "0123456789".getBytes(StandardCharsets.UTF_8);
+        hashStorageService.store(key, digits);
+
+        val part = hashStorageService.retrieveRange(key, ByteRange.of(2, 5));
+
+        Assertions.assertThat(part.buffers()).containsExactly(ByteBuffer.wrap(digits, 2, 4));
+        Assertions.assertThat(part.buffers()[0].array()).isSameAs(digits);
+        Assertions.assertThat(part.offset()).isEqualTo(2);
+        Assertions.assertThat(part.valueLength()).isEqualTo(digits.length);
+        Assertions.assertThat(part.version()).isEqualTo(hashStorageService.version(key));
+
+        Assertions.assertThat(hashStorageService.retrieveRange(key, ByteRange.suffix(3)).buffers())
+                .containsExactly(ByteBuffer.wrap(digits, 7, 3));
+        Assertions.assertThat(hashStorageService.retrieveRange(key, ByteRange.from(8)).buffers())
+                .containsExactly(ByteBuffer.wrap(digits, 8, 2));
+        Assertions.assertThat(hashStorageService.retrieveRange(key, ByteRange.of(5, 100)).length()).isEqualTo(5);
+
+        Assertions.assertThatThrownBy(() -> hashStorageService.retrieveRange(key, ByteRange.from(10)))
+                .isInstanceOf(RangeNotSatisfiableException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.RANGE_NOT_SATISFIABLE)
+                .hasFieldOrPropertyWithValue("length", (long) digits.length);
+    }
+
+    @Test
+    public void retrieveRangeOfMappedValueViewsStoredFile(@TempDir Path basePath) throws IOException {
+
+        val nioProperties = new NioPersistenceProperties();
+        nioProperties.setBasePath(basePath);
+        nioProperties.setLoadMode(LoadMode.MAP);
+        nioProperties.setMinMappedSize(DataSize.ofBytes(0));
+
+        val digits = "0123456789".getBytes(StandardCharsets.UTF_8);
+        Files.write(basePath.resolve(key), digits);
+
+        val loaded = new HashStorageService(new NioPersistenceStrategy(nioProperties));
+        loaded.load();
+
+        val part = loaded.retrieveRange(key, ByteRange.of(4, 6));
+
+        Assertions.assertThat(part.buffers()).hasSize(1);
+        Assertions.assertThat(part.buffers()[0].isDirect()).isTrue();
+        Assertions.assertThat(part.buffers()[0]).isEqualTo(ByteBuffer.wrap(digits, 4, 3));
+    }
+
+    @Test
+    public void storeWithTtlFailsWhenExpirationIsDisabled() {
+
+        Assertions.assertThatThrownBy(() -> hashStorageService.store(key, new ByteArrayInputStream(value), value.length,
+                        Duration.ofMinutes(1)))
+                .isInstanceOf(ExpirationNotSupportedException.class)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.EXPIRATION_NOT_SUPPORTED);
+
+        Assertions.assertThat(internalStorage).isEmpty();
+    }
+
+    @Test
+    public void expiredValueIsMissingOnAccess() throws InterruptedException {
+
+        val expiring = expiringStorageService();
+
+        expiring.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMillis(20));
+        expiring.store(otherKey, new ByteArrayInputStream(otherValue), otherValue.length, Duration.ofHours(1));
+
+        Assertions.assertThat(expiring.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(value));
+
+        Thread.sleep(50);
+
+        Assertions.assertThatThrownBy(() -> expiring.retrieve(key))
+                .isInstanceOf(MissingKeyException.class);
+        Assertions.assertThat(expiring.scan(KeyRange.ALL, 10, false).getKeys()).containsExactly(otherKey);
+        Assertions.assertThat(expiring.expirationStatus())
+                .isEqualTo(new ExpirationStatus(true, 1, 0, 1));
+
+        // expired key is free to be stored again, without time to live
+        expiring.store(key, value);
+
+        Assertions.assertThat(expiring.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(value));
+        Assertions.assertThat(expiring.expirationStatus().getExpiringKeys()).isEqualTo(1);
+    }
+
+    @Test
+    public void expireRemovesDueValuesWithoutAccess() throws InterruptedException {
+
+        val expiring = expiringStorageService();
+        @SuppressWarnings("unchecked")
+        val expiringStorage = (ConcurrentHashMap<String, Supplier<InputStream>>) ReflectionTestUtils.getField(expiring, "storage");
+
+        expiring.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMillis(1));
+        expiring.store(otherKey, new ByteArrayInputStream(otherValue), otherValue.length, Duration.ofHours(1));
+        expiring.store("kept", value);
+
+        Thread.sleep(20);
+
+        Assertions.assertThat(expiring.expire()).isEqualTo(1);
+        Assertions.assertThat(expiringStorage).containsOnlyKeys(otherKey, "kept");
+        Assertions.assertThat(expiring.expirationStatus())
+                .isEqualTo(new ExpirationStatus(true, 1, 1, 0));
+        Assertions.assertThat(expiring.expire()).isZero();
+
+        Mockito.verify(persistenceStrategy).logDelete(key);
+    }
+
+    @Test
+    public void deleteClearsDeadline() {
+
+        val expiring = expiringStorageService();
+
+        expiring.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMinutes(1));
+        expiring.delete(key);
+
+        Assertions.assertThat(expiring.expirationStatus().getExpiringKeys()).isZero();
+        Assertions.assertThat(expiring.expire()).isZero();
+    }
+
+    @Test
+    public void saveSkipsExpiredValues() throws InterruptedException {
+
+        val expiring = expiringStorageService();
+
+        expiring.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMillis(1));
+        expiring.store(otherKey, otherValue);
+
+        Thread.sleep(20);
+
+        val persisted = new ArrayList<String>();
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            Stream<Map.Entry<String, Supplier<InputStream>>> stream = invocationOnMock.getArgument(0);
+            stream.forEach(entry -> persisted.add(entry.getKey()));
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        expiring.save();
+
+        Assertions.assertThat(persisted).containsExactly(otherKey);
+    }
+
+    @Test
+    public void loadedValuesKeepTimeToLive(@TempDir Path basePath) throws InterruptedException {
+
+        val nioProperties = new NioPersistenceProperties();
+        nioProperties.setBasePath(basePath);
+        nioProperties.setBufferSize(4096);
+
+        val saved = expiringStorageService(new NioPersistenceStrategy(nioProperties));
+        val deadline = System.currentTimeMillis() + 500;
+
+        saved.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMillis(500));
+        saved.store(otherKey, otherValue);
+        saved.save();
+
+        val loaded = expiringStorageService(new NioPersistenceStrategy(nioProperties));
+        loaded.load();
+
+        Assertions.assertThat(loaded.retrieve(key)).hasBinaryContent(value);
+        Assertions.assertThat(loaded.expirationStatus().getExpiringKeys()).isEqualTo(1);
+
+        Thread.sleep(Math.max(0, deadline + 50 - System.currentTimeMillis()));
+
+        Assertions.assertThat(loaded.expire()).isEqualTo(1);
+        Assertions.assertThat(loaded.scan(KeyRange.ALL, 10, false).getKeys()).containsExactly(otherKey);
+    }
+
+    @Test
+    public void valuesExpiredWhilePersistedAreNotLoaded(@TempDir Path basePath) throws InterruptedException {
+
+        val nioProperties = new NioPersistenceProperties();
+        nioProperties.setBasePath(basePath);
+        nioProperties.setBufferSize(4096);
+
+        val saved = expiringStorageService(new NioPersistenceStrategy(nioProperties));
+
+        saved.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMillis(20));
+        saved.store(otherKey, otherValue);
+        saved.save();
+
+        Thread.sleep(50);
+
+        val loaded = expiringStorageService(new NioPersistenceStrategy(nioProperties));
+        loaded.load();
+
+        Assertions.assertThat(loaded.scan(KeyRange.ALL, 10, false).getKeys()).containsExactly(otherKey);
+        Assertions.assertThat(loaded.expirationStatus().getExpiringKeys()).isZero();
+    }
+
+    @Test
+    public void storeWithTtlLogsDeadline() {
+
+        val expiring = expiringStorageService();
+        val before = System.currentTimeMillis();
+
+        expiring.store(key, new ByteArrayInputStream(value), value.length, Duration.ofMinutes(1));
+        expiring.store(otherKey, otherValue);
+
+        Mockito.verify(persistenceStrategy).logStore(Mockito.eq(key),
+                Mockito.longThat(deadline -> deadline >= before + 60_000), Mockito.any(ByteBuffer.class));
+        Mockito.verify(persistenceStrategy).logStore(otherKey, ByteBuffer.wrap(otherValue));
+    }
+
+    @Test
+    public void deduplicationOfTieredStorageFailsInitialization(@TempDir Path spillPath) {
+
+        val tieredProperties = new TieredStorageProperties();
+        tieredProperties.setEnabled(true);
+        tieredProperties.setSpillPath(spillPath);
+
+        val deduplicationProperties = new DeduplicationProperties();
+        deduplicationProperties.setEnabled(true);
+
+        Assertions.assertThatThrownBy(() -> new HashStorageService(persistenceStrategy, new StorageProperties(),
+                        HashStorageOptions.builder().tiered(tieredProperties).deduplication(deduplicationProperties).build()))
+                .isInstanceOf(InitializationException.class);
+    }
+
+    private HashStorageService expiringStorageService() {
+
+        return expiringStorageService(persistenceStrategy);
+    }
+
+    private static HashStorageService expiringStorageService(PersistenceStrategy persistenceStrategy) {
+
+        val expirationProperties = new ExpirationProperties();
+        expirationProperties.setEnabled(true);
+        expirationProperties.setTick(Duration.ofMillis(1));
+
+        return new HashStorageService(persistenceStrategy, new StorageProperties(),
+                HashStorageOptions.builder().expiration(expirationProperties).build());
+    }
+
+    private HashStorageService tieredStorageService(Path spillPath) {
+
+        return tieredStorageService(new StorageProperties(), spillPath);
+    }
+
+    private HashStorageService tieredStorageService(StorageProperties properties, Path spillPath) {
+
+        val tieredProperties = new TieredStorageProperties();
+        tieredProperties.setEnabled(true);
+        tieredProperties.setPolicy(TieredStorageProperties.Policy.LRU);
+        tieredProperties.setMemoryBudget(DataSize.ofBytes(otherValue.length));
+        tieredProperties.setSpillPath(spillPath);
+
+        return new HashStorageService(persistenceStrategy, properties, HashStorageOptions.builder().tiered(tieredProperties).build());
+    }
 }
@@ -0,0 +1,244 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.util.properties.LsmStorageProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+public class LsmStorageServiceTest {
+
+    @TempDir
+    public Path basePath;
+
+    private final LsmStorageProperties properties = new LsmStorageProperties();
+
+    {
+        properties.setMemtableSize(DataSize.ofKilobytes(4));
+        properties.setBlockSize(DataSize.ofBytes(256));
+        properties.setTargetFileSize(DataSize.ofKilobytes(8));
+        properties.setLevel0CompactionTrigger(2);
+        properties.setLevelBaseSize(DataSize.ofKilobytes(16));
+    }
+
+    private LsmStorageService lsmStorageService;
+
+    private final String key = "key";
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+    private final byte[] otherValue = "otherValue".getBytes(StandardCharsets.UTF_8);
+
+    @AfterEach
+    public void close() throws IOException {
+
+        lsmStorageService.close();
+    }
+
+    @Test
+    public void storeRetrieveAndDelete() throws IOException {
+
+        lsmStorageService = open();
+
+        lsmStorageService.store(key, value);
+
+        Assertions.assertThatThrownBy(() -> lsmStorageService.store(key, otherValue))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        try (val stream = lsmStorageService.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+
+        lsmStorageService.delete(key);
+
+        Assertions.assertThatThrownBy(() -> lsmStorageService.retrieve(key))
+                .isInstanceOf(MissingKeyException.class);
+        Assertions.assertThatThrownBy(() -> lsmStorageService.delete(key))
+                .isInstanceOf(MissingKeyException.class);
+
+        lsmStorageService.store(key, otherValue);
+
+        Assertions.assertThat(lsmStorageService.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(otherValue));
+        Assertions.assertThat(lsmStorageService.size()).isEqualTo(1);
+        Assertions.assertThat(lsmStorageService.modifications()).isEqualTo(3);
+    }
+
+    @Test
+    public void streamedValueOfUnknownLengthIsStored() {
+
+        lsmStorageService = open();
+
+        val large = new byte[200 * 1024];
+        large[large.length - 1] = 1;
+
+        lsmStorageService.store(key, new ByteArrayInputStream(large), -1);
+
+        Assertions.assertThat(lsmStorageService.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(large));
+    }
+
+    @Test
+    public void writesNotFlushedAreRecoveredFromLog() throws IOException {
+
+        lsmStorageService = open();
+        lsmStorageService.store(key, value);
+        lsmStorageService.store("deleted", value);
+        lsmStorageService.delete("deleted");
+        lsmStorageService.close();
+
+        lsmStorageService = open();
+
+        Assertions.assertThat(lsmStorageService.retrieveValue(key).buffers()).containsExactly(ByteBuffer.wrap(value));
+        Assertions.assertThatThrownBy(() -> lsmStorageService.retrieve("deleted"))
+                .isInstanceOf(MissingKeyException.class);
+        Assertions.assertThat(lsmStorageService.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void valuesLargerThanMemtableAreFlushedAndCompacted() throws IOException {
+
+        lsmStorageService = open();
+
+        for (var i = 0; i < 2000; i++) {
+
+            lsmStorageService.store(key + i, (key + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (var i = 0; i < 2000; i += 2) {
+
+            lsmStorageService.delete(key + i);
+        }
+
+        lsmStorageService.save();
+
+        Assertions.assertThat(lsmStorageService.residentBytes()).isLessThan(properties.getMemtableSize().toBytes());
+        Assertions.assertThat(lsmStorageService.tableCounts()[0]).isLessThan(properties.getLevel0CompactionTrigger());
+        Assertions.assertThat(lsmStorageService.snapshotStatus().getState()).isEqualTo(SnapshotStatus.State.SUCCEEDED);
+        Assertions.assertThat(lsmStorageService.snapshotStatus().getPersistedKeys()).isEqualTo(1000);
+
+        lsmStorageService.close();
+        lsmStorageService = open();
+
+        Assertions.assertThat(lsmStorageService.size()).isEqualTo(1000);
+
+        for (var i = 0; i < 2000; i++) {
+
+            if (i % 2 == 0) {
+
+                val missing = key + i;
+                Assertions.assertThatThrownBy(() -> lsmStorageService.retrieve(missing))
+                        .isInstanceOf(MissingKeyException.class);
+            } else {
+
+                Assertions.assertThat(lsmStorageService.retrieveValue(key + i).buffers())
+                        .containsExactly(ByteBuffer.wrap((key + i).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentWritesStallForBackgroundFlushes() throws InterruptedException {
+
+        properties.setBasePath(basePath);
+        lsmStorageService = new LsmStorageService(properties);
+
+        val threads = new ArrayList<Thread>();
+
+        for (var t = 0; t < 4; t++) {
+
+            val prefix = "thread-" + t + "-";
+            threads.add(new Thread(() -> {
+
+                for (var i = 0; i < 500; i++) {
+
+                    lsmStorageService.store(prefix + i, value);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+
+        for (val thread : threads) {
+
+            thread.join();
+        }
+
+        lsmStorageService.save();
+
+        Assertions.assertThat(lsmStorageService.size()).isEqualTo(2000);
+        Assertions.assertThat(lsmStorageService.retrieveValue("thread-3-499").buffers()).containsExactly(ByteBuffer.wrap(value));
+    }
+
+    @Test
+    public void scanMergesMemtablesAndTablesOfEveryLevel() {
+
+        lsmStorageService = open();
+
+        val expected = new ArrayList<String>();
+
+        for (var i = 0; i < 300; i++) {
+
+            val stored = String.format("key-%03d", i);
+            lsmStorageService.store(stored, stored.getBytes(StandardCharsets.UTF_8));
+
+            if (i % 3 != 0) {
+
+                expected.add(stored);
+            }
+        }
+
+        // deletions shadow keys in tables, partly from memtable and partly from flushed tables
+        for (var i = 0; i < 300; i += 3) {
+
+            lsmStorageService.delete(String.format("key-%03d", i));
+
+            if (i == 150) {
+
+                lsmStorageService.save();
+            }
+        }
+
+        lsmStorageService.store("other", value);
+
+        val scanned = new ArrayList<String>();
+        var range = KeyRange.prefix("key-");
+        ScanPage page;
+
+        do {
+
+            page = lsmStorageService.scan(range, 50, true);
+
+            for (var i = 0; i < page.getKeys().size(); i++) {
+
+                Assertions.assertThat(page.getValues().get(i).buffers())
+                        .containsExactly(ByteBuffer.wrap(page.getKeys().get(i).getBytes(StandardCharsets.UTF_8)));
+            }
+
+            scanned.addAll(page.getKeys());
+            range = range.after(page.getNext());
+        } while (page.getNext() != null);
+
+        Assertions.assertThat(scanned).containsExactlyElementsOf(expected);
+        Assertions.assertThat(lsmStorageService.scan(KeyRange.of("key-100", "key-110"), 50, false).getKeys())
+                .containsExactly("key-100", "key-101", "key-103", "key-104", "key-106", "key-107", "key-109");
+    }
+
+    private LsmStorageService open() {
+
+        properties.setBasePath(basePath);
+        return new LsmStorageService(properties, new StorageProperties(), Runnable::run);
+    }
+}
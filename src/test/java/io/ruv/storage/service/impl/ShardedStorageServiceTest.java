@@ -0,0 +1,252 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.persistence.PersistenceStrategyFactory;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.KeyRange;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
+import io.ruv.storage.util.exception.InitializationException;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.ShardedStorageProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ShardedStorageServiceTest {
+
+    private static final int SHARDS = 4;
+
+    @TempDir
+    public Path basePath;
+
+    private final List<PersistenceStrategy> persistenceStrategies = new ArrayList<>();
+
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void storeRetrieveAndDeleteAcrossShards() throws IOException {
+
+        val service = shardedStorageService(1);
+        val keys = keys(64);
+
+        for (val key : keys) {
+
+            service.store(key, value);
+        }
+
+        for (val key : keys) {
+
+            try (val stream = service.retrieve(key)) {
+
+                Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+            }
+
+            Mockito.verify(persistenceStrategies.get(shardIndex(service, key))).logStore(Mockito.eq(key), Mockito.any(ByteBuffer.class));
+        }
+
+        Assertions.assertThat(keys.stream().map(key -> shardIndex(service, key)).distinct()).hasSize(SHARDS);
+        Assertions.assertThatThrownBy(() -> service.store(keys.get(0), value))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        service.delete(keys.get(0));
+
+        Assertions.assertThatThrownBy(() -> service.retrieve(keys.get(0)))
+                .isInstanceOf(MissingKeyException.class);
+        Assertions.assertThat(basePath.resolve("shard-0")).isDirectory();
+        Assertions.assertThat(basePath.resolve("shard-" + (SHARDS - 1))).isDirectory();
+    }
+
+    @Test
+    public void batchOperationsKeepOrderOfKeys() {
+
+        val service = shardedStorageService(1);
+        val keys = keys(16);
+        service.store(keys.get(3), value);
+
+        val statuses = service.storeAll(keys.stream()
+                .map(key -> new AbstractMap.SimpleImmutableEntry<>(key, key.getBytes(StandardCharsets.UTF_8)))
+                .collect(Collectors.toList()));
+
+        Assertions.assertThat(statuses.get(3)).isEqualTo(BatchStatus.DUPLICATE_KEY);
+        Assertions.assertThat(statuses).filteredOn(status -> status == BatchStatus.OK).hasSize(15);
+
+        val values = service.retrieveAll(List.of(keys.get(5), "missing", keys.get(3)));
+
+        Assertions.assertThat(values.get(0).buffers()).containsExactly(ByteBuffer.wrap(keys.get(5).getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertThat(values.get(1)).isNull();
+        Assertions.assertThat(values.get(2).buffers()).containsExactly(ByteBuffer.wrap(value));
+
+        Assertions.assertThat(service.deleteAll(List.of("missing", keys.get(0))))
+                .containsExactly(BatchStatus.MISSING_KEY, BatchStatus.OK);
+    }
+
+    @Test
+    public void scanMergesShardsInKeyOrder() {
+
+        val service = shardedStorageService(1);
+        val keys = keys(64);
+        keys.forEach(key -> service.store(key, key.getBytes(StandardCharsets.UTF_8)));
+        service.store("other", value);
+
+        val scanned = new ArrayList<String>();
+        var range = KeyRange.prefix("key-");
+        var pages = 0;
+        ScanPage page;
+
+        do {
+
+            page = service.scan(range, 10, true);
+            pages++;
+
+            for (var i = 0; i < page.getKeys().size(); i++) {
+
+                Assertions.assertThat(page.getValues().get(i).buffers())
+                        .containsExactly(ByteBuffer.wrap(page.getKeys().get(i).getBytes(StandardCharsets.UTF_8)));
+            }
+
+            scanned.addAll(page.getKeys());
+            range = range.after(page.getNext());
+        } while (page.getNext() != null);
+
+        Assertions.assertThat(scanned).containsExactlyElementsOf(keys.stream().sorted().collect(Collectors.toList()));
+        Assertions.assertThat(pages).isEqualTo(7);
+    }
+
+    @Test
+    public void saveBlocksOnlyShardBeingSaved() {
+
+        val service = shardedStorageService(1);
+        val keys = keys(64);
+        keys.forEach(key -> service.store(key, value));
+
+        val savedKey = keys.stream().filter(key -> shardIndex(service, key) == 0).findFirst().orElseThrow();
+        val otherKey = keys.stream().filter(key -> shardIndex(service, key) == 1).findFirst().orElseThrow();
+
+        Mockito.doAnswer(invocation -> {
+
+            Assertions.assertThatThrownBy(() -> service.retrieve(savedKey))
+                    .isInstanceOf(ServiceUnavailableException.class);
+            service.retrieve(otherKey).close();
+            return null;
+        }).when(persistenceStrategies.get(0)).persist(Mockito.any());
+
+        service.save();
+
+        persistenceStrategies.forEach(persistenceStrategy -> Mockito.verify(persistenceStrategy).persist(Mockito.any()));
+        Assertions.assertThat(service.snapshotStatus().getState()).isEqualTo(SnapshotStatus.State.SUCCEEDED);
+        Assertions.assertThat(service.snapshotStatus().getTotalKeys()).isEqualTo(keys.size());
+    }
+
+    @Test
+    public void saveAttemptsEveryShardWhenOneFails() throws IOException {
+
+        try (val service = shardedStorageService(SHARDS)) {
+
+            val failure = PersistenceException.writingStorage(new IOException());
+
+            Mockito.doThrow(failure).when(persistenceStrategies.get(1)).persist(Mockito.any());
+
+            Assertions.assertThatThrownBy(service::save).isSameAs(failure);
+
+            persistenceStrategies.forEach(persistenceStrategy -> Mockito.verify(persistenceStrategy).persist(Mockito.any()));
+            Assertions.assertThat(service.snapshotStatus().getState()).isEqualTo(SnapshotStatus.State.FAILED);
+        }
+    }
+
+    @Test
+    public void loadLoadsEveryShard() throws IOException {
+
+        try (val service = shardedStorageService(SHARDS)) {
+
+            service.load();
+
+            persistenceStrategies.forEach(persistenceStrategy -> Mockito.verify(persistenceStrategy).load(Mockito.any()));
+        }
+    }
+
+    @Test
+    public void parallelSavesAndLoadsShareThreadsUntilClosed() throws IOException {
+
+        val properties = new ShardedStorageProperties();
+        properties.setShards(SHARDS);
+        properties.setParallelism(SHARDS);
+
+        val threadFactory = Mockito.spy(new CustomizableThreadFactory("shard-test-"));
+        val service = new ShardedStorageService(persistenceStrategyFactory(), new StorageProperties(), properties,
+                threadFactory);
+
+        service.save();
+        service.save();
+        service.load();
+
+        Mockito.verify(threadFactory, Mockito.atMost(SHARDS)).newThread(Mockito.any());
+
+        service.close();
+
+        Assertions.assertThatThrownBy(service::load)
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    public void changedShardCountFailsInitialization() {
+
+        shardedStorageService(1);
+
+        val properties = new ShardedStorageProperties();
+        properties.setShards(SHARDS * 2);
+
+        Assertions.assertThatThrownBy(() -> new ShardedStorageService(persistenceStrategyFactory(), new StorageProperties(),
+                        properties, new CustomizableThreadFactory()))
+                .isInstanceOf(InitializationException.class);
+    }
+
+    private ShardedStorageService shardedStorageService(int parallelism) {
+
+        val properties = new ShardedStorageProperties();
+        properties.setShards(SHARDS);
+        properties.setParallelism(parallelism);
+
+        return new ShardedStorageService(persistenceStrategyFactory(), new StorageProperties(), properties,
+                new CustomizableThreadFactory("shard-test-"));
+    }
+
+    private PersistenceStrategyFactory persistenceStrategyFactory() {
+
+        return new PersistenceStrategyFactory(basePath, path -> {
+
+            val persistenceStrategy = Mockito.mock(PersistenceStrategy.class);
+            persistenceStrategies.add(persistenceStrategy);
+            return persistenceStrategy;
+        });
+    }
+
+    private static List<String> keys(int count) {
+
+        return IntStream.range(0, count).mapToObj(i -> "key-" + i).collect(Collectors.toList());
+    }
+
+    private static int shardIndex(ShardedStorageService service, String key) {
+
+        return ReflectionTestUtils.invokeMethod(service, "shardIndex", key);
+    }
+}
@@ -0,0 +1,437 @@
+package io.ruv.storage.service.impl;
+
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.persistence.wal.impl.WalPersistenceStrategy;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.IncompleteValueException;
+import io.ruv.storage.service.InsufficientStorageException;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.slab.SlabAllocator;
+import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import io.ruv.storage.util.properties.SlabStorageProperties;
+import io.ruv.storage.util.properties.WalPersistenceProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class SlabStorageServiceTest {
+
+    private final SlabStorageProperties properties = new SlabStorageProperties();
+
+    {
+        properties.setSlabSize(DataSize.ofKilobytes(1));
+        properties.setMinChunkSize(DataSize.ofBytes(16));
+        properties.setGrowthFactor(2);
+        properties.setMaxMemory(DataSize.ofKilobytes(4));
+    }
+
+    private final PersistenceStrategy persistenceStrategy = Mockito.mock(PersistenceStrategy.class);
+    private final SlabAllocator allocator = new SlabAllocator(properties);
+    private final SlabStorageService slabStorageService = new SlabStorageService(persistenceStrategy, allocator);
+
+    private final String key = "key";
+    private final String otherKey = "otherKey";
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+    private final byte[] otherValue = "otherValue".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void storeAndRetrieveValues() throws IOException {
+
+        slabStorageService.store(key, value);
+        slabStorageService.store(otherKey, otherValue);
+
+        try (val stream = slabStorageService.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+
+        try (val stream = slabStorageService.retrieve(otherKey)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(otherValue);
+        }
+    }
+
+    @Test
+    public void storeLargeValue() throws IOException {
+
+        val large = new byte[2048];
+        large[2047] = 42;
+
+        slabStorageService.store(key, large);
+
+        try (val stream = slabStorageService.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(large);
+        }
+    }
+
+    @Test
+    public void storeStreamWritesValueOffHeap() throws IOException {
+
+        val large = new byte[2048];
+        Arrays.fill(large, (byte) 5);
+
+        slabStorageService.store(key, new ByteArrayInputStream(value), value.length);
+        slabStorageService.store(otherKey, new ByteArrayInputStream(large), -1);
+
+        try (val stream = slabStorageService.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+
+        try (val stream = slabStorageService.retrieve(otherKey)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(large);
+        }
+    }
+
+    @Test
+    public void storeStreamShorterThanDeclaredLengthReleasesMemory() {
+
+        val reserved = allocator.reservedBytes();
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.store(key, new ByteArrayInputStream(new byte[1000]), 2048))
+                .isInstanceOf(IncompleteValueException.class);
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.retrieve(key))
+                .isInstanceOf(MissingKeyException.class);
+        Assertions.assertThat(allocator.reservedBytes()).isEqualTo(reserved);
+    }
+
+    @Test
+    public void storeDuplicateKeyThrowsException() {
+
+        slabStorageService.store(key, value);
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.store(key, value))
+                .isInstanceOf(DuplicateKeyException.class)
+                .hasFieldOrPropertyWithValue("key", key)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.DUPLICATE_KEY);
+    }
+
+    @Test
+    public void storeOverMemoryLimitThrowsException() {
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.store(key, new byte[8192]))
+                .isInstanceOf(InsufficientStorageException.class)
+                .hasFieldOrPropertyWithValue("key", key)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.INSUFFICIENT_STORAGE);
+    }
+
+    @Test
+    public void retrieveMissingThrowsException() {
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.retrieve(key))
+                .isInstanceOf(MissingKeyException.class)
+                .hasFieldOrPropertyWithValue("key", key)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.MISSING_KEY);
+    }
+
+    @Test
+    public void deleteDeletesRecord() {
+
+        slabStorageService.store(key, value);
+        slabStorageService.delete(key);
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.retrieve(key))
+                .isInstanceOf(MissingKeyException.class);
+    }
+
+    @Test
+    public void deleteMissingThrowsException() {
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.delete(key))
+                .isInstanceOf(MissingKeyException.class)
+                .hasFieldOrPropertyWithValue("key", key)
+                .hasFieldOrPropertyWithValue("errorCode", ErrorCode.MISSING_KEY);
+    }
+
+    @Test
+    public void openStreamSurvivesDelete() throws IOException {
+
+        slabStorageService.store(key, value);
+
+        try (val stream = slabStorageService.retrieve(key)) {
+
+            slabStorageService.delete(key);
+            slabStorageService.store(otherKey, otherValue);
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void retrievedValueSurvivesDeleteUntilClosed() {
+
+        slabStorageService.store(key, value);
+
+        try (val stored = slabStorageService.retrieveValue(key)) {
+
+            slabStorageService.delete(key);
+            slabStorageService.store(otherKey, otherValue);
+
+            val buffers = stored.buffers();
+
+            Assertions.assertThat(buffers).hasSize(1);
+            Assertions.assertThat(buffers[0].isDirect()).isTrue();
+            Assertions.assertThat(stored.length()).isEqualTo(value.length);
+
+            val bytes = new byte[value.length];
+            buffers[0].get(bytes);
+
+            Assertions.assertThat(bytes).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void freedMemoryIsReusedByOtherSizeClasses() {
+
+        // fill all slabs with small values, then free them
+        for (var i = 0; i < 4 * 64; i++) {
+
+            slabStorageService.store(key + i, new byte[16]);
+        }
+
+        Assertions.assertThatThrownBy(() -> slabStorageService.store(otherKey, new byte[512]))
+                .isInstanceOf(InsufficientStorageException.class);
+
+        for (var i = 0; i < 4 * 64; i += 2) {
+
+            slabStorageService.delete(key + i);
+        }
+
+        // half empty slabs get compacted on allocation failure
+        slabStorageService.store(otherKey, new byte[512]);
+
+        for (var i = 1; i < 4 * 64; i += 2) {
+
+            Assertions.assertThat(readAll(slabStorageService.retrieve(key + i))).hasSize(16);
+        }
+    }
+
+    @Test
+    public void saveStreamsValuesToPersistenceStrategy() {
+
+        slabStorageService.store(key, value);
+        slabStorageService.store(otherKey, otherValue);
+
+        val persisted = new HashMap<String, byte[]>();
+
+        Mockito.doAnswer(invocation -> {
+
+            Stream<Map.Entry<String, Supplier<InputStream>>> stream = invocation.getArgument(0);
+            stream.forEach(entry -> persisted.put(entry.getKey(), readAll(entry.getValue().get())));
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        slabStorageService.save();
+
+        Mockito.verify(persistenceStrategy, Mockito.times(1)).persist(Mockito.any());
+
+        Assertions.assertThat(persisted).containsOnlyKeys(key, otherKey);
+        Assertions.assertThat(persisted.get(key)).isEqualTo(value);
+        Assertions.assertThat(persisted.get(otherKey)).isEqualTo(otherValue);
+    }
+
+    @Test
+    public void loadCopiesValuesOffHeap() throws IOException {
+
+        Mockito.doAnswer(invocation -> {
+
+            BiConsumer<String, Supplier<InputStream>> loadAction = invocation.getArgument(0);
+            loadAction.accept(key, () -> new ByteArrayInputStream(value));
+            return null;
+        }).when(persistenceStrategy).load(Mockito.any());
+
+        slabStorageService.load();
+
+        try (val stream = slabStorageService.retrieve(key)) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+    }
+
+    /**
+     * Writers store and delete keys of their own until saves are over, state replayed from the last checkpoint
+     * and log must match every acknowledged modification
+     */
+    @Test
+    public void writesDuringSavesAreReplayed(@TempDir Path basePath) throws Exception {
+
+        val walProperties = new WalPersistenceProperties();
+        walProperties.setBasePath(basePath);
+        walProperties.setSync(false);
+
+        // pauses after logging widen the window a save may begin in
+        val wal = new WalPersistenceStrategy(walProperties) {
+
+            @Override
+            public long logStore(String key, ByteBuffer... value) {
+
+                val sequence = super.logStore(key, value);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                return sequence;
+            }
+
+            @Override
+            public long logDelete(String key) {
+
+                val sequence = super.logDelete(key);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                return sequence;
+            }
+        };
+        val service = new SlabStorageService(wal, new SlabAllocator(largeProperties()));
+        val expected = new ConcurrentHashMap<String, byte[]>();
+        val writers = 4;
+        val executor = Executors.newFixedThreadPool(writers);
+        val saved = new AtomicBoolean();
+
+        try {
+
+            val results = new ArrayList<Future<?>>();
+
+            for (var w = 0; w < writers; w++) {
+
+                val writer = w;
+                results.add(executor.submit(() -> {
+
+                    for (var i = 0; !saved.get(); i++) {
+
+                        val stored = writer + "-" + i;
+                        val content = stored.getBytes(StandardCharsets.UTF_8);
+                        retryWhileSaving(() -> service.store(stored, content));
+                        expected.put(stored, content);
+
+                        if (i % 2 == 1) {
+
+                            val deleted = writer + "-" + (i - 1);
+                            retryWhileSaving(() -> service.delete(deleted));
+                            expected.remove(deleted);
+                        }
+                    }
+                }));
+            }
+
+            // a modification lost by a save would be written by the following one, the last save runs with writers too
+            for (var i = 0; i < 20; i++) {
+
+                service.save();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+
+            saved.set(true);
+
+            for (val result : results) {
+
+                result.get();
+            }
+        } finally {
+
+            executor.shutdownNow();
+            wal.close();
+        }
+
+        val replayed = new SlabStorageService(new WalPersistenceStrategy(walProperties), new SlabAllocator(largeProperties()));
+        replayed.load();
+
+        Assertions.assertThat(replayed.size()).isEqualTo(expected.size());
+
+        for (val entry : expected.entrySet()) {
+
+            Assertions.assertThat(readAll(replayed.retrieve(entry.getKey()))).isEqualTo(entry.getValue());
+        }
+    }
+
+    private static SlabStorageProperties largeProperties() {
+
+        val properties = new SlabStorageProperties();
+        properties.setSlabSize(DataSize.ofKilobytes(64));
+        properties.setMinChunkSize(DataSize.ofBytes(16));
+        properties.setGrowthFactor(2);
+        properties.setMaxMemory(DataSize.ofMegabytes(16));
+        return properties;
+    }
+
+    private static void retryWhileSaving(Runnable modification) {
+
+        while (true) {
+
+            try {
+
+                modification.run();
+                return;
+            } catch (ServiceUnavailableException e) {
+
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream stream) {
+
+        try (stream) {
+
+            return stream.readAllBytes();
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void batchOperationsStoreRetrieveAndDeleteValues() throws IOException {
+
+        slabStorageService.store(key, value);
+
+        val stored = slabStorageService.storeAll(List.of(
+                new AbstractMap.SimpleImmutableEntry<>(key, otherValue),
+                new AbstractMap.SimpleImmutableEntry<>(otherKey, otherValue)));
+
+        Assertions.assertThat(stored).containsExactly(BatchStatus.DUPLICATE_KEY, BatchStatus.OK);
+
+        val values = slabStorageService.retrieveAll(List.of(key, "thirdKey", otherKey));
+
+        Assertions.assertThat(values.get(1)).isNull();
+
+        try (val first = values.get(0); val third = values.get(2)) {
+
+            Assertions.assertThat(first.buffers()).containsExactly(ByteBuffer.wrap(value));
+            Assertions.assertThat(third.buffers()).containsExactly(ByteBuffer.wrap(otherValue));
+        }
+
+        val deleted = slabStorageService.deleteAll(List.of(key, otherKey, otherKey));
+
+        Assertions.assertThat(deleted).containsExactly(BatchStatus.OK, BatchStatus.OK, BatchStatus.MISSING_KEY);
+        Assertions.assertThatThrownBy(() -> slabStorageService.retrieve(otherKey))
+                .isInstanceOf(MissingKeyException.class);
+    }
+}
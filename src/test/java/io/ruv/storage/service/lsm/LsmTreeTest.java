@@ -0,0 +1,191 @@
+package io.ruv.storage.service.lsm;
+
+import io.ruv.storage.util.properties.LsmStorageProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LsmTreeTest {
+
+    @TempDir
+    public Path basePath;
+
+    @Test
+    public void tableFindsEveryKeyAndRejectsOthers() throws IOException {
+
+        val path = basePath.resolve("1.sst");
+
+        try (val writer = SSTableWriter.create(path, 64, 10)) {
+
+            for (var i = 0; i < 500; i++) {
+
+                writer.add(key(i), i % 7 == 0 ? Memtable.TOMBSTONE : value(i));
+            }
+
+            writer.finish();
+        }
+
+        val table = SSTable.open(1, path);
+
+        try {
+
+            for (var i = 0; i < 500; i++) {
+
+                Assertions.assertThat(table.get(key(i))).isEqualTo(i % 7 == 0 ? Memtable.TOMBSTONE : value(i));
+            }
+
+            Assertions.assertThat(table.get("missing")).isNull();
+            Assertions.assertThat(table.get("key-000250x")).isNull();
+
+            val keys = new ArrayList<String>();
+            table.iterator().forEachRemaining(entry -> keys.add(entry.getKey()));
+
+            Assertions.assertThat(keys).hasSize(500).isSorted();
+        } finally {
+
+            table.close();
+        }
+    }
+
+    @Test
+    public void corruptedBlockFailsRead() throws IOException {
+
+        val path = basePath.resolve("1.sst");
+
+        try (val writer = SSTableWriter.create(path, 4096, 10)) {
+
+            writer.add(key(0), value(0));
+            writer.finish();
+        }
+
+        try (val channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 6);
+        }
+
+        val table = SSTable.open(1, path);
+
+        try {
+
+            Assertions.assertThatThrownBy(() -> table.get(key(0)))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("checksum mismatch");
+        } finally {
+
+            table.close();
+        }
+    }
+
+    @Test
+    public void compactionKeepsNewestValues() throws IOException {
+
+        val properties = properties();
+        val expected = new HashMap<String, ByteBuffer>();
+
+        try (val tree = new LsmTree(properties, Runnable::run)) {
+
+            for (var round = 0; round < 5; round++) {
+
+                for (var i = 0; i < 300; i++) {
+
+                    tree.remove(key(i));
+
+                    if ((i + round) % 3 != 0) {
+
+                        val value = value(i * 10 + round);
+                        tree.putIfAbsent(key(i), value);
+                        expected.put(key(i), value);
+                    } else {
+
+                        expected.remove(key(i));
+                    }
+                }
+            }
+
+            tree.flush();
+
+            val counts = tree.tableCounts();
+
+            Assertions.assertThat(counts[0]).isLessThan(properties.getLevel0CompactionTrigger());
+            Assertions.assertThat(counts[1] + counts[2]).isPositive();
+            assertContents(tree, expected);
+        }
+
+        try (val tree = new LsmTree(properties, Runnable::run); val files = Files.list(basePath)) {
+
+            Assertions.assertThat(tree.keys()).isEqualTo(expected.size());
+            assertContents(tree, expected);
+
+            // tables replaced by compaction are deleted
+            Assertions.assertThat(files.filter(file -> file.toString().endsWith(".sst")).count())
+                    .isEqualTo(Arrays.stream(tree.tableCounts()).sum());
+        }
+    }
+
+    @Test
+    public void tornLogRecordEndsReplay() throws IOException {
+
+        val path = basePath.resolve("1.log");
+
+        try (val log = WriteAheadLog.create(path)) {
+
+            log.append(key(0), value(0));
+            log.append(key(1), Memtable.TOMBSTONE);
+            log.append(key(2), value(2));
+        }
+
+        Files.write(path, Arrays.copyOf(Files.readAllBytes(path), (int) Files.size(path) - 1));
+
+        val replayed = new ArrayList<Map.Entry<String, ByteBuffer>>();
+
+        WriteAheadLog.replay(path, (key, value) -> replayed.add(Map.entry(key, value)));
+
+        Assertions.assertThat(replayed).containsExactly(Map.entry(key(0), value(0)), Map.entry(key(1), Memtable.TOMBSTONE));
+    }
+
+    private LsmStorageProperties properties() {
+
+        val properties = new LsmStorageProperties();
+        properties.setBasePath(basePath);
+        properties.setMemtableSize(DataSize.ofKilobytes(2));
+        properties.setBlockSize(DataSize.ofBytes(128));
+        properties.setTargetFileSize(DataSize.ofKilobytes(2));
+        properties.setLevel0CompactionTrigger(2);
+        properties.setLevelBaseSize(DataSize.ofKilobytes(4));
+        properties.setLevelSizeMultiplier(2);
+
+        return properties;
+    }
+
+    private static void assertContents(LsmTree tree, Map<String, ByteBuffer> expected) {
+
+        for (var i = 0; i < 300; i++) {
+
+            Assertions.assertThat(tree.get(key(i))).isEqualTo(expected.get(key(i)));
+        }
+    }
+
+    private static String key(int i) {
+
+        return String.format("key-%06d", i);
+    }
+
+    private static ByteBuffer value(int i) {
+
+        return ByteBuffer.wrap(("value-" + i).repeat(3).getBytes(StandardCharsets.UTF_8));
+    }
+}
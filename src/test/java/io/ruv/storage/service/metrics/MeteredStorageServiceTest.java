@@ -0,0 +1,119 @@
+package io.ruv.storage.service.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.ruv.storage.persistence.PersistenceStrategy;
+import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.impl.HashStorageService;
+import io.ruv.storage.util.exception.ServiceUnavailableException;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class MeteredStorageServiceTest {
+
+    private final PersistenceStrategy persistenceStrategy = Mockito.mock(PersistenceStrategy.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MeteredStorageService meteredStorageService =
+            new MeteredStorageService(new HashStorageService(persistenceStrategy), registry);
+
+    private final String key = "key";
+    private final String otherKey = "otherKey";
+    private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+    private final byte[] otherValue = "otherValue".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void operationsAreTimedByOutcome() {
+
+        meteredStorageService.store(key, value);
+        meteredStorageService.retrieveValue(key).close();
+        meteredStorageService.delete(key);
+
+        Assertions.assertThatThrownBy(() -> meteredStorageService.delete(key))
+                .isInstanceOf(MissingKeyException.class);
+
+        Assertions.assertThat(timerCount("store", "success")).isEqualTo(1);
+        Assertions.assertThat(timerCount("retrieve", "success")).isEqualTo(1);
+        Assertions.assertThat(timerCount("delete", "success")).isEqualTo(1);
+        Assertions.assertThat(timerCount("delete", "failure")).isEqualTo(1);
+    }
+
+    @Test
+    public void valueSizesAndResidencyAreRecorded() {
+
+        meteredStorageService.store(key, value);
+        meteredStorageService.store(otherKey, otherValue);
+        meteredStorageService.retrieveAll(List.of(key, "missing")).forEach(stored -> {
+
+            if (stored != null) {
+
+                stored.close();
+            }
+        });
+
+        val stored = registry.get("storage.value.size").tag("operation", "store").summary();
+        val retrieved = registry.get("storage.value.size").tag("operation", "retrieve").summary();
+
+        Assertions.assertThat(stored.count()).isEqualTo(2);
+        Assertions.assertThat(stored.totalAmount()).isEqualTo(value.length + otherValue.length);
+        Assertions.assertThat(retrieved.count()).isEqualTo(1);
+        Assertions.assertThat(retrieved.totalAmount()).isEqualTo(value.length);
+
+        Assertions.assertThat(registry.get("storage.keys").gauge().value()).isEqualTo(2);
+        Assertions.assertThat(registry.get("storage.resident.bytes").gauge().value()).isEqualTo(value.length + otherValue.length);
+
+        meteredStorageService.delete(key);
+
+        Assertions.assertThat(registry.get("storage.resident.bytes").gauge().value()).isEqualTo(otherValue.length);
+    }
+
+    @Test
+    public void rejectionsAreCountedPerOperation() {
+
+        val delegate = Mockito.mock(StorageService.class);
+        val rejecting = new MeteredStorageService(delegate, registry);
+
+        Mockito.when(delegate.retrieveValue(key)).thenThrow(new ServiceUnavailableException("Save operation in progress."));
+        Mockito.doThrow(new ServiceUnavailableException("Save operation in progress.")).when(delegate).save();
+
+        Assertions.assertThatThrownBy(() -> rejecting.retrieveValue(key))
+                .isInstanceOf(ServiceUnavailableException.class);
+        Assertions.assertThatThrownBy(rejecting::save)
+                .isInstanceOf(ServiceUnavailableException.class);
+
+        Assertions.assertThat(registry.get("storage.rejections").tag("operation", "retrieve").counter().count()).isEqualTo(1);
+        Assertions.assertThat(registry.get("storage.rejections").tag("operation", "save").counter().count()).isEqualTo(1);
+        Assertions.assertThat(registry.get("storage.snapshot").tag("operation", "save").tag("outcome", "failure").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void saveCountsPersistedKeys() {
+
+        meteredStorageService.store(key, value);
+        meteredStorageService.store(otherKey, otherValue);
+
+        Mockito.doAnswer(invocation -> {
+
+            invocation.<Stream<?>>getArgument(0).forEach(entry -> {
+            });
+            return null;
+        }).when(persistenceStrategy).persist(Mockito.any());
+
+        meteredStorageService.save();
+
+        Assertions.assertThat(registry.get("storage.snapshot").tag("operation", "save").tag("outcome", "success").timer().count())
+                .isEqualTo(1);
+        Assertions.assertThat(registry.get("storage.snapshot.keys").tag("operation", "save").counter().count()).isEqualTo(2);
+    }
+
+    private long timerCount(String operation, String outcome) {
+
+        return registry.get("storage.operations").tag("operation", operation).tag("outcome", outcome).timer().count();
+    }
+}
@@ -0,0 +1,113 @@
+package io.ruv.storage.service.tier;
+
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EvictionPolicyTest {
+
+    private static final long WEIGHT = 1024;
+
+    @Test
+    public void admitKeepsResidentBytesWithinBudget() {
+
+        val policy = new TinyLfuEvictionPolicy(100 * WEIGHT);
+
+        for (var i = 0; i < 1000; i++) {
+
+            policy.admit("key" + i, WEIGHT);
+        }
+
+        Assertions.assertThat(policy.residentBytes()).isLessThanOrEqualTo(100 * WEIGHT);
+        Assertions.assertThat(policy.residentKeys()).isEqualTo(100);
+    }
+
+    @Test
+    public void scanDoesNotEvictFrequentlyAccessedKeys() {
+
+        val policy = new TinyLfuEvictionPolicy(100 * WEIGHT);
+        val hot = new ArrayList<String>();
+
+        for (var i = 0; i < 50; i++) {
+
+            hot.add("hot" + i);
+            policy.admit("hot" + i, WEIGHT);
+        }
+
+        for (var round = 0; round < 5; round++) {
+
+            hot.forEach(policy::recordAccess);
+        }
+
+        val victims = new ArrayList<String>();
+
+        for (var i = 0; i < 1000; i++) {
+
+            victims.addAll(policy.admit("scan" + i, WEIGHT));
+            policy.recordAccess(hot.get(i % hot.size()));
+        }
+
+        Assertions.assertThat(victims).doesNotContainAnyElementsOf(hot);
+    }
+
+    @Test
+    public void lruEvictsScannedOutKeys() {
+
+        val policy = new LruEvictionPolicy(100 * WEIGHT);
+        val victims = new ArrayList<String>();
+
+        for (var i = 0; i < 50; i++) {
+
+            policy.admit("hot" + i, WEIGHT);
+            policy.recordAccess("hot" + i);
+        }
+
+        for (var i = 0; i < 1000; i++) {
+
+            victims.addAll(policy.admit("scan" + i, WEIGHT));
+        }
+
+        Assertions.assertThat(victims).contains("hot0", "hot49");
+    }
+
+    @Test
+    public void restoredKeysAreEvictedByFollowingAdmissions() {
+
+        for (val policy : List.of(new LruEvictionPolicy(2 * WEIGHT), new TinyLfuEvictionPolicy(2 * WEIGHT))) {
+
+            val victims = new ArrayList<String>();
+
+            for (var i = 0; victims.isEmpty(); i++) {
+
+                victims.addAll(policy.admit("key" + i, WEIGHT));
+            }
+
+            val residentKeys = policy.residentKeys();
+            val residentBytes = policy.residentBytes();
+
+            policy.restore(victims.get(0), WEIGHT);
+
+            Assertions.assertThat(policy.residentKeys()).isEqualTo(residentKeys + 1);
+            Assertions.assertThat(policy.residentBytes()).isEqualTo(residentBytes + WEIGHT);
+
+            policy.admit("next", WEIGHT);
+
+            Assertions.assertThat(policy.residentBytes()).isLessThanOrEqualTo(2 * WEIGHT);
+        }
+    }
+
+    @Test
+    public void removeReleasesResidentBytes() {
+
+        val policy = new TinyLfuEvictionPolicy(100 * WEIGHT);
+
+        policy.admit("key", WEIGHT);
+        policy.remove("key");
+
+        Assertions.assertThat(policy.residentKeys()).isZero();
+        Assertions.assertThat(policy.residentBytes()).isZero();
+    }
+}
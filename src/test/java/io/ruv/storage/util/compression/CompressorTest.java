@@ -0,0 +1,69 @@
+package io.ruv.storage.util.compression;
+
+import io.ruv.storage.util.io.ByteBufferSupplier;
+import io.ruv.storage.util.properties.CompressionProperties;
+import lombok.val;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class CompressorTest {
+
+    private final CompressionProperties properties = new CompressionProperties();
+
+    @ParameterizedTest
+    @EnumSource(CompressionProperties.Codec.class)
+    public void compressibleValueIsCompressedAndRestored(CompressionProperties.Codec codec) throws IOException {
+
+        properties.setCodec(codec);
+        val value = "compressible value ".repeat(512).getBytes(StandardCharsets.UTF_8);
+        val original = ByteBuffer.wrap(value);
+
+        val compressed = new Compressor(properties).compress(original.slice(0, 1000), original.slice(1000, value.length - 1000));
+
+        Assertions.assertThat(compressed).isInstanceOf(CompressedValue.class);
+        Assertions.assertThat(((CompressedValue) compressed).getCodec()).isSameAs(codec.getCodec());
+        Assertions.assertThat(((CompressedValue) compressed).getLength()).isEqualTo(value.length);
+        Assertions.assertThat(((CompressedValue) compressed).getCompressedLength()).isLessThan(value.length / 10);
+        Assertions.assertThat(CompressionCodec.byId(codec.getCodec().getId())).isSameAs(codec.getCodec());
+        Assertions.assertThat(original.position()).isZero();
+
+        try (val stream = compressed.get()) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionProperties.Codec.class)
+    public void incompressibleValueIsKeptAsItIs(CompressionProperties.Codec codec) throws IOException {
+
+        properties.setCodec(codec);
+        val value = new byte[64 * 1024];
+        new Random(42).nextBytes(value);
+
+        val kept = new Compressor(properties).compress(ByteBuffer.wrap(value));
+
+        Assertions.assertThat(kept).isInstanceOf(ByteBufferSupplier.class);
+
+        try (val stream = kept.get()) {
+
+            Assertions.assertThat(stream.readAllBytes()).isEqualTo(value);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionProperties.Codec.class)
+    public void smallValueIsNotAttempted(CompressionProperties.Codec codec) {
+
+        properties.setCodec(codec);
+        val value = "a".repeat((int) properties.getMinSize().toBytes() - 1).getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertThat(new Compressor(properties).compress(ByteBuffer.wrap(value))).isInstanceOf(ByteBufferSupplier.class);
+    }
+}
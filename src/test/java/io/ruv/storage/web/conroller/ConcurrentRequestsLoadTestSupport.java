@@ -0,0 +1,129 @@
+package io.ruv.storage.web.conroller;
+
+import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import lombok.val;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Issues concurrent GET requests against a running server with a storage blocking each retrieval
+ * until all requests arrive or a timeout elapses, then reports the peak of retrievals in flight
+ */
+@Import(ConcurrentRequestsLoadTestSupport.BlockingStorageConfig.class)
+abstract class ConcurrentRequestsLoadTestSupport {
+
+    protected static final int REQUESTS = 32;
+    protected static final int TOMCAT_THREADS = 4;
+
+    private static final long BLOCK_MILLIS = 300;
+
+    @TempDir
+    static Path basePath;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+
+        registry.add("storage.persistence.nio.base-path", basePath::toString);
+        registry.add("server.tomcat.threads.max", () -> TOMCAT_THREADS);
+        registry.add("server.tomcat.threads.min-spare", () -> TOMCAT_THREADS);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BlockingRetrievals retrievals;
+
+    /**
+     * Blocks each retrieval until all requests arrive or a timeout elapses, tracking retrievals in flight
+     */
+    static class BlockingRetrievals {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final CountDownLatch arrived = new CountDownLatch(REQUESTS);
+
+        StoredValue retrieve() throws InterruptedException {
+
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            arrived.countDown();
+
+            try {
+
+                arrived.await(BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+            } finally {
+
+                inFlight.decrementAndGet();
+            }
+
+            return StoredValue.of(ByteBuffer.wrap("value".getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Answers as default, stubbed answers are run by Mockito in a monitor and would pin virtual threads
+     */
+    @TestConfiguration
+    static class BlockingStorageConfig {
+
+        @Bean
+        public BlockingRetrievals blockingRetrievals() {
+
+            return new BlockingRetrievals();
+        }
+
+        @Bean
+        @Primary
+        public StorageService blockingStorageService(BlockingRetrievals retrievals) {
+
+            return Mockito.mock(StorageService.class, invocation ->
+                    invocation.getMethod().getName().equals("retrieveValue") ? retrievals.retrieve() : null);
+        }
+    }
+
+    protected int peakConcurrentRetrievals() throws Exception {
+
+        val client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        val responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+
+        for (int i = 0; i < REQUESTS; i++) {
+
+            val request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/storage/key-" + i)).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (val response : responses) {
+
+            if (response.get(30, TimeUnit.SECONDS).statusCode() != 200) {
+
+                throw new AssertionError("Unexpected status " + response.get().statusCode());
+            }
+        }
+
+        return retrievals.peak.get();
+    }
+}
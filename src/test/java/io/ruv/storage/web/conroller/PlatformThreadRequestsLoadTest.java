@@ -0,0 +1,17 @@
+package io.ruv.storage.web.conroller;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "storage.execution.threads=platform")
+public class PlatformThreadRequestsLoadTest extends ConcurrentRequestsLoadTestSupport {
+
+    @Test
+    public void blockingRequestsAreCappedByTomcatThreads() throws Exception {
+
+        Assertions.assertThat(peakConcurrentRetrievals())
+                .isLessThanOrEqualTo(TOMCAT_THREADS);
+    }
+}
@@ -1,26 +1,63 @@
 package io.ruv.storage.web.conroller;
 
 import io.ruv.storage.persistence.PersistenceException;
+import io.ruv.storage.service.AsyncStorageService;
+import io.ruv.storage.service.BatchStatus;
+import io.ruv.storage.service.ByteRange;
 import io.ruv.storage.service.DuplicateKeyException;
+import io.ruv.storage.service.ExpirationNotSupportedException;
+import io.ruv.storage.service.IncompleteValueException;
+import io.ruv.storage.service.KeyRange;
 import io.ruv.storage.service.MissingKeyException;
+import io.ruv.storage.service.PersistenceJob;
+import io.ruv.storage.service.PersistenceJobStatus;
+import io.ruv.storage.service.RangeNotSatisfiableException;
+import io.ruv.storage.service.ScanPage;
+import io.ruv.storage.service.SnapshotStatus;
 import io.ruv.storage.service.StorageService;
+import io.ruv.storage.service.StoredValue;
+import io.ruv.storage.service.ValueTooLargeException;
+import io.ruv.storage.service.VersionMismatchException;
+import io.ruv.storage.service.async.ExecutorAsyncStorageService;
 import io.ruv.storage.util.exception.ErrorCode;
+import io.ruv.storage.util.properties.AsyncStorageProperties;
+import io.ruv.storage.util.properties.StorageProperties;
+import io.ruv.storage.web.batch.BatchFraming;
 import io.ruv.storage.web.controller.StorageController;
 import lombok.val;
+import org.assertj.core.api.Assertions;
 import org.hamcrest.core.StringContains;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 @WebMvcTest(StorageController.class)
+@Import(StorageProperties.class)
 public class StorageControllerTest {
 
     @MockBean
@@ -29,72 +66,341 @@ public class StorageControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    /**
+     * Runs operations and jobs on the calling thread, jobs are finished once started
+     */
+    @TestConfiguration
+    public static class DirectAsyncConfig {
+
+        @Bean
+        public AsyncStorageService asyncStorageService(StorageService storageService) {
+
+            return new ExecutorAsyncStorageService(storageService, Runnable::run, Runnable::run, new AsyncStorageProperties());
+        }
+    }
+
     private final String key = "key";
     private final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
     private final String save = "/api/storage/save";
     private final String load = "/api/storage/load";
+    private final String jobs = "/api/storage/jobs/";
     private final String resource = "/api/storage/" + key;
+    private final String batch = "/api/storage/batch/";
+    private final String scan = "/api/storage";
 
     @Test
     public void storeReturnsOkNoBody() throws Exception {
 
-        Mockito.doNothing()
-                .when(storageService).store(key, value);
+        val stored = new AtomicReference<byte[]>();
 
+        Mockito.doAnswer(invocationOnMock -> {
+
+            InputStream stream = invocationOnMock.getArgument(1);
+            stored.set(stream.readAllBytes());
+            return StorageService.NO_VERSION;
+        }).when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.eq((long) value.length), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
 
         mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value))
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().string(""));
 
-        Mockito.verify(storageService).store(key, value);
+        Mockito.verify(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.eq((long) value.length), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
+        Assertions.assertThat(stored.get()).isEqualTo(value);
     }
 
     @Test
     public void storeDuplicateReturnsBadRequestError() throws Exception {
 
         Mockito.doThrow(DuplicateKeyException.of(key))
-                .when(storageService).store(key, value);
+                .when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
 
         mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value))
                 .andExpect(MockMvcResultMatchers.status().isBadRequest())
                 .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.DUPLICATE_KEY.name()))
                 .andExpect(MockMvcResultMatchers.jsonPath("message").value(StringContains.containsString(key)));
 
-        Mockito.verify(storageService).store(key, value);
+        Mockito.verify(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
     }
 
     @Test
-    public void getReturnsOkValue() throws Exception {
+    public void storeShorterThanContentLengthReturnsBadRequest() throws Exception {
 
-        try (val stream = new ByteArrayInputStream(value)) {
+        Mockito.doThrow(IncompleteValueException.of(key, value.length + 1))
+                .when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
 
-            //noinspection resource
-            Mockito.doReturn(stream)
-                    .when(storageService).retrieve(key);
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.INCOMPLETE_VALUE.name()))
+                .andExpect(MockMvcResultMatchers.jsonPath("message").value(StringContains.containsString(
+                        (value.length + 1) + " bytes")));
+    }
 
-            mockMvc.perform(MockMvcRequestBuilders.get(resource))
-                    .andExpect(MockMvcResultMatchers.status().isOk())
-                    .andExpect(MockMvcResultMatchers.content().string("value"));
+    @Test
+    public void storeTooLargeReturnsPayloadTooLarge() throws Exception {
+
+        Mockito.doThrow(ValueTooLargeException.of(key, 4))
+                .when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value))
+                .andExpect(MockMvcResultMatchers.status().isPayloadTooLarge())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.VALUE_TOO_LARGE.name()))
+                .andExpect(MockMvcResultMatchers.jsonPath("message").value(StringContains.containsString("4 bytes")));
+    }
+
+    @Test
+    public void storeWithTtlHeaderPassesTimeToLive() throws Exception {
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(StorageController.TTL_HEADER, "30"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        Mockito.verify(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class), Mockito.eq((long) value.length),
+                Mockito.eq(Duration.ofSeconds(30)), Mockito.eq(StorageService.NO_VERSION));
+    }
+
+    @Test
+    public void storeWithInvalidTtlHeaderReturnsBadRequestError() throws Exception {
+
+        for (val ttl : List.of("0", "-5", "soon")) {
+
+            mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(StorageController.TTL_HEADER, ttl))
+                    .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                    .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.INVALID_TTL.name()))
+                    .andExpect(MockMvcResultMatchers.jsonPath("message").value(StringContains.containsString(ttl)));
+        }
+
+        Mockito.verifyNoInteractions(storageService);
+    }
+
+    @Test
+    public void storeWithTtlIntoStorageWithoutExpirationReturnsBadRequestError() throws Exception {
+
+        Mockito.doThrow(ExpirationNotSupportedException.of(key))
+                .when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class), Mockito.anyLong(), Mockito.any(),
+                        Mockito.anyLong());
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(StorageController.TTL_HEADER, "30"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.EXPIRATION_NOT_SUPPORTED.name()));
+    }
+
+    @Test
+    public void storeReturnsETagOfStoredVersion() throws Exception {
+
+        Mockito.doReturn(7L).when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"7\""));
+    }
+
+    @Test
+    public void storeWithIfMatchReplacesExpectedVersion() throws Exception {
+
+        Mockito.doReturn(8L).when(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(7L));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_MATCH, "\"7\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"8\""));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        Mockito.verify(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.ANY_VERSION));
+    }
+
+    @Test
+    public void storeWithIfMatchListingSeveralVersionsReplacesCurrentOne() throws Exception {
+
+        Mockito.doReturn(5L).when(storageService).version(key);
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_MATCH, "\"4\", W/\"6\", \"5\""))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        Mockito.verify(storageService).compareAndStore(Mockito.eq(key), Mockito.any(InputStream.class),
+                Mockito.anyLong(), Mockito.isNull(), Mockito.eq(5L));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_MATCH, "\"4\", \"6\", W/\"5\""))
+                .andExpect(MockMvcResultMatchers.status().isPreconditionFailed())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.VERSION_MISMATCH.name()));
+    }
 
-            //noinspection resource
-            Mockito.verify(storageService).retrieve(key);
+    @Test
+    public void storeWithMismatchingVersionReturnsPreconditionFailed() throws Exception {
+
+        Mockito.doThrow(VersionMismatchException.of(key)).when(storageService).compareAndStore(Mockito.eq(key),
+                Mockito.any(InputStream.class), Mockito.anyLong(), Mockito.isNull(), Mockito.eq(7L));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_MATCH, "\"7\""))
+                .andExpect(MockMvcResultMatchers.status().isPreconditionFailed())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.VERSION_MISMATCH.name()))
+                .andExpect(MockMvcResultMatchers.jsonPath("message").value(StringContains.containsString(key)));
+    }
+
+    @Test
+    public void storeWithIfNoneMatchOfStoredKeyReturnsPreconditionFailed() throws Exception {
+
+        Mockito.doThrow(DuplicateKeyException.of(key)).when(storageService).compareAndStore(Mockito.eq(key),
+                Mockito.any(InputStream.class), Mockito.anyLong(), Mockito.isNull(), Mockito.eq(StorageService.NO_VERSION));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(MockMvcResultMatchers.status().isPreconditionFailed())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.VERSION_MISMATCH.name()));
+
+        mockMvc.perform(MockMvcRequestBuilders.put(resource).content(value).header(HttpHeaders.IF_NONE_MATCH, "\"7\""))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.INVALID_PRECONDITION.name()));
+    }
+
+    @Test
+    public void getWithIfNoneMatchOfCurrentVersionReturnsNotModified() throws Exception {
+
+        Mockito.doReturn(true).when(storageService).keepsVersions();
+        Mockito.doReturn(7L).when(storageService).version(key);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.IF_NONE_MATCH, "W/\"7\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"7\""))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+
+        Mockito.verify(storageService, Mockito.never()).retrieveValue(key);
+    }
+
+    @Test
+    public void getWithIfNoneMatchOfOtherVersionReturnsValueWithETag() throws Exception {
+
+        Mockito.doReturn(true).when(storageService).keepsVersions();
+        Mockito.doReturn(8L).when(storageService).version(key);
+        Mockito.doReturn(StoredValue.of(ByteBuffer.wrap(value)).withVersion(8))
+                .when(storageService).retrieveValue(key);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.IF_NONE_MATCH, "\"7\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"8\""))
+                .andExpect(MockMvcResultMatchers.content().bytes(value));
+    }
+
+    @Test
+    public void getWithIfNoneMatchFromStorageWithoutVersionsRetrievesValueOnce() throws Exception {
+
+        Mockito.doReturn(StoredValue.of(ByteBuffer.wrap(value))).when(storageService).retrieveValue(key);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().bytes(value));
+
+        Mockito.verify(storageService, Mockito.never()).version(key);
+        Mockito.verify(storageService).retrieveValue(key);
+    }
+
+    @Test
+    public void getWithRangeReturnsPartialContent() throws Exception {
+
+        val digits = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            ByteRange range = invocationOnMock.getArgument(1);
+            val length = digits.length;
+            return StoredValue.of(ByteBuffer.wrap(digits)).withVersion(3)
+                    .slice(range.offset(length), range.length(length));
+        }).when(storageService).retrieveRange(Mockito.eq(key), Mockito.any());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_LENGTH, "4"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(MockMvcResultMatchers.content().bytes("2345".getBytes(StandardCharsets.UTF_8)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(MockMvcResultMatchers.content().bytes("789".getBytes(StandardCharsets.UTF_8)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.RANGE, "bytes=8-"))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 8-9/10"));
+    }
+
+    @Test
+    public void getWithMultipleOrMalformedRangesReturnsWholeValue() throws Exception {
+
+        Mockito.doAnswer(invocationOnMock -> StoredValue.of(ByteBuffer.wrap(value)))
+                .when(storageService).retrieveValue(key);
+
+        for (val range : List.of("bytes=0-1,3-4", "bytes=4-2", "items=0-1", "bytes=x-")) {
+
+            mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.RANGE, range))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                    .andExpect(MockMvcResultMatchers.content().bytes(value));
         }
+
+        Mockito.verify(storageService, Mockito.never()).retrieveRange(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void getWithRangeBeyondValueReturnsRangeNotSatisfiable() throws Exception {
+
+        Mockito.doThrow(RangeNotSatisfiableException.of(key, 10))
+                .when(storageService).retrieveRange(Mockito.eq(key), Mockito.any());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource).header(HttpHeaders.RANGE, "bytes=10-"))
+                .andExpect(MockMvcResultMatchers.status().isRequestedRangeNotSatisfiable())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"))
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.RANGE_NOT_SATISFIABLE.name()));
+    }
+
+    @Test
+    public void deleteWithIfMatchDeletesExpectedVersion() throws Exception {
+
+        mockMvc.perform(MockMvcRequestBuilders.delete(resource).header(HttpHeaders.IF_MATCH, "\"7\""))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+        Mockito.verify(storageService).compareAndDelete(key, 7L);
+        Mockito.verify(storageService, Mockito.never()).delete(key);
+    }
+
+    @Test
+    public void getReturnsOkValue() throws Exception {
+
+        val released = new AtomicBoolean();
+        val direct = ByteBuffer.allocateDirect(value.length).put(value).flip();
+
+        Mockito.doReturn(StoredValue.of(() -> released.set(true), ByteBuffer.wrap(value, 0, 2), direct))
+                .when(storageService).retrieveValue(key);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(resource))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, value.length + 2))
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(MockMvcResultMatchers.content().string("vavalue"));
+
+        Mockito.verify(storageService).retrieveValue(key);
+        Assertions.assertThat(released).isTrue();
     }
 
     @Test
     public void getMissingReturnsBadRequest() throws Exception {
 
-        //noinspection resource
         Mockito.doThrow(MissingKeyException.of(key))
-                .when(storageService).retrieve(key);
+                .when(storageService).retrieveValue(key);
 
         mockMvc.perform(MockMvcRequestBuilders.get(resource))
                 .andExpect(MockMvcResultMatchers.status().isBadRequest())
                 .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.MISSING_KEY.name()))
                 .andExpect(MockMvcResultMatchers.jsonPath("message").value(StringContains.containsString(key)));
 
-        //noinspection resource
-        Mockito.verify(storageService).retrieve(key);
+        Mockito.verify(storageService).retrieveValue(key);
     }
 
 
@@ -126,55 +432,272 @@ public class StorageControllerTest {
     }
 
     @Test
-    public void saveReturnsOkNoBody() throws Exception {
+    public void saveReturnsAcceptedJob() throws Exception {
 
         Mockito.doNothing()
                 .when(storageService).save();
 
-        mockMvc.perform(MockMvcRequestBuilders.post(save))
+        val location = mockMvc.perform(MockMvcRequestBuilders.post(save))
+                .andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LOCATION, StringContains.containsString(jobs)))
+                .andExpect(MockMvcResultMatchers.jsonPath("id").isNotEmpty())
+                .andExpect(MockMvcResultMatchers.jsonPath("operation").value(PersistenceJob.Operation.SAVE.name()))
+                .andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(location))
                 .andExpect(MockMvcResultMatchers.status().isOk())
-                .andExpect(MockMvcResultMatchers.content().string(""));
+                .andExpect(MockMvcResultMatchers.jsonPath("state").value(PersistenceJobStatus.State.SUCCEEDED.name()));
 
         Mockito.verify(storageService).save();
     }
 
     @Test
-    public void saveProblemReturnsInternalServerError() throws Exception {
+    public void saveProblemFailsJob() throws Exception {
 
         Mockito.doThrow(PersistenceException.cleaningStorage(new Exception()))
                 .when(storageService).save();
 
-        mockMvc.perform(MockMvcRequestBuilders.post(save))
-                .andExpect(MockMvcResultMatchers.status().isInternalServerError())
-                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.PERSISTENCE_CLEAN_STORAGE.name()));
+        val location = mockMvc.perform(MockMvcRequestBuilders.post(save))
+                .andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
 
+        mockMvc.perform(MockMvcRequestBuilders.get(location))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("state").value(PersistenceJobStatus.State.FAILED.name()))
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.PERSISTENCE_CLEAN_STORAGE.name()));
 
         Mockito.verify(storageService).save();
     }
 
     @Test
-    public void loadReturnsOkNoBody() throws Exception {
+    public void loadReturnsAcceptedJob() throws Exception {
 
         Mockito.doNothing()
                 .when(storageService).load();
 
         mockMvc.perform(MockMvcRequestBuilders.post(load))
-                .andExpect(MockMvcResultMatchers.status().isOk())
-                .andExpect(MockMvcResultMatchers.content().string(""));
+                .andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(MockMvcResultMatchers.jsonPath("operation").value(PersistenceJob.Operation.LOAD.name()));
 
         Mockito.verify(storageService).load();
     }
 
     @Test
-    public void loadProblemReturnsInternalServerError() throws Exception {
+    public void loadProblemFailsJob() throws Exception {
 
         Mockito.doThrow(PersistenceException.readingStorage(new Exception()))
                 .when(storageService).load();
 
         mockMvc.perform(MockMvcRequestBuilders.post(load))
-                .andExpect(MockMvcResultMatchers.status().isInternalServerError())
+                .andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(MockMvcResultMatchers.jsonPath("state").value(PersistenceJobStatus.State.FAILED.name()))
                 .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.PERSISTENCE_READ_STORAGE.name()));
 
         Mockito.verify(storageService).load();
     }
+
+    @Test
+    public void saveWhileJobRunsReturnsServiceUnavailable() throws Exception {
+
+        Mockito.doAnswer(invocation -> {
+
+            mockMvc.perform(MockMvcRequestBuilders.post(load))
+                    .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                    .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.SERVICE_UNAVAILABLE.name()));
+            return null;
+        }).when(storageService).save();
+
+        mockMvc.perform(MockMvcRequestBuilders.post(save))
+                .andExpect(MockMvcResultMatchers.status().isAccepted());
+
+        Mockito.verify(storageService, Mockito.never()).load();
+    }
+
+    @Test
+    public void unknownJobReturnsBadRequest() throws Exception {
+
+        mockMvc.perform(MockMvcRequestBuilders.get(jobs + "unknown"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.MISSING_JOB.name()));
+    }
+
+    @Test
+    public void saveStatusReturnsOkStatus() throws Exception {
+
+        Mockito.doReturn(new SnapshotStatus(SnapshotStatus.State.RUNNING, Instant.now(), null, 10, 4, 100))
+                .when(storageService).snapshotStatus();
+
+        mockMvc.perform(MockMvcRequestBuilders.get(save + "/status"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("state").value(SnapshotStatus.State.RUNNING.name()))
+                .andExpect(MockMvcResultMatchers.jsonPath("totalKeys").value(10))
+                .andExpect(MockMvcResultMatchers.jsonPath("persistedKeys").value(4));
+
+        Mockito.verify(storageService).snapshotStatus();
+    }
+
+    @Test
+    public void batchGetReturnsFramedValues() throws Exception {
+
+        val released = new AtomicBoolean();
+
+        Mockito.doReturn(Arrays.asList(StoredValue.of(() -> released.set(true), ByteBuffer.wrap(value)), null))
+                .when(storageService).retrieveAll(List.of(key, "other"));
+
+        val expected = new ByteArrayOutputStream();
+        val out = new DataOutputStream(expected);
+        out.writeByte(0);
+        out.writeLong(value.length);
+        out.write(value);
+        out.writeByte(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(batch + "get").content(keyFrames(key, "other")))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(BatchFraming.MEDIA_TYPE))
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, expected.size()))
+                .andExpect(MockMvcResultMatchers.content().bytes(expected.toByteArray()));
+
+        Assertions.assertThat(released).isTrue();
+    }
+
+    @Test
+    public void batchPutReturnsFramedStatuses() throws Exception {
+
+        val entries = new AtomicReference<List<Map.Entry<String, byte[]>>>();
+
+        Mockito.doAnswer(invocationOnMock -> {
+
+            entries.set(invocationOnMock.getArgument(0));
+            return List.of(BatchStatus.OK, BatchStatus.DUPLICATE_KEY);
+        }).when(storageService).storeAll(Mockito.anyList());
+
+        val body = new ByteArrayOutputStream();
+        val out = new DataOutputStream(body);
+
+        for (val k : List.of(key, "other")) {
+
+            out.write(keyFrames(k));
+            out.writeLong(value.length);
+            out.write(value);
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.post(batch + "put").content(body.toByteArray()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[]{0, 2}));
+
+        Assertions.assertThat(entries.get()).extracting(Map.Entry::getKey).containsExactly(key, "other");
+        Assertions.assertThat(entries.get()).extracting(Map.Entry::getValue).containsOnly(value);
+    }
+
+    @Test
+    public void batchDeleteReturnsFramedStatuses() throws Exception {
+
+        Mockito.doReturn(List.of(BatchStatus.MISSING_KEY, BatchStatus.OK))
+                .when(storageService).deleteAll(List.of(key, "other"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(batch + "delete").content(keyFrames(key, "other")))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[]{1, 0}));
+    }
+
+    @Test
+    public void batchTruncatedFrameReturnsBadRequest() throws Exception {
+
+        val frames = keyFrames(key);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(batch + "get").content(Arrays.copyOf(frames, frames.length - 1)))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.MALFORMED_BATCH.name()));
+
+        Mockito.verifyNoInteractions(storageService);
+    }
+
+    @Test
+    public void batchOverKeyLimitReturnsPayloadTooLarge() throws Exception {
+
+        val keys = IntStream.rangeClosed(0, new StorageProperties().getMaxBatchKeys())
+                .mapToObj(String::valueOf)
+                .toArray(String[]::new);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(batch + "delete").content(keyFrames(keys)))
+                .andExpect(MockMvcResultMatchers.status().isPayloadTooLarge())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.BATCH_TOO_LARGE.name()));
+
+        Mockito.verifyNoInteractions(storageService);
+    }
+
+    @Test
+    public void scanReturnsFramedKeysWithValuesAndLinkToNextPage() throws Exception {
+
+        val released = new AtomicBoolean();
+        val page = new ScanPage(List.of("tenant/2", "tenant/3"),
+                List.of(StoredValue.of(ByteBuffer.wrap(value)), StoredValue.of(() -> released.set(true), ByteBuffer.wrap(value))),
+                "tenant/3");
+
+        Mockito.doReturn(page).when(storageService).scan(KeyRange.prefix("tenant/").after("tenant/1"), 2, true);
+
+        val expected = new ByteArrayOutputStream();
+        val out = new DataOutputStream(expected);
+
+        for (val k : List.of("tenant/2", "tenant/3")) {
+
+            out.write(keyFrames(k));
+            out.writeLong(value.length);
+            out.write(value);
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.get(scan)
+                        .param("prefix", "tenant/")
+                        .param("cursor", "tenant/1")
+                        .param("limit", "2")
+                        .param("values", "true"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(BatchFraming.MEDIA_TYPE))
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, expected.size()))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, StringContains.containsString("cursor=tenant%2F3")))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, StringContains.containsString("rel=\"next\"")))
+                .andExpect(MockMvcResultMatchers.content().bytes(expected.toByteArray()));
+
+        Assertions.assertThat(released).isTrue();
+    }
+
+    @Test
+    public void scanOfLastPageReturnsKeysWithoutLink() throws Exception {
+
+        Mockito.doReturn(new ScanPage(List.of("a"), null, null))
+                .when(storageService).scan(KeyRange.of("a", "b"), 1000, false);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(scan).param("start", "a").param("end", "b"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK))
+                .andExpect(MockMvcResultMatchers.content().bytes(keyFrames("a")));
+    }
+
+    @Test
+    public void scanWithConflictingRangeOrLimitReturnsBadRequest() throws Exception {
+
+        mockMvc.perform(MockMvcRequestBuilders.get(scan).param("prefix", "a").param("start", "b"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.INVALID_SCAN.name()));
+        mockMvc.perform(MockMvcRequestBuilders.get(scan).param("limit", "1001"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errorCode").value(ErrorCode.INVALID_SCAN.name()));
+
+        Mockito.verifyNoInteractions(storageService);
+    }
+
+    private static byte[] keyFrames(String... keys) throws IOException {
+
+        val frames = new ByteArrayOutputStream();
+        val out = new DataOutputStream(frames);
+
+        for (val key : keys) {
+
+            val bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        return frames.toByteArray();
+    }
 }
@@ -0,0 +1,19 @@
+package io.ruv.storage.web.conroller;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@EnabledIf("io.ruv.storage.util.concurrent.VirtualThreads#isSupported")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "storage.execution.threads=virtual")
+public class VirtualThreadRequestsLoadTest extends ConcurrentRequestsLoadTestSupport {
+
+    @Test
+    public void blockingRequestsAreNotCappedByTomcatThreads() throws Exception {
+
+        Assertions.assertThat(peakConcurrentRetrievals())
+                .isEqualTo(REQUESTS);
+    }
+}